@@ -4,12 +4,15 @@ module se.uu.ub.cora.login {
 	requires transitive se.uu.ub.cora.gatekeeper;
 	requires transitive se.uu.ub.cora.gatekeepertokenprovider;
 	requires transitive se.uu.ub.cora.password;
-	requires se.uu.ub.cora.json;
 	requires se.uu.ub.cora.httphandler;
+	requires java.net.http;
 	requires transitive jakarta.servlet;
 	requires transitive jakarta.ws.rs;
 	requires transitive se.uu.ub.cora.initialize;
 	requires jersey.media.multipart;
 
+	uses se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
+
 	exports se.uu.ub.cora.login.rest;
+	exports se.uu.ub.cora.login.storage;
 }
\ No newline at end of file
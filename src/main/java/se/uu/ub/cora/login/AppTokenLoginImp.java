@@ -1,5 +1,5 @@
 /*
- * Copyright 2024 Uppsala University Library
+ * Copyright 2024, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -18,25 +18,59 @@
  */
 package se.uu.ub.cora.login;
 
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 import se.uu.ub.cora.gatekeeper.storage.UserStorageProvider;
 import se.uu.ub.cora.gatekeeper.storage.UserStorageView;
 import se.uu.ub.cora.gatekeeper.user.User;
 import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
 import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
 import se.uu.ub.cora.gatekeepertokenprovider.UserInfo;
+import se.uu.ub.cora.login.cache.Cache;
+import se.uu.ub.cora.login.hashing.HashingExecutor;
 import se.uu.ub.cora.login.initialize.GatekeeperInstanceProvider;
 import se.uu.ub.cora.login.rest.AppTokenLogin;
 import se.uu.ub.cora.login.rest.LoginException;
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+import se.uu.ub.cora.login.singleflight.SingleFlight;
+import se.uu.ub.cora.login.storage.SystemSecretBatchStorage;
 import se.uu.ub.cora.password.texthasher.TextHasher;
 
 public class AppTokenLoginImp implements AppTokenLogin {
 
 	private static final String ERROR_MESSAGE = "Login failed.";
-	private UserStorageView userStorageView = UserStorageProvider.getStorageView();
+	private static final String SATURATED_MESSAGE = "Login executor is saturated.";
+	private static final String LOGIN_TYPE = "apptoken";
+	private static final char SELECTOR_SEPARATOR = ':';
 	private TextHasher textHasher;
+	private HashingExecutor hashingExecutor;
+	private Executor loginExecutor;
+	private SingleFlight singleFlight;
+	private Cache<User> userCache;
+	private Cache<String> systemSecretCache;
+	private Cache<String> lastMatchedAppTokenIdCache;
 
-	public AppTokenLoginImp(TextHasher textHasher) {
+	public AppTokenLoginImp(TextHasher textHasher, HashingExecutor hashingExecutor,
+			Executor loginExecutor, SingleFlight singleFlight, Cache<User> userCache,
+			Cache<String> systemSecretCache, Cache<String> lastMatchedAppTokenIdCache) {
 		this.textHasher = textHasher;
+		this.hashingExecutor = hashingExecutor;
+		this.loginExecutor = loginExecutor;
+		this.singleFlight = singleFlight;
+		this.userCache = userCache;
+		this.systemSecretCache = systemSecretCache;
+		this.lastMatchedAppTokenIdCache = lastMatchedAppTokenIdCache;
 	}
 
 	@Override
@@ -44,37 +78,289 @@ public class AppTokenLoginImp implements AppTokenLogin {
 		try {
 			return tryToGetAuthToken(loginId, appToken);
 		} catch (Exception e) {
-			throw LoginException.withMessage(ERROR_MESSAGE);
+			throw createLoginUnavailableOrLoginException(e);
 		}
 	}
 
 	private AuthToken tryToGetAuthToken(String loginId, String appToken) {
-		User user = userStorageView.getUserByLoginId(loginId);
-		ifUserNotActiveThrowException(user);
-		ifAppTokenDoNotMatchAnyThrowException(appToken, user);
+		String key = singleFlight.createKeyUsingTypeLoginIdAndSecret(LOGIN_TYPE, loginId, appToken);
+		if (singleFlight.sharesAuthToken()) {
+			return singleFlight.runOnceForKey(key, () -> CompletableFuture
+					.completedFuture(getVerifiedUserAndNewAuthToken(loginId, appToken))).join();
+		}
+		User user = singleFlight.runOnceForKey(key,
+				() -> CompletableFuture.completedFuture(getVerifiedUser(loginId, appToken))).join();
+		return getNewAuthTokenFromGatekeeper(user.id);
+	}
+
+	private AuthToken getVerifiedUserAndNewAuthToken(String loginId, String appToken) {
+		User user = getVerifiedUser(loginId, appToken);
 		return getNewAuthTokenFromGatekeeper(user.id);
 	}
 
+	private User getVerifiedUser(String loginId, String appToken) {
+		UserStorageView userStorageView = UserStorageProvider.getStorageView();
+		User user = getActiveUser(userStorageView, loginId);
+		ifAppTokenDoNotMatchAnyThrowException(userStorageView, appToken, user);
+		return user;
+	}
+
+	private User getActiveUser(UserStorageView userStorageView, String loginId) {
+		User user = userCache.getOrLoad(loginId, userStorageView::getUserByLoginId);
+		ifUserNotActiveThrowException(user);
+		return user;
+	}
+
 	private void ifUserNotActiveThrowException(User user) {
 		if (!user.active) {
 			throw LoginException.withMessage(ERROR_MESSAGE);
 		}
 	}
 
-	private void ifAppTokenDoNotMatchAnyThrowException(String appToken, User user) {
-		if (!matchAppTokenForUser(appToken, user)) {
+	@Override
+	public CompletionStage<AuthToken> getAuthTokenAsync(String loginId, String appToken) {
+		String key = singleFlight.createKeyUsingTypeLoginIdAndSecret(LOGIN_TYPE, loginId, appToken);
+		return startAuthTokenUsingSingleFlightAsync(key, loginId, appToken)
+				.handle(this::returnAuthTokenOrThrowLoginError);
+	}
+
+	private CompletableFuture<AuthToken> startAuthTokenUsingSingleFlightAsync(String key,
+			String loginId, String appToken) {
+		try {
+			return getAuthTokenUsingSingleFlightAsync(key, loginId, appToken);
+		} catch (RejectedExecutionException error) {
+			return CompletableFuture.failedFuture(error);
+		}
+	}
+
+	private CompletableFuture<AuthToken> getAuthTokenUsingSingleFlightAsync(String key,
+			String loginId, String appToken) {
+		if (singleFlight.sharesAuthToken()) {
+			return singleFlight.runOnceForKey(key, () -> getVerifiedUserAsync(loginId, appToken)
+					.thenApplyAsync(user -> getNewAuthTokenFromGatekeeper(user.id), loginExecutor));
+		}
+		return singleFlight.runOnceForKey(key, () -> getVerifiedUserAsync(loginId, appToken))
+				.thenApplyAsync(user -> getNewAuthTokenFromGatekeeper(user.id), loginExecutor);
+	}
+
+	private CompletableFuture<User> getVerifiedUserAsync(String loginId, String appToken) {
+		return CompletableFuture.supplyAsync(UserStorageProvider::getStorageView, loginExecutor)
+				.thenCompose(userStorageView -> getActiveUserAndCheckAppTokenAsync(userStorageView,
+						loginId, appToken));
+	}
+
+	private CompletableFuture<User> getActiveUserAndCheckAppTokenAsync(
+			UserStorageView userStorageView, String loginId, String appToken) {
+		User user = getActiveUser(userStorageView, loginId);
+		return matchAppTokenForUserAsync(userStorageView, appToken, user)
+				.thenApply(matches -> returnUserIfMatchesOrThrowException(matches, user));
+	}
+
+	private User returnUserIfMatchesOrThrowException(boolean matches, User user) {
+		if (!matches) {
 			throw LoginException.withMessage(ERROR_MESSAGE);
 		}
+		return user;
 	}
 
-	private boolean matchAppTokenForUser(String appToken, User user) {
-		for (String systemSecretId : user.appTokenIds) {
-			String systemSecret = userStorageView.getSystemSecretById(systemSecretId);
-			if (textHasher.matches(appToken, systemSecret)) {
-				return true;
-			}
+	private CompletableFuture<Boolean> matchAppTokenForUserAsync(UserStorageView userStorageView,
+			String appToken, User user) {
+		Optional<SelectorAndVerifier> selectorAndVerifier = possiblySplitIntoSelectorAndVerifier(
+				appToken, user);
+		if (selectorAndVerifier.isPresent()) {
+			return matchAppTokenUsingSystemSecretIdAsync(userStorageView,
+					selectorAndVerifier.get().verifier(), selectorAndVerifier.get().selector());
+		}
+		return matchAppTokenAgainstAllSystemSecretsForUserAsync(userStorageView, appToken, user);
+	}
+
+	private CompletableFuture<Boolean> matchAppTokenUsingSystemSecretIdAsync(
+			UserStorageView userStorageView, String appToken, String systemSecretId) {
+		String systemSecret = systemSecretCache.getOrLoad(systemSecretId,
+				userStorageView::getSystemSecretById);
+		return hashingExecutor.matchesAsync(textHasher, appToken, systemSecret);
+	}
+
+	private CompletableFuture<Boolean> matchAppTokenAgainstAllSystemSecretsForUserAsync(
+			UserStorageView userStorageView, String appToken, User user) {
+		Optional<String> lastMatchedAppTokenId = getLastMatchedAppTokenIdStillOwnedByUser(user);
+		Set<String> remainingAppTokenIds = new LinkedHashSet<>(user.appTokenIds);
+		if (lastMatchedAppTokenId.isEmpty()) {
+			return matchAppTokenAgainstSystemSecretsAndRememberMatchAsync(userStorageView,
+					appToken, user, remainingAppTokenIds);
+		}
+		remainingAppTokenIds.remove(lastMatchedAppTokenId.get());
+		return matchAppTokenUsingSystemSecretIdAsync(userStorageView, appToken,
+				lastMatchedAppTokenId.get())
+				.thenCompose(matches -> matches ? CompletableFuture.completedFuture(true)
+						: matchAppTokenAgainstSystemSecretsAndRememberMatchAsync(userStorageView,
+								appToken, user, remainingAppTokenIds));
+	}
+
+	private CompletableFuture<Boolean> matchAppTokenAgainstSystemSecretsAndRememberMatchAsync(
+			UserStorageView userStorageView, String appToken, User user,
+			Set<String> appTokenIds) {
+		Candidates candidates = getCandidates(userStorageView, appTokenIds);
+		return hashingExecutor
+				.findIndexOfMatchAsync(textHasher, appToken, candidates.systemSecrets())
+				.thenApply(index -> rememberPossibleMatch(user, candidates, index));
+	}
+
+	private boolean rememberPossibleMatch(User user, Candidates candidates, int index) {
+		Optional<String> matchingSystemSecretId = getSystemSecretIdForIndex(candidates, index);
+		matchingSystemSecretId.ifPresent(id -> lastMatchedAppTokenIdCache.put(user.id, id));
+		return matchingSystemSecretId.isPresent();
+	}
+
+	private AuthToken returnAuthTokenOrThrowLoginError(AuthToken authToken, Throwable error) {
+		if (error == null) {
+			return authToken;
 		}
-		return false;
+		throw createLoginUnavailableOrLoginException(error);
+	}
+
+	private RuntimeException createLoginUnavailableOrLoginException(Throwable error) {
+		Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+		if (cause instanceof LoginUnavailableException loginUnavailableException) {
+			return loginUnavailableException;
+		}
+		if (cause instanceof RejectedExecutionException rejectedExecutionException) {
+			return LoginUnavailableException.withMessageAndException(SATURATED_MESSAGE,
+					rejectedExecutionException);
+		}
+		return LoginException.withMessage(ERROR_MESSAGE);
+	}
+
+	private void ifAppTokenDoNotMatchAnyThrowException(UserStorageView userStorageView,
+			String appToken, User user) {
+		if (!matchAppTokenForUser(userStorageView, appToken, user)) {
+			throw LoginException.withMessage(ERROR_MESSAGE);
+		}
+	}
+
+	private boolean matchAppTokenForUser(UserStorageView userStorageView, String appToken,
+			User user) {
+		Optional<SelectorAndVerifier> selectorAndVerifier = possiblySplitIntoSelectorAndVerifier(
+				appToken, user);
+		if (selectorAndVerifier.isPresent()) {
+			return matchAppTokenUsingSystemSecretId(userStorageView,
+					selectorAndVerifier.get().verifier(), selectorAndVerifier.get().selector());
+		}
+		return matchAppTokenAgainstAllSystemSecretsForUser(userStorageView, appToken, user);
+	}
+
+	private Optional<SelectorAndVerifier> possiblySplitIntoSelectorAndVerifier(String appToken,
+			User user) {
+		int separatorIndex = appToken.indexOf(SELECTOR_SEPARATOR);
+		if (separatorIndex < 0) {
+			return Optional.empty();
+		}
+		String selector = appToken.substring(0, separatorIndex);
+		if (!user.appTokenIds.contains(selector)) {
+			return Optional.empty();
+		}
+		return Optional.of(
+				new SelectorAndVerifier(selector, appToken.substring(separatorIndex + 1)));
+	}
+
+	private boolean matchAppTokenAgainstAllSystemSecretsForUser(UserStorageView userStorageView,
+			String appToken, User user) {
+		Optional<String> lastMatchedAppTokenId = getLastMatchedAppTokenIdStillOwnedByUser(user);
+		if (lastMatchedAppTokenId.isPresent() && matchAppTokenUsingSystemSecretId(
+				userStorageView, appToken, lastMatchedAppTokenId.get())) {
+			return true;
+		}
+		Set<String> remainingAppTokenIds = new LinkedHashSet<>(user.appTokenIds);
+		lastMatchedAppTokenId.ifPresent(remainingAppTokenIds::remove);
+		return matchAppTokenAgainstSystemSecretsAndRememberMatch(userStorageView, appToken, user,
+				remainingAppTokenIds);
+	}
+
+	private Optional<String> getLastMatchedAppTokenIdStillOwnedByUser(User user) {
+		String lastMatchedAppTokenId = lastMatchedAppTokenIdCache.getIfPresent(user.id);
+		if (lastMatchedAppTokenId == null || !user.appTokenIds.contains(lastMatchedAppTokenId)) {
+			return Optional.empty();
+		}
+		return Optional.of(lastMatchedAppTokenId);
+	}
+
+	private boolean matchAppTokenUsingSystemSecretId(UserStorageView userStorageView,
+			String appToken, String systemSecretId) {
+		String systemSecret = systemSecretCache.getOrLoad(systemSecretId,
+				userStorageView::getSystemSecretById);
+		return hashingExecutor.matches(textHasher, appToken, systemSecret);
+	}
+
+	private boolean matchAppTokenAgainstSystemSecretsAndRememberMatch(
+			UserStorageView userStorageView, String appToken, User user,
+			Set<String> appTokenIds) {
+		Candidates candidates = getCandidates(userStorageView, appTokenIds);
+		Optional<String> matchingSystemSecretId = findMatchingSystemSecretId(appToken,
+				candidates);
+		matchingSystemSecretId.ifPresent(id -> lastMatchedAppTokenIdCache.put(user.id, id));
+		return matchingSystemSecretId.isPresent();
+	}
+
+	private Optional<String> findMatchingSystemSecretId(String appToken, Candidates candidates) {
+		int index = hashingExecutor.findIndexOfMatch(textHasher, appToken,
+				candidates.systemSecrets());
+		return getSystemSecretIdForIndex(candidates, index);
+	}
+
+	private Optional<String> getSystemSecretIdForIndex(Candidates candidates, int index) {
+		if (index == HashingExecutor.NO_MATCH) {
+			return Optional.empty();
+		}
+		return Optional.of(candidates.systemSecretIds().get(index));
+	}
+
+	private Candidates getCandidates(UserStorageView userStorageView, Set<String> appTokenIds) {
+		if (userStorageView instanceof SystemSecretBatchStorage batchStorage) {
+			return getCandidatesUsingBatchLookup(appTokenIds, batchStorage);
+		}
+		return getCandidatesUsingLookupPerId(appTokenIds, userStorageView);
+	}
+
+	private Candidates getCandidatesUsingBatchLookup(Set<String> appTokenIds,
+			SystemSecretBatchStorage batchStorage) {
+		Map<String, String> systemSecrets = systemSecretCache.getAllOrLoad(appTokenIds,
+				batchStorage::getSystemSecretsByIds);
+		Candidates candidates = new Candidates(new ArrayList<>(), new ArrayList<>());
+		for (String systemSecretId : appTokenIds) {
+			possiblyAddCandidate(candidates, systemSecretId, systemSecrets.get(systemSecretId));
+		}
+		return candidates;
+	}
+
+	private void possiblyAddCandidate(Candidates candidates, String systemSecretId,
+			String systemSecret) {
+		if (systemSecret != null) {
+			candidates.systemSecretIds().add(systemSecretId);
+			candidates.systemSecrets().add(systemSecret);
+		}
+	}
+
+	private Candidates getCandidatesUsingLookupPerId(Set<String> appTokenIds,
+			UserStorageView userStorageView) {
+		List<String> systemSecretIds = new ArrayList<>(appTokenIds);
+		return new Candidates(systemSecretIds,
+				createSystemSecretsReadOnDemand(systemSecretIds, userStorageView));
+	}
+
+	private List<String> createSystemSecretsReadOnDemand(List<String> systemSecretIds,
+			UserStorageView userStorageView) {
+		return new AbstractList<>() {
+			@Override
+			public String get(int index) {
+				return systemSecretCache.getOrLoad(systemSecretIds.get(index),
+						userStorageView::getSystemSecretById);
+			}
+
+			@Override
+			public int size() {
+				return systemSecretIds.size();
+			}
+		};
 	}
 
 	private AuthToken getNewAuthTokenFromGatekeeper(String userRecordInfoId) {
@@ -93,4 +379,34 @@ public class AppTokenLoginImp implements AppTokenLogin {
 	public Object onlyForTestGetTextHasher() {
 		return textHasher;
 	}
+
+	public HashingExecutor onlyForTestGetHashingExecutor() {
+		return hashingExecutor;
+	}
+
+	public Executor onlyForTestGetLoginExecutor() {
+		return loginExecutor;
+	}
+
+	public SingleFlight onlyForTestGetSingleFlight() {
+		return singleFlight;
+	}
+
+	public Cache<User> onlyForTestGetUserCache() {
+		return userCache;
+	}
+
+	public Cache<String> onlyForTestGetSystemSecretCache() {
+		return systemSecretCache;
+	}
+
+	public Cache<String> onlyForTestGetLastMatchedAppTokenIdCache() {
+		return lastMatchedAppTokenIdCache;
+	}
+
+	private record SelectorAndVerifier(String selector, String verifier) {
+	}
+
+	private record Candidates(List<String> systemSecretIds, List<String> systemSecrets) {
+	}
 }
@@ -0,0 +1,102 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
+import se.uu.ub.cora.login.cache.Cache;
+import se.uu.ub.cora.login.rest.AuthTokenRenewer;
+import se.uu.ub.cora.login.singleflight.SingleFlight;
+
+/**
+ * AuthTokenRenewerImp renews authTokens through gatekeeper. Renewals are keyed on both tokenId and
+ * token, using {@link SingleFlight#createKeyUsingTypeLoginIdAndSecret(String, String, String)}, so
+ * that only requests presenting the same token share a renewal. Concurrent renewals with the same
+ * key wait for the one renewal in flight, and the renewed authToken is kept in the
+ * renewedAuthTokenCache so that renewals repeated within its time to live reuse it. The cached
+ * authToken is forgotten when the authToken is removed.
+ */
+public class AuthTokenRenewerImp implements AuthTokenRenewer {
+	private static final String RENEW_TYPE = "renew";
+	private GatekeeperTokenProvider gatekeeperTokenProvider;
+	private SingleFlight singleFlight;
+	private Cache<AuthToken> renewedAuthTokenCache;
+
+	public AuthTokenRenewerImp(GatekeeperTokenProvider gatekeeperTokenProvider,
+			SingleFlight singleFlight, Cache<AuthToken> renewedAuthTokenCache) {
+		this.gatekeeperTokenProvider = gatekeeperTokenProvider;
+		this.singleFlight = singleFlight;
+		this.renewedAuthTokenCache = renewedAuthTokenCache;
+	}
+
+	@Override
+	public AuthToken renewAuthToken(String tokenId, String token) {
+		String key = singleFlight.createKeyUsingTypeLoginIdAndSecret(RENEW_TYPE, tokenId, token);
+		AuthToken recentlyRenewedAuthToken = renewedAuthTokenCache.getIfPresent(key);
+		if (recentlyRenewedAuthToken != null) {
+			return recentlyRenewedAuthToken;
+		}
+		return renewOnceForKey(key, tokenId, token);
+	}
+
+	private AuthToken renewOnceForKey(String key, String tokenId, String token) {
+		try {
+			return singleFlight
+					.runOnceForKey(key, () -> renewAndRememberAuthToken(key, tokenId, token))
+					.join();
+		} catch (CompletionException e) {
+			throw unwrapRuntimeException(e);
+		}
+	}
+
+	private CompletableFuture<AuthToken> renewAndRememberAuthToken(String key, String tokenId,
+			String token) {
+		AuthToken renewedAuthToken = renewedAuthTokenCache.getOrLoad(key,
+				cacheKey -> gatekeeperTokenProvider.renewAuthToken(tokenId, token));
+		return CompletableFuture.completedFuture(renewedAuthToken);
+	}
+
+	@Override
+	public void forgetRenewedAuthToken(String tokenId, String token) {
+		String key = singleFlight.createKeyUsingTypeLoginIdAndSecret(RENEW_TYPE, tokenId, token);
+		renewedAuthTokenCache.invalidate(key);
+	}
+
+	private RuntimeException unwrapRuntimeException(CompletionException e) {
+		if (e.getCause() instanceof RuntimeException runtimeException) {
+			return runtimeException;
+		}
+		return e;
+	}
+
+	public GatekeeperTokenProvider onlyForTestGetGatekeeperTokenProvider() {
+		return gatekeeperTokenProvider;
+	}
+
+	public SingleFlight onlyForTestGetSingleFlight() {
+		return singleFlight;
+	}
+
+	public Cache<AuthToken> onlyForTestGetRenewedAuthTokenCache() {
+		return renewedAuthTokenCache;
+	}
+}
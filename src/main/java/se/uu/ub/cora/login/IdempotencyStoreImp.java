@@ -0,0 +1,107 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.login.cache.Cache;
+import se.uu.ub.cora.login.rest.IdempotencyStore;
+import se.uu.ub.cora.login.singleflight.SingleFlight;
+
+/**
+ * IdempotencyStoreImp remembers logins by Idempotency-Key. The key of a login is a keyed digest,
+ * created by {@link SingleFlight#createKeyUsingTypeLoginIdAndSecret(String, String, String)}, of
+ * the Idempotency-Key, loginType, loginId and secret. A repeated Idempotency-Key therefore only
+ * gets the earlier AuthToken when sent with the same credentials, and the plain secret is never
+ * kept. Logins in flight are shared through the SingleFlight and succeeded logins are kept in the
+ * idempotentLoginCache for its time to live.
+ * <p>
+ * A forgotten authToken is kept in the forgottenAuthTokenCache, keyed on a keyed digest of its
+ * tokenId and token, and is never replayed. The forgottenAuthTokenCache should keep entries at
+ * least as long as the idempotentLoginCache.
+ */
+public class IdempotencyStoreImp implements IdempotencyStore {
+	private static final String IDEMPOTENT_TYPE_PREFIX = "idempotent:";
+	private static final String FORGOTTEN_TYPE = "forgotten";
+	private SingleFlight singleFlight;
+	private Cache<AuthToken> idempotentLoginCache;
+	private Cache<String> forgottenAuthTokenCache;
+
+	public IdempotencyStoreImp(SingleFlight singleFlight, Cache<AuthToken> idempotentLoginCache,
+			Cache<String> forgottenAuthTokenCache) {
+		this.singleFlight = singleFlight;
+		this.idempotentLoginCache = idempotentLoginCache;
+		this.forgottenAuthTokenCache = forgottenAuthTokenCache;
+	}
+
+	@Override
+	public CompletionStage<AuthToken> loginOncePerIdempotencyKey(String idempotencyKey,
+			String loginType, String loginId, String secret,
+			Supplier<CompletionStage<AuthToken>> login) {
+		String key = createKey(idempotencyKey, loginType, loginId, secret);
+		AuthToken earlierAuthToken = idempotentLoginCache.getIfPresent(key);
+		if (earlierAuthToken != null && !isForgotten(earlierAuthToken)) {
+			return CompletableFuture.completedFuture(earlierAuthToken);
+		}
+		return singleFlight.runOnceForKey(key, () -> loginAndRememberAuthToken(key, login));
+	}
+
+	private String createKey(String idempotencyKey, String loginType, String loginId,
+			String secret) {
+		String type = IDEMPOTENT_TYPE_PREFIX + loginType + ":" + idempotencyKey;
+		return singleFlight.createKeyUsingTypeLoginIdAndSecret(type, loginId, secret);
+	}
+
+	private boolean isForgotten(AuthToken authToken) {
+		String key = createForgottenKey(authToken.tokenId(), authToken.token());
+		return forgottenAuthTokenCache.getIfPresent(key) != null;
+	}
+
+	private String createForgottenKey(String tokenId, String token) {
+		return singleFlight.createKeyUsingTypeLoginIdAndSecret(FORGOTTEN_TYPE, tokenId, token);
+	}
+
+	private CompletableFuture<AuthToken> loginAndRememberAuthToken(String key,
+			Supplier<CompletionStage<AuthToken>> login) {
+		return login.get().toCompletableFuture().thenApply(authToken -> {
+			idempotentLoginCache.put(key, authToken);
+			return authToken;
+		});
+	}
+
+	@Override
+	public void forgetAuthToken(String tokenId, String token) {
+		forgottenAuthTokenCache.put(createForgottenKey(tokenId, token), tokenId);
+	}
+
+	public SingleFlight onlyForTestGetSingleFlight() {
+		return singleFlight;
+	}
+
+	public Cache<AuthToken> onlyForTestGetIdempotentLoginCache() {
+		return idempotentLoginCache;
+	}
+
+	public Cache<String> onlyForTestGetForgottenAuthTokenCache() {
+		return forgottenAuthTokenCache;
+	}
+}
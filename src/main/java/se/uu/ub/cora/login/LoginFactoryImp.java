@@ -1,5 +1,5 @@
 /*
- * Copyright 2024 Uppsala University Library
+ * Copyright 2024, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -18,7 +18,17 @@
  */
 package se.uu.ub.cora.login;
 
+import se.uu.ub.cora.login.hashing.KeyedDigest;
+import se.uu.ub.cora.login.hashing.KeyedDigestTextHasher;
+import se.uu.ub.cora.login.hashing.PerThreadTextHasher;
+import se.uu.ub.cora.login.initialize.CacheProvider;
+import se.uu.ub.cora.login.initialize.ExecutorProvider;
+import se.uu.ub.cora.login.initialize.GatekeeperInstanceProvider;
+import se.uu.ub.cora.login.initialize.KeyedDigestProvider;
+import se.uu.ub.cora.login.initialize.SingleFlightProvider;
 import se.uu.ub.cora.login.rest.AppTokenLogin;
+import se.uu.ub.cora.login.rest.AuthTokenRenewer;
+import se.uu.ub.cora.login.rest.IdempotencyStore;
 import se.uu.ub.cora.login.rest.LoginFactory;
 import se.uu.ub.cora.login.rest.PasswordLogin;
 import se.uu.ub.cora.password.texthasher.TextHasher;
@@ -35,14 +45,41 @@ public class LoginFactoryImp implements LoginFactory {
 
 	@Override
 	public PasswordLogin factorPasswordLogin() {
-		TextHasher textHasher = textHasherFactory.factor();
-		return new PasswordLoginImp(textHasher);
+		TextHasher textHasher = PerThreadTextHasher.usingTextHasherFactory(textHasherFactory);
+		return new PasswordLoginImp(textHasher, ExecutorProvider.getHashingExecutor(),
+				ExecutorProvider.getLoginExecutor(), SingleFlightProvider.getSingleFlight(),
+				CacheProvider.getUserCache());
 	}
 
 	@Override
 	public AppTokenLogin factorAppTokenLogin() {
-		TextHasher textHasher = textHasherFactory.factor();
-		return new AppTokenLoginImp(textHasher);
+		TextHasher textHasher = factorAppTokenTextHasher();
+		return new AppTokenLoginImp(textHasher, ExecutorProvider.getHashingExecutor(),
+				ExecutorProvider.getLoginExecutor(), SingleFlightProvider.getSingleFlight(),
+				CacheProvider.getUserCache(), CacheProvider.getSystemSecretCache(),
+				CacheProvider.getLastMatchedAppTokenIdCache());
+	}
+
+	@Override
+	public AuthTokenRenewer factorAuthTokenRenewer() {
+		return new AuthTokenRenewerImp(GatekeeperInstanceProvider.getGatekeeperTokenProvider(),
+				SingleFlightProvider.getSingleFlight(), CacheProvider.getRenewedAuthTokenCache());
+	}
+
+	@Override
+	public IdempotencyStore factorIdempotencyStore() {
+		return new IdempotencyStoreImp(SingleFlightProvider.getSingleFlight(),
+				CacheProvider.getIdempotentLoginCache(),
+				CacheProvider.getForgottenAuthTokenCache());
+	}
+
+	private TextHasher factorAppTokenTextHasher() {
+		TextHasher textHasher = PerThreadTextHasher.usingTextHasherFactory(textHasherFactory);
+		KeyedDigest keyedDigest = KeyedDigestProvider.getAppTokenKeyedDigest();
+		if (keyedDigest == null) {
+			return textHasher;
+		}
+		return KeyedDigestTextHasher.usingTextHasherAndKeyedDigest(textHasher, keyedDigest);
 	}
 
 	public Object onlyForTestGetTextHasherFactory() {
@@ -1,5 +1,5 @@
 /*
- * Copyright 2024 Uppsala University Library
+ * Copyright 2024, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -18,25 +18,45 @@
  */
 package se.uu.ub.cora.login;
 
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
 import se.uu.ub.cora.gatekeeper.storage.UserStorageProvider;
 import se.uu.ub.cora.gatekeeper.storage.UserStorageView;
 import se.uu.ub.cora.gatekeeper.user.User;
 import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
 import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
 import se.uu.ub.cora.gatekeepertokenprovider.UserInfo;
+import se.uu.ub.cora.login.cache.Cache;
+import se.uu.ub.cora.login.hashing.HashingExecutor;
 import se.uu.ub.cora.login.initialize.GatekeeperInstanceProvider;
 import se.uu.ub.cora.login.rest.LoginException;
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
 import se.uu.ub.cora.login.rest.PasswordLogin;
+import se.uu.ub.cora.login.singleflight.SingleFlight;
 import se.uu.ub.cora.password.texthasher.TextHasher;
 
 public class PasswordLoginImp implements PasswordLogin {
 
 	private static final String ERROR_MESSAGE = "Login failed.";
-	private UserStorageView userStorageView = UserStorageProvider.getStorageView();
+	private static final String SATURATED_MESSAGE = "Login executor is saturated.";
+	private static final String LOGIN_TYPE = "password";
 	private TextHasher textHasher;
+	private HashingExecutor hashingExecutor;
+	private Executor loginExecutor;
+	private SingleFlight singleFlight;
+	private Cache<User> userCache;
 
-	public PasswordLoginImp(TextHasher textHasher) {
+	public PasswordLoginImp(TextHasher textHasher, HashingExecutor hashingExecutor,
+			Executor loginExecutor, SingleFlight singleFlight, Cache<User> userCache) {
 		this.textHasher = textHasher;
+		this.hashingExecutor = hashingExecutor;
+		this.loginExecutor = loginExecutor;
+		this.singleFlight = singleFlight;
+		this.userCache = userCache;
 	}
 
 	@Override
@@ -44,26 +64,115 @@ public class PasswordLoginImp implements PasswordLogin {
 		try {
 			return tryToGetAuthToken(loginId, password);
 		} catch (Exception e) {
-			throw LoginException.withMessage(ERROR_MESSAGE);
+			throw createLoginUnavailableOrLoginException(e);
 		}
 	}
 
 	private AuthToken tryToGetAuthToken(String loginId, String password) {
-		User user = userStorageView.getUserByLoginId(loginId);
-		ifUserNotActiveThrowException(user);
-		ifPasswordDoNotMatchThrowException(password, user);
+		String key = singleFlight.createKeyUsingTypeLoginIdAndSecret(LOGIN_TYPE, loginId, password);
+		if (singleFlight.sharesAuthToken()) {
+			return singleFlight.runOnceForKey(key, () -> CompletableFuture
+					.completedFuture(getVerifiedUserAndNewAuthToken(loginId, password))).join();
+		}
+		User user = singleFlight.runOnceForKey(key,
+				() -> CompletableFuture.completedFuture(getVerifiedUser(loginId, password))).join();
+		return getNewAuthTokenFromGatekeeper(user.id);
+	}
+
+	private AuthToken getVerifiedUserAndNewAuthToken(String loginId, String password) {
+		User user = getVerifiedUser(loginId, password);
 		return getNewAuthTokenFromGatekeeper(user.id);
 	}
 
+	private User getVerifiedUser(String loginId, String password) {
+		UserStorageView userStorageView = UserStorageProvider.getStorageView();
+		User user = getActiveUser(userStorageView, loginId);
+		ifPasswordDoNotMatchThrowException(userStorageView, password, user);
+		return user;
+	}
+
+	private User getActiveUser(UserStorageView userStorageView, String loginId) {
+		User user = userCache.getOrLoad(loginId, userStorageView::getUserByLoginId);
+		ifUserNotActiveThrowException(user);
+		return user;
+	}
+
 	private void ifUserNotActiveThrowException(User user) {
 		if (!user.active) {
 			throw LoginException.withMessage(ERROR_MESSAGE);
 		}
 	}
 
-	private void ifPasswordDoNotMatchThrowException(String password, User user) {
+	@Override
+	public CompletionStage<AuthToken> getAuthTokenAsync(String loginId, String password) {
+		String key = singleFlight.createKeyUsingTypeLoginIdAndSecret(LOGIN_TYPE, loginId, password);
+		return startAuthTokenUsingSingleFlightAsync(key, loginId, password)
+				.handle(this::returnAuthTokenOrThrowLoginError);
+	}
+
+	private CompletableFuture<AuthToken> startAuthTokenUsingSingleFlightAsync(String key,
+			String loginId, String password) {
+		try {
+			return getAuthTokenUsingSingleFlightAsync(key, loginId, password);
+		} catch (RejectedExecutionException error) {
+			return CompletableFuture.failedFuture(error);
+		}
+	}
+
+	private CompletableFuture<AuthToken> getAuthTokenUsingSingleFlightAsync(String key,
+			String loginId, String password) {
+		if (singleFlight.sharesAuthToken()) {
+			return singleFlight.runOnceForKey(key, () -> getVerifiedUserAsync(loginId, password)
+					.thenApplyAsync(user -> getNewAuthTokenFromGatekeeper(user.id), loginExecutor));
+		}
+		return singleFlight.runOnceForKey(key, () -> getVerifiedUserAsync(loginId, password))
+				.thenApplyAsync(user -> getNewAuthTokenFromGatekeeper(user.id), loginExecutor);
+	}
+
+	private CompletableFuture<User> getVerifiedUserAsync(String loginId, String password) {
+		return CompletableFuture.supplyAsync(UserStorageProvider::getStorageView, loginExecutor)
+				.thenCompose(userStorageView -> getActiveUserAndCheckPasswordAsync(userStorageView,
+						loginId, password));
+	}
+
+	private CompletableFuture<User> getActiveUserAndCheckPasswordAsync(
+			UserStorageView userStorageView, String loginId, String password) {
+		User user = getActiveUser(userStorageView, loginId);
+		String secret = userStorageView.getSystemSecretById(user.passwordId.get());
+		return hashingExecutor.matchesAsync(textHasher, password, secret)
+				.thenApply(matches -> returnUserIfMatchesOrThrowException(matches, user));
+	}
+
+	private User returnUserIfMatchesOrThrowException(boolean matches, User user) {
+		if (!matches) {
+			throw LoginException.withMessage(ERROR_MESSAGE);
+		}
+		return user;
+	}
+
+	private AuthToken returnAuthTokenOrThrowLoginError(AuthToken authToken, Throwable error) {
+		if (error == null) {
+			return authToken;
+		}
+		throw createLoginUnavailableOrLoginException(error);
+	}
+
+	private RuntimeException createLoginUnavailableOrLoginException(Throwable error) {
+		Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+		if (cause instanceof LoginUnavailableException loginUnavailableException) {
+			return loginUnavailableException;
+		}
+		if (cause instanceof RejectedExecutionException rejectedExecutionException) {
+			return LoginUnavailableException.withMessageAndException(SATURATED_MESSAGE,
+					rejectedExecutionException);
+		}
+		return LoginException.withMessage(ERROR_MESSAGE);
+	}
+
+	private void ifPasswordDoNotMatchThrowException(UserStorageView userStorageView,
+			String password, User user) {
 		String secret = userStorageView.getSystemSecretById(user.passwordId.get());
-		if (!textHasher.matches(password, secret)) {
+		if (!hashingExecutor.matches(textHasher, password, secret)) {
 			throw LoginException.withMessage(ERROR_MESSAGE);
 		}
 	}
@@ -84,4 +193,20 @@ public class PasswordLoginImp implements PasswordLogin {
 	public TextHasher onlyForTestGetTextHasher() {
 		return textHasher;
 	}
+
+	public HashingExecutor onlyForTestGetHashingExecutor() {
+		return hashingExecutor;
+	}
+
+	public Executor onlyForTestGetLoginExecutor() {
+		return loginExecutor;
+	}
+
+	public SingleFlight onlyForTestGetSingleFlight() {
+		return singleFlight;
+	}
+
+	public Cache<User> onlyForTestGetUserCache() {
+		return userCache;
+	}
 }
@@ -0,0 +1,105 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.cache;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+/**
+ * Cache is a bounded read-through cache where entries expire after a time to live. Cache is
+ * threadsafe and intended to be shared between logins.
+ * 
+ * @param <V>
+ *            The type of the cached values
+ */
+public interface Cache<V> {
+
+	/**
+	 * getOrLoad returns the cached value for the key if it exists and has not expired, otherwise
+	 * the value is loaded using the loader and stored in the cache. Exceptions thrown by the loader
+	 * are passed on to the caller and nothing is stored.
+	 * 
+	 * @param key
+	 *            A String with the key of the value
+	 * @param loader
+	 *            A Function loading the value for the key on a miss
+	 * @return The cached or loaded value
+	 */
+	V getOrLoad(String key, Function<String, V> loader);
+
+	/**
+	 * getAllOrLoad returns the values for all the keys, where values not found in the cache are
+	 * loaded in one call to the loader and stored in the cache. Hits and misses are counted per
+	 * key.
+	 * 
+	 * @param keys
+	 *            A Set with the keys of the values
+	 * @param loader
+	 *            A Function loading the values for all keys missing in the cache, keys the loader
+	 *            can not find are left out of the returned map
+	 * @return A Map with the cached and loaded values for the keys
+	 */
+	Map<String, V> getAllOrLoad(Set<String> keys, Function<Set<String>, Map<String, V>> loader);
+
+	/**
+	 * getIfPresent returns the cached value for the key if it exists and has not expired, otherwise
+	 * null. Nothing is loaded on a miss.
+	 * 
+	 * @param key
+	 *            A String with the key of the value
+	 * @return The cached value or null
+	 */
+	V getIfPresent(String key);
+
+	/**
+	 * put stores the value for the key, replacing any earlier value. The time to live of the entry
+	 * starts over.
+	 * 
+	 * @param key
+	 *            A String with the key of the value
+	 * @param value
+	 *            The value to store
+	 */
+	void put(String key, V value);
+
+	/**
+	 * invalidate removes the value for the key, so that the next call to
+	 * {@link #getOrLoad(String, Function)} loads it again. A load in progress when invalidate is
+	 * called is not stored.
+	 * 
+	 * @param key
+	 *            A String with the key of the value to remove
+	 */
+	void invalidate(String key);
+
+	/**
+	 * getHits returns the number of lookups answered from the cache.
+	 * 
+	 * @return A long with the number of hits
+	 */
+	long getHits();
+
+	/**
+	 * getMisses returns the number of lookups not answered from the cache.
+	 * 
+	 * @return A long with the number of misses
+	 */
+	long getMisses();
+}
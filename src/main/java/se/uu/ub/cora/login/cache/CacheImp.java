@@ -0,0 +1,192 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.cache;
+
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+public final class CacheImp<V> implements Cache<V> {
+	private static final float LOAD_FACTOR = 0.75f;
+	private Map<String, Entry<V>> entries;
+	private int maxSize;
+	private long timeToLiveInNanoseconds;
+	private long invalidations = 0;
+	private AtomicLong hits = new AtomicLong();
+	private AtomicLong misses = new AtomicLong();
+	private LongSupplier clock = System::nanoTime;
+
+	public static <V> CacheImp<V> usingMaxSizeAndTimeToLive(int maxSize,
+			long timeToLiveInMilliseconds) {
+		return new CacheImp<>(maxSize, timeToLiveInMilliseconds);
+	}
+
+	private CacheImp(int maxSize, long timeToLiveInMilliseconds) {
+		this.maxSize = maxSize;
+		timeToLiveInNanoseconds = TimeUnit.MILLISECONDS.toNanos(timeToLiveInMilliseconds);
+		entries = createLeastRecentlyUsedMap();
+	}
+
+	private LinkedHashMap<String, Entry<V>> createLeastRecentlyUsedMap() {
+		return new LinkedHashMap<>(16, LOAD_FACTOR, true) {
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<String, Entry<V>> eldest) {
+				return size() > maxSize;
+			}
+		};
+	}
+
+	@Override
+	public V getOrLoad(String key, Function<String, V> loader) {
+		Entry<V> entry = getEntryIfNotExpired(key);
+		if (entry != null) {
+			hits.incrementAndGet();
+			return entry.value();
+		}
+		misses.incrementAndGet();
+		return loadAndPossiblyStore(key, loader);
+	}
+
+	private synchronized Entry<V> getEntryIfNotExpired(String key) {
+		Entry<V> entry = entries.get(key);
+		if (entry != null && isExpired(entry)) {
+			entries.remove(key);
+			return null;
+		}
+		return entry;
+	}
+
+	private boolean isExpired(Entry<V> entry) {
+		return clock.getAsLong() - entry.storedAt() >= timeToLiveInNanoseconds;
+	}
+
+	private V loadAndPossiblyStore(String key, Function<String, V> loader) {
+		long invalidationsBeforeLoad = getInvalidations();
+		V value = loader.apply(key);
+		storeIfNotInvalidatedDuringLoad(key, value, invalidationsBeforeLoad);
+		return value;
+	}
+
+	@Override
+	public Map<String, V> getAllOrLoad(Set<String> keys,
+			Function<Set<String>, Map<String, V>> loader) {
+		Map<String, V> values = new HashMap<>();
+		Set<String> missingKeys = new LinkedHashSet<>();
+		for (String key : keys) {
+			addCachedValueOrMissingKey(key, values, missingKeys);
+		}
+		hits.addAndGet(values.size());
+		misses.addAndGet(missingKeys.size());
+		if (!missingKeys.isEmpty()) {
+			values.putAll(loadAllAndPossiblyStore(missingKeys, loader));
+		}
+		return values;
+	}
+
+	private void addCachedValueOrMissingKey(String key, Map<String, V> values,
+			Set<String> missingKeys) {
+		Entry<V> entry = getEntryIfNotExpired(key);
+		if (entry != null) {
+			values.put(key, entry.value());
+		} else {
+			missingKeys.add(key);
+		}
+	}
+
+	private Map<String, V> loadAllAndPossiblyStore(Set<String> keys,
+			Function<Set<String>, Map<String, V>> loader) {
+		long invalidationsBeforeLoad = getInvalidations();
+		Map<String, V> loadedValues = loader.apply(keys);
+		for (Map.Entry<String, V> loadedValue : loadedValues.entrySet()) {
+			storeIfNotInvalidatedDuringLoad(loadedValue.getKey(), loadedValue.getValue(),
+					invalidationsBeforeLoad);
+		}
+		return loadedValues;
+	}
+
+	private synchronized long getInvalidations() {
+		return invalidations;
+	}
+
+	private synchronized void storeIfNotInvalidatedDuringLoad(String key, V value,
+			long invalidationsBeforeLoad) {
+		if (value != null && invalidations == invalidationsBeforeLoad) {
+			entries.put(key, new Entry<>(value, clock.getAsLong()));
+		}
+	}
+
+	@Override
+	public V getIfPresent(String key) {
+		Entry<V> entry = getEntryIfNotExpired(key);
+		if (entry != null) {
+			hits.incrementAndGet();
+			return entry.value();
+		}
+		misses.incrementAndGet();
+		return null;
+	}
+
+	@Override
+	public synchronized void put(String key, V value) {
+		entries.put(key, new Entry<>(value, clock.getAsLong()));
+	}
+
+	@Override
+	public synchronized void invalidate(String key) {
+		invalidations++;
+		entries.remove(key);
+	}
+
+	@Override
+	public long getHits() {
+		return hits.get();
+	}
+
+	@Override
+	public long getMisses() {
+		return misses.get();
+	}
+
+	public int onlyForTestGetMaxSize() {
+		return maxSize;
+	}
+
+	public long onlyForTestGetTimeToLiveInMilliseconds() {
+		return TimeUnit.NANOSECONDS.toMillis(timeToLiveInNanoseconds);
+	}
+
+	public synchronized int onlyForTestGetSize() {
+		return entries.size();
+	}
+
+	public void onlyForTestSetClock(LongSupplier clock) {
+		this.clock = clock;
+	}
+
+	private record Entry<V>(V value, long storedAt) {
+	}
+}
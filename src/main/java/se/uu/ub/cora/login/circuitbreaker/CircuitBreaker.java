@@ -0,0 +1,65 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.circuitbreaker;
+
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+
+/**
+ * CircuitBreaker keeps track of how calls to a remote service go, and stops further calls for a
+ * while when too many of them fail, so that callers fail fast instead of waiting for a service
+ * that is not answering.
+ * <p>
+ * Every call that is allowed by {@link #acquirePermission()} must be followed by exactly one call
+ * to {@link #recordSuccess(long)}, {@link #recordFailure(long)} or
+ * {@link #releasePermission(long)}, using the permission returned by acquirePermission. Outcomes
+ * of calls permitted before the circuit last changed state are ignored, so that only the probe
+ * decides if an open circuit closes again.
+ */
+public interface CircuitBreaker {
+
+	/**
+	 * acquirePermission returns a permission if a call to the remote service may be made. When
+	 * the circuit is open, one call at a time is let through as a probe once the open time has
+	 * passed.
+	 * 
+	 * @return A permission to pass on when the outcome of the call is recorded
+	 * @throws LoginUnavailableException
+	 *             if the circuit is open and no call may be made right now
+	 */
+	long acquirePermission();
+
+	/**
+	 * recordSuccess records that a permitted call got an answer from the remote service. A
+	 * successful probe closes the circuit.
+	 */
+	void recordSuccess(long permission);
+
+	/**
+	 * recordFailure records that a permitted call failed or did not get an answer in time. A
+	 * failed probe keeps the circuit open for another open time.
+	 */
+	void recordFailure(long permission);
+
+	/**
+	 * releasePermission records that a permitted call was never sent to the remote service, so
+	 * that it says nothing about how the service is doing. A released probe lets the next call
+	 * be a probe instead.
+	 */
+	void releasePermission(long permission);
+}
@@ -0,0 +1,178 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.circuitbreaker;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+
+/**
+ * CircuitBreakerImp opens the circuit when at least failureRatePercent of the last windowSize
+ * calls have failed, as soon as minimumNumberOfCalls calls have been recorded. While open, calls
+ * are refused for openTimeInMilliseconds, after which a single probe call is let through. A
+ * successful probe closes the circuit and starts a new window, a failed probe opens it again.
+ * <p>
+ * Each change of state starts a new generation, and permissions are the generation they were
+ * given in. The probe gets a generation of its own, so outcomes of slow calls permitted before
+ * the circuit opened can neither close it nor keep it open longer.
+ */
+public class CircuitBreakerImp implements CircuitBreaker {
+	private int windowSize;
+	private int minimumNumberOfCalls;
+	private int failureRatePercent;
+	private long openTimeInMilliseconds;
+	private boolean[] failedCalls;
+	private int nextPosition = 0;
+	private int recordedCalls = 0;
+	private int failures = 0;
+	private boolean open = false;
+	private boolean probeInFlight = false;
+	private long generation = 0;
+	private long openUntil;
+	private LongSupplier clock = System::nanoTime;
+
+	public static CircuitBreakerImp usingWindowSizeMinimumCallsFailureRateAndOpenTime(
+			int windowSize, int minimumNumberOfCalls, int failureRatePercent,
+			long openTimeInMilliseconds) {
+		return new CircuitBreakerImp(windowSize, minimumNumberOfCalls, failureRatePercent,
+				openTimeInMilliseconds);
+	}
+
+	private CircuitBreakerImp(int windowSize, int minimumNumberOfCalls, int failureRatePercent,
+			long openTimeInMilliseconds) {
+		this.windowSize = windowSize;
+		this.minimumNumberOfCalls = minimumNumberOfCalls;
+		this.failureRatePercent = failureRatePercent;
+		this.openTimeInMilliseconds = openTimeInMilliseconds;
+		failedCalls = new boolean[windowSize];
+	}
+
+	@Override
+	public synchronized long acquirePermission() {
+		if (!open) {
+			return generation;
+		}
+		if (probeInFlight || clock.getAsLong() - openUntil < 0) {
+			throw LoginUnavailableException.withMessage("Circuit to gatekeeper is open.");
+		}
+		probeInFlight = true;
+		generation++;
+		return generation;
+	}
+
+	@Override
+	public synchronized void recordSuccess(long permission) {
+		if (permission != generation) {
+			return;
+		}
+		if (open) {
+			close();
+			return;
+		}
+		recordCall(false);
+	}
+
+	private void close() {
+		generation++;
+		open = false;
+		probeInFlight = false;
+		nextPosition = 0;
+		recordedCalls = 0;
+		failures = 0;
+		failedCalls = new boolean[windowSize];
+	}
+
+	@Override
+	public synchronized void recordFailure(long permission) {
+		if (permission != generation) {
+			return;
+		}
+		if (open) {
+			openForOpenTime();
+			return;
+		}
+		recordCall(true);
+		if (failureRateIsReached()) {
+			openForOpenTime();
+		}
+	}
+
+	@Override
+	public synchronized void releasePermission(long permission) {
+		if (open && permission == generation) {
+			probeInFlight = false;
+		}
+	}
+
+	private void recordCall(boolean failed) {
+		if (recordedCalls == windowSize) {
+			forgetOldestCall();
+		} else {
+			recordedCalls++;
+		}
+		failedCalls[nextPosition] = failed;
+		if (failed) {
+			failures++;
+		}
+		nextPosition = (nextPosition + 1) % windowSize;
+	}
+
+	private void forgetOldestCall() {
+		if (failedCalls[nextPosition]) {
+			failures--;
+		}
+	}
+
+	private boolean failureRateIsReached() {
+		return recordedCalls >= minimumNumberOfCalls
+				&& failures * 100 >= failureRatePercent * recordedCalls;
+	}
+
+	private void openForOpenTime() {
+		generation++;
+		open = true;
+		probeInFlight = false;
+		openUntil = clock.getAsLong() + TimeUnit.MILLISECONDS.toNanos(openTimeInMilliseconds);
+	}
+
+	public int onlyForTestGetWindowSize() {
+		return windowSize;
+	}
+
+	public int onlyForTestGetMinimumNumberOfCalls() {
+		return minimumNumberOfCalls;
+	}
+
+	public int onlyForTestGetFailureRatePercent() {
+		return failureRatePercent;
+	}
+
+	public long onlyForTestGetOpenTimeInMilliseconds() {
+		return openTimeInMilliseconds;
+	}
+
+	public synchronized boolean onlyForTestIsOpen() {
+		return open;
+	}
+
+	public void onlyForTestSetClock(LongSupplier clock) {
+		this.clock = clock;
+	}
+}
@@ -0,0 +1,166 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.circuitbreaker;
+
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
+import se.uu.ub.cora.gatekeepertokenprovider.UserInfo;
+import se.uu.ub.cora.gatekeepertokenprovider.authentication.AuthenticationException;
+import se.uu.ub.cora.login.http.RequestFailedException;
+import se.uu.ub.cora.login.http.RequestRejectedException;
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+
+/**
+ * CircuitBreakingGatekeeperTokenProvider decorates a GatekeeperTokenProvider so that no call to
+ * gatekeeper can hold the calling thread for longer than callTimeoutInMilliseconds, and so that
+ * calls are refused directly while the {@link CircuitBreaker} is open.
+ * <p>
+ * Each call runs on its own virtual thread while the caller waits for it with the deadline. A call
+ * that times out, or fails in any other way than an {@link AuthenticationException}, such as a
+ * {@link RequestFailedException} from the http layer, is recorded as a failure and thrown as a
+ * {@link LoginUnavailableException}. An AuthenticationException
+ * means that gatekeeper answered and refused the request, so it is recorded as a success and
+ * thrown unchanged. A call that is never sent because this server is saturated, signalled by a
+ * {@link RequestRejectedException}, is not recorded at all and is thrown as a
+ * LoginUnavailableException.
+ * <p>
+ * A call that times out is cancelled, but cancelling does not end a request that is blocked on
+ * the network. The wrapped provider must therefore end its own requests, which is why
+ * LoginModuleInitializer gives the pooled HttpClient a request timeout no longer than the call
+ * timeout.
+ */
+public class CircuitBreakingGatekeeperTokenProvider implements GatekeeperTokenProvider {
+	private GatekeeperTokenProvider gatekeeperTokenProvider;
+	private CircuitBreaker circuitBreaker;
+	private long callTimeoutInMilliseconds;
+	private ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+
+	public static CircuitBreakingGatekeeperTokenProvider usingProviderCircuitBreakerAndCallTimeout(
+			GatekeeperTokenProvider gatekeeperTokenProvider, CircuitBreaker circuitBreaker,
+			long callTimeoutInMilliseconds) {
+		return new CircuitBreakingGatekeeperTokenProvider(gatekeeperTokenProvider, circuitBreaker,
+				callTimeoutInMilliseconds);
+	}
+
+	private CircuitBreakingGatekeeperTokenProvider(GatekeeperTokenProvider gatekeeperTokenProvider,
+			CircuitBreaker circuitBreaker, long callTimeoutInMilliseconds) {
+		this.gatekeeperTokenProvider = gatekeeperTokenProvider;
+		this.circuitBreaker = circuitBreaker;
+		this.callTimeoutInMilliseconds = callTimeoutInMilliseconds;
+	}
+
+	@Override
+	public AuthToken getAuthTokenForUserInfo(UserInfo userInfo) {
+		return callGatekeeper(() -> gatekeeperTokenProvider.getAuthTokenForUserInfo(userInfo));
+	}
+
+	@Override
+	public void removeAuthToken(String tokenId, String token) {
+		callGatekeeper(() -> {
+			gatekeeperTokenProvider.removeAuthToken(tokenId, token);
+			return null;
+		});
+	}
+
+	@Override
+	public AuthToken renewAuthToken(String tokenId, String token) {
+		return callGatekeeper(() -> gatekeeperTokenProvider.renewAuthToken(tokenId, token));
+	}
+
+	private <T> T callGatekeeper(Callable<T> call) {
+		long permission = circuitBreaker.acquirePermission();
+		try {
+			T result = callWithinDeadline(call);
+			circuitBreaker.recordSuccess(permission);
+			return result;
+		} catch (AuthenticationException e) {
+			circuitBreaker.recordSuccess(permission);
+			throw e;
+		} catch (RequestRejectedException e) {
+			circuitBreaker.releasePermission(permission);
+			throw LoginUnavailableException.withMessageAndException(e.getMessage(), e);
+		} catch (RuntimeException e) {
+			circuitBreaker.recordFailure(permission);
+			throw e;
+		}
+	}
+
+	private <T> T callWithinDeadline(Callable<T> call) {
+		Future<T> result = submitOrThrowIfRejected(call);
+		try {
+			return result.get(callTimeoutInMilliseconds, TimeUnit.MILLISECONDS);
+		} catch (TimeoutException e) {
+			result.cancel(true);
+			throw LoginUnavailableException.withMessageAndException(
+					"Gatekeeper did not answer within " + callTimeoutInMilliseconds + " ms.", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			result.cancel(true);
+			throw LoginUnavailableException
+					.withMessageAndException("Call to gatekeeper was interrupted.", e);
+		} catch (ExecutionException e) {
+			throw unwrapExecutionException(e);
+		}
+	}
+
+	private <T> Future<T> submitOrThrowIfRejected(Callable<T> call) {
+		try {
+			return executor.submit(call);
+		} catch (RejectedExecutionException e) {
+			throw RequestRejectedException.withMessageAndException("Call to gatekeeper rejected.",
+					e);
+		}
+	}
+
+	private RuntimeException unwrapExecutionException(ExecutionException e) {
+		Throwable cause = e.getCause();
+		if (cause instanceof AuthenticationException || cause instanceof RequestRejectedException
+				|| cause instanceof LoginUnavailableException) {
+			return (RuntimeException) cause;
+		}
+		Exception failure = cause instanceof Exception exception ? exception : e;
+		return LoginUnavailableException.withMessageAndException("Call to gatekeeper failed.",
+				failure);
+	}
+
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	public GatekeeperTokenProvider onlyForTestGetGatekeeperTokenProvider() {
+		return gatekeeperTokenProvider;
+	}
+
+	public CircuitBreaker onlyForTestGetCircuitBreaker() {
+		return circuitBreaker;
+	}
+
+	public long onlyForTestGetCallTimeoutInMilliseconds() {
+		return callTimeoutInMilliseconds;
+	}
+}
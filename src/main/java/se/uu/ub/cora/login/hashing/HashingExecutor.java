@@ -0,0 +1,140 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.hashing;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+import se.uu.ub.cora.password.texthasher.TextHasher;
+
+public interface HashingExecutor {
+	int NO_MATCH = -1;
+
+	/**
+	 * matches checks if the plainText matches the hashedText using the provided textHasher. The
+	 * check is run on a bounded pool of workers separate from the calling thread, and the calling
+	 * thread waits for the result. If the textHasher is a {@link KeyedDigestTextHasher} and the
+	 * hashedText is a keyed digest, the check takes microseconds and is run directly on the calling
+	 * thread instead.
+	 * 
+	 * @throws LoginUnavailableException
+	 *             if the pool is saturated, or if no result is available within the configured
+	 *             maximum wait.
+	 * 
+	 * @param textHasher
+	 *            A TextHasher to use for the check
+	 * @param plainText
+	 *            A String with the plain text to check
+	 * @param hashedText
+	 *            A String with the stored hashed text to check against
+	 * @return A boolean, true if the plainText matches the hashedText
+	 */
+	boolean matches(TextHasher textHasher, String plainText, String hashedText);
+
+	/**
+	 * matchesAny checks if the plainText matches any of the hashedTexts. Depending on how the
+	 * HashingExecutor is set up, the checks are either done one at a time in the order of the
+	 * hashedTexts, or at most four at a time in parallel on the pool of workers, so that one login
+	 * can not fill the shared queue. In both cases no more checks are started as soon as one check
+	 * matches, checks already started are left to finish. Keyed digests are checked without the
+	 * pool, as in {@link #matches(TextHasher, String, String)}.
+	 * <p>
+	 * Each hashedText is read from hashedTexts just before it is checked, so hashedTexts can be a
+	 * list that loads its elements on demand. The configured maximum wait applies to all checks
+	 * together, not to each check.
+	 * 
+	 * @throws LoginUnavailableException
+	 *             if the pool is saturated, or if no result is available within the configured
+	 *             maximum wait.
+	 * 
+	 * @param textHasher
+	 *            A TextHasher to use for the checks
+	 * @param plainText
+	 *            A String with the plain text to check
+	 * @param hashedTexts
+	 *            A List with the stored hashed texts to check against
+	 * @return A boolean, true if the plainText matches at least one of the hashedTexts
+	 */
+	boolean matchesAny(TextHasher textHasher, String plainText, List<String> hashedTexts);
+
+	/**
+	 * findIndexOfMatch does the same checks as {@link #matchesAny(TextHasher, String, List)} but
+	 * returns the index of the hashedText that matched, so that the caller can tell which one it
+	 * was. If checks are done in parallel and more than one hashedText matches, the index of the
+	 * check that finished first is returned.
+	 * 
+	 * @throws LoginUnavailableException
+	 *             if the pool is saturated, or if no result is available within the configured
+	 *             maximum wait.
+	 * 
+	 * @param textHasher
+	 *            A TextHasher to use for the checks
+	 * @param plainText
+	 *            A String with the plain text to check
+	 * @param hashedTexts
+	 *            A List with the stored hashed texts to check against
+	 * @return An int with the index in hashedTexts of the matching hashedText, or
+	 *         {@link #NO_MATCH} if none of them matches
+	 */
+	int findIndexOfMatch(TextHasher textHasher, String plainText, List<String> hashedTexts);
+
+	/**
+	 * matchesAsync does the same check as {@link #matches(TextHasher, String, String)} but returns
+	 * at once, without waiting for the check to be done.
+	 * 
+	 * @param textHasher
+	 *            A TextHasher to use for the check
+	 * @param plainText
+	 *            A String with the plain text to check
+	 * @param hashedText
+	 *            A String with the stored hashed text to check against
+	 * @return A CompletableFuture that completes with true if the plainText matches the
+	 *         hashedText. It completes exceptionally with a {@link LoginUnavailableException} if
+	 *         the pool is saturated, or if no result is available within the configured maximum
+	 *         wait.
+	 */
+	CompletableFuture<Boolean> matchesAsync(TextHasher textHasher, String plainText,
+			String hashedText);
+
+	/**
+	 * findIndexOfMatchAsync does the same checks as
+	 * {@link #findIndexOfMatch(TextHasher, String, List)} but returns at once, without waiting for
+	 * the checks to be done. No thread waits for a check to finish, the next check is started when
+	 * the previous one is done.
+	 * 
+	 * @param textHasher
+	 *            A TextHasher to use for the checks
+	 * @param plainText
+	 *            A String with the plain text to check
+	 * @param hashedTexts
+	 *            A List with the stored hashed texts to check against
+	 * @return A CompletableFuture that completes with the index in hashedTexts of the matching
+	 *         hashedText, or {@link #NO_MATCH} if none of them matches. It completes exceptionally
+	 *         with a {@link LoginUnavailableException} if the pool is saturated, or if no result
+	 *         is available within the configured maximum wait.
+	 */
+	CompletableFuture<Integer> findIndexOfMatchAsync(TextHasher textHasher, String plainText,
+			List<String> hashedTexts);
+
+	/**
+	 * shutdown stops the pool of workers, no new checks are accepted after this.
+	 */
+	void shutdown();
+}
@@ -0,0 +1,277 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.hashing;
+
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import se.uu.ub.cora.login.rest.LoginException;
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+import se.uu.ub.cora.password.texthasher.TextHasher;
+
+public final class HashingExecutorImp implements HashingExecutor {
+	private static final String THREAD_NAME_PREFIX = "cora-login-hashing-";
+	private static final int MAX_PARALLEL_CHECKS_PER_LOGIN = 4;
+	private ThreadPoolExecutor executor;
+	private long maxWaitInMilliseconds;
+	private boolean parallelMatching;
+
+	public static HashingExecutorImp usingPoolSizeQueueSizeAndMaxWait(int poolSize, int queueSize,
+			long maxWaitInMilliseconds) {
+		return new HashingExecutorImp(poolSize, queueSize, maxWaitInMilliseconds, false);
+	}
+
+	public static HashingExecutorImp usingPoolSizeQueueSizeMaxWaitAndParallelMatching(
+			int poolSize, int queueSize, long maxWaitInMilliseconds, boolean parallelMatching) {
+		return new HashingExecutorImp(poolSize, queueSize, maxWaitInMilliseconds,
+				parallelMatching);
+	}
+
+	private HashingExecutorImp(int poolSize, int queueSize, long maxWaitInMilliseconds,
+			boolean parallelMatching) {
+		this.maxWaitInMilliseconds = maxWaitInMilliseconds;
+		this.parallelMatching = parallelMatching;
+		executor = new ThreadPoolExecutor(poolSize, poolSize, 0L, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), createThreadFactory(),
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	private ThreadFactory createThreadFactory() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, THREAD_NAME_PREFIX + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	@Override
+	public boolean matches(TextHasher textHasher, String plainText, String hashedText) {
+		return matchesBeforeDeadline(textHasher, plainText, hashedText, createDeadline());
+	}
+
+	private long createDeadline() {
+		return System.nanoTime() + TimeUnit.MILLISECONDS.toNanos(maxWaitInMilliseconds);
+	}
+
+	private boolean matchesBeforeDeadline(TextHasher textHasher, String plainText,
+			String hashedText, long deadline) {
+		if (isKeyedDigest(textHasher, hashedText)) {
+			return textHasher.matches(plainText, hashedText);
+		}
+		Future<Boolean> result = submitOrThrowIfSaturated(
+				() -> textHasher.matches(plainText, hashedText));
+		return waitForResult(result, deadline);
+	}
+
+	private boolean isKeyedDigest(TextHasher textHasher, String hashedText) {
+		return textHasher instanceof KeyedDigestTextHasher keyedDigestTextHasher
+				&& keyedDigestTextHasher.isKeyedDigest(hashedText);
+	}
+
+	private Future<Boolean> submitOrThrowIfSaturated(Callable<Boolean> task) {
+		try {
+			return executor.submit(task);
+		} catch (RejectedExecutionException e) {
+			throw LoginUnavailableException.withMessageAndException("Hashing pool is saturated.",
+					e);
+		}
+	}
+
+	@Override
+	public boolean matchesAny(TextHasher textHasher, String plainText, List<String> hashedTexts) {
+		return findIndexOfMatch(textHasher, plainText, hashedTexts) != NO_MATCH;
+	}
+
+	@Override
+	public int findIndexOfMatch(TextHasher textHasher, String plainText, List<String> hashedTexts) {
+		if (parallelMatching && hashedTexts.size() > 1) {
+			return findIndexOfMatchInParallel(textHasher, plainText, hashedTexts);
+		}
+		return findIndexOfMatchInOrder(textHasher, plainText, hashedTexts);
+	}
+
+	private int findIndexOfMatchInOrder(TextHasher textHasher, String plainText,
+			List<String> hashedTexts) {
+		long deadline = createDeadline();
+		for (int i = 0; i < hashedTexts.size(); i++) {
+			if (matchesBeforeDeadline(textHasher, plainText, hashedTexts.get(i), deadline)) {
+				return i;
+			}
+		}
+		return NO_MATCH;
+	}
+
+	private int findIndexOfMatchInParallel(TextHasher textHasher, String plainText,
+			List<String> hashedTexts) {
+		try {
+			return findIndexOfMatchAsync(textHasher, plainText, hashedTexts).join();
+		} catch (CompletionException e) {
+			throw (RuntimeException) e.getCause();
+		}
+	}
+
+	@Override
+	public CompletableFuture<Boolean> matchesAsync(TextHasher textHasher, String plainText,
+			String hashedText) {
+		if (isKeyedDigest(textHasher, hashedText)) {
+			return CompletableFuture.completedFuture(textHasher.matches(plainText, hashedText));
+		}
+		try {
+			return CompletableFuture
+					.supplyAsync(() -> textHasher.matches(plainText, hashedText), executor)
+					.orTimeout(maxWaitInMilliseconds, TimeUnit.MILLISECONDS)
+					.exceptionally(this::throwTimeoutAsLoginUnavailable);
+		} catch (RejectedExecutionException e) {
+			return CompletableFuture.failedFuture(LoginUnavailableException
+					.withMessageAndException("Hashing pool is saturated.", e));
+		}
+	}
+
+	private <T> T throwTimeoutAsLoginUnavailable(Throwable error) {
+		Throwable cause = error instanceof CompletionException ? error.getCause() : error;
+		if (cause instanceof TimeoutException timeoutException) {
+			throw LoginUnavailableException.withMessageAndException(
+					"Hashing did not finish within " + maxWaitInMilliseconds + " ms.",
+					timeoutException);
+		}
+		if (cause instanceof LoginUnavailableException loginUnavailableException) {
+			throw loginUnavailableException;
+		}
+		throw LoginException.withMessage("Hashing failed.");
+	}
+
+	@Override
+	public CompletableFuture<Integer> findIndexOfMatchAsync(TextHasher textHasher,
+			String plainText, List<String> hashedTexts) {
+		int parallelism = parallelMatching
+				? Math.max(1, Math.min(hashedTexts.size(), MAX_PARALLEL_CHECKS_PER_LOGIN))
+				: 1;
+		MatchSearch search = new MatchSearch(textHasher, plainText, hashedTexts, parallelism);
+		for (int i = 0; i < parallelism; i++) {
+			search.checkNext();
+		}
+		return search.result.orTimeout(maxWaitInMilliseconds, TimeUnit.MILLISECONDS)
+				.exceptionally(this::throwTimeoutAsLoginUnavailable);
+	}
+
+	private boolean waitForResult(Future<Boolean> result, long deadline) {
+		try {
+			return result.get(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+		} catch (TimeoutException e) {
+			result.cancel(true);
+			throw LoginUnavailableException.withMessageAndException(
+					"Hashing did not finish within " + maxWaitInMilliseconds + " ms.", e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			result.cancel(true);
+			throw LoginUnavailableException.withMessageAndException("Hashing was interrupted.", e);
+		} catch (ExecutionException e) {
+			throw LoginException.withMessageAndException("Hashing failed.", e);
+		}
+	}
+
+	@Override
+	public void shutdown() {
+		executor.shutdownNow();
+	}
+
+	/**
+	 * MatchSearch checks hashedTexts a few at a time, starting a new check each time one is done
+	 * without a match, until a check matches, all checks are done or the result is completed in
+	 * some other way.
+	 */
+	private class MatchSearch {
+		private TextHasher textHasher;
+		private String plainText;
+		private List<String> hashedTexts;
+		private AtomicInteger nextIndex = new AtomicInteger();
+		private AtomicInteger activeChecks;
+		private CompletableFuture<Integer> result = new CompletableFuture<>();
+
+		MatchSearch(TextHasher textHasher, String plainText, List<String> hashedTexts,
+				int parallelism) {
+			this.textHasher = textHasher;
+			this.plainText = plainText;
+			this.hashedTexts = hashedTexts;
+			activeChecks = new AtomicInteger(parallelism);
+		}
+
+		void checkNext() {
+			int index = nextIndex.getAndIncrement();
+			if (result.isDone() || index >= hashedTexts.size()) {
+				stopChecking();
+				return;
+			}
+			try {
+				matchesAsync(textHasher, plainText, hashedTexts.get(index))
+						.whenComplete((matches, error) -> handleCheck(index, matches, error));
+			} catch (RuntimeException error) {
+				result.completeExceptionally(error);
+			}
+		}
+
+		private void stopChecking() {
+			if (activeChecks.decrementAndGet() == 0) {
+				result.complete(NO_MATCH);
+			}
+		}
+
+		private void handleCheck(int index, Boolean matches, Throwable error) {
+			if (error != null) {
+				result.completeExceptionally(error);
+			} else if (Boolean.TRUE.equals(matches)) {
+				result.complete(index);
+			} else {
+				checkNext();
+			}
+		}
+	}
+
+	public int onlyForTestGetPoolSize() {
+		return executor.getMaximumPoolSize();
+	}
+
+	public int onlyForTestGetQueueSize() {
+		return executor.getQueue().remainingCapacity() + executor.getQueue().size();
+	}
+
+	public int onlyForTestGetQueuedTasks() {
+		return executor.getQueue().size();
+	}
+
+	public long onlyForTestGetMaxWaitInMilliseconds() {
+		return maxWaitInMilliseconds;
+	}
+
+	public boolean onlyForTestGetParallelMatching() {
+		return parallelMatching;
+	}
+}
@@ -0,0 +1,76 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.hashing;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.MessageDigest;
+import java.util.Base64;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+/**
+ * KeyedDigest creates and checks fast keyed digests (HMAC-SHA256) of high entropy secrets such as
+ * appTokens. Stored keyed digests are recognized by the prefix {@value #PREFIX}, so that they can
+ * be stored side by side with secrets hashed by a slow TextHasher.
+ */
+public final class KeyedDigest {
+	public static final String PREFIX = "{HMAC-SHA256}";
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	private SecretKeySpec key;
+
+	public static KeyedDigest usingKey(byte[] key) {
+		return new KeyedDigest(key);
+	}
+
+	private KeyedDigest(byte[] key) {
+		this.key = new SecretKeySpec(key, HMAC_ALGORITHM);
+	}
+
+	public boolean isKeyedDigest(String storedSecret) {
+		return storedSecret != null && storedSecret.startsWith(PREFIX);
+	}
+
+	public String digest(String plainText) {
+		return PREFIX + Base64.getEncoder().encodeToString(calculateDigest(plainText));
+	}
+
+	private byte[] calculateDigest(String plainText) {
+		Mac mac = createMac();
+		return mac.doFinal(plainText.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Mac createMac() {
+		try {
+			Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(key);
+			return mac;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Could not create keyed digest.", e);
+		}
+	}
+
+	public boolean matches(String plainText, String storedSecret) {
+		byte[] expected = storedSecret.substring(PREFIX.length())
+				.getBytes(StandardCharsets.US_ASCII);
+		byte[] actual = Base64.getEncoder().encode(calculateDigest(plainText));
+		return MessageDigest.isEqual(actual, expected);
+	}
+}
@@ -0,0 +1,71 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.hashing;
+
+import se.uu.ub.cora.password.texthasher.TextHasher;
+
+/**
+ * KeyedDigestTextHasher checks stored secrets that are keyed digests using {@link KeyedDigest},
+ * and all other stored secrets using the wrapped TextHasher. New secrets are hashed as keyed
+ * digests, so it must only be used for high entropy secrets such as appTokens, never for
+ * passwords.
+ */
+public final class KeyedDigestTextHasher implements TextHasher {
+	private TextHasher textHasher;
+	private KeyedDigest keyedDigest;
+
+	public static KeyedDigestTextHasher usingTextHasherAndKeyedDigest(TextHasher textHasher,
+			KeyedDigest keyedDigest) {
+		return new KeyedDigestTextHasher(textHasher, keyedDigest);
+	}
+
+	private KeyedDigestTextHasher(TextHasher textHasher, KeyedDigest keyedDigest) {
+		this.textHasher = textHasher;
+		this.keyedDigest = keyedDigest;
+	}
+
+	@Override
+	public String hashText(String plainText) {
+		return keyedDigest.digest(plainText);
+	}
+
+	@Override
+	public boolean matches(String plainText, String hashedText) {
+		if (keyedDigest.isKeyedDigest(hashedText)) {
+			return keyedDigest.matches(plainText, hashedText);
+		}
+		return textHasher.matches(plainText, hashedText);
+	}
+
+	/**
+	 * isKeyedDigest returns true if the stored secret is checked using the keyed digest. Such
+	 * checks take microseconds, so callers can run them directly instead of on the hashing pool.
+	 */
+	public boolean isKeyedDigest(String hashedText) {
+		return keyedDigest.isKeyedDigest(hashedText);
+	}
+
+	public TextHasher onlyForTestGetTextHasher() {
+		return textHasher;
+	}
+
+	public KeyedDigest onlyForTestGetKeyedDigest() {
+		return keyedDigest;
+	}
+}
@@ -0,0 +1,58 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.hashing;
+
+import se.uu.ub.cora.password.texthasher.TextHasher;
+import se.uu.ub.cora.password.texthasher.TextHasherFactory;
+
+/**
+ * PerThreadTextHasher lets each thread use its own TextHasher, factored by the TextHasherFactory
+ * the first time the thread hashes or checks a text. A login is used by several threads at the
+ * same time, both from shared logins and from parallel matching of app token candidates, and the
+ * TextHasher from the factory is not documented to allow that.
+ * <p>
+ * PerThreadTextHasher is threadsafe.
+ */
+public final class PerThreadTextHasher implements TextHasher {
+	private TextHasherFactory textHasherFactory;
+	private ThreadLocal<TextHasher> textHashers;
+
+	public static PerThreadTextHasher usingTextHasherFactory(TextHasherFactory textHasherFactory) {
+		return new PerThreadTextHasher(textHasherFactory);
+	}
+
+	private PerThreadTextHasher(TextHasherFactory textHasherFactory) {
+		this.textHasherFactory = textHasherFactory;
+		this.textHashers = ThreadLocal.withInitial(textHasherFactory::factor);
+	}
+
+	@Override
+	public String hashText(String plainText) {
+		return textHashers.get().hashText(plainText);
+	}
+
+	@Override
+	public boolean matches(String plainText, String hashedText) {
+		return textHashers.get().matches(plainText, hashedText);
+	}
+
+	public TextHasherFactory onlyForTestGetTextHasherFactory() {
+		return textHasherFactory;
+	}
+}
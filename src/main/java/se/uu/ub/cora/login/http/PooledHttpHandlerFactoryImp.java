@@ -0,0 +1,108 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.http;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Version;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+
+import se.uu.ub.cora.httphandler.HttpHandler;
+import se.uu.ub.cora.httphandler.HttpHandlerFactory;
+import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
+import se.uu.ub.cora.httphandler.HttpMultiPartUploader;
+
+/**
+ * PooledHttpHandlerFactoryImp factors HttpHandlers that all send their requests through one shared
+ * {@link HttpClient}. The client keeps connections alive between requests and prefers HTTP/2, so
+ * calls to gatekeeper reuse already open connections, and concurrent calls are multiplexed over
+ * the same connection, instead of doing a new TCP and TLS handshake for every call.
+ * <p>
+ * The number of requests in flight at the same time is limited by maxConcurrentRequests, which
+ * also limits the number of connections the client opens when the server only talks HTTP/1.1. A
+ * request that would go over the limit fails directly instead of waiting for a connection.
+ * <p>
+ * Multipart uploads are not used for gatekeeper calls, and are factored by a regular
+ * {@link HttpHandlerFactoryImp}.
+ */
+public class PooledHttpHandlerFactoryImp implements HttpHandlerFactory {
+	private HttpClient httpClient;
+	private long requestTimeoutInMilliseconds;
+	private int maxConcurrentRequests;
+	private Semaphore requestPermits;
+	private HttpHandlerFactory multiPartUploaderFactory = new HttpHandlerFactoryImp();
+
+	public static PooledHttpHandlerFactoryImp usingConnectTimeoutRequestTimeoutAndMaxConcurrentRequests(
+			long connectTimeoutInMilliseconds, long requestTimeoutInMilliseconds,
+			int maxConcurrentRequests) {
+		HttpClient httpClient = HttpClient.newBuilder().version(Version.HTTP_2)
+				.connectTimeout(Duration.ofMillis(connectTimeoutInMilliseconds)).build();
+		return new PooledHttpHandlerFactoryImp(httpClient, requestTimeoutInMilliseconds,
+				maxConcurrentRequests);
+	}
+
+	public static PooledHttpHandlerFactoryImp usingHttpClientRequestTimeoutAndMaxConcurrentRequests(
+			HttpClient httpClient, long requestTimeoutInMilliseconds, int maxConcurrentRequests) {
+		return new PooledHttpHandlerFactoryImp(httpClient, requestTimeoutInMilliseconds,
+				maxConcurrentRequests);
+	}
+
+	private PooledHttpHandlerFactoryImp(HttpClient httpClient, long requestTimeoutInMilliseconds,
+			int maxConcurrentRequests) {
+		this.httpClient = httpClient;
+		this.requestTimeoutInMilliseconds = requestTimeoutInMilliseconds;
+		this.maxConcurrentRequests = maxConcurrentRequests;
+		requestPermits = new Semaphore(maxConcurrentRequests);
+	}
+
+	@Override
+	public HttpHandler factor(String url) {
+		return new PooledHttpHandlerImp(httpClient, requestPermits,
+				Duration.ofMillis(requestTimeoutInMilliseconds), url);
+	}
+
+	@Override
+	public HttpMultiPartUploader factorHttpMultiPartUploader(String url) {
+		return multiPartUploaderFactory.factorHttpMultiPartUploader(url);
+	}
+
+	public HttpClient onlyForTestGetHttpClient() {
+		return httpClient;
+	}
+
+	public long onlyForTestGetRequestTimeoutInMilliseconds() {
+		return requestTimeoutInMilliseconds;
+	}
+
+	public int onlyForTestGetMaxConcurrentRequests() {
+		return maxConcurrentRequests;
+	}
+
+	public int onlyForTestGetAvailableRequestPermits() {
+		return requestPermits.availablePermits();
+	}
+
+	public HttpHandlerFactory onlyForTestGetMultiPartUploaderFactory() {
+		return multiPartUploaderFactory;
+	}
+
+	public void onlyForTestSetMultiPartUploaderFactory(HttpHandlerFactory uploaderFactory) {
+		multiPartUploaderFactory = uploaderFactory;
+	}
+}
@@ -0,0 +1,159 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.http;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpRequest.BodyPublisher;
+import java.net.http.HttpRequest.BodyPublishers;
+import java.net.http.HttpResponse;
+import java.net.http.HttpResponse.BodyHandlers;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+import se.uu.ub.cora.httphandler.HttpHandler;
+
+/**
+ * PooledHttpHandlerImp collects the request the same way as other HttpHandlers and sends it
+ * through the shared HttpClient the first time anything is read from the response. Failures to
+ * reach the server are thrown as {@link RequestFailedException}. A request that is not sent
+ * because too many requests are already in flight is thrown as a {@link RequestRejectedException}.
+ * <p>
+ * The HttpClient sets the headers Connection, Content-Length, Host and Upgrade itself and refuses
+ * requests that set them, so they are left out when given as request properties. Expect:
+ * 100-continue is passed on as expectContinue.
+ */
+public class PooledHttpHandlerImp implements HttpHandler {
+	private static final Set<String> HEADERS_SET_BY_HTTP_CLIENT = Set.of("connection",
+			"content-length", "host", "upgrade");
+	private HttpClient httpClient;
+	private Semaphore requestPermits;
+	private String url;
+	private HttpRequest.Builder requestBuilder;
+	private String requestMethod = "GET";
+	private BodyPublisher bodyPublisher = BodyPublishers.noBody();
+	private HttpResponse<byte[]> response;
+
+	PooledHttpHandlerImp(HttpClient httpClient, Semaphore requestPermits, Duration requestTimeout,
+			String url) {
+		this.httpClient = httpClient;
+		this.requestPermits = requestPermits;
+		this.url = url;
+		requestBuilder = HttpRequest.newBuilder(URI.create(url)).timeout(requestTimeout);
+	}
+
+	@Override
+	public void setRequestMethod(String requestMethod) {
+		this.requestMethod = requestMethod;
+	}
+
+	@Override
+	public void setRequestProperty(String key, String value) {
+		String headerName = key.toLowerCase(Locale.ROOT);
+		if ("expect".equals(headerName)) {
+			requestBuilder.expectContinue("100-continue".equalsIgnoreCase(value));
+		} else if (!HEADERS_SET_BY_HTTP_CLIENT.contains(headerName)) {
+			requestBuilder.setHeader(key, value);
+		}
+	}
+
+	@Override
+	public void setBasicAuthorization(String username, String password) {
+		String credentials = username + ":" + password;
+		String encoded = Base64.getEncoder()
+				.encodeToString(credentials.getBytes(StandardCharsets.UTF_8));
+		requestBuilder.setHeader("Authorization", "Basic " + encoded);
+	}
+
+	@Override
+	public void setOutput(String outputString) {
+		bodyPublisher = BodyPublishers.ofString(outputString);
+	}
+
+	@Override
+	public void setStreamOutput(InputStream stream) {
+		bodyPublisher = BodyPublishers.ofInputStream(() -> stream);
+	}
+
+	@Override
+	public int getResponseCode() {
+		return getResponse().statusCode();
+	}
+
+	@Override
+	public String getResponseText() {
+		return new String(getResponse().body(), StandardCharsets.UTF_8);
+	}
+
+	@Override
+	public String getErrorText() {
+		return getResponseText();
+	}
+
+	@Override
+	public String getHeaderField(String name) {
+		return getResponse().headers().firstValue(name).orElse(null);
+	}
+
+	@Override
+	public InputStream getResponseBinary() {
+		return new ByteArrayInputStream(getResponse().body());
+	}
+
+	private HttpResponse<byte[]> getResponse() {
+		if (response == null) {
+			response = sendRequestIfPermitted();
+		}
+		return response;
+	}
+
+	private HttpResponse<byte[]> sendRequestIfPermitted() {
+		if (!requestPermits.tryAcquire()) {
+			throw RequestRejectedException
+					.withMessage("Too many concurrent requests to " + url + ".");
+		}
+		try {
+			return sendRequest();
+		} finally {
+			requestPermits.release();
+		}
+	}
+
+	private HttpResponse<byte[]> sendRequest() {
+		HttpRequest request = requestBuilder.method(requestMethod, bodyPublisher).build();
+		try {
+			return httpClient.send(request, BodyHandlers.ofByteArray());
+		} catch (IOException e) {
+			throw RequestFailedException.withMessageAndException("Request to " + url + " failed.",
+					e);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw RequestFailedException
+					.withMessageAndException("Request to " + url + " was interrupted.", e);
+		}
+	}
+}
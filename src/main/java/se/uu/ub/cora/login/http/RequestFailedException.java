@@ -0,0 +1,46 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.http;
+
+/**
+ * RequestFailedException is thrown when a request that was sent did not get an answer, because
+ * the server could not be reached, the connection broke or the waiting thread was interrupted. It
+ * is left to the caller to decide what the failure means for the login.
+ */
+public class RequestFailedException extends RuntimeException {
+
+	private static final long serialVersionUID = -2718069934518406223L;
+
+	public static RequestFailedException withMessage(String message) {
+		return new RequestFailedException(message);
+	}
+
+	public static RequestFailedException withMessageAndException(String message,
+			Exception exception) {
+		return new RequestFailedException(message, exception);
+	}
+
+	private RequestFailedException(String message) {
+		super(message);
+	}
+
+	private RequestFailedException(String message, Exception exception) {
+		super(message, exception);
+	}
+}
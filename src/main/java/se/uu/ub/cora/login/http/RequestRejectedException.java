@@ -0,0 +1,46 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.http;
+
+/**
+ * RequestRejectedException is thrown when a request to gatekeeper is never sent, because this
+ * server already has as many requests in flight as it allows. It says nothing about how
+ * gatekeeper is doing, so it must not be counted as a gatekeeper failure.
+ */
+public class RequestRejectedException extends RuntimeException {
+
+	private static final long serialVersionUID = 5139264018376925417L;
+
+	public static RequestRejectedException withMessage(String message) {
+		return new RequestRejectedException(message);
+	}
+
+	public static RequestRejectedException withMessageAndException(String message,
+			Exception exception) {
+		return new RequestRejectedException(message, exception);
+	}
+
+	private RequestRejectedException(String message) {
+		super(message);
+	}
+
+	private RequestRejectedException(String message, Exception exception) {
+		super(message, exception);
+	}
+}
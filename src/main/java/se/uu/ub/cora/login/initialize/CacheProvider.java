@@ -0,0 +1,86 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.initialize;
+
+import se.uu.ub.cora.gatekeeper.user.User;
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.login.cache.Cache;
+
+public final class CacheProvider {
+
+	private static Cache<User> userCache;
+	private static Cache<String> systemSecretCache;
+	private static Cache<String> lastMatchedAppTokenIdCache;
+	private static Cache<AuthToken> renewedAuthTokenCache;
+	private static Cache<AuthToken> idempotentLoginCache;
+	private static Cache<String> forgottenAuthTokenCache;
+
+	private CacheProvider() {
+		// not called
+		throw new UnsupportedOperationException();
+	}
+
+	public static void setUserCache(Cache<User> userCache) {
+		CacheProvider.userCache = userCache;
+	}
+
+	public static Cache<User> getUserCache() {
+		return userCache;
+	}
+
+	public static void setSystemSecretCache(Cache<String> systemSecretCache) {
+		CacheProvider.systemSecretCache = systemSecretCache;
+	}
+
+	public static Cache<String> getSystemSecretCache() {
+		return systemSecretCache;
+	}
+
+	public static void setLastMatchedAppTokenIdCache(Cache<String> lastMatchedAppTokenIdCache) {
+		CacheProvider.lastMatchedAppTokenIdCache = lastMatchedAppTokenIdCache;
+	}
+
+	public static Cache<String> getLastMatchedAppTokenIdCache() {
+		return lastMatchedAppTokenIdCache;
+	}
+
+	public static void setRenewedAuthTokenCache(Cache<AuthToken> renewedAuthTokenCache) {
+		CacheProvider.renewedAuthTokenCache = renewedAuthTokenCache;
+	}
+
+	public static Cache<AuthToken> getRenewedAuthTokenCache() {
+		return renewedAuthTokenCache;
+	}
+
+	public static void setIdempotentLoginCache(Cache<AuthToken> idempotentLoginCache) {
+		CacheProvider.idempotentLoginCache = idempotentLoginCache;
+	}
+
+	public static Cache<AuthToken> getIdempotentLoginCache() {
+		return idempotentLoginCache;
+	}
+
+	public static void setForgottenAuthTokenCache(Cache<String> forgottenAuthTokenCache) {
+		CacheProvider.forgottenAuthTokenCache = forgottenAuthTokenCache;
+	}
+
+	public static Cache<String> getForgottenAuthTokenCache() {
+		return forgottenAuthTokenCache;
+	}
+}
@@ -0,0 +1,50 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.initialize;
+
+import java.util.concurrent.ExecutorService;
+
+import se.uu.ub.cora.login.hashing.HashingExecutor;
+
+public final class ExecutorProvider {
+
+	private static HashingExecutor hashingExecutor;
+	private static ExecutorService loginExecutor;
+
+	private ExecutorProvider() {
+		// not called
+		throw new UnsupportedOperationException();
+	}
+
+	public static void setHashingExecutor(HashingExecutor hashingExecutor) {
+		ExecutorProvider.hashingExecutor = hashingExecutor;
+	}
+
+	public static HashingExecutor getHashingExecutor() {
+		return hashingExecutor;
+	}
+
+	public static void setLoginExecutor(ExecutorService loginExecutor) {
+		ExecutorProvider.loginExecutor = loginExecutor;
+	}
+
+	public static ExecutorService getLoginExecutor() {
+		return loginExecutor;
+	}
+}
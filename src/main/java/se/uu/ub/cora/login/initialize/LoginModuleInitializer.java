@@ -1,5 +1,5 @@
 /*
- * Copyright 2019, 2021, 2022 Uppsala University Library
+ * Copyright 2019, 2021, 2022, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -18,27 +18,79 @@
  */
 package se.uu.ub.cora.login.initialize;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Base64;
 import java.util.Enumeration;
 import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ServiceLoader;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
 
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletContextEvent;
 import jakarta.servlet.ServletContextListener;
 import jakarta.servlet.annotation.WebListener;
 import se.uu.ub.cora.gatekeeper.storage.UserStorageProvider;
+import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
 import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProviderImp;
 import se.uu.ub.cora.httphandler.HttpHandlerFactory;
-import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
 import se.uu.ub.cora.initialize.SettingsProvider;
 import se.uu.ub.cora.logger.Logger;
 import se.uu.ub.cora.logger.LoggerProvider;
+import se.uu.ub.cora.login.cache.CacheImp;
+import se.uu.ub.cora.login.circuitbreaker.CircuitBreaker;
+import se.uu.ub.cora.login.circuitbreaker.CircuitBreakerImp;
+import se.uu.ub.cora.login.circuitbreaker.CircuitBreakingGatekeeperTokenProvider;
+import se.uu.ub.cora.login.hashing.HashingExecutorImp;
+import se.uu.ub.cora.login.hashing.KeyedDigest;
+import se.uu.ub.cora.login.http.PooledHttpHandlerFactoryImp;
+import se.uu.ub.cora.login.loadbalancer.LoadBalancingGatekeeperTokenProvider;
+import se.uu.ub.cora.login.rest.LoginDependencyProvider;
+import se.uu.ub.cora.login.singleflight.SingleFlightImp;
 
 @WebListener
 public class LoginModuleInitializer implements ServletContextListener {
+	private static final int DEFAULT_HASHING_QUEUE_SIZE = 64;
+	private static final long DEFAULT_HASHING_MAX_WAIT_IN_MILLISECONDS = 2000;
+	private static final int DEFAULT_LOGIN_POOL_SIZE = 32;
+	private static final int DEFAULT_LOGIN_QUEUE_SIZE = 256;
+	private static final int DEFAULT_USER_CACHE_MAX_SIZE = 10000;
+	private static final long DEFAULT_USER_CACHE_TIME_TO_LIVE_IN_MILLISECONDS = 30000;
+	private static final int DEFAULT_SYSTEM_SECRET_CACHE_MAX_SIZE = 10000;
+	private static final long DEFAULT_SYSTEM_SECRET_CACHE_TIME_TO_LIVE_IN_MILLISECONDS = 30000;
+	private static final int DEFAULT_LAST_MATCHED_APP_TOKEN_MAX_SIZE = 10000;
+	private static final long DEFAULT_LAST_MATCHED_APP_TOKEN_TIME_TO_LIVE_IN_MILLISECONDS = 3600000;
+	private static final int DEFAULT_RENEWAL_GRACE_CACHE_MAX_SIZE = 10000;
+	private static final long DEFAULT_RENEWAL_GRACE_PERIOD_IN_MILLISECONDS = 2000;
+	private static final int DEFAULT_IDEMPOTENT_LOGIN_CACHE_MAX_SIZE = 10000;
+	private static final long DEFAULT_IDEMPOTENT_LOGIN_TIME_TO_LIVE_IN_MILLISECONDS = 60000;
+	private static final long DEFAULT_GATEKEEPER_CONNECT_TIMEOUT_IN_MILLISECONDS = 2000;
+	private static final int DEFAULT_GATEKEEPER_MAX_CONCURRENT_REQUESTS = 64;
+	private static final long DEFAULT_GATEKEEPER_CALL_TIMEOUT_IN_MILLISECONDS = 3000;
+	private static final int DEFAULT_GATEKEEPER_CIRCUIT_WINDOW_SIZE = 20;
+	private static final int DEFAULT_GATEKEEPER_CIRCUIT_MINIMUM_CALLS = 10;
+	private static final int DEFAULT_GATEKEEPER_CIRCUIT_FAILURE_RATE_PERCENT = 50;
+	private static final long DEFAULT_GATEKEEPER_CIRCUIT_OPEN_TIME_IN_MILLISECONDS = 5000;
+	private static final int DEFAULT_GATEKEEPER_EJECTION_CONSECUTIVE_FAILURES = 3;
+	private static final long DEFAULT_GATEKEEPER_EJECTION_TIME_IN_MILLISECONDS = 10000;
+	private static final String EMBEDDED_GATEKEEPER_MODE = "embedded";
+	private static final String VIRTUAL_EXECUTION_MODE = "virtual";
+	private static final String SINGLETON_LIFECYCLE = "singleton";
 	private Logger log = LoggerProvider.getLoggerForClass(LoginModuleInitializer.class);
 	private ServletContext servletContext;
 	private HashMap<String, String> initInfo = new HashMap<>();
 	private String simpleName = LoginModuleInitializer.class.getSimpleName();
+	private Supplier<Iterable<GatekeeperTokenProvider>> embeddedProviders = () -> ServiceLoader
+			.load(GatekeeperTokenProvider.class);
 
 	@Override
 	public void contextInitialized(ServletContextEvent contextEvent) {
@@ -50,7 +102,17 @@ public class LoginModuleInitializer implements ServletContextListener {
 		log.logInfoUsingMessage(simpleName + " starting...");
 		collectInitInformation();
 		createAndSetGatekeeperTokenProvider();
+		createAndSetHashingExecutor();
+		createAndSetLoginExecutor();
+		createAndSetSingleFlight();
+		createAndSetUserCache();
+		createAndSetSystemSecretCache();
+		createAndSetLastMatchedAppTokenIdCache();
+		createAndSetRenewedAuthTokenCache();
+		createAndSetIdempotentLoginCache();
+		possiblyCreateAndSetAppTokenKeyedDigest();
 		makeCallToKnownNeededProvidersToMakeSureTheyStartCorrectlyAtSystemStartup();
+		possiblyUseSharedLogins();
 		log.logInfoUsingMessage(simpleName + " started");
 	}
 
@@ -58,6 +120,14 @@ public class LoginModuleInitializer implements ServletContextListener {
 		UserStorageProvider.getStorageView();
 	}
 
+	private void possiblyUseSharedLogins() {
+		if (SINGLETON_LIFECYCLE.equals(initInfo.get("loginLifecycle"))) {
+			LoginDependencyProvider.useSharedLogins();
+		} else {
+			LoginDependencyProvider.usePerRequestLogins();
+		}
+	}
+
 	private void collectInitInformation() {
 		Enumeration<String> initParameterNames = servletContext.getInitParameterNames();
 		while (initParameterNames.hasMoreElements()) {
@@ -68,9 +138,241 @@ public class LoginModuleInitializer implements ServletContextListener {
 	}
 
 	private void createAndSetGatekeeperTokenProvider() {
-		String baseUrl = SettingsProvider.getSetting("gatekeeperURL");
-		HttpHandlerFactory httpHandlerFactory = new HttpHandlerFactoryImp();
-		GatekeeperInstanceProvider.setGatekeeperTokenProvider(GatekeeperTokenProviderImp
-				.usingBaseUrlAndHttpHandlerFactory(baseUrl, httpHandlerFactory));
+		if (EMBEDDED_GATEKEEPER_MODE.equals(initInfo.get("loginGatekeeperMode"))) {
+			GatekeeperInstanceProvider
+					.setGatekeeperTokenProvider(getEmbeddedGatekeeperTokenProvider());
+		} else {
+			createAndSetRemoteGatekeeperTokenProvider();
+		}
+	}
+
+	private GatekeeperTokenProvider getEmbeddedGatekeeperTokenProvider() {
+		Iterator<GatekeeperTokenProvider> providers = embeddedProviders.get().iterator();
+		if (!providers.hasNext()) {
+			throw LoginInitializationException.withMessage(
+					"No embedded GatekeeperTokenProvider found for loginGatekeeperMode embedded.");
+		}
+		GatekeeperTokenProvider provider = providers.next();
+		log.logInfoUsingMessage(
+				"Using embedded GatekeeperTokenProvider: " + provider.getClass().getName());
+		return provider;
+	}
+
+	private void createAndSetRemoteGatekeeperTokenProvider() {
+		List<String> baseUrls = getGatekeeperUrls();
+		long callTimeout = getLongSettingOrDefault("loginGatekeeperCallTimeoutInMilliseconds",
+				DEFAULT_GATEKEEPER_CALL_TIMEOUT_IN_MILLISECONDS);
+		HttpHandlerFactory httpHandlerFactory = createPooledHttpHandlerFactory(callTimeout);
+		GatekeeperTokenProvider gatekeeperTokenProvider = createProviderForUrls(baseUrls,
+				httpHandlerFactory);
+		GatekeeperInstanceProvider.setGatekeeperTokenProvider(
+				createCircuitBreakingProvider(gatekeeperTokenProvider, callTimeout));
+	}
+
+	private List<String> getGatekeeperUrls() {
+		String gatekeeperUrls = SettingsProvider.getSetting("gatekeeperURL");
+		return Arrays.stream(gatekeeperUrls.split(",")).map(String::strip)
+				.filter(url -> !url.isEmpty()).toList();
+	}
+
+	private GatekeeperTokenProvider createProviderForUrls(List<String> baseUrls,
+			HttpHandlerFactory httpHandlerFactory) {
+		if (baseUrls.size() == 1) {
+			return GatekeeperTokenProviderImp.usingBaseUrlAndHttpHandlerFactory(baseUrls.get(0),
+					httpHandlerFactory);
+		}
+		return createLoadBalancingProvider(baseUrls, httpHandlerFactory);
+	}
+
+	private GatekeeperTokenProvider createLoadBalancingProvider(List<String> baseUrls,
+			HttpHandlerFactory httpHandlerFactory) {
+		List<GatekeeperTokenProvider> gatekeeperTokenProviders = new ArrayList<>();
+		for (String baseUrl : baseUrls) {
+			gatekeeperTokenProviders.add(GatekeeperTokenProviderImp
+					.usingBaseUrlAndHttpHandlerFactory(baseUrl, httpHandlerFactory));
+		}
+		int consecutiveFailures = getIntSettingOrDefault(
+				"loginGatekeeperEjectionConsecutiveFailures",
+				DEFAULT_GATEKEEPER_EJECTION_CONSECUTIVE_FAILURES);
+		long ejectionTime = getLongSettingOrDefault("loginGatekeeperEjectionTimeInMilliseconds",
+				DEFAULT_GATEKEEPER_EJECTION_TIME_IN_MILLISECONDS);
+		return LoadBalancingGatekeeperTokenProvider.usingProvidersFailuresAndEjectionTime(
+				gatekeeperTokenProviders, consecutiveFailures, ejectionTime);
+	}
+
+	private GatekeeperTokenProvider createCircuitBreakingProvider(
+			GatekeeperTokenProvider gatekeeperTokenProvider, long callTimeout) {
+		return CircuitBreakingGatekeeperTokenProvider
+				.usingProviderCircuitBreakerAndCallTimeout(gatekeeperTokenProvider,
+						createGatekeeperCircuitBreaker(), callTimeout);
+	}
+
+	private CircuitBreaker createGatekeeperCircuitBreaker() {
+		int windowSize = getIntSettingOrDefault("loginGatekeeperCircuitWindowSize",
+				DEFAULT_GATEKEEPER_CIRCUIT_WINDOW_SIZE);
+		int minimumCalls = getIntSettingOrDefault("loginGatekeeperCircuitMinimumCalls",
+				DEFAULT_GATEKEEPER_CIRCUIT_MINIMUM_CALLS);
+		int failureRate = getIntSettingOrDefault("loginGatekeeperCircuitFailureRatePercent",
+				DEFAULT_GATEKEEPER_CIRCUIT_FAILURE_RATE_PERCENT);
+		long openTime = getLongSettingOrDefault("loginGatekeeperCircuitOpenTimeInMilliseconds",
+				DEFAULT_GATEKEEPER_CIRCUIT_OPEN_TIME_IN_MILLISECONDS);
+		return CircuitBreakerImp.usingWindowSizeMinimumCallsFailureRateAndOpenTime(windowSize,
+				minimumCalls, failureRate, openTime);
+	}
+
+	private HttpHandlerFactory createPooledHttpHandlerFactory(long callTimeout) {
+		long connectTimeout = getLongSettingOrDefault(
+				"loginGatekeeperConnectTimeoutInMilliseconds",
+				DEFAULT_GATEKEEPER_CONNECT_TIMEOUT_IN_MILLISECONDS);
+		long requestTimeout = Math.min(callTimeout, getLongSettingOrDefault(
+				"loginGatekeeperRequestTimeoutInMilliseconds", callTimeout));
+		int maxConcurrentRequests = getIntSettingOrDefault("loginGatekeeperMaxConcurrentRequests",
+				DEFAULT_GATEKEEPER_MAX_CONCURRENT_REQUESTS);
+		return PooledHttpHandlerFactoryImp
+				.usingConnectTimeoutRequestTimeoutAndMaxConcurrentRequests(connectTimeout,
+						requestTimeout, maxConcurrentRequests);
+	}
+
+	private void createAndSetHashingExecutor() {
+		int poolSize = getIntSettingOrDefault("loginHashingPoolSize",
+				Runtime.getRuntime().availableProcessors());
+		int queueSize = getIntSettingOrDefault("loginHashingQueueSize",
+				DEFAULT_HASHING_QUEUE_SIZE);
+		long maxWait = getLongSettingOrDefault("loginHashingMaxWaitInMilliseconds",
+				DEFAULT_HASHING_MAX_WAIT_IN_MILLISECONDS);
+		boolean parallelMatching = Boolean
+				.parseBoolean(initInfo.get("loginHashingParallelMatching"));
+		ExecutorProvider.setHashingExecutor(HashingExecutorImp
+				.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(poolSize, queueSize, maxWait,
+						parallelMatching));
+	}
+
+	private void createAndSetLoginExecutor() {
+		ExecutorProvider.setLoginExecutor(createLoginExecutor());
+	}
+
+	private ExecutorService createLoginExecutor() {
+		if (VIRTUAL_EXECUTION_MODE.equals(initInfo.get("loginExecutionMode"))) {
+			return Executors.newThreadPerTaskExecutor(
+					Thread.ofVirtual().name("cora-login-virtual-", 1).factory());
+		}
+		int poolSize = getIntSettingOrDefault("loginPoolSize", DEFAULT_LOGIN_POOL_SIZE);
+		int queueSize = getIntSettingOrDefault("loginQueueSize", DEFAULT_LOGIN_QUEUE_SIZE);
+		return new ThreadPoolExecutor(poolSize, poolSize, 0, TimeUnit.MILLISECONDS,
+				new ArrayBlockingQueue<>(queueSize), createLoginThreadFactory(),
+				new ThreadPoolExecutor.AbortPolicy());
+	}
+
+	private ThreadFactory createLoginThreadFactory() {
+		AtomicInteger threadNumber = new AtomicInteger();
+		return runnable -> {
+			Thread thread = new Thread(runnable, "cora-login-" + threadNumber.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		};
+	}
+
+	private void createAndSetSingleFlight() {
+		boolean sharesAuthToken = Boolean.parseBoolean(initInfo.get("loginSharedAuthToken"));
+		SingleFlightProvider.setSingleFlight(SingleFlightImp.usingSharedAuthToken(sharesAuthToken));
+	}
+
+	private void createAndSetUserCache() {
+		int maxSize = getIntSettingOrDefault("loginUserCacheMaxSize", DEFAULT_USER_CACHE_MAX_SIZE);
+		long timeToLive = getLongSettingOrDefault("loginUserCacheTimeToLiveInMilliseconds",
+				DEFAULT_USER_CACHE_TIME_TO_LIVE_IN_MILLISECONDS);
+		CacheProvider.setUserCache(CacheImp.usingMaxSizeAndTimeToLive(maxSize, timeToLive));
+	}
+
+	private void createAndSetSystemSecretCache() {
+		int maxSize = getIntSettingOrDefault("loginSystemSecretCacheMaxSize",
+				DEFAULT_SYSTEM_SECRET_CACHE_MAX_SIZE);
+		long timeToLive = getLongSettingOrDefault("loginSystemSecretCacheTimeToLiveInMilliseconds",
+				DEFAULT_SYSTEM_SECRET_CACHE_TIME_TO_LIVE_IN_MILLISECONDS);
+		CacheProvider.setSystemSecretCache(CacheImp.usingMaxSizeAndTimeToLive(maxSize, timeToLive));
+	}
+
+	private void createAndSetLastMatchedAppTokenIdCache() {
+		int maxSize = getIntSettingOrDefault("loginLastMatchedAppTokenCacheMaxSize",
+				DEFAULT_LAST_MATCHED_APP_TOKEN_MAX_SIZE);
+		long timeToLive = getLongSettingOrDefault(
+				"loginLastMatchedAppTokenCacheTimeToLiveInMilliseconds",
+				DEFAULT_LAST_MATCHED_APP_TOKEN_TIME_TO_LIVE_IN_MILLISECONDS);
+		CacheProvider.setLastMatchedAppTokenIdCache(
+				CacheImp.usingMaxSizeAndTimeToLive(maxSize, timeToLive));
+	}
+
+	private void createAndSetRenewedAuthTokenCache() {
+		int maxSize = getIntSettingOrDefault("loginRenewalGraceCacheMaxSize",
+				DEFAULT_RENEWAL_GRACE_CACHE_MAX_SIZE);
+		long gracePeriod = getLongSettingOrDefault("loginRenewalGracePeriodInMilliseconds",
+				DEFAULT_RENEWAL_GRACE_PERIOD_IN_MILLISECONDS);
+		CacheProvider.setRenewedAuthTokenCache(
+				CacheImp.usingMaxSizeAndTimeToLive(maxSize, gracePeriod));
+	}
+
+	private void createAndSetIdempotentLoginCache() {
+		int maxSize = getIntSettingOrDefault("loginIdempotencyCacheMaxSize",
+				DEFAULT_IDEMPOTENT_LOGIN_CACHE_MAX_SIZE);
+		long timeToLive = getLongSettingOrDefault("loginIdempotencyTimeToLiveInMilliseconds",
+				DEFAULT_IDEMPOTENT_LOGIN_TIME_TO_LIVE_IN_MILLISECONDS);
+		CacheProvider.setIdempotentLoginCache(
+				CacheImp.usingMaxSizeAndTimeToLive(maxSize, timeToLive));
+		CacheProvider.setForgottenAuthTokenCache(
+				CacheImp.usingMaxSizeAndTimeToLive(maxSize, timeToLive));
+	}
+
+	private void possiblyCreateAndSetAppTokenKeyedDigest() {
+		String key = initInfo.get("loginAppTokenDigestKey");
+		KeyedDigest keyedDigest = null;
+		if (key != null && !key.isBlank()) {
+			keyedDigest = KeyedDigest.usingKey(Base64.getDecoder().decode(key.strip()));
+		}
+		KeyedDigestProvider.setAppTokenKeyedDigest(keyedDigest);
+	}
+
+	private int getIntSettingOrDefault(String name, int defaultValue) {
+		return (int) getLongSettingOrDefault(name, defaultValue);
+	}
+
+	private long getLongSettingOrDefault(String name, long defaultValue) {
+		String value = initInfo.get(name);
+		if (value == null || value.isBlank()) {
+			return defaultValue;
+		}
+		return Long.parseLong(value.strip());
+	}
+
+	@Override
+	public void contextDestroyed(ServletContextEvent contextEvent) {
+		possiblyShutdownHashingExecutor();
+		possiblyShutdownLoginExecutor();
+		possiblyShutdownCircuitBreakingGatekeeperTokenProvider();
+		LoginDependencyProvider.usePerRequestLogins();
+	}
+
+	private void possiblyShutdownHashingExecutor() {
+		if (ExecutorProvider.getHashingExecutor() != null) {
+			ExecutorProvider.getHashingExecutor().shutdown();
+		}
+	}
+
+	private void possiblyShutdownCircuitBreakingGatekeeperTokenProvider() {
+		GatekeeperTokenProvider provider = GatekeeperInstanceProvider.getGatekeeperTokenProvider();
+		if (provider instanceof CircuitBreakingGatekeeperTokenProvider circuitBreakingProvider) {
+			circuitBreakingProvider.shutdown();
+		}
+	}
+
+	private void possiblyShutdownLoginExecutor() {
+		ExecutorService loginExecutor = ExecutorProvider.getLoginExecutor();
+		if (loginExecutor != null) {
+			loginExecutor.shutdownNow();
+		}
+	}
+
+	public void onlyForTestSetEmbeddedProviders(
+			Supplier<Iterable<GatekeeperTokenProvider>> embeddedProviders) {
+		this.embeddedProviders = embeddedProviders;
 	}
 }
@@ -0,0 +1,447 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.json;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+
+/**
+ * AuthTokenJsonWriter writes the authentication json for an authToken without building a json
+ * tree. The output is the same, byte for byte, as the json built using the org.json builders. The
+ * fixed parts of the json are kept as precomputed UTF-8 byte arrays, and only the values from the
+ * authToken and the url are escaped and encoded when written. Escaping follows the rules used by
+ * org.json when it writes strings.
+ * Values are encoded one character at a time into a small buffer, created for each call, that is
+ * written to the output stream in blocks. Writing the json therefore does not create intermediate
+ * strings, even for authTokens with many permissionUnits, and the output stream is only called
+ * once per block. AuthTokenJsonWriter is threadsafe.
+ */
+public final class AuthTokenJsonWriter {
+	private static final int BUFFER_SIZE = 4096;
+	private static final byte[] START = bytes("{\"authentication\":{\"data\":{\"children\":[");
+	private static final byte[] CHILD_START = bytes("{\"name\":\"");
+	private static final byte[] CHILD_VALUE = bytes("\",\"value\":\"");
+	private static final byte[] CHILD_END = bytes("\"}");
+	private static final byte[] COMMA = bytes(",");
+	private static final byte[] PERMISSION_UNIT_START = bytes("{\"repeatId\":\"");
+	private static final byte[] PERMISSION_UNIT_CHILDREN = bytes(
+			"\",\"children\":[{\"name\":\"linkedRecordType\",\"value\":\"permissionUnit\"}");
+	private static final byte[] PERMISSION_UNIT_END = bytes("],\"name\":\"permissionUnit\"}");
+	private static final byte[] RENEW_START = bytes(
+			"],\"name\":\"authToken\"},\"actionLinks\":{\"renew\":{\"requestMethod\":\"POST\","
+					+ "\"rel\":\"renew\",");
+	private static final byte[] URL_START = bytes("\"url\":\"");
+	private static final byte[] URL_END = bytes("\",");
+	private static final byte[] RENEW_END = bytes(
+			"\"accept\":\"application/vnd.cora.authentication+json\"},");
+	private static final byte[] DELETE_START = bytes(
+			"\"delete\":{\"requestMethod\":\"DELETE\",\"rel\":\"delete\"");
+	private static final byte[] DELETE_URL_START = bytes(",\"url\":\"");
+	private static final byte[] DELETE_URL_END = bytes("\"");
+	private static final byte[] END = bytes("}}}}");
+	private static final byte[] COMPACT_START = bytes("{\"tokenId\":");
+	private static final byte[] COMPACT_TOKEN = bytes(",\"token\":");
+	private static final byte[] COMPACT_VALID_UNTIL = bytes(",\"validUntil\":");
+	private static final byte[] COMPACT_RENEW_UNTIL = bytes(",\"renewUntil\":");
+	private static final byte[] COMPACT_USER_ID = bytes(",\"userId\":");
+	private static final byte[] OBJECT_END = bytes("}");
+	private static final byte[] BATCH_START = bytes("{\"results\":[");
+	private static final byte[] BATCH_RESULT_START = bytes("{\"loginId\":");
+	private static final byte[] BATCH_RESULT_STATUS = bytes(",\"status\":");
+	private static final byte[] BATCH_RESULT_AUTH_TOKEN = bytes(",\"authToken\":");
+	private static final byte[] BATCH_LOGOUT_RESULT_START = bytes("{\"tokenId\":");
+	private static final byte[] BATCH_END = bytes("]}");
+	private static final byte[] QUOTE = bytes("\"");
+	private static final byte[] NULL = bytes("null");
+	private static final byte[] HEX_DIGITS = bytes("0123456789abcdef");
+	private static final int UNPAIRED_SURROGATE_REPLACEMENT = '?';
+
+	private static byte[] bytes(String text) {
+		return text.getBytes(StandardCharsets.UTF_8);
+	}
+
+	/**
+	 * writeAuthTokenAsJson writes the authentication json for the authToken as UTF-8 to the
+	 * outputStream.
+	 * 
+	 * @throws IOException
+	 *             if writing to the outputStream fails
+	 * 
+	 * @param authToken
+	 *            The AuthToken to write
+	 * @param url
+	 *            A String with the url to use in the actionLinks
+	 * @param outputStream
+	 *            The OutputStream to write to, it is not closed
+	 */
+	public void writeAuthTokenAsJson(AuthToken authToken, String url, OutputStream outputStream)
+			throws IOException {
+		BlockBuffer out = new BlockBuffer(outputStream);
+		writeAuthToken(authToken, url, out);
+		out.writeBufferedBytes();
+	}
+
+	/**
+	 * writeCompactAuthTokenAsJson writes a compact, flat json for the authToken as UTF-8 to the
+	 * outputStream. The compact json only holds tokenId, token, validUntil, renewUntil and userId,
+	 * with validUntil and renewUntil as json numbers, for example:
+	 * 
+	 * <pre>
+	 * {"tokenId":"someId","token":"someToken","validUntil":100,"renewUntil":200,"userId":"id"}
+	 * </pre>
+	 * 
+	 * @throws IOException
+	 *             if writing to the outputStream fails
+	 * 
+	 * @param authToken
+	 *            The AuthToken to write
+	 * @param outputStream
+	 *            The OutputStream to write to, it is not closed
+	 */
+	public void writeCompactAuthTokenAsJson(AuthToken authToken, OutputStream outputStream)
+			throws IOException {
+		BlockBuffer out = new BlockBuffer(outputStream);
+		writeCompactAuthToken(authToken, out);
+		out.writeBufferedBytes();
+	}
+
+	private void writeCompactAuthToken(AuthToken authToken, OutputStream out) throws IOException {
+		out.write(COMPACT_START);
+		writeQuotedOrNull(out, authToken.tokenId());
+		out.write(COMPACT_TOKEN);
+		writeQuotedOrNull(out, authToken.token());
+		out.write(COMPACT_VALID_UNTIL);
+		writeAscii(out, String.valueOf(authToken.validUntil()));
+		out.write(COMPACT_RENEW_UNTIL);
+		writeAscii(out, String.valueOf(authToken.renewUntil()));
+		out.write(COMPACT_USER_ID);
+		writeQuotedOrNull(out, authToken.idInUserStorage());
+		out.write(OBJECT_END);
+	}
+
+	private void writeQuotedOrNull(OutputStream out, String value) throws IOException {
+		if (value == null) {
+			out.write(NULL);
+		} else {
+			out.write(QUOTE);
+			writeEscaped(out, value);
+			out.write(QUOTE);
+		}
+	}
+
+	private void writeAscii(OutputStream out, String value) throws IOException {
+		for (int i = 0; i < value.length(); i++) {
+			out.write(value.charAt(i));
+		}
+	}
+
+	/**
+	 * writeBatchLoginResultsAsJson writes the results of a batch login as UTF-8 to the
+	 * outputStream, in the same order as in the list. Each result holds loginId and status, and
+	 * for successful logins also the authentication json for the token, as written by
+	 * {@link #writeAuthTokenAsJson(AuthToken, String, OutputStream)}, for example:
+	 * 
+	 * <pre>
+	 * {"results":[{"loginId":"someId","status":201,"authToken":{"authentication":{...}}},
+	 *             {"loginId":"otherId","status":401}]}
+	 * </pre>
+	 * 
+	 * @throws IOException
+	 *             if writing to the outputStream fails
+	 * 
+	 * @param results
+	 *            A List with the BatchLoginResults to write
+	 * @param baseUrl
+	 *            A String with the url to use in the actionLinks, without the tokenId
+	 * @param outputStream
+	 *            The OutputStream to write to, it is not closed
+	 */
+	public void writeBatchLoginResultsAsJson(List<BatchLoginResult> results, String baseUrl,
+			OutputStream outputStream) throws IOException {
+		BlockBuffer out = new BlockBuffer(outputStream);
+		writeBatchLoginResults(results, baseUrl, out);
+		out.writeBufferedBytes();
+	}
+
+	private void writeBatchLoginResults(List<BatchLoginResult> results,
+			String baseUrl, OutputStream out) throws IOException {
+		out.write(BATCH_START);
+		for (int i = 0; i < results.size(); i++) {
+			possiblyWriteComma(out, i);
+			writeBatchLoginResult(out, results.get(i), baseUrl);
+		}
+		out.write(BATCH_END);
+	}
+
+	private void possiblyWriteComma(OutputStream out, int index) throws IOException {
+		if (index > 0) {
+			out.write(COMMA);
+		}
+	}
+
+	private void writeBatchLoginResult(OutputStream out, BatchLoginResult result, String baseUrl)
+			throws IOException {
+		out.write(BATCH_RESULT_START);
+		writeQuotedOrNull(out, result.loginId());
+		out.write(BATCH_RESULT_STATUS);
+		writeAscii(out, String.valueOf(result.status()));
+		AuthToken authToken = result.authToken();
+		if (authToken != null) {
+			out.write(BATCH_RESULT_AUTH_TOKEN);
+			writeAuthToken(authToken, baseUrl + authToken.tokenId(), out);
+		}
+		out.write(OBJECT_END);
+	}
+
+	/**
+	 * writeBatchLogoutResultsAsJson writes the results of a batch logout as UTF-8 to the
+	 * outputStream, in the same order as in the list, for example:
+	 * 
+	 * <pre>
+	 * {"results":[{"tokenId":"someTokenId","status":200},{"tokenId":"otherId","status":404}]}
+	 * </pre>
+	 * 
+	 * @throws IOException
+	 *             if writing to the outputStream fails
+	 * 
+	 * @param results
+	 *            A List with the BatchLogoutResults to write
+	 * @param outputStream
+	 *            The OutputStream to write to, it is not closed
+	 */
+	public void writeBatchLogoutResultsAsJson(List<BatchLogoutResult> results,
+			OutputStream outputStream) throws IOException {
+		BlockBuffer out = new BlockBuffer(outputStream);
+		writeBatchLogoutResults(results, out);
+		out.writeBufferedBytes();
+	}
+
+	private void writeBatchLogoutResults(List<BatchLogoutResult> results,
+			OutputStream out) throws IOException {
+		out.write(BATCH_START);
+		for (int i = 0; i < results.size(); i++) {
+			possiblyWriteComma(out, i);
+			writeBatchLogoutResult(out, results.get(i));
+		}
+		out.write(BATCH_END);
+	}
+
+	private void writeBatchLogoutResult(OutputStream out, BatchLogoutResult result)
+			throws IOException {
+		out.write(BATCH_LOGOUT_RESULT_START);
+		writeQuotedOrNull(out, result.tokenId());
+		out.write(BATCH_RESULT_STATUS);
+		writeAscii(out, String.valueOf(result.status()));
+		out.write(OBJECT_END);
+	}
+
+	private void writeAuthToken(AuthToken authToken, String url, OutputStream out)
+			throws IOException {
+		out.write(START);
+		writeChild(out, "token", authToken.token());
+		writeNextChild(out, "validUntil", String.valueOf(authToken.validUntil()));
+		writeNextChild(out, "renewUntil", String.valueOf(authToken.renewUntil()));
+		writeNextChild(out, "userId", String.valueOf(authToken.idInUserStorage()));
+		writeNextChild(out, "loginId", String.valueOf(authToken.loginId()));
+		possiblyWriteNextChild(out, "firstName", authToken.firstName().orElse(null));
+		possiblyWriteNextChild(out, "lastName", authToken.lastName().orElse(null));
+		writePermissionUnits(out, authToken);
+		writeActionLinks(out, url);
+		out.write(END);
+	}
+
+	private void writeNextChild(OutputStream out, String name, String value) throws IOException {
+		out.write(COMMA);
+		writeChild(out, name, value);
+	}
+
+	private void possiblyWriteNextChild(OutputStream out, String name, String value)
+			throws IOException {
+		if (value != null) {
+			writeNextChild(out, name, value);
+		}
+	}
+
+	private void writeChild(OutputStream out, String name, String value) throws IOException {
+		out.write(CHILD_START);
+		writeEscaped(out, name);
+		if (value != null) {
+			out.write(CHILD_VALUE);
+			writeEscaped(out, value);
+		}
+		out.write(CHILD_END);
+	}
+
+	private void writePermissionUnits(OutputStream out, AuthToken authToken) throws IOException {
+		int repeatId = 0;
+		for (String permissionUnit : authToken.permissionUnits()) {
+			repeatId++;
+			out.write(COMMA);
+			writePermissionUnit(out, permissionUnit, repeatId);
+		}
+	}
+
+	private void writePermissionUnit(OutputStream out, String linkedRecordId, int repeatId)
+			throws IOException {
+		out.write(PERMISSION_UNIT_START);
+		writeEscaped(out, String.valueOf(repeatId));
+		out.write(PERMISSION_UNIT_CHILDREN);
+		writeNextChild(out, "linkedRecordId", linkedRecordId);
+		out.write(PERMISSION_UNIT_END);
+	}
+
+	private void writeActionLinks(OutputStream out, String url) throws IOException {
+		out.write(RENEW_START);
+		if (url != null) {
+			out.write(URL_START);
+			writeEscaped(out, url);
+			out.write(URL_END);
+		}
+		out.write(RENEW_END);
+		out.write(DELETE_START);
+		if (url != null) {
+			out.write(DELETE_URL_START);
+			writeEscaped(out, url);
+			out.write(DELETE_URL_END);
+		}
+	}
+
+	private void writeEscaped(OutputStream out, String value) throws IOException {
+		char previous = 0;
+		for (int i = 0; i < value.length(); i++) {
+			char c = value.charAt(i);
+			if (isSurrogatePairAt(value, i)) {
+				i++;
+				writeUtf8(out, Character.toCodePoint(c, value.charAt(i)));
+			} else {
+				writeEscapedCharacter(out, c, previous);
+			}
+			previous = c;
+		}
+	}
+
+	private boolean isSurrogatePairAt(String value, int index) {
+		return Character.isHighSurrogate(value.charAt(index)) && index + 1 < value.length()
+				&& Character.isLowSurrogate(value.charAt(index + 1));
+	}
+
+	private void writeEscapedCharacter(OutputStream out, char c, char previous)
+			throws IOException {
+		switch (c) {
+			case '"', '\\' -> writeBackslashAnd(out, c);
+			case '/' -> writeSlash(out, previous);
+			case '\b' -> writeBackslashAnd(out, 'b');
+			case '\t' -> writeBackslashAnd(out, 't');
+			case '\n' -> writeBackslashAnd(out, 'n');
+			case '\f' -> writeBackslashAnd(out, 'f');
+			case '\r' -> writeBackslashAnd(out, 'r');
+			default -> writeOtherCharacter(out, c);
+		}
+	}
+
+	private void writeBackslashAnd(OutputStream out, char c) throws IOException {
+		out.write('\\');
+		out.write(c);
+	}
+
+	private void writeSlash(OutputStream out, char previous) throws IOException {
+		if (previous == '<') {
+			out.write('\\');
+		}
+		out.write('/');
+	}
+
+	private void writeOtherCharacter(OutputStream out, char c) throws IOException {
+		if (c < ' ' || (c >= '\u0080' && c < '\u00a0') || (c >= '\u2000' && c < '\u2100')) {
+			writeUnicodeEscape(out, c);
+		} else if (Character.isSurrogate(c)) {
+			out.write(UNPAIRED_SURROGATE_REPLACEMENT);
+		} else {
+			writeUtf8(out, c);
+		}
+	}
+
+	private void writeUnicodeEscape(OutputStream out, char c) throws IOException {
+		out.write('\\');
+		out.write('u');
+		for (int shift = 12; shift >= 0; shift -= 4) {
+			out.write(HEX_DIGITS[(c >> shift) & 0xf]);
+		}
+	}
+
+	private void writeUtf8(OutputStream out, int codePoint) throws IOException {
+		if (codePoint < 0x80) {
+			out.write(codePoint);
+		} else if (codePoint < 0x800) {
+			out.write(0xc0 | (codePoint >> 6));
+			out.write(0x80 | (codePoint & 0x3f));
+		} else if (codePoint < 0x10000) {
+			out.write(0xe0 | (codePoint >> 12));
+			out.write(0x80 | ((codePoint >> 6) & 0x3f));
+			out.write(0x80 | (codePoint & 0x3f));
+		} else {
+			out.write(0xf0 | (codePoint >> 18));
+			out.write(0x80 | ((codePoint >> 12) & 0x3f));
+			out.write(0x80 | ((codePoint >> 6) & 0x3f));
+			out.write(0x80 | (codePoint & 0x3f));
+		}
+	}
+
+	private static final class BlockBuffer extends OutputStream {
+		private OutputStream target;
+		private byte[] buffer = new byte[BUFFER_SIZE];
+		private int count = 0;
+
+		BlockBuffer(OutputStream target) {
+			this.target = target;
+		}
+
+		@Override
+		public void write(int b) throws IOException {
+			if (count == buffer.length) {
+				writeBufferedBytes();
+			}
+			buffer[count++] = (byte) b;
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) throws IOException {
+			if (length > buffer.length - count) {
+				writeBufferedBytes();
+			}
+			if (length > buffer.length) {
+				target.write(bytes, offset, length);
+			} else {
+				System.arraycopy(bytes, offset, buffer, count, length);
+				count += length;
+			}
+		}
+
+		void writeBufferedBytes() throws IOException {
+			if (count > 0) {
+				target.write(buffer, 0, count);
+				count = 0;
+			}
+		}
+	}
+}
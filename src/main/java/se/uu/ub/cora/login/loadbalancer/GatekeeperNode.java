@@ -0,0 +1,74 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.loadbalancer;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
+
+/**
+ * GatekeeperNode keeps track of the outstanding requests and the recent failures of one gatekeeper
+ * instance. A node is ejected for ejectionTimeInMilliseconds when consecutiveFailuresToEject
+ * calls in a row have failed. The failure count is only reset by a successful call, so a node
+ * that fails its first call after an ejection is ejected again directly.
+ */
+class GatekeeperNode {
+	private GatekeeperTokenProvider gatekeeperTokenProvider;
+	private AtomicInteger outstandingRequests = new AtomicInteger();
+	private AtomicInteger consecutiveFailures = new AtomicInteger();
+	private volatile long ejectedUntil;
+	private volatile boolean ejected = false;
+
+	GatekeeperNode(GatekeeperTokenProvider gatekeeperTokenProvider) {
+		this.gatekeeperTokenProvider = gatekeeperTokenProvider;
+	}
+
+	GatekeeperTokenProvider getGatekeeperTokenProvider() {
+		return gatekeeperTokenProvider;
+	}
+
+	int getOutstandingRequests() {
+		return outstandingRequests.get();
+	}
+
+	void startRequest() {
+		outstandingRequests.incrementAndGet();
+	}
+
+	void endRequest() {
+		outstandingRequests.decrementAndGet();
+	}
+
+	boolean isEjected(long now) {
+		return ejected && now - ejectedUntil < 0;
+	}
+
+	void recordSuccess() {
+		consecutiveFailures.set(0);
+		ejected = false;
+	}
+
+	void recordFailure(long now, int consecutiveFailuresToEject, long ejectionTimeInMilliseconds) {
+		if (consecutiveFailures.incrementAndGet() >= consecutiveFailuresToEject) {
+			ejectedUntil = now + TimeUnit.MILLISECONDS.toNanos(ejectionTimeInMilliseconds);
+			ejected = true;
+		}
+	}
+}
@@ -0,0 +1,189 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.loadbalancer;
+
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
+import se.uu.ub.cora.gatekeepertokenprovider.UserInfo;
+import se.uu.ub.cora.gatekeepertokenprovider.authentication.AuthenticationException;
+import se.uu.ub.cora.login.http.RequestRejectedException;
+
+/**
+ * LoadBalancingGatekeeperTokenProvider spreads calls over several gatekeeper instances, sending
+ * each call to the instance with the fewest outstanding requests. Ties are broken in turn, so
+ * that idle instances share the load evenly.
+ * <p>
+ * Instances are ejected passively, see {@link GatekeeperNode}, and are not chosen while ejected.
+ * If every instance is ejected all of them are used again, as a possibly failing call is better
+ * than no call at all.
+ * <p>
+ * A failed call is retried once on another instance, so that losing one instance lowers the
+ * capacity instead of failing the calls that were routed to it. Renewing and removing authTokens
+ * can safely be done twice, so they are retried on any failure. Creating an authToken is only
+ * retried if the connection to the first instance could not be made, as that instance might
+ * otherwise already have created a token that nobody will use. Other failures are thrown, so
+ * that the client is answered with 503 and can retry. An {@link AuthenticationException} is an
+ * answer from gatekeeper and a {@link RequestRejectedException} means that no request was sent,
+ * so neither is retried or counted as a failure of the instance.
+ */
+public class LoadBalancingGatekeeperTokenProvider implements GatekeeperTokenProvider {
+	private List<GatekeeperNode> nodes = new ArrayList<>();
+	private int consecutiveFailuresToEject;
+	private long ejectionTimeInMilliseconds;
+	private AtomicInteger nextStart = new AtomicInteger();
+	private LongSupplier clock = System::nanoTime;
+
+	public static LoadBalancingGatekeeperTokenProvider usingProvidersFailuresAndEjectionTime(
+			List<GatekeeperTokenProvider> gatekeeperTokenProviders, int consecutiveFailuresToEject,
+			long ejectionTimeInMilliseconds) {
+		return new LoadBalancingGatekeeperTokenProvider(gatekeeperTokenProviders,
+				consecutiveFailuresToEject, ejectionTimeInMilliseconds);
+	}
+
+	private LoadBalancingGatekeeperTokenProvider(
+			List<GatekeeperTokenProvider> gatekeeperTokenProviders, int consecutiveFailuresToEject,
+			long ejectionTimeInMilliseconds) {
+		this.consecutiveFailuresToEject = consecutiveFailuresToEject;
+		this.ejectionTimeInMilliseconds = ejectionTimeInMilliseconds;
+		for (GatekeeperTokenProvider gatekeeperTokenProvider : gatekeeperTokenProviders) {
+			nodes.add(new GatekeeperNode(gatekeeperTokenProvider));
+		}
+	}
+
+	@Override
+	public AuthToken getAuthTokenForUserInfo(UserInfo userInfo) {
+		return callLeastBusyNode(provider -> provider.getAuthTokenForUserInfo(userInfo), false);
+	}
+
+	@Override
+	public void removeAuthToken(String tokenId, String token) {
+		callLeastBusyNode(provider -> {
+			provider.removeAuthToken(tokenId, token);
+			return null;
+		}, true);
+	}
+
+	@Override
+	public AuthToken renewAuthToken(String tokenId, String token) {
+		return callLeastBusyNode(provider -> provider.renewAuthToken(tokenId, token), true);
+	}
+
+	private <T> T callLeastBusyNode(Function<GatekeeperTokenProvider, T> call,
+			boolean idempotent) {
+		GatekeeperNode node = chooseLeastBusyNodeExcept(null);
+		try {
+			return callNode(node, call);
+		} catch (AuthenticationException | RequestRejectedException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			GatekeeperNode otherNode = chooseLeastBusyNodeExcept(node);
+			if (otherNode == null || !(idempotent || connectionWasNotMade(e))) {
+				throw e;
+			}
+			return callNode(otherNode, call);
+		}
+	}
+
+	private boolean connectionWasNotMade(Throwable error) {
+		for (Throwable cause = error; cause != null; cause = cause.getCause()) {
+			if (cause instanceof ConnectException
+					|| cause instanceof HttpConnectTimeoutException) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private <T> T callNode(GatekeeperNode node, Function<GatekeeperTokenProvider, T> call) {
+		node.startRequest();
+		try {
+			T result = call.apply(node.getGatekeeperTokenProvider());
+			node.recordSuccess();
+			return result;
+		} catch (AuthenticationException e) {
+			node.recordSuccess();
+			throw e;
+		} catch (RequestRejectedException e) {
+			throw e;
+		} catch (RuntimeException e) {
+			node.recordFailure(clock.getAsLong(), consecutiveFailuresToEject,
+					ejectionTimeInMilliseconds);
+			throw e;
+		} finally {
+			node.endRequest();
+		}
+	}
+
+	private GatekeeperNode chooseLeastBusyNodeExcept(GatekeeperNode excludedNode) {
+		long now = clock.getAsLong();
+		GatekeeperNode leastBusyNode = findLeastBusyNode(excludedNode, now, false);
+		if (leastBusyNode == null) {
+			return findLeastBusyNode(excludedNode, now, true);
+		}
+		return leastBusyNode;
+	}
+
+	private GatekeeperNode findLeastBusyNode(GatekeeperNode excludedNode, long now,
+			boolean includeEjected) {
+		int start = Math.floorMod(nextStart.getAndIncrement(), nodes.size());
+		GatekeeperNode leastBusyNode = null;
+		for (int i = 0; i < nodes.size(); i++) {
+			GatekeeperNode node = nodes.get((start + i) % nodes.size());
+			if (isCandidate(node, excludedNode, now, includeEjected)
+					&& isLessBusy(node, leastBusyNode)) {
+				leastBusyNode = node;
+			}
+		}
+		return leastBusyNode;
+	}
+
+	private boolean isCandidate(GatekeeperNode node, GatekeeperNode excludedNode, long now,
+			boolean includeEjected) {
+		return node != excludedNode && (includeEjected || !node.isEjected(now));
+	}
+
+	private boolean isLessBusy(GatekeeperNode node, GatekeeperNode leastBusyNode) {
+		return leastBusyNode == null
+				|| node.getOutstandingRequests() < leastBusyNode.getOutstandingRequests();
+	}
+
+	public List<GatekeeperTokenProvider> onlyForTestGetGatekeeperTokenProviders() {
+		return nodes.stream().map(GatekeeperNode::getGatekeeperTokenProvider).toList();
+	}
+
+	public int onlyForTestGetConsecutiveFailuresToEject() {
+		return consecutiveFailuresToEject;
+	}
+
+	public long onlyForTestGetEjectionTimeInMilliseconds() {
+		return ejectionTimeInMilliseconds;
+	}
+
+	public void onlyForTestSetClock(LongSupplier clock) {
+		this.clock = clock;
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2024 Uppsala University Library
+ * Copyright 2024, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -18,6 +18,8 @@
  */
 package se.uu.ub.cora.login.rest;
 
+import java.util.concurrent.CompletionStage;
+
 import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
 
 public interface AppTokenLogin {
@@ -25,6 +27,10 @@ public interface AppTokenLogin {
 	/**
 	 * getAuthToken method returns an {@link AuthToken} given a username and an appToken. This
 	 * method checks if the user is active and if the appToken matches the already stored one.
+	 * <p>
+	 * An appToken on the form selector:verifier, where the selector is the id of one of the users
+	 * stored app token secrets, is only checked against that secret, using the verifier part. Other
+	 * appTokens are checked against all the users stored app token secrets.
 	 * 
 	 * @throws LoginException
 	 *             if any exception while trying to perform the operations inside this method.
@@ -36,4 +42,20 @@ public interface AppTokenLogin {
 	 */
 	AuthToken getAuthToken(String loginId, String appToken);
 
+	/**
+	 * getAuthTokenAsync is the non-blocking variant of {@link #getAuthToken(String, String)}. It
+	 * returns at once and does the storage lookup, the appToken check and the call to gatekeeper
+	 * on other threads than the calling one.
+	 * 
+	 * @param loginId
+	 *            A String containing the loginId.
+	 * @param appToken
+	 *            A String containing the appToken to be matched
+	 * @return A CompletionStage that completes with a valid AuthToken if the user is active and
+	 *         the appToken matches. It completes exceptionally with a {@link LoginException} if
+	 *         the login fails, or with a {@link LoginUnavailableException} if the login can not be
+	 *         handled right now.
+	 */
+	CompletionStage<AuthToken> getAuthTokenAsync(String loginId, String appToken);
+
 }
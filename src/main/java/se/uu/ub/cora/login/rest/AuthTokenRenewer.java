@@ -0,0 +1,50 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.rest;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+
+public interface AuthTokenRenewer {
+
+	/**
+	 * renewAuthToken renews the authToken with the tokenId in gatekeeper, if the token matches.
+	 * Concurrent renewals of the same tokenId with the same token are coalesced into one call to
+	 * gatekeeper, and renewals repeated shortly after may get the result of an earlier renewal.
+	 * 
+	 * @param tokenId
+	 *            A String with the id of the authToken to renew
+	 * @param token
+	 *            A String with the token of the authToken to renew
+	 * @return The renewed AuthToken
+	 */
+	AuthToken renewAuthToken(String tokenId, String token);
+
+	/**
+	 * forgetRenewedAuthToken forgets any earlier renewal of the authToken with the tokenId and
+	 * token, so that a renewal after the authToken is removed is not answered with the result of
+	 * an earlier renewal. A renewal in flight when forgetRenewedAuthToken is called is not
+	 * remembered.
+	 * 
+	 * @param tokenId
+	 *            A String with the id of the removed authToken
+	 * @param token
+	 *            A String with the token of the removed authToken
+	 */
+	void forgetRenewedAuthToken(String tokenId, String token);
+}
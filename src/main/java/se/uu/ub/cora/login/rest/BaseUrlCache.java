@@ -0,0 +1,179 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.rest;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.regex.Pattern;
+
+import jakarta.servlet.http.HttpServletRequest;
+
+/**
+ * BaseUrlCache creates the base url used in links to authTokens, such as
+ * "https://host:port/pathToSystem/authToken/". The url is created from the scheme, server name and
+ * port of the request. A proxy can change the scheme and host using the standard Forwarded header
+ * (RFC 7239), or the scheme only using the X-Forwarded-Proto header. Forwarded takes precedence if
+ * both are present. Forwarded schemes other than http and https, and forwarded hosts that are not a
+ * host name or IP address with an optional port, are ignored.
+ * <p>
+ * Created urls are cached per scheme, server name, port and forwarded scheme and host, so that
+ * repeated requests through the same route get the same String without building it again. As the
+ * key is built from values the client controls, no more urls are cached once maxSize urls are
+ * cached, urls for new routes are then created for each request. Lookups take no lock.
+ * BaseUrlCache is threadsafe.
+ */
+public final class BaseUrlCache {
+	private static final String AUTH_TOKEN_PATH = "authToken/";
+	private static final String FORWARDED = "Forwarded";
+	private static final String X_FORWARDED_PROTO = "X-Forwarded-Proto";
+	private static final int HTTP_DEFAULT_PORT = 80;
+	private static final int HTTPS_DEFAULT_PORT = 443;
+	private static final Pattern VALID_HOST = Pattern
+			.compile("(\\[[0-9A-Fa-f:.]+\\]|[A-Za-z0-9.-]+)(:[0-9]{1,5})?");
+	private Map<BaseUrlKey, String> baseUrls = new ConcurrentHashMap<>();
+	private String pathToSystem;
+	private int maxSize;
+
+	public static BaseUrlCache usingPathToSystemAndMaxSize(String pathToSystem, int maxSize) {
+		return new BaseUrlCache(pathToSystem, maxSize);
+	}
+
+	private BaseUrlCache(String pathToSystem, int maxSize) {
+		this.pathToSystem = pathToSystem;
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * getBaseUrl returns the base url for links to authTokens for the request.
+	 * 
+	 * @param request
+	 *            The HttpServletRequest to get the base url for
+	 * @return A String with the base url, ending with "authToken/"
+	 */
+	public String getBaseUrl(HttpServletRequest request) {
+		BaseUrlKey key = createKey(request);
+		String baseUrl = baseUrls.get(key);
+		if (baseUrl == null) {
+			return createAndPossiblyStoreBaseUrl(key);
+		}
+		return baseUrl;
+	}
+
+	private String createAndPossiblyStoreBaseUrl(BaseUrlKey key) {
+		String baseUrl = createBaseUrl(key);
+		if (baseUrls.size() >= maxSize) {
+			return baseUrl;
+		}
+		String storedBaseUrl = baseUrls.putIfAbsent(key, baseUrl);
+		return storedBaseUrl != null ? storedBaseUrl : baseUrl;
+	}
+
+	private BaseUrlKey createKey(HttpServletRequest request) {
+		Forwarded forwarded = parseForwarded(request.getHeader(FORWARDED));
+		String forwardedProto = forwarded.proto() != null ? forwarded.proto()
+				: validProtoOrNull(request.getHeader(X_FORWARDED_PROTO));
+		return new BaseUrlKey(request.getScheme(), request.getServerName(),
+				request.getServerPort(), forwardedProto, forwarded.host());
+	}
+
+	private Forwarded parseForwarded(String forwardedHeader) {
+		if (forwardedHeader == null) {
+			return new Forwarded(null, null);
+		}
+		String proto = null;
+		String host = null;
+		for (String pair : getFirstForwardedElement(forwardedHeader).split(";")) {
+			int equals = pair.indexOf('=');
+			if (equals > 0) {
+				String name = pair.substring(0, equals).strip().toLowerCase(Locale.ROOT);
+				String value = unquote(pair.substring(equals + 1).strip());
+				proto = "proto".equals(name) ? value : proto;
+				host = "host".equals(name) ? value : host;
+			}
+		}
+		return new Forwarded(validProtoOrNull(proto), validHostOrNull(host));
+	}
+
+	private String validProtoOrNull(String proto) {
+		if ("http".equalsIgnoreCase(proto) || "https".equalsIgnoreCase(proto)) {
+			return proto.toLowerCase(Locale.ROOT);
+		}
+		return null;
+	}
+
+	private String validHostOrNull(String host) {
+		if (host != null && VALID_HOST.matcher(host).matches()) {
+			return host;
+		}
+		return null;
+	}
+
+	private String getFirstForwardedElement(String forwardedHeader) {
+		int comma = forwardedHeader.indexOf(',');
+		return comma < 0 ? forwardedHeader : forwardedHeader.substring(0, comma);
+	}
+
+	private String unquote(String value) {
+		if (value.length() >= 2 && value.startsWith("\"") && value.endsWith("\"")) {
+			return nullIfEmpty(value.substring(1, value.length() - 1));
+		}
+		return nullIfEmpty(value);
+	}
+
+	private String nullIfEmpty(String value) {
+		if (value == null || value.isEmpty()) {
+			return null;
+		}
+		return value;
+	}
+
+	private String createBaseUrl(BaseUrlKey key) {
+		String scheme = key.forwardedProto() != null ? key.forwardedProto() : key.scheme();
+		String host = key.forwardedHost() != null ? key.forwardedHost() : createHost(key);
+		return scheme + "://" + host + pathToSystem + AUTH_TOKEN_PATH;
+	}
+
+	private String createHost(BaseUrlKey key) {
+		if (isDefaultOrUnknownPort(key.scheme(), key.serverPort())) {
+			return key.serverName();
+		}
+		return key.serverName() + ":" + key.serverPort();
+	}
+
+	private boolean isDefaultOrUnknownPort(String scheme, int port) {
+		return port <= 0 || ("http".equals(scheme) && port == HTTP_DEFAULT_PORT)
+				|| ("https".equals(scheme) && port == HTTPS_DEFAULT_PORT);
+	}
+
+	public int onlyForTestGetMaxSize() {
+		return maxSize;
+	}
+
+	public int onlyForTestGetSize() {
+		return baseUrls.size();
+	}
+
+	private record BaseUrlKey(String scheme, String serverName, int serverPort,
+			String forwardedProto, String forwardedHost) {
+	}
+
+	private record Forwarded(String proto, String host) {
+	}
+}
@@ -0,0 +1,190 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.rest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
+/**
+ * CredentialsParser reads {@link Credentials} from a request body on the form
+ * "loginId\nsecret", optionally followed by one newline. The body is read straight into one buffer
+ * of at most maxBytes + 1 bytes, and loginId and secret are decoded directly from that buffer.
+ * CredentialsParser is threadsafe.
+ */
+public final class CredentialsParser {
+	private static final byte NEW_LINE = '\n';
+	private static final int NOT_FOUND = -1;
+	private int maxBytes;
+
+	public static CredentialsParser usingMaxBytes(int maxBytes) {
+		return new CredentialsParser(maxBytes);
+	}
+
+	private CredentialsParser(int maxBytes) {
+		this.maxBytes = maxBytes;
+	}
+
+	/**
+	 * parse reads loginId and secret from the body.
+	 * 
+	 * @throws MalformedCredentialsException
+	 *             if the body is larger than maxBytes, can not be read, or is not on the form
+	 *             "loginId\nsecret" with a non empty loginId and secret
+	 * 
+	 * @param body
+	 *             An InputStream with the request body
+	 * @return The parsed Credentials
+	 */
+	public Credentials parse(InputStream body) {
+		byte[] buffer = new byte[maxBytes + 1];
+		int length = readAtMostMaxBytes(body, buffer);
+		return parseCredentials(buffer, length);
+	}
+
+	private int readAtMostMaxBytes(InputStream body, byte[] buffer) {
+		int length = tryToReadIntoBuffer(body, buffer);
+		if (length > maxBytes) {
+			throw MalformedCredentialsException
+					.withMessage("Credentials are larger than " + maxBytes + " bytes.");
+		}
+		return length;
+	}
+
+	private int tryToReadIntoBuffer(InputStream body, byte[] buffer) {
+		try {
+			return body.readNBytes(buffer, 0, buffer.length);
+		} catch (IOException e) {
+			throw MalformedCredentialsException.withMessageAndException(
+					"Credentials could not be read.", e);
+		}
+	}
+
+	private Credentials parseCredentials(byte[] buffer, int length) {
+		int secretEnd = endWithoutTrailingNewLine(buffer, length);
+		int separator = indexOfNewLine(buffer, 0, secretEnd);
+		ifLoginIdOrSecretIsMissingThrowException(buffer, separator, secretEnd);
+		return createPair(buffer, 0, separator, secretEnd, Credentials::new);
+	}
+
+	private <T> T createPair(byte[] buffer, int start, int separator, int secondEnd,
+			BiFunction<String, String, T> pairFactory) {
+		String first = new String(buffer, start, separator - start, StandardCharsets.UTF_8);
+		String second = new String(buffer, separator + 1, secondEnd - separator - 1,
+				StandardCharsets.UTF_8);
+		return pairFactory.apply(first, second);
+	}
+
+	private int endWithoutTrailingNewLine(byte[] buffer, int length) {
+		if (length > 0 && buffer[length - 1] == NEW_LINE) {
+			return length - 1;
+		}
+		return length;
+	}
+
+	private int indexOfNewLine(byte[] buffer, int start, int end) {
+		for (int i = start; i < end; i++) {
+			if (buffer[i] == NEW_LINE) {
+				return i;
+			}
+		}
+		return NOT_FOUND;
+	}
+
+	private void ifLoginIdOrSecretIsMissingThrowException(byte[] buffer, int separator,
+			int secretEnd) {
+		if (separator <= 0 || separator + 1 >= secretEnd
+				|| indexOfNewLine(buffer, separator + 1, secretEnd) != NOT_FOUND) {
+			throw MalformedCredentialsException
+					.withMessage("Credentials must be loginId and secret on separate lines.");
+		}
+	}
+
+	/**
+	 * parseList reads a list of loginId and secret pairs from the body, on the form
+	 * "loginId\nsecret\nloginId\nsecret", optionally followed by one newline. The list is
+	 * returned in the same order as the pairs in the body.
+	 * 
+	 * @throws MalformedCredentialsException
+	 *             if the body is larger than maxBytes, can not be read, is empty or is not on the
+	 *             form "loginId\nsecret" repeated, with non empty loginIds and secrets
+	 * 
+	 * @param body
+	 *             An InputStream with the request body
+	 * @return A List with the parsed Credentials
+	 */
+	public List<Credentials> parseList(InputStream body) {
+		return parsePairList(body, Credentials::new,
+				"Credentials must be pairs of loginId and secret on separate lines.");
+	}
+
+	/**
+	 * parseTokenList reads a list of tokenId and token pairs from the body, on the form
+	 * "tokenId\ntoken\ntokenId\ntoken", optionally followed by one newline. The list is returned
+	 * in the same order as the pairs in the body.
+	 * 
+	 * @throws MalformedCredentialsException
+	 *             if the body is larger than maxBytes, can not be read, is empty or is not on the
+	 *             form "tokenId\ntoken" repeated, with non empty tokenIds and tokens
+	 * 
+	 * @param body
+	 *             An InputStream with the request body
+	 * @return A List with the parsed TokenCredentials
+	 */
+	public List<TokenCredentials> parseTokenList(InputStream body) {
+		return parsePairList(body, TokenCredentials::new,
+				"Tokens must be pairs of tokenId and token on separate lines.");
+	}
+
+	private <T> List<T> parsePairList(InputStream body, BiFunction<String, String, T> pairFactory,
+			String malformedMessage) {
+		byte[] buffer = new byte[maxBytes + 1];
+		int length = readAtMostMaxBytes(body, buffer);
+		int end = endWithoutTrailingNewLine(buffer, length);
+		List<T> pairs = new ArrayList<>();
+		int start = 0;
+		do {
+			int separator = indexOfNewLine(buffer, start, end);
+			int secondEnd = indexOfNewLineOrEnd(buffer, separator + 1, end);
+			ifPairIsMalformedThrowException(start, separator, secondEnd, malformedMessage);
+			pairs.add(createPair(buffer, start, separator, secondEnd, pairFactory));
+			start = secondEnd + 1;
+		} while (start < end);
+		return pairs;
+	}
+
+	private int indexOfNewLineOrEnd(byte[] buffer, int start, int end) {
+		int index = indexOfNewLine(buffer, start, end);
+		return index == NOT_FOUND ? end : index;
+	}
+
+	private void ifPairIsMalformedThrowException(int start, int separator, int secondEnd,
+			String malformedMessage) {
+		if (separator <= start || separator + 1 >= secondEnd) {
+			throw MalformedCredentialsException.withMessage(malformedMessage);
+		}
+	}
+
+	public int onlyForTestGetMaxBytes() {
+		return maxBytes;
+	}
+}
@@ -0,0 +1,62 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.rest;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+
+public interface IdempotencyStore {
+
+	/**
+	 * loginOncePerIdempotencyKey starts the login only the first time it is called for an
+	 * idempotencyKey together with the same loginType, loginId and secret. Repeated calls while
+	 * the first login is in flight, or shortly after it succeeded, get the result of the first
+	 * login instead of starting a new one. Failed logins are not remembered, so a repeated call
+	 * after a failure starts a new login.
+	 * 
+	 * @param idempotencyKey
+	 *            A String with the Idempotency-Key sent by the client
+	 * @param loginType
+	 *            A String with the type of login, such as password or apptoken
+	 * @param loginId
+	 *            A String with the loginId used in the login
+	 * @param secret
+	 *            A String with the secret used in the login
+	 * @param login
+	 *            A Supplier starting the login, only called if no result for the key is known
+	 * @return A CompletionStage completing with the AuthToken from the first login
+	 */
+	CompletionStage<AuthToken> loginOncePerIdempotencyKey(String idempotencyKey,
+			String loginType, String loginId, String secret,
+			Supplier<CompletionStage<AuthToken>> login);
+
+	/**
+	 * forgetAuthToken makes sure that the authToken with the tokenId and token is never replayed
+	 * again, as it is no longer valid once removed. A repeated call with an Idempotency-Key whose
+	 * first login got this authToken starts a new login instead.
+	 * 
+	 * @param tokenId
+	 *            A String with the id of the removed authToken
+	 * @param token
+	 *            A String with the token of the removed authToken
+	 */
+	void forgetAuthToken(String tokenId, String token);
+}
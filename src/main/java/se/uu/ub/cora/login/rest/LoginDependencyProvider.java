@@ -22,19 +22,61 @@ import se.uu.ub.cora.login.LoginFactoryImp;
 
 public class LoginDependencyProvider {
 	private static LoginFactory loginFactory = new LoginFactoryImp();
+	private static volatile PasswordLogin sharedPasswordLogin;
+	private static volatile AppTokenLogin sharedAppTokenLogin;
 
 	private LoginDependencyProvider() {
 		throw new UnsupportedOperationException();
 	}
 
 	public static PasswordLogin getPasswordLogin() {
+		PasswordLogin passwordLogin = sharedPasswordLogin;
+		if (passwordLogin != null) {
+			return passwordLogin;
+		}
 		return loginFactory.factorPasswordLogin();
 	}
 
 	public static AppTokenLogin getAppTokenLogin() {
+		AppTokenLogin appTokenLogin = sharedAppTokenLogin;
+		if (appTokenLogin != null) {
+			return appTokenLogin;
+		}
 		return loginFactory.factorAppTokenLogin();
 	}
 
+	public static AuthTokenRenewer getAuthTokenRenewer() {
+		return loginFactory.factorAuthTokenRenewer();
+	}
+
+	public static IdempotencyStore getIdempotencyStore() {
+		return loginFactory.factorIdempotencyStore();
+	}
+
+	/**
+	 * useSharedLogins factors one PasswordLogin and one AppTokenLogin using the current
+	 * LoginFactory, and returns those same instances from {@link #getPasswordLogin()} and
+	 * {@link #getAppTokenLogin()} for every request after this.
+	 * <p>
+	 * The shared logins look up the UserStorageView from UserStorageProvider once for each login,
+	 * so no storage view is shared between requests. What is shared is the caches, executors and
+	 * single flight they are given, which are threadsafe, and the TextHasher, which gives each
+	 * thread its own TextHasher from the TextHasherFactory.
+	 */
+	public static void useSharedLogins() {
+		sharedPasswordLogin = loginFactory.factorPasswordLogin();
+		sharedAppTokenLogin = loginFactory.factorAppTokenLogin();
+	}
+
+	/**
+	 * usePerRequestLogins drops any shared logins, so that a new login is factored for every
+	 * request. This is the default.
+	 */
+	public static void usePerRequestLogins() {
+		sharedPasswordLogin = null;
+		sharedAppTokenLogin = null;
+	}
+
 	static void onlyForTestSetLoginFactory(LoginFactory loginFactory) {
 		LoginDependencyProvider.loginFactory = loginFactory;
 	}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2017, 2018, 2021, 2022, 2024, 2025 Uppsala University Library
+ * Copyright 2017, 2018, 2021, 2022, 2024, 2025, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -18,8 +18,18 @@
  */
 package se.uu.ub.cora.login.rest;
 
+import java.io.InputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.function.Function;
+import java.util.function.Supplier;
 
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.ws.rs.Consumes;
@@ -29,109 +39,174 @@ import jakarta.ws.rs.POST;
 import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
+import jakarta.ws.rs.container.AsyncResponse;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.Context;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
 import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
 import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
 import se.uu.ub.cora.initialize.SettingsProvider;
+import se.uu.ub.cora.login.initialize.ExecutorProvider;
 import se.uu.ub.cora.login.initialize.GatekeeperInstanceProvider;
-import se.uu.ub.cora.login.json.AuthTokenToJsonConverter;
+import se.uu.ub.cora.login.json.AuthTokenJsonWriter;
+import se.uu.ub.cora.login.json.BatchLoginResult;
+import se.uu.ub.cora.login.json.BatchLogoutResult;
 
 @Path("/")
 public class LoginEndpoint {
 	public static final String PATH_TO_SYSTEM = SettingsProvider
 			.getSetting("loginPublicPathToSystem");
-	private static final int AFTERHTTP = 10;
-	private String url;
+	private static final String AUTHENTICATION_JSON = "application/vnd.cora.authentication+json";
+	private static final String COMPACT_AUTHENTICATION_JSON = "application/"
+			+ "vnd.cora.authentication.compact+json";
+	private static final MediaTypeSelector MEDIA_TYPE_SELECTOR = MediaTypeSelector
+			.usingDefaultAndAlternative(AUTHENTICATION_JSON, COMPACT_AUTHENTICATION_JSON);
+	private static final int MAX_CACHED_BASE_URLS = 1000;
+	private static final AuthTokenJsonWriter AUTH_TOKEN_JSON_WRITER = new AuthTokenJsonWriter();
+	private static final BaseUrlCache BASE_URL_CACHE = BaseUrlCache
+			.usingPathToSystemAndMaxSize(PATH_TO_SYSTEM, MAX_CACHED_BASE_URLS);
+	private static final String RETRY_AFTER_SECONDS = "1";
+	private static final int MAX_CREDENTIALS_BYTES = 4096;
+	private static final CredentialsParser CREDENTIALS_PARSER = CredentialsParser
+			.usingMaxBytes(MAX_CREDENTIALS_BYTES);
+	private static final String IDEMPOTENCY_KEY_HEADER = "Idempotency-Key";
+	private static final String APPTOKEN_LOGIN = "apptoken";
+	private static final String PASSWORD_LOGIN = "password";
+	private static final int MAX_BATCH_SIZE = 100;
+	private static final int MAX_BATCH_CREDENTIALS_BYTES = 64 * 1024;
+	private static final CredentialsParser BATCH_CREDENTIALS_PARSER = CredentialsParser
+			.usingMaxBytes(MAX_BATCH_CREDENTIALS_BYTES);
 	private HttpServletRequest request;
 
 	public LoginEndpoint(@Context HttpServletRequest request) {
 		this.request = request;
-		url = getBaseURLFromURI();
-	}
-
-	private final String getBaseURLFromURI() {
-		String baseURL = getBaseURLFromRequest();
-		return changeHttpToHttpsIfHeaderSaysSo(baseURL);
-	}
-
-	private String getBaseURLFromRequest() {
-		String tempUrl = request.getRequestURL().toString();
-		String baseURL = tempUrl.substring(0, tempUrl.indexOf('/', AFTERHTTP));
-		return baseURL + PATH_TO_SYSTEM + "authToken/";
-	}
-
-	private String changeHttpToHttpsIfHeaderSaysSo(String baseURI) {
-		String forwardedProtocol = request.getHeader("X-Forwarded-Proto");
-
-		if (ifForwardedProtocolExists(forwardedProtocol)) {
-			return baseURI.replace("http:", forwardedProtocol + ":");
-		}
-		return baseURI;
-	}
-
-	private boolean ifForwardedProtocolExists(String forwardedProtocol) {
-		return null != forwardedProtocol && !"".equals(forwardedProtocol);
 	}
 
 	@POST
 	@Path("apptoken")
 	@Consumes("application/vnd.cora.login")
-	@Produces("application/vnd.cora.authentication+json")
-	public Response getAuthTokenForAppToken(String credentialsAsString) {
+	@Produces({ AUTHENTICATION_JSON, COMPACT_AUTHENTICATION_JSON })
+	public void getAuthTokenForAppToken(@Suspended AsyncResponse asyncResponse,
+			InputStream credentialsBody) {
 		try {
-			return tryToGetAuthTokenForAppToken(credentialsAsString);
+			tryToGetAuthTokenForAppToken(asyncResponse, credentialsBody);
 		} catch (Exception error) {
-			return handleError(error);
+			asyncResponse.resume(handleError(error));
 		}
 	}
 
-	private Response tryToGetAuthTokenForAppToken(String credentialsAsString)
-			throws URISyntaxException {
+	private void tryToGetAuthTokenForAppToken(AsyncResponse asyncResponse,
+			InputStream credentialsBody) {
+		Credentials credentials = CREDENTIALS_PARSER.parse(credentialsBody);
 		AppTokenLogin appTokenLogin = LoginDependencyProvider.getAppTokenLogin();
-		Credentials credentials = credentialsAsRecord(credentialsAsString);
-		AuthToken authToken = getAuthTokenForAppToken(appTokenLogin, credentials);
-		return buildResponseUsingAuthToken(authToken);
+		CompletionStage<AuthToken> authToken = possiblyLoginOncePerIdempotencyKey(APPTOKEN_LOGIN,
+				credentials, () -> appTokenLogin.getAuthTokenAsync(credentials.loginId(),
+						credentials.secret()));
+		resumeWhenComplete(asyncResponse, getBaseUrl(), getMediaType(), authToken);
 	}
 
-	private AuthToken getAuthTokenForAppToken(AppTokenLogin appTokenLogin,
-			Credentials credentials) {
-		return appTokenLogin.getAuthToken(credentials.loginId(), credentials.secret());
+	private CompletionStage<AuthToken> possiblyLoginOncePerIdempotencyKey(String loginType,
+			Credentials credentials, Supplier<CompletionStage<AuthToken>> login) {
+		String idempotencyKey = request.getHeader(IDEMPOTENCY_KEY_HEADER);
+		if (idempotencyKey == null) {
+			return login.get();
+		}
+		IdempotencyStore idempotencyStore = LoginDependencyProvider.getIdempotencyStore();
+		return idempotencyStore.loginOncePerIdempotencyKey(idempotencyKey, loginType,
+				credentials.loginId(), credentials.secret(), login);
 	}
 
-	private Credentials credentialsAsRecord(String credentials) {
-		String[] credentialsArray = credentials.split("\n");
-		return new Credentials(credentialsArray[0], credentialsArray[1]);
+	private String getBaseUrl() {
+		return BASE_URL_CACHE.getBaseUrl(request);
 	}
 
-	private record Credentials(String loginId, String secret) {
+	private String getMediaType() {
+		return MEDIA_TYPE_SELECTOR.selectMediaType(request.getHeader("Accept"));
 	}
 
-	Response buildResponseUsingAuthToken(AuthToken authToken) throws URISyntaxException {
-		String json = convertAuthTokenToJson(authToken, url + authToken.tokenId());
+	private void resumeWhenComplete(AsyncResponse asyncResponse, String baseUrl,
+			String mediaType, CompletionStage<AuthToken> authToken) {
+		authToken.whenComplete((token, error) -> asyncResponse
+				.resume(buildResponseUsingAuthTokenOrError(token, baseUrl, mediaType, error)));
+	}
+
+	private Response buildResponseUsingAuthTokenOrError(AuthToken authToken, String baseUrl,
+			String mediaType, Throwable error) {
+		if (error != null) {
+			return handleError(unwrapCompletionException(error));
+		}
+		try {
+			return buildResponseUsingAuthToken(authToken, baseUrl, mediaType);
+		} catch (Exception e) {
+			return handleError(e);
+		}
+	}
+
+	private Throwable unwrapCompletionException(Throwable error) {
+		if (error instanceof CompletionException && error.getCause() != null) {
+			return error.getCause();
+		}
+		return error;
+	}
+
+	Response buildResponseUsingAuthToken(AuthToken authToken, String baseUrl, String mediaType)
+			throws URISyntaxException {
+		StreamingOutput json = createJsonOutput(authToken, baseUrl, mediaType);
 		URI uri = new URI("authToken/" + authToken.tokenId());
-		return Response.created(uri).entity(json).build();
+		return Response.created(uri).type(mediaType).entity(json).build();
 	}
 
-	private String convertAuthTokenToJson(AuthToken authToken, String url) {
+	private StreamingOutput createJsonOutput(AuthToken authToken, String baseUrl,
+			String mediaType) {
+		if (COMPACT_AUTHENTICATION_JSON.equals(mediaType)) {
+			return outputStream -> AUTH_TOKEN_JSON_WRITER.writeCompactAuthTokenAsJson(authToken,
+					outputStream);
+		}
+		String url = baseUrl + authToken.tokenId();
+		return outputStream -> AUTH_TOKEN_JSON_WRITER.writeAuthTokenAsJson(authToken, url,
+				outputStream);
+	}
 
-		AuthTokenToJsonConverter authTokenToJsonConverter = new AuthTokenToJsonConverter(authToken,
-				url);
-		return authTokenToJsonConverter.convertAuthTokenToJson();
+	private Response handleError(Throwable error) {
+		Status status = getStatusForError(error);
+		if (status == Status.SERVICE_UNAVAILABLE) {
+			return buildServiceUnavailableResponse();
+		}
+		return buildResponseUsingStatus(status);
 	}
 
-	private Response handleError(Exception error) {
+	private Status getStatusForError(Throwable error) {
 		if (isLoginException(error)) {
-			return buildResponseUsingStatus(Response.Status.UNAUTHORIZED);
+			return Status.UNAUTHORIZED;
+		}
+		if (isUnavailable(error)) {
+			return Status.SERVICE_UNAVAILABLE;
 		}
-		return buildResponseUsingStatus(Status.INTERNAL_SERVER_ERROR);
+		if (isMalformedCredentialsException(error)) {
+			return Status.BAD_REQUEST;
+		}
+		return Status.INTERNAL_SERVER_ERROR;
 	}
 
-	private boolean isLoginException(Exception error) {
+	private boolean isLoginException(Throwable error) {
 		return error instanceof LoginException;
 	}
 
+	private boolean isLoginUnavailableException(Throwable error) {
+		return error instanceof LoginUnavailableException;
+	}
+
+	private boolean isMalformedCredentialsException(Throwable error) {
+		return error instanceof MalformedCredentialsException;
+	}
+
+	private Response buildServiceUnavailableResponse() {
+		return Response.status(Status.SERVICE_UNAVAILABLE)
+				.header("Retry-After", RETRY_AFTER_SECONDS).build();
+	}
+
 	private Response buildResponseUsingStatus(Status status) {
 		return Response.status(status).build();
 	}
@@ -139,50 +214,126 @@ public class LoginEndpoint {
 	@POST
 	@Path("password")
 	@Consumes("application/vnd.cora.login")
-	@Produces("application/vnd.cora.authentication+json")
-	public Response getAuthTokenForPassword(String credentialsAsString) {
+	@Produces({ AUTHENTICATION_JSON, COMPACT_AUTHENTICATION_JSON })
+	public void getAuthTokenForPassword(@Suspended AsyncResponse asyncResponse,
+			InputStream credentialsBody) {
 		try {
-			return tryToGetAuthTokenForPassword(credentialsAsString);
+			tryToGetAuthTokenForPassword(asyncResponse, credentialsBody);
 		} catch (Exception error) {
-			return handleError(error);
+			asyncResponse.resume(handleError(error));
 		}
 	}
 
-	private Response tryToGetAuthTokenForPassword(String credentialsAsString)
-			throws URISyntaxException {
+	private void tryToGetAuthTokenForPassword(AsyncResponse asyncResponse,
+			InputStream credentialsBody) {
+		Credentials credentials = CREDENTIALS_PARSER.parse(credentialsBody);
 		PasswordLogin passwordLogin = LoginDependencyProvider.getPasswordLogin();
-		Credentials credentials = credentialsAsRecord(credentialsAsString);
-		AuthToken authToken = getAuthTokenForPassword(passwordLogin, credentials);
-		return buildResponseUsingAuthToken(authToken);
+		CompletionStage<AuthToken> authToken = possiblyLoginOncePerIdempotencyKey(PASSWORD_LOGIN,
+				credentials, () -> passwordLogin.getAuthTokenAsync(credentials.loginId(),
+						credentials.secret()));
+		resumeWhenComplete(asyncResponse, getBaseUrl(), getMediaType(), authToken);
+	}
+
+	@POST
+	@Path("apptoken/batch")
+	@Consumes("application/vnd.cora.loginBatch")
+	@Produces("application/vnd.cora.authenticationBatch+json")
+	public void getAuthTokensForAppTokens(@Suspended AsyncResponse asyncResponse,
+			InputStream credentialsBody) {
+		try {
+			tryToGetAuthTokensForAppTokens(asyncResponse, credentialsBody);
+		} catch (Exception error) {
+			asyncResponse.resume(handleError(error));
+		}
+	}
+
+	private void tryToGetAuthTokensForAppTokens(AsyncResponse asyncResponse,
+			InputStream credentialsBody) {
+		List<Credentials> credentialsList = BATCH_CREDENTIALS_PARSER.parseList(credentialsBody);
+		ifBatchIsTooLargeThrowException(credentialsList);
+		AppTokenLogin appTokenLogin = LoginDependencyProvider.getAppTokenLogin();
+		List<CompletableFuture<BatchLoginResult>> results = new ArrayList<>();
+		for (Credentials credentials : credentialsList) {
+			results.add(startBatchLogin(appTokenLogin, credentials));
+		}
+		String baseUrl = getBaseUrl();
+		resumeWhenAllComplete(asyncResponse, results,
+				loginResults -> buildBatchLoginResponse(baseUrl, loginResults));
+	}
+
+	private void ifBatchIsTooLargeThrowException(List<?> batch) {
+		if (batch.size() > MAX_BATCH_SIZE) {
+			throw MalformedCredentialsException.withMessage(
+					"Batch can not hold more than " + MAX_BATCH_SIZE + " credentials.");
+		}
 	}
 
-	private AuthToken getAuthTokenForPassword(PasswordLogin passwordLogin,
+	private CompletableFuture<BatchLoginResult> startBatchLogin(AppTokenLogin appTokenLogin,
 			Credentials credentials) {
-		return passwordLogin.getAuthToken(credentials.loginId(), credentials.secret());
+		return startLogin(appTokenLogin, credentials)
+				.handle((token, error) -> createBatchLoginResult(credentials, token, error))
+				.toCompletableFuture();
+	}
+
+	private CompletionStage<AuthToken> startLogin(AppTokenLogin appTokenLogin,
+			Credentials credentials) {
+		try {
+			return appTokenLogin.getAuthTokenAsync(credentials.loginId(), credentials.secret());
+		} catch (Exception error) {
+			return CompletableFuture.failedFuture(error);
+		}
+	}
+
+	private BatchLoginResult createBatchLoginResult(Credentials credentials, AuthToken token,
+			Throwable error) {
+		if (error != null) {
+			Status status = getStatusForError(unwrapCompletionException(error));
+			return new BatchLoginResult(credentials.loginId(), status.getStatusCode(), null);
+		}
+		return new BatchLoginResult(credentials.loginId(), Status.CREATED.getStatusCode(), token);
+	}
+
+	private <T> void resumeWhenAllComplete(AsyncResponse asyncResponse,
+			List<CompletableFuture<T>> results, Function<List<T>, Response> responseBuilder) {
+		CompletableFuture.allOf(results.toArray(CompletableFuture[]::new))
+				.whenComplete((done, error) -> asyncResponse
+						.resume(responseBuilder.apply(joinAll(results))));
+	}
+
+	private <T> List<T> joinAll(List<CompletableFuture<T>> results) {
+		return results.stream().map(CompletableFuture::join).toList();
+	}
+
+	private Response buildBatchLoginResponse(String baseUrl, List<BatchLoginResult> results) {
+		StreamingOutput json = outputStream -> AUTH_TOKEN_JSON_WRITER
+				.writeBatchLoginResultsAsJson(results, baseUrl, outputStream);
+		return Response.ok().entity(json).build();
 	}
 
 	@POST
 	@Path("authToken/{tokenId}")
-	@Produces("application/vnd.cora.authentication+json")
+	@Produces({ AUTHENTICATION_JSON, COMPACT_AUTHENTICATION_JSON })
 	public Response renewAuthToken(@HeaderParam("authToken") String token,
 			@PathParam("tokenId") String tokenId) {
 		try {
 			return tryToRenewAuthToken(tokenId, token);
+		} catch (LoginUnavailableException error) {
+			return buildServiceUnavailableResponse();
 		} catch (Exception error) {
 			return buildResponseUsingStatus(Response.Status.UNAUTHORIZED);
 		}
 	}
 
 	private Response tryToRenewAuthToken(String tokenId, String token) {
-		GatekeeperTokenProvider gatekeeperTokenProvider = GatekeeperInstanceProvider
-				.getGatekeeperTokenProvider();
-		AuthToken renewedAuthToken = gatekeeperTokenProvider.renewAuthToken(tokenId, token);
-		return buildResponseOKUsingAuthToken(renewedAuthToken);
+		AuthTokenRenewer authTokenRenewer = LoginDependencyProvider.getAuthTokenRenewer();
+		AuthToken renewedAuthToken = authTokenRenewer.renewAuthToken(tokenId, token);
+		return buildResponseOKUsingAuthToken(renewedAuthToken, getBaseUrl(), getMediaType());
 	}
 
-	Response buildResponseOKUsingAuthToken(AuthToken authToken) {
-		String json = convertAuthTokenToJson(authToken, url + authToken.tokenId());
-		return Response.ok().entity(json).build();
+	Response buildResponseOKUsingAuthToken(AuthToken authToken, String baseUrl,
+			String mediaType) {
+		StreamingOutput json = createJsonOutput(authToken, baseUrl, mediaType);
+		return Response.ok().type(mediaType).entity(json).build();
 	}
 
 	@DELETE
@@ -191,6 +342,8 @@ public class LoginEndpoint {
 			@PathParam("tokenId") String tokenId) {
 		try {
 			return tryToRemoveAuthToken(tokenId, token);
+		} catch (LoginUnavailableException error) {
+			return buildServiceUnavailableResponse();
 		} catch (Exception error) {
 			return buildResponseUsingStatus(Response.Status.NOT_FOUND);
 		}
@@ -199,7 +352,86 @@ public class LoginEndpoint {
 	private Response tryToRemoveAuthToken(String tokenId, String token) {
 		GatekeeperTokenProvider gatekeeperTokenProvider = GatekeeperInstanceProvider
 				.getGatekeeperTokenProvider();
-		gatekeeperTokenProvider.removeAuthToken(tokenId, token);
+		AuthTokenRenewer authTokenRenewer = LoginDependencyProvider.getAuthTokenRenewer();
+		IdempotencyStore idempotencyStore = LoginDependencyProvider.getIdempotencyStore();
+		removeAndForgetAuthToken(gatekeeperTokenProvider, authTokenRenewer, idempotencyStore,
+				tokenId, token);
 		return buildResponseUsingStatus(Status.OK);
 	}
+
+	private void removeAndForgetAuthToken(GatekeeperTokenProvider gatekeeperTokenProvider,
+			AuthTokenRenewer authTokenRenewer, IdempotencyStore idempotencyStore, String tokenId,
+			String token) {
+		try {
+			gatekeeperTokenProvider.removeAuthToken(tokenId, token);
+		} finally {
+			authTokenRenewer.forgetRenewedAuthToken(tokenId, token);
+			idempotencyStore.forgetAuthToken(tokenId, token);
+		}
+	}
+
+	@POST
+	@Path("authToken/batch/delete")
+	@Consumes("application/vnd.cora.logoutBatch")
+	@Produces("application/vnd.cora.logoutBatch+json")
+	public void removeAuthTokens(@Suspended AsyncResponse asyncResponse, InputStream tokensBody) {
+		try {
+			tryToRemoveAuthTokens(asyncResponse, tokensBody);
+		} catch (Exception error) {
+			asyncResponse.resume(handleError(error));
+		}
+	}
+
+	private void tryToRemoveAuthTokens(AsyncResponse asyncResponse, InputStream tokensBody) {
+		List<TokenCredentials> tokens = BATCH_CREDENTIALS_PARSER.parseTokenList(tokensBody);
+		ifBatchIsTooLargeThrowException(tokens);
+		GatekeeperTokenProvider gatekeeperTokenProvider = GatekeeperInstanceProvider
+				.getGatekeeperTokenProvider();
+		AuthTokenRenewer authTokenRenewer = LoginDependencyProvider.getAuthTokenRenewer();
+		IdempotencyStore idempotencyStore = LoginDependencyProvider.getIdempotencyStore();
+		Executor loginExecutor = ExecutorProvider.getLoginExecutor();
+		List<CompletableFuture<BatchLogoutResult>> results = new ArrayList<>();
+		for (TokenCredentials token : tokens) {
+			Runnable removal = () -> removeAndForgetAuthToken(gatekeeperTokenProvider,
+					authTokenRenewer, idempotencyStore, token.tokenId(), token.token());
+			results.add(startBatchLogout(removal, loginExecutor, token.tokenId()));
+		}
+		resumeWhenAllComplete(asyncResponse, results, this::buildBatchLogoutResponse);
+	}
+
+	private CompletableFuture<BatchLogoutResult> startBatchLogout(Runnable removal,
+			Executor loginExecutor, String tokenId) {
+		return startRemoveAuthToken(removal, loginExecutor)
+				.handle((done, error) -> createBatchLogoutResult(tokenId, error));
+	}
+
+	private CompletableFuture<Void> startRemoveAuthToken(Runnable removal,
+			Executor loginExecutor) {
+		try {
+			return CompletableFuture.runAsync(removal, loginExecutor);
+		} catch (RejectedExecutionException error) {
+			return CompletableFuture.failedFuture(error);
+		}
+	}
+
+	private BatchLogoutResult createBatchLogoutResult(String tokenId, Throwable error) {
+		if (error == null) {
+			return new BatchLogoutResult(tokenId, Status.OK.getStatusCode());
+		}
+		if (isUnavailable(unwrapCompletionException(error))) {
+			return new BatchLogoutResult(tokenId, Status.SERVICE_UNAVAILABLE.getStatusCode());
+		}
+		return new BatchLogoutResult(tokenId, Status.NOT_FOUND.getStatusCode());
+	}
+
+	private boolean isUnavailable(Throwable error) {
+		return error instanceof RejectedExecutionException
+				|| isLoginUnavailableException(error);
+	}
+
+	private Response buildBatchLogoutResponse(List<BatchLogoutResult> results) {
+		StreamingOutput json = outputStream -> AUTH_TOKEN_JSON_WRITER
+				.writeBatchLogoutResultsAsJson(results, outputStream);
+		return Response.ok().entity(json).build();
+	}
 }
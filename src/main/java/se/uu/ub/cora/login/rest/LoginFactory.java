@@ -33,4 +33,18 @@ public interface LoginFactory {
 	 * @return A new AppTokenLogin object.
 	 */
 	AppTokenLogin factorAppTokenLogin();
+
+	/**
+	 * factorAuthTokenRenewer is intended to factor new instances of AuthTokenRenewer
+	 * 
+	 * @return A new AuthTokenRenewer object.
+	 */
+	AuthTokenRenewer factorAuthTokenRenewer();
+
+	/**
+	 * factorIdempotencyStore is intended to factor new instances of IdempotencyStore
+	 * 
+	 * @return A new IdempotencyStore object.
+	 */
+	IdempotencyStore factorIdempotencyStore();
 }
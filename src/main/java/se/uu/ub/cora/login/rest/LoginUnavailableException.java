@@ -0,0 +1,46 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.rest;
+
+/**
+ * LoginUnavailableException is thrown when a login can not be handled right now because a needed
+ * resource is saturated or otherwise temporarily unavailable. It is intended to be answered with
+ * 503 Service Unavailable, so that the client can retry later.
+ */
+public class LoginUnavailableException extends RuntimeException {
+
+	private static final long serialVersionUID = -4021985216342387532L;
+
+	public static LoginUnavailableException withMessage(String message) {
+		return new LoginUnavailableException(message);
+	}
+
+	public static LoginUnavailableException withMessageAndException(String message,
+			Exception exception) {
+		return new LoginUnavailableException(message, exception);
+	}
+
+	private LoginUnavailableException(String message) {
+		super(message);
+	}
+
+	private LoginUnavailableException(String message, Exception exception) {
+		super(message, exception);
+	}
+}
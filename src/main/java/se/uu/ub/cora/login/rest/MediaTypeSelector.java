@@ -0,0 +1,91 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.rest;
+
+/**
+ * MediaTypeSelector selects between a default media type and one alternative media type using the
+ * Accept header of a request. The alternative is only selected when the Accept header gives it a
+ * higher quality than the default, so requests without an Accept header, or accepting both equally,
+ * get the default. Wildcards are not considered as they match both media types equally.
+ * MediaTypeSelector is threadsafe.
+ */
+public final class MediaTypeSelector {
+	private static final double NOT_ACCEPTED = 0;
+	private static final double DEFAULT_QUALITY = 1;
+	private String defaultMediaType;
+	private String alternativeMediaType;
+
+	public static MediaTypeSelector usingDefaultAndAlternative(String defaultMediaType,
+			String alternativeMediaType) {
+		return new MediaTypeSelector(defaultMediaType, alternativeMediaType);
+	}
+
+	private MediaTypeSelector(String defaultMediaType, String alternativeMediaType) {
+		this.defaultMediaType = defaultMediaType;
+		this.alternativeMediaType = alternativeMediaType;
+	}
+
+	/**
+	 * selectMediaType returns the alternative media type if the accept header prefers it over the
+	 * default media type, otherwise the default media type.
+	 * 
+	 * @param acceptHeader
+	 *            A String with the Accept header of the request, or null if the request has none
+	 * @return A String with the selected media type
+	 */
+	public String selectMediaType(String acceptHeader) {
+		if (acceptHeader == null) {
+			return defaultMediaType;
+		}
+		return selectMediaTypeUsingAcceptHeader(acceptHeader);
+	}
+
+	private String selectMediaTypeUsingAcceptHeader(String acceptHeader) {
+		double defaultQuality = NOT_ACCEPTED;
+		double alternativeQuality = NOT_ACCEPTED;
+		for (String acceptedMediaType : acceptHeader.split(",")) {
+			String[] typeAndParameters = acceptedMediaType.split(";");
+			String type = typeAndParameters[0].trim();
+			if (type.equalsIgnoreCase(defaultMediaType)) {
+				defaultQuality = readQuality(typeAndParameters);
+			} else if (type.equalsIgnoreCase(alternativeMediaType)) {
+				alternativeQuality = readQuality(typeAndParameters);
+			}
+		}
+		return alternativeQuality > defaultQuality ? alternativeMediaType : defaultMediaType;
+	}
+
+	private double readQuality(String[] typeAndParameters) {
+		for (int i = 1; i < typeAndParameters.length; i++) {
+			String parameter = typeAndParameters[i].trim();
+			if (parameter.startsWith("q=")) {
+				return parseQuality(parameter.substring(2));
+			}
+		}
+		return DEFAULT_QUALITY;
+	}
+
+	private double parseQuality(String quality) {
+		try {
+			return Double.parseDouble(quality.trim());
+		} catch (NumberFormatException e) {
+			return NOT_ACCEPTED;
+		}
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2024 Uppsala University Library
+ * Copyright 2024, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -18,6 +18,8 @@
  */
 package se.uu.ub.cora.login.rest;
 
+import java.util.concurrent.CompletionStage;
+
 import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
 
 public interface PasswordLogin {
@@ -36,4 +38,20 @@ public interface PasswordLogin {
 	 */
 	AuthToken getAuthToken(String loginId, String password);
 
+	/**
+	 * getAuthTokenAsync is the non-blocking variant of {@link #getAuthToken(String, String)}. It
+	 * returns at once and does the storage lookup, the password check and the call to gatekeeper
+	 * on other threads than the calling one.
+	 * 
+	 * @param loginId
+	 *            A String containing the loginId.
+	 * @param password
+	 *            A String containing the password to be matched
+	 * @return A CompletionStage that completes with a valid AuthToken if the user is active and
+	 *         the password matches. It completes exceptionally with a {@link LoginException} if
+	 *         the login fails, or with a {@link LoginUnavailableException} if the login can not be
+	 *         handled right now.
+	 */
+	CompletionStage<AuthToken> getAuthTokenAsync(String loginId, String password);
+
 }
@@ -0,0 +1,66 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.singleflight;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * SingleFlight coalesces identical concurrent logins, so that only the first of a number of
+ * concurrent requests with the same credentials does the expensive work, and the rest share its
+ * result.
+ */
+public interface SingleFlight {
+
+	/**
+	 * createKeyUsingTypeLoginIdAndSecret creates a key identifying a login. The secret is only
+	 * part of the key as a keyed digest, so that the plain secret is never kept by SingleFlight.
+	 * 
+	 * @param loginType
+	 *            A String with the type of login, such as password or apptoken
+	 * @param loginId
+	 *            A String with the loginId used in the login
+	 * @param secret
+	 *            A String with the secret used in the login
+	 * @return A String with a key that is equal for logins with equal type, loginId and secret
+	 */
+	String createKeyUsingTypeLoginIdAndSecret(String loginType, String loginId, String secret);
+
+	/**
+	 * runOnceForKey starts the work if no work is in flight for the key, otherwise the result of
+	 * the work already in flight is returned. The key is released as soon as the work completes,
+	 * so results are only shared between concurrent requests and never cached.
+	 * 
+	 * @param key
+	 *            A String created by
+	 *            {@link #createKeyUsingTypeLoginIdAndSecret(String, String, String)}
+	 * @param work
+	 *            A Supplier starting the work, only called if no work is in flight for the key
+	 * @return A CompletableFuture completing with the result of the work
+	 */
+	<T> CompletableFuture<T> runOnceForKey(String key, Supplier<CompletableFuture<T>> work);
+
+	/**
+	 * sharesAuthToken returns if concurrent identical logins should share one authToken, or if
+	 * they only should share the verification of the credentials and get one authToken each.
+	 * 
+	 * @return A boolean, true if the authToken should be shared
+	 */
+	boolean sharesAuthToken();
+}
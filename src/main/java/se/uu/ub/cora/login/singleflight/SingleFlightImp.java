@@ -0,0 +1,121 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.singleflight;
+
+import java.nio.charset.StandardCharsets;
+import java.security.GeneralSecurityException;
+import java.security.SecureRandom;
+import java.util.Base64;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.function.Supplier;
+
+import javax.crypto.Mac;
+import javax.crypto.spec.SecretKeySpec;
+
+public final class SingleFlightImp implements SingleFlight {
+	private static final String HMAC_ALGORITHM = "HmacSHA256";
+	private static final int DIGEST_KEY_LENGTH = 32;
+	private static final byte SEPARATOR = 0;
+	private ConcurrentMap<String, CompletableFuture<?>> inFlight = new ConcurrentHashMap<>();
+	private SecretKeySpec digestKey;
+	private boolean sharesAuthToken;
+
+	public static SingleFlightImp usingSharedAuthToken(boolean sharesAuthToken) {
+		return new SingleFlightImp(sharesAuthToken);
+	}
+
+	private SingleFlightImp(boolean sharesAuthToken) {
+		this.sharesAuthToken = sharesAuthToken;
+		digestKey = createRandomDigestKey();
+	}
+
+	private SecretKeySpec createRandomDigestKey() {
+		byte[] key = new byte[DIGEST_KEY_LENGTH];
+		new SecureRandom().nextBytes(key);
+		return new SecretKeySpec(key, HMAC_ALGORITHM);
+	}
+
+	@Override
+	public String createKeyUsingTypeLoginIdAndSecret(String loginType, String loginId,
+			String secret) {
+		Mac mac = createMac();
+		updateMacWithPart(mac, loginType);
+		updateMacWithPart(mac, loginId);
+		updateMacWithPart(mac, secret);
+		return Base64.getEncoder().encodeToString(mac.doFinal());
+	}
+
+	private Mac createMac() {
+		try {
+			Mac mac = Mac.getInstance(HMAC_ALGORITHM);
+			mac.init(digestKey);
+			return mac;
+		} catch (GeneralSecurityException e) {
+			throw new IllegalStateException("Could not create keyed digest.", e);
+		}
+	}
+
+	private void updateMacWithPart(Mac mac, String part) {
+		mac.update(part.getBytes(StandardCharsets.UTF_8));
+		mac.update(SEPARATOR);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public <T> CompletableFuture<T> runOnceForKey(String key, Supplier<CompletableFuture<T>> work) {
+		CompletableFuture<T> promise = new CompletableFuture<>();
+		CompletableFuture<?> existing = inFlight.putIfAbsent(key, promise);
+		if (existing != null) {
+			return (CompletableFuture<T>) existing;
+		}
+		startWorkAndCompletePromise(key, work, promise);
+		return promise;
+	}
+
+	private <T> void startWorkAndCompletePromise(String key, Supplier<CompletableFuture<T>> work,
+			CompletableFuture<T> promise) {
+		try {
+			work.get().whenComplete((result, error) -> releaseKeyAndComplete(key, promise, result,
+					error));
+		} catch (RuntimeException error) {
+			releaseKeyAndComplete(key, promise, null, error);
+		}
+	}
+
+	private <T> void releaseKeyAndComplete(String key, CompletableFuture<T> promise, T result,
+			Throwable error) {
+		inFlight.remove(key, promise);
+		if (error != null) {
+			promise.completeExceptionally(error);
+		} else {
+			promise.complete(result);
+		}
+	}
+
+	@Override
+	public boolean sharesAuthToken() {
+		return sharesAuthToken;
+	}
+
+	public int onlyForTestGetNumberOfKeysInFlight() {
+		return inFlight.size();
+	}
+}
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.storage;
+
+import se.uu.ub.cora.gatekeeper.user.User;
+import se.uu.ub.cora.login.cache.Cache;
+import se.uu.ub.cora.login.initialize.CacheProvider;
+
+/**
+ * LoginCacheAdmin lets the code that changes users and system secrets in storage tell login about
+ * the change, so that for instance a deactivated user or a revoked app token is rejected at once.
+ * Changes not reported here take effect when the cached entry expires, so the time to live of the
+ * user cache and the system secret cache (30 seconds by default) is the upper bound for how long a
+ * revoked credential can still be used. It also exposes the hit and miss counters of the login
+ * caches. Calls made before login is initialized have no effect.
+ */
+public final class LoginCacheAdmin {
+
+	private LoginCacheAdmin() {
+		// not called
+		throw new UnsupportedOperationException();
+	}
+
+	/**
+	 * invalidateUser removes the cached user for the loginId, so that the next login reads the
+	 * user from storage again.
+	 * 
+	 * @param loginId
+	 *            A String with the loginId of the changed user
+	 */
+	public static void invalidateUser(String loginId) {
+		Cache<User> userCache = CacheProvider.getUserCache();
+		if (userCache != null) {
+			userCache.invalidate(loginId);
+		}
+	}
+
+	/**
+	 * invalidateSystemSecret removes the cached system secret for the systemSecretId, so that the
+	 * next login reads it from storage again. Call it when a password or app token is changed or
+	 * removed.
+	 * 
+	 * @param systemSecretId
+	 *            A String with the id of the changed system secret
+	 */
+	public static void invalidateSystemSecret(String systemSecretId) {
+		Cache<String> systemSecretCache = CacheProvider.getSystemSecretCache();
+		if (systemSecretCache != null) {
+			systemSecretCache.invalidate(systemSecretId);
+		}
+	}
+
+	/**
+	 * getUserCacheStatistics returns the hit and miss counters of the user cache.
+	 * 
+	 * @return A CacheStatistics for the user cache
+	 */
+	public static CacheStatistics getUserCacheStatistics() {
+		return createStatistics(CacheProvider.getUserCache());
+	}
+
+	/**
+	 * getSystemSecretCacheStatistics returns the hit and miss counters of the system secret cache.
+	 * 
+	 * @return A CacheStatistics for the system secret cache
+	 */
+	public static CacheStatistics getSystemSecretCacheStatistics() {
+		return createStatistics(CacheProvider.getSystemSecretCache());
+	}
+
+	private static CacheStatistics createStatistics(Cache<?> cache) {
+		if (cache == null) {
+			return new CacheStatistics(0, 0);
+		}
+		return new CacheStatistics(cache.getHits(), cache.getMisses());
+	}
+}
@@ -0,0 +1,41 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.storage;
+
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * SystemSecretBatchStorage can be implemented by a UserStorageView that is able to read several
+ * system secrets in one call. Login uses the batch lookup when the UserStorageView provided by
+ * UserStorageProvider implements this interface, and falls back to one call to
+ * getSystemSecretById per secret otherwise.
+ */
+public interface SystemSecretBatchStorage {
+
+	/**
+	 * getSystemSecretsByIds reads the stored secrets for all the requested ids in one call.
+	 * 
+	 * @param systemSecretIds
+	 *            A Set with the ids of the system secrets to read
+	 * @return A Map from system secret id to stored secret. Ids that can not be found are left out
+	 *         of the map.
+	 */
+	Map<String, String> getSystemSecretsByIds(Set<String> systemSecretIds);
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2024 Uppsala University Library
+ * Copyright 2024, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -23,8 +23,16 @@ import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -36,10 +44,21 @@ import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
 import se.uu.ub.cora.gatekeepertokenprovider.UserInfo;
 import se.uu.ub.cora.logger.LoggerProvider;
 import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
+import se.uu.ub.cora.login.hashing.HashingExecutorImp;
+import se.uu.ub.cora.login.hashing.KeyedDigest;
+import se.uu.ub.cora.login.hashing.KeyedDigestTextHasher;
 import se.uu.ub.cora.login.initialize.GatekeeperInstanceProvider;
 import se.uu.ub.cora.login.rest.AppTokenLogin;
 import se.uu.ub.cora.login.rest.LoginException;
+import se.uu.ub.cora.login.cache.CacheImp;
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+import se.uu.ub.cora.login.singleflight.SingleFlightImp;
+import se.uu.ub.cora.login.spies.CacheSpy;
+import se.uu.ub.cora.login.spies.ExecutorSpy;
 import se.uu.ub.cora.login.spies.GatekeeperTokenProviderSpy;
+import se.uu.ub.cora.login.spies.HashingExecutorSpy;
+import se.uu.ub.cora.login.spies.SingleFlightSpy;
+import se.uu.ub.cora.login.spies.SystemSecretBatchUserStorageViewSpy;
 import se.uu.ub.cora.login.spies.TextHasherSpy;
 import se.uu.ub.cora.login.spies.UserStorageViewInstanceProviderSpy;
 import se.uu.ub.cora.login.spies.UserStorageViewSpy;
@@ -50,11 +69,19 @@ public class AppTokenLoginTest {
 	private static final String SOME_LOGIN_ID = "someLoginId";
 	private static final String SOME_APP_TOKEN = "someAppToken";
 	private static final String SOME_SYSTEM_SECRET_ID = "someSystemSecretId";
+	private static final byte[] SOME_DIGEST_KEY = "someDigestKeyThatIsLongEnough"
+			.getBytes(StandardCharsets.UTF_8);
 	private User user;
 	private TextHasherSpy textHasher;
 	private UserStorageViewInstanceProviderSpy userStorageInstanceProvider;
 	private UserStorageViewSpy userStorageView;
 	private GatekeeperTokenProviderSpy gatekeeperTokenProvider;
+	private ExecutorSpy loginExecutor;
+	private SingleFlightSpy singleFlight;
+	private CacheSpy<User> userCache;
+	private CacheSpy<String> systemSecretCache;
+	private CacheSpy<String> lastMatchedAppTokenIdCache;
+	private HashingExecutorSpy hashingExecutor;
 
 	@BeforeMethod
 	private void beforeMethod() {
@@ -70,7 +97,22 @@ public class AppTokenLoginTest {
 		gatekeeperTokenProvider = new GatekeeperTokenProviderSpy();
 		GatekeeperInstanceProvider.setGatekeeperTokenProvider(gatekeeperTokenProvider);
 
-		apptokenLogin = new AppTokenLoginImp(textHasher);
+		loginExecutor = new ExecutorSpy();
+		hashingExecutor = new HashingExecutorSpy();
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> false);
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matchesAsync",
+				() -> CompletableFuture.completedFuture(false));
+		singleFlight = new SingleFlightSpy();
+		userCache = new CacheSpy<>();
+		systemSecretCache = new CacheSpy<>();
+		lastMatchedAppTokenIdCache = new CacheSpy<>();
+		apptokenLogin = new AppTokenLoginImp(textHasher, hashingExecutor, loginExecutor,
+				singleFlight, userCache, systemSecretCache, lastMatchedAppTokenIdCache);
+	}
+
+	private void setHashingMatchesAsync(boolean matches) {
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matchesAsync",
+				() -> CompletableFuture.completedFuture(matches));
 	}
 
 	private User configureUser(User user, boolean active, Optional<String> passwordId,
@@ -95,6 +137,53 @@ public class AppTokenLoginTest {
 				.onlyForTestSetUserStorageViewInstanceProvider(userStorageInstanceProvider);
 	}
 
+	@Test
+	public void testUserStorageViewIsNotLookedUpOnInitialization() throws Exception {
+		userStorageInstanceProvider.MCR.assertMethodNotCalled("getStorageView");
+	}
+
+	@Test
+	public void testUserStorageViewIsLookedUpForEachLogin() throws Exception {
+		UserStorageViewSpy otherUserStorageView = new UserStorageViewSpy();
+		otherUserStorageView.MRV.setDefaultReturnValuesSupplier("getUserByLoginId", () -> user);
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+		userStorageInstanceProvider.MRV.setDefaultReturnValuesSupplier("getStorageView",
+				() -> otherUserStorageView);
+
+		apptokenLogin.getAuthToken("otherLoginId", SOME_APP_TOKEN);
+
+		userStorageView.MCR.assertParameters("getUserByLoginId", 0, SOME_LOGIN_ID);
+		otherUserStorageView.MCR.assertParameters("getUserByLoginId", 0, "otherLoginId");
+	}
+
+	@Test
+	public void testUserStorageViewIsLookedUpOncePerLogin() throws Exception {
+		hashingExecutor.MRV.setSpecificReturnValuesSupplier("matches", () -> true, textHasher,
+				SOME_APP_TOKEN, "someHashedAppToken2");
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedAppToken1", "someAppTokenId1");
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedAppToken2", "someAppTokenId2");
+
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		userStorageInstanceProvider.MCR.assertNumberOfCallsToMethod("getStorageView", 1);
+		userStorageView.MCR.assertNumberOfCallsToMethod("getSystemSecretById", 2);
+	}
+
+	@Test
+	public void testUserStorageViewIsLookedUpOncePerLoginAsync() throws Exception {
+		setHashingMatchesAsync(true);
+
+		apptokenLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN).toCompletableFuture()
+				.join();
+
+		userStorageInstanceProvider.MCR.assertNumberOfCallsToMethod("getStorageView", 1);
+		userStorageView.MCR.assertParameters("getUserByLoginId", 0, SOME_LOGIN_ID);
+		userStorageView.MCR.assertParameters("getSystemSecretById", 0, "someAppTokenId1");
+	}
+
 	@Test(expectedExceptions = LoginException.class, expectedExceptionsMessageRegExp = ""
 			+ "Login failed.")
 	public void testGetAuthToken_ExceptionWhileGettingAuthToken() throws Exception {
@@ -106,7 +195,7 @@ public class AppTokenLoginTest {
 
 	@Test
 	public void testGetAuthToken_CallsGetUser() throws Exception {
-		textHasher.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
 
 		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
 
@@ -115,7 +204,7 @@ public class AppTokenLoginTest {
 
 	@Test
 	public void testGetAuthToken_UserIsNotActiveThrowLoginException() throws Exception {
-		textHasher.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
 		configureUser(user, false, Optional.empty(), "someAppTokenId1");
 		try {
 			apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
@@ -139,15 +228,15 @@ public class AppTokenLoginTest {
 	@Test(expectedExceptions = LoginException.class, expectedExceptionsMessageRegExp = ""
 			+ "Login failed.")
 	public void testNoMatch() throws Exception {
-		textHasher.MRV.setDefaultReturnValuesSupplier("matches", () -> false);
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> false);
 
 		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
 	}
 
 	@Test
 	public void testSecondAppTokenMatches() throws Exception {
-		textHasher.MRV.setSpecificReturnValuesSupplier("matches", () -> true, SOME_APP_TOKEN,
-				"someHashedAppToken2");
+		hashingExecutor.MRV.setSpecificReturnValuesSupplier("matches", () -> true, textHasher,
+				SOME_APP_TOKEN, "someHashedAppToken2");
 		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
 				() -> "someHashedAppToken1", "someAppTokenId1");
 		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
@@ -157,14 +246,16 @@ public class AppTokenLoginTest {
 
 		userStorageView.MCR.assertParameters("getSystemSecretById", 0, "someAppTokenId1");
 		userStorageView.MCR.assertParameters("getSystemSecretById", 1, "someAppTokenId2");
-		textHasher.MCR.assertParameters("matches", 0, SOME_APP_TOKEN, "someHashedAppToken1");
-		textHasher.MCR.assertParameters("matches", 1, SOME_APP_TOKEN, "someHashedAppToken2");
+		hashingExecutor.MCR.assertParameters("matches", 0, textHasher, SOME_APP_TOKEN,
+				"someHashedAppToken1");
+		hashingExecutor.MCR.assertParameters("matches", 1, textHasher, SOME_APP_TOKEN,
+				"someHashedAppToken2");
 	}
 
 	@Test
 	public void testCallGetAuthToken() throws Exception {
-		textHasher.MRV.setSpecificReturnValuesSupplier("matches", () -> true, SOME_APP_TOKEN,
-				"someHashedAppToken2");
+		hashingExecutor.MRV.setSpecificReturnValuesSupplier("matches", () -> true, textHasher,
+				SOME_APP_TOKEN, "someHashedAppToken2");
 		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
 				() -> "someHashedAppToken1", "someAppTokenId1");
 		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
@@ -185,4 +276,659 @@ public class AppTokenLoginTest {
 	public void testOnlyForTestGetTextHasher() throws Exception {
 		assertSame(((AppTokenLoginImp) apptokenLogin).onlyForTestGetTextHasher(), textHasher);
 	}
+
+	@Test
+	public void testOnlyForTestGetHashingExecutor() throws Exception {
+		assertSame(((AppTokenLoginImp) apptokenLogin).onlyForTestGetHashingExecutor(),
+				hashingExecutor);
+	}
+
+	@Test
+	public void testHashingUnavailableIsNotConvertedToLoginException() throws Exception {
+		LoginUnavailableException unavailable = LoginUnavailableException
+				.withMessage("someUnavailable");
+		hashingExecutor.MRV.setAlwaysThrowException("matches", unavailable);
+		try {
+			apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertSame(e, unavailable);
+		}
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncHashingUnavailable() throws Exception {
+		LoginUnavailableException unavailable = LoginUnavailableException
+				.withMessage("someUnavailable");
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matchesAsync",
+				() -> CompletableFuture.failedFuture(unavailable));
+		try {
+			apptokenLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN).toCompletableFuture()
+					.join();
+			fail("It should throw an exception");
+		} catch (CompletionException e) {
+			assertSame(e.getCause(), unavailable);
+		}
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncLoginExecutorSaturated() throws Exception {
+		RejectedExecutionException rejected = new RejectedExecutionException("someRejected");
+		AppTokenLoginImp login = new AppTokenLoginImp(textHasher, hashingExecutor, command -> {
+			throw rejected;
+		}, singleFlight, userCache, systemSecretCache, lastMatchedAppTokenIdCache);
+
+		try {
+			login.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN).toCompletableFuture().join();
+			fail("It should throw an exception");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof LoginUnavailableException);
+			assertEquals(e.getCause().getMessage(), "Login executor is saturated.");
+			assertSame(e.getCause().getCause(), rejected);
+		}
+	}
+
+	@Test
+	public void testOnlyForTestGetLoginExecutor() throws Exception {
+		assertSame(((AppTokenLoginImp) apptokenLogin).onlyForTestGetLoginExecutor(),
+				loginExecutor);
+	}
+
+	@Test
+	public void testGetAuthTokenAsync() throws Exception {
+		setHashingMatchesAsync(true);
+
+		AuthToken authToken = apptokenLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN)
+				.toCompletableFuture().join();
+
+		loginExecutor.MCR.assertNumberOfCallsToMethod("execute", 2);
+		userStorageView.MCR.assertParameters("getUserByLoginId", 0, SOME_LOGIN_ID);
+		gatekeeperTokenProvider.MCR.assertReturn("getAuthTokenForUserInfo", 0, authToken);
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncNoMatch() throws Exception {
+		try {
+			apptokenLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN).toCompletableFuture()
+					.join();
+			fail("It should throw an exception");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof LoginException);
+			assertEquals(e.getCause().getMessage(), "Login failed.");
+			gatekeeperTokenProvider.MCR.assertMethodNotCalled("getAuthTokenForUserInfo");
+		}
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncDoesNotWaitForHashing() throws Exception {
+		setUpTwoHashedAppTokensWhereSecondMatchesAsync();
+
+		apptokenLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN).toCompletableFuture().join();
+
+		hashingExecutor.MCR.assertParameters("findIndexOfMatchAsync", 0, textHasher,
+				SOME_APP_TOKEN, List.of("someHashedAppToken1", "someHashedAppToken2"));
+		hashingExecutor.MCR.assertMethodNotCalled("matches");
+		hashingExecutor.MCR.assertMethodNotCalled("findIndexOfMatch");
+		lastMatchedAppTokenIdCache.MCR.assertParameters("put", 0, "someRecordInfoId",
+				"someAppTokenId2");
+	}
+
+	private void setUpTwoHashedAppTokensWhereSecondMatchesAsync() {
+		setUpTwoHashedAppTokensWhereSecondMatches();
+		hashingExecutor.MRV.setSpecificReturnValuesSupplier("matchesAsync",
+				() -> CompletableFuture.completedFuture(true), textHasher, SOME_APP_TOKEN,
+				"someHashedAppToken2");
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncLastMatchedAppTokenIdIsCheckedAloneFirst() throws Exception {
+		setUpTwoHashedAppTokensWhereSecondMatchesAsync();
+		lastMatchedAppTokenIdCache.MRV.setDefaultReturnValuesSupplier("getIfPresent",
+				() -> "someAppTokenId2");
+
+		apptokenLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN).toCompletableFuture().join();
+
+		hashingExecutor.MCR.assertNumberOfCallsToMethod("matchesAsync", 1);
+		hashingExecutor.MCR.assertMethodNotCalled("findIndexOfMatchAsync");
+		lastMatchedAppTokenIdCache.MCR.assertMethodNotCalled("put");
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncLastMatchedAppTokenIdNotMatchingScansRemaining()
+			throws Exception {
+		setUpTwoHashedAppTokensWhereSecondMatchesAsync();
+		lastMatchedAppTokenIdCache.MRV.setDefaultReturnValuesSupplier("getIfPresent",
+				() -> "someAppTokenId1");
+
+		apptokenLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN).toCompletableFuture().join();
+
+		hashingExecutor.MCR.assertParameters("matchesAsync", 0, textHasher, SOME_APP_TOKEN,
+				"someHashedAppToken1");
+		hashingExecutor.MCR.assertParameters("findIndexOfMatchAsync", 0, textHasher,
+				SOME_APP_TOKEN, List.of("someHashedAppToken2"));
+		lastMatchedAppTokenIdCache.MCR.assertParameters("put", 0, "someRecordInfoId",
+				"someAppTokenId2");
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncSelectorAppTokenOnlyChecksSelectedSecret() throws Exception {
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedVerifier", "someAppTokenId2");
+		hashingExecutor.MRV.setSpecificReturnValuesSupplier("matchesAsync",
+				() -> CompletableFuture.completedFuture(true), textHasher, "someVerifier",
+				"someHashedVerifier");
+
+		apptokenLogin.getAuthTokenAsync(SOME_LOGIN_ID, "someAppTokenId2:someVerifier")
+				.toCompletableFuture().join();
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getSystemSecretById", 1);
+		hashingExecutor.MCR.assertNumberOfCallsToMethod("matchesAsync", 1);
+		hashingExecutor.MCR.assertMethodNotCalled("findIndexOfMatchAsync");
+	}
+
+	@Test
+	public void testOnlyForTestGetSingleFlight() throws Exception {
+		assertSame(((AppTokenLoginImp) apptokenLogin).onlyForTestGetSingleFlight(), singleFlight);
+	}
+
+	@Test
+	public void testGetAuthTokenCreatesSingleFlightKeyFromCredentials() throws Exception {
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		singleFlight.MCR.assertParameters("createKeyUsingTypeLoginIdAndSecret", 0, "apptoken",
+				SOME_LOGIN_ID, SOME_APP_TOKEN);
+		singleFlight.MCR.assertParameter("runOnceForKey", 0, "key", "someKey");
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncCreatesSingleFlightKeyFromCredentials() throws Exception {
+		setHashingMatchesAsync(true);
+		apptokenLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN).toCompletableFuture().join();
+
+		singleFlight.MCR.assertParameters("createKeyUsingTypeLoginIdAndSecret", 0, "apptoken",
+				SOME_LOGIN_ID, SOME_APP_TOKEN);
+		singleFlight.MCR.assertParameter("runOnceForKey", 0, "key", "someKey");
+	}
+
+	@Test
+	public void testGetAuthTokenSharedAuthTokenMode() throws Exception {
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		singleFlight.MRV.setDefaultReturnValuesSupplier("sharesAuthToken", () -> true);
+
+		AuthToken authToken = apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		singleFlight.MCR.assertMethodWasCalled("runOnceForKey");
+		gatekeeperTokenProvider.MCR.assertReturn("getAuthTokenForUserInfo", 0, authToken);
+	}
+
+	@Test
+	public void testConcurrentIdenticalLoginsShareVerificationButGetOwnAuthTokens()
+			throws Exception {
+		setHashingMatchesAsync(true);
+		List<Runnable> queuedTasks = new ArrayList<>();
+		AppTokenLoginImp login = new AppTokenLoginImp(textHasher, hashingExecutor, queuedTasks::add,
+				SingleFlightImp.usingSharedAuthToken(false), userCache,
+				systemSecretCache, lastMatchedAppTokenIdCache);
+
+		login.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN);
+		login.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN);
+		runQueuedTasks(queuedTasks);
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getUserByLoginId", 1);
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 2);
+	}
+
+	private void runQueuedTasks(List<Runnable> queuedTasks) {
+		while (!queuedTasks.isEmpty()) {
+			queuedTasks.remove(0).run();
+		}
+	}
+
+	@Test
+	public void testConcurrentIdenticalLoginsShareAuthTokenInSharedAuthTokenMode()
+			throws Exception {
+		setHashingMatchesAsync(true);
+		List<Runnable> queuedTasks = new ArrayList<>();
+		AppTokenLoginImp login = new AppTokenLoginImp(textHasher, hashingExecutor, queuedTasks::add,
+				SingleFlightImp.usingSharedAuthToken(true), userCache,
+				systemSecretCache, lastMatchedAppTokenIdCache);
+
+		CompletableFuture<AuthToken> first = login.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN)
+				.toCompletableFuture();
+		CompletableFuture<AuthToken> second = login.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN)
+				.toCompletableFuture();
+		runQueuedTasks(queuedTasks);
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getUserByLoginId", 1);
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 1);
+		assertSame(first.join(), second.join());
+	}
+
+	@Test
+	public void testConcurrentLoginsWithDifferentSecretsDoNotShareVerification()
+			throws Exception {
+		setHashingMatchesAsync(true);
+		List<Runnable> queuedTasks = new ArrayList<>();
+		AppTokenLoginImp login = new AppTokenLoginImp(textHasher, hashingExecutor, queuedTasks::add,
+				SingleFlightImp.usingSharedAuthToken(true), userCache,
+				systemSecretCache, lastMatchedAppTokenIdCache);
+
+		login.getAuthTokenAsync(SOME_LOGIN_ID, SOME_APP_TOKEN);
+		login.getAuthTokenAsync(SOME_LOGIN_ID, "otherSecret");
+		runQueuedTasks(queuedTasks);
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getUserByLoginId", 2);
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 2);
+	}
+
+	@Test
+	public void testOnlyForTestGetUserCache() throws Exception {
+		assertSame(((AppTokenLoginImp) apptokenLogin).onlyForTestGetUserCache(), userCache);
+	}
+
+	@Test
+	public void testGetAuthTokenReadsUserThroughUserCache() throws Exception {
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		userCache.MCR.assertParameter("getOrLoad", 0, "key", SOME_LOGIN_ID);
+		userStorageView.MCR.assertParameters("getUserByLoginId", 0, SOME_LOGIN_ID);
+	}
+
+	@Test
+	public void testRepeatedLoginsUseCachedUser() throws Exception {
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		AppTokenLoginImp login = new AppTokenLoginImp(textHasher, hashingExecutor, loginExecutor,
+				singleFlight, CacheImp.usingMaxSizeAndTimeToLive(10, 60000), systemSecretCache,
+				lastMatchedAppTokenIdCache);
+
+		login.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+		login.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getUserByLoginId", 1);
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 2);
+	}
+
+	@Test
+	public void testUserDeactivatedAfterInvalidationIsRejected() throws Exception {
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		CacheImp<User> cache = CacheImp.usingMaxSizeAndTimeToLive(10, 60000);
+		AppTokenLoginImp login = new AppTokenLoginImp(textHasher, hashingExecutor, loginExecutor,
+				singleFlight, cache, systemSecretCache, lastMatchedAppTokenIdCache);
+		login.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+		User deactivatedUser = new User("someRecordInfoId");
+		deactivatedUser.active = false;
+		userStorageView.MRV.setDefaultReturnValuesSupplier("getUserByLoginId",
+				() -> deactivatedUser);
+
+		cache.invalidate(SOME_LOGIN_ID);
+
+		try {
+			login.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+			fail("It should throw an exception");
+		} catch (LoginException e) {
+			assertEquals(e.getMessage(), "Login failed.");
+		}
+	}
+
+	@Test
+	public void testOnlyForTestGetSystemSecretCache() throws Exception {
+		assertSame(((AppTokenLoginImp) apptokenLogin).onlyForTestGetSystemSecretCache(),
+				systemSecretCache);
+	}
+
+	@Test
+	public void testGetAuthTokenReadsSystemSecretsThroughCache() throws Exception {
+		hashingExecutor.MRV.setSpecificReturnValuesSupplier("matches", () -> true, textHasher,
+				SOME_APP_TOKEN, "someHashedAppToken2");
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedAppToken2", "someAppTokenId2");
+
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		systemSecretCache.MCR.assertParameter("getOrLoad", 0, "key", "someAppTokenId1");
+		systemSecretCache.MCR.assertParameter("getOrLoad", 1, "key", "someAppTokenId2");
+	}
+
+	@Test
+	public void testRepeatedLoginsUseCachedSystemSecrets() throws Exception {
+		hashingExecutor.MRV.setSpecificReturnValuesSupplier("matches", () -> true, textHasher,
+				SOME_APP_TOKEN, "someHashedAppToken2");
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedAppToken1", "someAppTokenId1");
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedAppToken2", "someAppTokenId2");
+		AppTokenLoginImp login = new AppTokenLoginImp(textHasher, hashingExecutor,
+				loginExecutor, singleFlight, userCache,
+				CacheImp.usingMaxSizeAndTimeToLive(10, 60000), lastMatchedAppTokenIdCache);
+
+		login.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+		login.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getSystemSecretById", 2);
+		hashingExecutor.MCR.assertNumberOfCallsToMethod("matches", 4);
+	}
+
+	@Test
+	public void testStorageWithoutBatchSupportIsReadPerId() throws Exception {
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		systemSecretCache.MCR.assertMethodNotCalled("getAllOrLoad");
+		userStorageView.MCR.assertParameters("getSystemSecretById", 0, "someAppTokenId1");
+	}
+
+	@Test
+	public void testBatchLookupIsUsedWhenStorageSupportsIt() throws Exception {
+		SystemSecretBatchUserStorageViewSpy batchStorage = setUpBatchStorage();
+		batchStorage.MRV.setDefaultReturnValuesSupplier("getSystemSecretsByIds",
+				() -> Map.of("someAppTokenId1", "someHashedAppToken1", "someAppTokenId2",
+						"someHashedAppToken2"));
+		hashingExecutor.MRV.setSpecificReturnValuesSupplier("matches", () -> true, textHasher,
+				SOME_APP_TOKEN, "someHashedAppToken2");
+
+		AuthToken authToken = createAppTokenLogin().getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		batchStorage.MCR.assertParameters("getSystemSecretsByIds", 0,
+				Set.of("someAppTokenId1", "someAppTokenId2"));
+		batchStorage.MCR.assertMethodNotCalled("getSystemSecretById");
+		systemSecretCache.MCR.assertParameters("getAllOrLoad", 0, user.appTokenIds);
+		hashingExecutor.MCR.assertParameters("matches", 0, textHasher, SOME_APP_TOKEN,
+				"someHashedAppToken1");
+		hashingExecutor.MCR.assertParameters("matches", 1, textHasher, SOME_APP_TOKEN,
+				"someHashedAppToken2");
+		gatekeeperTokenProvider.MCR.assertReturn("getAuthTokenForUserInfo", 0, authToken);
+	}
+
+	private SystemSecretBatchUserStorageViewSpy setUpBatchStorage() {
+		var batchStorage = new SystemSecretBatchUserStorageViewSpy();
+		batchStorage.MRV.setDefaultReturnValuesSupplier("getUserByLoginId", () -> user);
+		userStorageInstanceProvider.MRV.setDefaultReturnValuesSupplier("getStorageView",
+				() -> batchStorage);
+		return batchStorage;
+	}
+
+	private AppTokenLoginImp createAppTokenLogin() {
+		return new AppTokenLoginImp(textHasher, hashingExecutor, loginExecutor, singleFlight,
+				userCache, systemSecretCache, lastMatchedAppTokenIdCache);
+	}
+
+	@Test
+	public void testBatchLookupSecretsNotFoundAreSkipped() throws Exception {
+		SystemSecretBatchUserStorageViewSpy batchStorage = setUpBatchStorage();
+		batchStorage.MRV.setDefaultReturnValuesSupplier("getSystemSecretsByIds",
+				() -> Map.of("someAppTokenId2", "someHashedAppToken2"));
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+
+		createAppTokenLogin().getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		hashingExecutor.MCR.assertNumberOfCallsToMethod("matches", 1);
+		hashingExecutor.MCR.assertParameters("matches", 0, textHasher, SOME_APP_TOKEN,
+				"someHashedAppToken2");
+	}
+
+	@Test
+	public void testBatchLookupNoMatch() throws Exception {
+		SystemSecretBatchUserStorageViewSpy batchStorage = setUpBatchStorage();
+		batchStorage.MRV.setDefaultReturnValuesSupplier("getSystemSecretsByIds",
+				() -> Map.of("someAppTokenId1", "someHashedAppToken1"));
+		try {
+			createAppTokenLogin().getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+			fail("It should throw an exception");
+		} catch (LoginException e) {
+			assertEquals(e.getMessage(), "Login failed.");
+			gatekeeperTokenProvider.MCR.assertMethodNotCalled("getAuthTokenForUserInfo");
+		}
+	}
+
+	@Test
+	public void testSelectorAppTokenOnlyChecksSelectedSecret() throws Exception {
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedVerifier", "someAppTokenId2");
+		hashingExecutor.MRV.setSpecificReturnValuesSupplier("matches", () -> true, textHasher,
+				"someVerifier", "someHashedVerifier");
+
+		AuthToken authToken = apptokenLogin.getAuthToken(SOME_LOGIN_ID,
+				"someAppTokenId2:someVerifier");
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getSystemSecretById", 1);
+		userStorageView.MCR.assertParameters("getSystemSecretById", 0, "someAppTokenId2");
+		hashingExecutor.MCR.assertNumberOfCallsToMethod("matches", 1);
+		gatekeeperTokenProvider.MCR.assertReturn("getAuthTokenForUserInfo", 0, authToken);
+	}
+
+	@Test
+	public void testSelectorAppTokenNoMatchDoesNotScanOtherSecrets() throws Exception {
+		try {
+			apptokenLogin.getAuthToken(SOME_LOGIN_ID, "someAppTokenId2:someVerifier");
+			fail("It should throw an exception");
+		} catch (LoginException e) {
+			assertEquals(e.getMessage(), "Login failed.");
+			userStorageView.MCR.assertNumberOfCallsToMethod("getSystemSecretById", 1);
+			hashingExecutor.MCR.assertNumberOfCallsToMethod("matches", 1);
+		}
+	}
+
+	@Test
+	public void testSelectorAppTokenVerifierMayContainSeparator() throws Exception {
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, "someAppTokenId1:some:Verifier");
+
+		hashingExecutor.MCR.assertParameters("matches", 0, textHasher, "some:Verifier",
+				"someSystemSecret");
+	}
+
+	@Test
+	public void testAppTokenWithUnknownSelectorIsCheckedAgainstAllSecrets() throws Exception {
+		try {
+			apptokenLogin.getAuthToken(SOME_LOGIN_ID, "otherUsersAppTokenId:someVerifier");
+			fail("It should throw an exception");
+		} catch (LoginException e) {
+			hashingExecutor.MCR.assertNumberOfCallsToMethod("matches", 2);
+			hashingExecutor.MCR.assertParameters("matches", 0, textHasher,
+					"otherUsersAppTokenId:someVerifier", "someSystemSecret");
+		}
+	}
+
+	@Test
+	public void testSelectorAppTokenUsesSystemSecretCache() throws Exception {
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, "someAppTokenId2:someVerifier");
+
+		systemSecretCache.MCR.assertParameter("getOrLoad", 0, "key", "someAppTokenId2");
+		systemSecretCache.MCR.assertMethodNotCalled("getAllOrLoad");
+	}
+
+	@Test
+	public void testAllCandidateSecretsAreMatchedInOneCall() throws Exception {
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedAppToken1", "someAppTokenId1");
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedAppToken2", "someAppTokenId2");
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		hashingExecutor.MCR.assertParameters("findIndexOfMatch", 0, textHasher, SOME_APP_TOKEN,
+				List.of("someHashedAppToken1", "someHashedAppToken2"));
+	}
+
+	@Test
+	public void testOnlyForTestGetLastMatchedAppTokenIdCache() throws Exception {
+		assertSame(((AppTokenLoginImp) apptokenLogin).onlyForTestGetLastMatchedAppTokenIdCache(),
+				lastMatchedAppTokenIdCache);
+	}
+
+	@Test
+	public void testMatchedAppTokenIdIsRememberedForUser() throws Exception {
+		setUpTwoHashedAppTokensWhereSecondMatches();
+
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		lastMatchedAppTokenIdCache.MCR.assertParameters("getIfPresent", 0, "someRecordInfoId");
+		lastMatchedAppTokenIdCache.MCR.assertParameters("put", 0, "someRecordInfoId",
+				"someAppTokenId2");
+	}
+
+	private void setUpTwoHashedAppTokensWhereSecondMatches() {
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedAppToken1", "someAppTokenId1");
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedAppToken2", "someAppTokenId2");
+		hashingExecutor.MRV.setSpecificReturnValuesSupplier("matches", () -> true, textHasher,
+				SOME_APP_TOKEN, "someHashedAppToken2");
+	}
+
+	@Test
+	public void testNoMatchIsNotRemembered() throws Exception {
+		try {
+			apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+			fail("It should throw an exception");
+		} catch (LoginException e) {
+			lastMatchedAppTokenIdCache.MCR.assertMethodNotCalled("put");
+		}
+	}
+
+	@Test
+	public void testLastMatchedAppTokenIdIsCheckedAloneFirst() throws Exception {
+		setUpTwoHashedAppTokensWhereSecondMatches();
+		lastMatchedAppTokenIdCache.MRV.setDefaultReturnValuesSupplier("getIfPresent",
+				() -> "someAppTokenId2");
+
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getSystemSecretById", 1);
+		userStorageView.MCR.assertParameters("getSystemSecretById", 0, "someAppTokenId2");
+		hashingExecutor.MCR.assertNumberOfCallsToMethod("matches", 1);
+		hashingExecutor.MCR.assertMethodNotCalled("findIndexOfMatch");
+		lastMatchedAppTokenIdCache.MCR.assertMethodNotCalled("put");
+	}
+
+	@Test
+	public void testLastMatchedAppTokenIdNotMatchingScansRemainingAppTokens() throws Exception {
+		setUpTwoHashedAppTokensWhereSecondMatches();
+		lastMatchedAppTokenIdCache.MRV.setDefaultReturnValuesSupplier("getIfPresent",
+				() -> "someAppTokenId1");
+
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		hashingExecutor.MCR.assertParameters("matches", 0, textHasher, SOME_APP_TOKEN,
+				"someHashedAppToken1");
+		hashingExecutor.MCR.assertParameters("findIndexOfMatch", 0, textHasher, SOME_APP_TOKEN,
+				List.of("someHashedAppToken2"));
+		lastMatchedAppTokenIdCache.MCR.assertParameters("put", 0, "someRecordInfoId",
+				"someAppTokenId2");
+	}
+
+	@Test
+	public void testLastMatchedAppTokenIdNoLongerOwnedByUserIsIgnored() throws Exception {
+		setUpTwoHashedAppTokensWhereSecondMatches();
+		lastMatchedAppTokenIdCache.MRV.setDefaultReturnValuesSupplier("getIfPresent",
+				() -> "removedAppTokenId");
+
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getSystemSecretById", 2);
+		hashingExecutor.MCR.assertParameters("findIndexOfMatch", 0, textHasher, SOME_APP_TOKEN,
+				List.of("someHashedAppToken1", "someHashedAppToken2"));
+	}
+
+	@Test
+	public void testBatchLookupRemembersMatchedAppTokenId() throws Exception {
+		SystemSecretBatchUserStorageViewSpy batchStorage = setUpBatchStorage();
+		batchStorage.MRV.setDefaultReturnValuesSupplier("getSystemSecretsByIds",
+				() -> Map.of("someAppTokenId2", "someHashedAppToken2"));
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+
+		createAppTokenLogin().getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		lastMatchedAppTokenIdCache.MCR.assertParameters("put", 0, "someRecordInfoId",
+				"someAppTokenId2");
+	}
+
+	@Test
+	public void testSelectorAppTokenIsNotRemembered() throws Exception {
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, "someAppTokenId2:someVerifier");
+
+		lastMatchedAppTokenIdCache.MCR.assertMethodNotCalled("getIfPresent");
+		lastMatchedAppTokenIdCache.MCR.assertMethodNotCalled("put");
+	}
+
+	@Test
+	public void testRepeatedLoginsOnlyCheckLastMatchedAppToken() throws Exception {
+		setUpTwoHashedAppTokensWhereSecondMatches();
+		AppTokenLoginImp login = new AppTokenLoginImp(textHasher, hashingExecutor, loginExecutor,
+				singleFlight, userCache, systemSecretCache,
+				CacheImp.usingMaxSizeAndTimeToLive(10, 60000));
+
+		login.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+		login.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		hashingExecutor.MCR.assertNumberOfCallsToMethod("matches", 3);
+		hashingExecutor.MCR.assertParameters("matches", 2, textHasher, SOME_APP_TOKEN,
+				"someHashedAppToken2");
+	}
+
+	@Test
+	public void testKeyedDigestSecretsAreCheckedWithoutHashingPool() throws Exception {
+		KeyedDigest keyedDigest = KeyedDigest.usingKey(SOME_DIGEST_KEY);
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> keyedDigest.digest("otherAppToken"), "someAppTokenId1");
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> keyedDigest.digest(SOME_APP_TOKEN), "someAppTokenId2");
+
+		createAppTokenLoginUsingKeyedDigestAndStoppedHashingPool(keyedDigest)
+				.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		textHasher.MCR.assertMethodNotCalled("matches");
+		lastMatchedAppTokenIdCache.MCR.assertParameters("put", 0, "someRecordInfoId",
+				"someAppTokenId2");
+	}
+
+	private AppTokenLoginImp createAppTokenLoginUsingKeyedDigestAndStoppedHashingPool(
+			KeyedDigest keyedDigest) {
+		KeyedDigestTextHasher keyedDigestTextHasher = KeyedDigestTextHasher
+				.usingTextHasherAndKeyedDigest(textHasher, keyedDigest);
+		HashingExecutorImp stoppedHashingPool = HashingExecutorImp
+				.usingPoolSizeQueueSizeAndMaxWait(1, 1, 1000);
+		stoppedHashingPool.shutdown();
+		return new AppTokenLoginImp(keyedDigestTextHasher, stoppedHashingPool, loginExecutor,
+				singleFlight, userCache, systemSecretCache, lastMatchedAppTokenIdCache);
+	}
+
+	@Test
+	public void testSelectorWithKeyedDigestSecretIsCheckedWithoutHashingPool() throws Exception {
+		KeyedDigest keyedDigest = KeyedDigest.usingKey(SOME_DIGEST_KEY);
+		userStorageView.MRV.setDefaultReturnValuesSupplier("getSystemSecretById",
+				() -> keyedDigest.digest("someVerifier"));
+
+		createAppTokenLoginUsingKeyedDigestAndStoppedHashingPool(keyedDigest)
+				.getAuthToken(SOME_LOGIN_ID, "someAppTokenId2:someVerifier");
+
+		gatekeeperTokenProvider.MCR.assertMethodWasCalled("getAuthTokenForUserInfo");
+	}
+
+	@Test
+	public void testSecretsReadPerIdAreOnlyReadUntilFirstMatch() throws Exception {
+		configureUser(user, true, Optional.empty(), "someAppTokenId1", "someAppTokenId2",
+				"someAppTokenId3");
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedAppToken2", "someAppTokenId2");
+		hashingExecutor.MRV.setSpecificReturnValuesSupplier("matches", () -> true, textHasher,
+				SOME_APP_TOKEN, "someHashedAppToken2");
+
+		apptokenLogin.getAuthToken(SOME_LOGIN_ID, SOME_APP_TOKEN);
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getSystemSecretById", 2);
+		userStorageView.MCR.assertParameters("getSystemSecretById", 0, "someAppTokenId1");
+		userStorageView.MCR.assertParameters("getSystemSecretById", 1, "someAppTokenId2");
+		lastMatchedAppTokenIdCache.MCR.assertParameters("put", 0, "someRecordInfoId",
+				"someAppTokenId2");
+	}
 }
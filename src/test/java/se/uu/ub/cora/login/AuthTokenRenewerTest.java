@@ -0,0 +1,289 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login;
+
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.gatekeepertokenprovider.authentication.AuthenticationException;
+import se.uu.ub.cora.login.cache.CacheImp;
+import se.uu.ub.cora.login.singleflight.SingleFlight;
+import se.uu.ub.cora.login.singleflight.SingleFlightImp;
+import se.uu.ub.cora.login.spies.CacheSpy;
+import se.uu.ub.cora.login.spies.GatekeeperTokenProviderSpy;
+import se.uu.ub.cora.login.spies.SingleFlightSpy;
+
+public class AuthTokenRenewerTest {
+	private GatekeeperTokenProviderSpy gatekeeperTokenProvider;
+	private SingleFlightSpy singleFlight;
+	private CacheSpy<AuthToken> renewedAuthTokenCache;
+	private AuthTokenRenewerImp renewer;
+	private ExecutorService executor;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		gatekeeperTokenProvider = new GatekeeperTokenProviderSpy();
+		singleFlight = new SingleFlightSpy();
+		renewedAuthTokenCache = new CacheSpy<>();
+		renewer = new AuthTokenRenewerImp(gatekeeperTokenProvider, singleFlight,
+				renewedAuthTokenCache);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testRenewAuthToken() throws Exception {
+		AuthToken renewedAuthToken = renewer.renewAuthToken("someTokenId", "someToken");
+
+		singleFlight.MCR.assertParameters("createKeyUsingTypeLoginIdAndSecret", 0, "renew",
+				"someTokenId", "someToken");
+		renewedAuthTokenCache.MCR.assertParameters("getIfPresent", 0, "someKey");
+		singleFlight.MCR.assertParameter("runOnceForKey", 0, "key", "someKey");
+		gatekeeperTokenProvider.MCR.assertParameters("renewAuthToken", 0, "someTokenId",
+				"someToken");
+		gatekeeperTokenProvider.MCR.assertReturn("renewAuthToken", 0, renewedAuthToken);
+		renewedAuthTokenCache.MCR.assertParameter("getOrLoad", 0, "key", "someKey");
+	}
+
+	@Test
+	public void testRecentlyRenewedAuthTokenIsReused() throws Exception {
+		AuthToken recentlyRenewedAuthToken = gatekeeperTokenProvider.authToken;
+		renewedAuthTokenCache.MRV.setDefaultReturnValuesSupplier("getIfPresent",
+				() -> recentlyRenewedAuthToken);
+
+		AuthToken renewedAuthToken = renewer.renewAuthToken("someTokenId", "someToken");
+
+		assertSame(renewedAuthToken, recentlyRenewedAuthToken);
+		singleFlight.MCR.assertMethodNotCalled("runOnceForKey");
+		gatekeeperTokenProvider.MCR.assertMethodNotCalled("renewAuthToken");
+	}
+
+	@Test
+	public void testRenewFailsWithSameException() throws Exception {
+		AuthenticationException renewError = new AuthenticationException("someError");
+		gatekeeperTokenProvider.MRV.setAlwaysThrowException("renewAuthToken", renewError);
+
+		try {
+			renewer.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (AuthenticationException e) {
+			assertSame(e, renewError);
+		}
+	}
+
+	@Test
+	public void testFailedRenewalInFlightIsThrownUnwrapped() throws Exception {
+		AuthenticationException renewError = new AuthenticationException("someError");
+		AuthTokenRenewerImp renewerUsingSingleFlight = createRenewerUsingRealSingleFlight();
+		gatekeeperTokenProvider.MRV.setAlwaysThrowException("renewAuthToken", renewError);
+
+		try {
+			renewerUsingSingleFlight.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (AuthenticationException e) {
+			assertSame(e, renewError);
+		}
+	}
+
+	private AuthTokenRenewerImp createRenewerUsingRealSingleFlight() {
+		return new AuthTokenRenewerImp(gatekeeperTokenProvider,
+				SingleFlightImp.usingSharedAuthToken(false),
+				CacheImp.usingMaxSizeAndTimeToLive(10, 60000));
+	}
+
+	@Test
+	public void testConcurrentRenewalsOfSameTokenShareOneGatekeeperCall() throws Exception {
+		CountDownLatch renewalsWaiting = new CountDownLatch(4);
+		AuthTokenRenewerImp renewerWithoutGracePeriod = new AuthTokenRenewerImp(
+				gatekeeperTokenProvider, new WaiterCountingSingleFlight(renewalsWaiting),
+				CacheImp.usingMaxSizeAndTimeToLive(10, 0));
+		CountDownLatch renewStarted = new CountDownLatch(1);
+		CountDownLatch releaseRenew = new CountDownLatch(1);
+		gatekeeperTokenProvider.MRV.setDefaultReturnValuesSupplier("renewAuthToken",
+				() -> waitForRelease(renewStarted, releaseRenew));
+		executor = Executors.newFixedThreadPool(5);
+
+		List<Future<AuthToken>> renewals = new ArrayList<>();
+		renewals.add(startRenew(renewerWithoutGracePeriod, "someToken"));
+		assertTrue(renewStarted.await(5, TimeUnit.SECONDS));
+		for (int i = 0; i < 4; i++) {
+			renewals.add(startRenew(renewerWithoutGracePeriod, "someToken"));
+		}
+		assertTrue(renewalsWaiting.await(5, TimeUnit.SECONDS));
+		releaseRenew.countDown();
+
+		for (Future<AuthToken> renewal : renewals) {
+			assertSame(renewal.get(5, TimeUnit.SECONDS), gatekeeperTokenProvider.authToken);
+		}
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("renewAuthToken", 1);
+	}
+
+	private AuthToken waitForRelease(CountDownLatch renewStarted, CountDownLatch releaseRenew) {
+		renewStarted.countDown();
+		try {
+			releaseRenew.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return gatekeeperTokenProvider.authToken;
+	}
+
+	private Future<AuthToken> startRenew(AuthTokenRenewerImp renewerToUse, String token) {
+		return executor.submit(() -> renewerToUse.renewAuthToken("someTokenId", token));
+	}
+
+	private static class WaiterCountingSingleFlight implements SingleFlight {
+		private SingleFlight singleFlight = SingleFlightImp.usingSharedAuthToken(false);
+		private CountDownLatch waiters;
+
+		WaiterCountingSingleFlight(CountDownLatch waiters) {
+			this.waiters = waiters;
+		}
+
+		@Override
+		public String createKeyUsingTypeLoginIdAndSecret(String loginType, String loginId,
+				String secret) {
+			return singleFlight.createKeyUsingTypeLoginIdAndSecret(loginType, loginId, secret);
+		}
+
+		@Override
+		public <T> CompletableFuture<T> runOnceForKey(String key,
+				Supplier<CompletableFuture<T>> work) {
+			CompletableFuture<T> result = singleFlight.runOnceForKey(key, work);
+			if (!result.isDone()) {
+				waiters.countDown();
+			}
+			return result;
+		}
+
+		@Override
+		public boolean sharesAuthToken() {
+			return singleFlight.sharesAuthToken();
+		}
+	}
+
+	@Test
+	public void testRenewalsWithDifferentTokensAreNotShared() throws Exception {
+		AuthTokenRenewerImp renewerUsingSingleFlight = createRenewerUsingRealSingleFlight();
+
+		renewerUsingSingleFlight.renewAuthToken("someTokenId", "someToken");
+		renewerUsingSingleFlight.renewAuthToken("someTokenId", "someOtherToken");
+
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("renewAuthToken", 2);
+		gatekeeperTokenProvider.MCR.assertParameters("renewAuthToken", 1, "someTokenId",
+				"someOtherToken");
+	}
+
+	@Test
+	public void testRepeatedRenewalWithinGracePeriodReusesResult() throws Exception {
+		AuthTokenRenewerImp renewerUsingSingleFlight = createRenewerUsingRealSingleFlight();
+
+		AuthToken first = renewerUsingSingleFlight.renewAuthToken("someTokenId", "someToken");
+		AuthToken second = renewerUsingSingleFlight.renewAuthToken("someTokenId", "someToken");
+
+		assertSame(second, first);
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("renewAuthToken", 1);
+	}
+
+	@Test
+	public void testFailedRenewalIsNotReused() throws Exception {
+		AuthTokenRenewerImp renewerUsingSingleFlight = createRenewerUsingRealSingleFlight();
+		AtomicInteger calls = new AtomicInteger();
+		gatekeeperTokenProvider.MRV.setDefaultReturnValuesSupplier("renewAuthToken",
+				() -> failFirstCall(calls));
+		try {
+			renewerUsingSingleFlight.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (AuthenticationException e) {
+			// expected
+		}
+
+		AuthToken renewedAuthToken = renewerUsingSingleFlight.renewAuthToken("someTokenId",
+				"someToken");
+
+		assertSame(renewedAuthToken, gatekeeperTokenProvider.authToken);
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("renewAuthToken", 2);
+	}
+
+	@Test
+	public void testForgetRenewedAuthToken() throws Exception {
+		renewer.forgetRenewedAuthToken("someTokenId", "someToken");
+
+		singleFlight.MCR.assertParameters("createKeyUsingTypeLoginIdAndSecret", 0, "renew",
+				"someTokenId", "someToken");
+		renewedAuthTokenCache.MCR.assertParameters("invalidate", 0, "someKey");
+	}
+
+	@Test
+	public void testRenewalAfterForgetCallsGatekeeperAgain() throws Exception {
+		AuthTokenRenewerImp renewerUsingSingleFlight = createRenewerUsingRealSingleFlight();
+		renewerUsingSingleFlight.renewAuthToken("someTokenId", "someToken");
+
+		renewerUsingSingleFlight.forgetRenewedAuthToken("someTokenId", "someToken");
+		renewerUsingSingleFlight.renewAuthToken("someTokenId", "someToken");
+
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("renewAuthToken", 2);
+	}
+
+	@Test
+	public void testRenewalInFlightWhenForgottenIsNotRemembered() throws Exception {
+		AuthTokenRenewerImp renewerUsingSingleFlight = createRenewerUsingRealSingleFlight();
+		gatekeeperTokenProvider.MRV.setDefaultReturnValuesSupplier("renewAuthToken",
+				() -> forgetDuringRenewal(renewerUsingSingleFlight));
+		renewerUsingSingleFlight.renewAuthToken("someTokenId", "someToken");
+
+		renewerUsingSingleFlight.renewAuthToken("someTokenId", "someToken");
+
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("renewAuthToken", 2);
+	}
+
+	private AuthToken forgetDuringRenewal(AuthTokenRenewerImp renewerToForget) {
+		renewerToForget.forgetRenewedAuthToken("someTokenId", "someToken");
+		return gatekeeperTokenProvider.authToken;
+	}
+
+	private AuthToken failFirstCall(AtomicInteger calls) {
+		if (calls.incrementAndGet() == 1) {
+			throw new AuthenticationException("someError");
+		}
+		return gatekeeperTokenProvider.authToken;
+	}
+}
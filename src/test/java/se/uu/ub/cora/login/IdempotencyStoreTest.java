@@ -0,0 +1,236 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CompletionStage;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.login.cache.CacheImp;
+import se.uu.ub.cora.login.singleflight.SingleFlightImp;
+import se.uu.ub.cora.login.spies.CacheSpy;
+import se.uu.ub.cora.login.spies.GatekeeperTokenProviderSpy;
+import se.uu.ub.cora.login.spies.SingleFlightSpy;
+
+public class IdempotencyStoreTest {
+	private SingleFlightSpy singleFlight;
+	private CacheSpy<AuthToken> idempotentLoginCache;
+	private CacheSpy<String> forgottenAuthTokenCache;
+	private IdempotencyStoreImp idempotencyStore;
+	private AuthToken authToken;
+	private AtomicInteger logins;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		singleFlight = new SingleFlightSpy();
+		idempotentLoginCache = new CacheSpy<>();
+		forgottenAuthTokenCache = new CacheSpy<>();
+		idempotencyStore = new IdempotencyStoreImp(singleFlight, idempotentLoginCache,
+				forgottenAuthTokenCache);
+		authToken = new GatekeeperTokenProviderSpy().authToken;
+		logins = new AtomicInteger();
+	}
+
+	private Supplier<CompletionStage<AuthToken>> countingLogin() {
+		return () -> {
+			logins.incrementAndGet();
+			return CompletableFuture.completedFuture(authToken);
+		};
+	}
+
+	@Test
+	public void testLoginOncePerIdempotencyKey() throws Exception {
+		AuthToken result = idempotencyStore.loginOncePerIdempotencyKey("someIdempotencyKey",
+				"password", "someLoginId", "someSecret", countingLogin()).toCompletableFuture()
+				.join();
+
+		singleFlight.MCR.assertParameters("createKeyUsingTypeLoginIdAndSecret", 0,
+				"idempotent:password:someIdempotencyKey", "someLoginId", "someSecret");
+		idempotentLoginCache.MCR.assertParameters("getIfPresent", 0, "someKey");
+		singleFlight.MCR.assertParameter("runOnceForKey", 0, "key", "someKey");
+		idempotentLoginCache.MCR.assertParameters("put", 0, "someKey", authToken);
+		assertSame(result, authToken);
+		assertEquals(logins.get(), 1);
+	}
+
+	@Test
+	public void testEarlierLoginIsReplayed() throws Exception {
+		AuthToken earlierAuthToken = new GatekeeperTokenProviderSpy().authToken;
+		idempotentLoginCache.MRV.setDefaultReturnValuesSupplier("getIfPresent",
+				() -> earlierAuthToken);
+
+		AuthToken result = idempotencyStore.loginOncePerIdempotencyKey("someIdempotencyKey",
+				"password", "someLoginId", "someSecret", countingLogin()).toCompletableFuture()
+				.join();
+
+		assertSame(result, earlierAuthToken);
+		singleFlight.MCR.assertMethodNotCalled("runOnceForKey");
+		assertEquals(logins.get(), 0);
+	}
+
+	@Test
+	public void testForgetAuthToken() throws Exception {
+		idempotencyStore.forgetAuthToken("someTokenId", "someToken");
+
+		singleFlight.MCR.assertParameters("createKeyUsingTypeLoginIdAndSecret", 0, "forgotten",
+				"someTokenId", "someToken");
+		forgottenAuthTokenCache.MCR.assertParameters("put", 0, "someKey", "someTokenId");
+	}
+
+	@Test
+	public void testForgottenEarlierLoginIsNotReplayed() throws Exception {
+		AuthToken earlierAuthToken = new GatekeeperTokenProviderSpy().authToken;
+		idempotentLoginCache.MRV.setDefaultReturnValuesSupplier("getIfPresent",
+				() -> earlierAuthToken);
+		forgottenAuthTokenCache.MRV.setDefaultReturnValuesSupplier("getIfPresent",
+				() -> earlierAuthToken.tokenId());
+
+		AuthToken result = idempotencyStore.loginOncePerIdempotencyKey("someIdempotencyKey",
+				"password", "someLoginId", "someSecret", countingLogin()).toCompletableFuture()
+				.join();
+
+		singleFlight.MCR.assertParameters("createKeyUsingTypeLoginIdAndSecret", 1, "forgotten",
+				earlierAuthToken.tokenId(), earlierAuthToken.token());
+		forgottenAuthTokenCache.MCR.assertParameters("getIfPresent", 0, "someKey");
+		assertSame(result, authToken);
+		idempotentLoginCache.MCR.assertParameters("put", 0, "someKey", authToken);
+		assertEquals(logins.get(), 1);
+	}
+
+	@Test
+	public void testFailedLoginIsNotRemembered() throws Exception {
+		RuntimeException loginError = new RuntimeException("someError");
+
+		CompletionStage<AuthToken> result = idempotencyStore.loginOncePerIdempotencyKey(
+				"someIdempotencyKey", "password", "someLoginId", "someSecret",
+				() -> CompletableFuture.failedFuture(loginError));
+
+		try {
+			result.toCompletableFuture().join();
+			fail("It should throw an exception");
+		} catch (CompletionException e) {
+			assertSame(e.getCause(), loginError);
+			idempotentLoginCache.MCR.assertMethodNotCalled("put");
+		}
+	}
+
+	private IdempotencyStoreImp createStoreUsingRealSingleFlightAndCache() {
+		return new IdempotencyStoreImp(SingleFlightImp.usingSharedAuthToken(false),
+				CacheImp.usingMaxSizeAndTimeToLive(10, 60000),
+				CacheImp.usingMaxSizeAndTimeToLive(10, 60000));
+	}
+
+	private AuthToken login(IdempotencyStoreImp store, String idempotencyKey, String loginType,
+			String secret) {
+		return store.loginOncePerIdempotencyKey(idempotencyKey, loginType, "someLoginId", secret,
+				countingLogin()).toCompletableFuture().join();
+	}
+
+	@Test
+	public void testRepeatedIdempotencyKeyLogsInOnce() throws Exception {
+		IdempotencyStoreImp store = createStoreUsingRealSingleFlightAndCache();
+
+		AuthToken first = login(store, "someIdempotencyKey", "password", "someSecret");
+		AuthToken second = login(store, "someIdempotencyKey", "password", "someSecret");
+
+		assertSame(second, first);
+		assertEquals(logins.get(), 1);
+	}
+
+	@Test
+	public void testRepeatedIdempotencyKeyWithOtherSecretIsNotReplayed() throws Exception {
+		IdempotencyStoreImp store = createStoreUsingRealSingleFlightAndCache();
+
+		login(store, "someIdempotencyKey", "password", "someSecret");
+		login(store, "someIdempotencyKey", "password", "someOtherSecret");
+
+		assertEquals(logins.get(), 2);
+	}
+
+	@Test
+	public void testSameIdempotencyKeyForOtherLoginTypeIsNotReplayed() throws Exception {
+		IdempotencyStoreImp store = createStoreUsingRealSingleFlightAndCache();
+
+		login(store, "someIdempotencyKey", "password", "someSecret");
+		login(store, "someIdempotencyKey", "apptoken", "someSecret");
+
+		assertEquals(logins.get(), 2);
+	}
+
+	@Test
+	public void testOtherIdempotencyKeyIsNotReplayed() throws Exception {
+		IdempotencyStoreImp store = createStoreUsingRealSingleFlightAndCache();
+
+		login(store, "someIdempotencyKey", "password", "someSecret");
+		login(store, "someOtherIdempotencyKey", "password", "someSecret");
+
+		assertEquals(logins.get(), 2);
+	}
+
+	@Test
+	public void testFailedLoginIsRetriedForSameIdempotencyKey() throws Exception {
+		IdempotencyStoreImp store = createStoreUsingRealSingleFlightAndCache();
+		try {
+			store.loginOncePerIdempotencyKey("someIdempotencyKey", "password", "someLoginId",
+					"someSecret", () -> CompletableFuture.failedFuture(new RuntimeException()))
+					.toCompletableFuture().join();
+			fail("It should throw an exception");
+		} catch (CompletionException e) {
+			// expected
+		}
+
+		AuthToken result = login(store, "someIdempotencyKey", "password", "someSecret");
+
+		assertSame(result, authToken);
+		assertEquals(logins.get(), 1);
+	}
+
+	@Test
+	public void testRepeatedIdempotencyKeyAfterLogoutLogsInAgain() throws Exception {
+		IdempotencyStoreImp store = createStoreUsingRealSingleFlightAndCache();
+
+		AuthToken first = login(store, "someIdempotencyKey", "password", "someSecret");
+		store.forgetAuthToken(first.tokenId(), first.token());
+		login(store, "someIdempotencyKey", "password", "someSecret");
+
+		assertEquals(logins.get(), 2);
+	}
+
+	@Test
+	public void testForgetWithOtherTokenStillReplays() throws Exception {
+		IdempotencyStoreImp store = createStoreUsingRealSingleFlightAndCache();
+
+		AuthToken first = login(store, "someIdempotencyKey", "password", "someSecret");
+		store.forgetAuthToken(first.tokenId(), "someOtherToken");
+		AuthToken second = login(store, "someIdempotencyKey", "password", "someSecret");
+
+		assertSame(second, first);
+		assertEquals(logins.get(), 1);
+	}
+}
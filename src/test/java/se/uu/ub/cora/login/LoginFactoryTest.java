@@ -1,5 +1,5 @@
 /*
- * Copyright 2024 Uppsala University Library
+ * Copyright 2024, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -21,12 +21,29 @@ package se.uu.ub.cora.login;
 import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import se.uu.ub.cora.gatekeeper.storage.UserStorageProvider;
 import se.uu.ub.cora.logger.LoggerProvider;
 import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
+import se.uu.ub.cora.gatekeeper.user.User;
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.login.initialize.CacheProvider;
+import se.uu.ub.cora.login.hashing.KeyedDigest;
+import se.uu.ub.cora.login.hashing.KeyedDigestTextHasher;
+import se.uu.ub.cora.login.hashing.PerThreadTextHasher;
+import se.uu.ub.cora.login.initialize.ExecutorProvider;
+import se.uu.ub.cora.login.initialize.GatekeeperInstanceProvider;
+import se.uu.ub.cora.login.initialize.KeyedDigestProvider;
+import se.uu.ub.cora.login.initialize.SingleFlightProvider;
+import se.uu.ub.cora.login.spies.CacheSpy;
+import se.uu.ub.cora.login.spies.GatekeeperTokenProviderSpy;
+import se.uu.ub.cora.login.spies.HashingExecutorSpy;
+import se.uu.ub.cora.login.spies.SingleFlightSpy;
 import se.uu.ub.cora.login.spies.TextHasherFactorySpy;
 import se.uu.ub.cora.login.spies.UserStorageViewInstanceProviderSpy;
 import se.uu.ub.cora.password.texthasher.TextHasherFactory;
@@ -55,7 +72,141 @@ public class LoginFactoryTest {
 
 		PasswordLoginImp passwordLogin = (PasswordLoginImp) loginFactory.factorPasswordLogin();
 
-		textHasherFactory.MCR.assertReturn("factor", 0, passwordLogin.onlyForTestGetTextHasher());
+		assertTextHasherIsPerThreadUsingFactory(passwordLogin.onlyForTestGetTextHasher());
+	}
+
+	@Test
+	public void testFactorLoginsUseHashingExecutorFromProvider() throws Exception {
+		HashingExecutorSpy hashingExecutor = new HashingExecutorSpy();
+		ExecutorProvider.setHashingExecutor(hashingExecutor);
+
+		PasswordLoginImp passwordLogin = (PasswordLoginImp) loginFactory.factorPasswordLogin();
+		AppTokenLoginImp appTokenLogin = (AppTokenLoginImp) loginFactory.factorAppTokenLogin();
+
+		assertSame(passwordLogin.onlyForTestGetHashingExecutor(), hashingExecutor);
+		assertSame(appTokenLogin.onlyForTestGetHashingExecutor(), hashingExecutor);
+	}
+
+	@Test
+	public void testFactorLoginsUseLoginExecutorFromProvider() throws Exception {
+		ExecutorService loginExecutor = Executors.newSingleThreadExecutor();
+		ExecutorProvider.setLoginExecutor(loginExecutor);
+
+		PasswordLoginImp passwordLogin = (PasswordLoginImp) loginFactory.factorPasswordLogin();
+		AppTokenLoginImp appTokenLogin = (AppTokenLoginImp) loginFactory.factorAppTokenLogin();
+
+		assertSame(passwordLogin.onlyForTestGetLoginExecutor(), loginExecutor);
+		assertSame(appTokenLogin.onlyForTestGetLoginExecutor(), loginExecutor);
+		loginExecutor.shutdown();
+	}
+
+	@Test
+	public void testFactorLoginsUseSingleFlightFromProvider() throws Exception {
+		SingleFlightSpy singleFlight = new SingleFlightSpy();
+		SingleFlightProvider.setSingleFlight(singleFlight);
+
+		PasswordLoginImp passwordLogin = (PasswordLoginImp) loginFactory.factorPasswordLogin();
+		AppTokenLoginImp appTokenLogin = (AppTokenLoginImp) loginFactory.factorAppTokenLogin();
+
+		assertSame(passwordLogin.onlyForTestGetSingleFlight(), singleFlight);
+		assertSame(appTokenLogin.onlyForTestGetSingleFlight(), singleFlight);
+	}
+
+	@Test
+	public void testFactorLoginsUseUserCacheFromProvider() throws Exception {
+		CacheSpy<User> userCache = new CacheSpy<>();
+		CacheProvider.setUserCache(userCache);
+
+		PasswordLoginImp passwordLogin = (PasswordLoginImp) loginFactory.factorPasswordLogin();
+		AppTokenLoginImp appTokenLogin = (AppTokenLoginImp) loginFactory.factorAppTokenLogin();
+
+		assertSame(passwordLogin.onlyForTestGetUserCache(), userCache);
+		assertSame(appTokenLogin.onlyForTestGetUserCache(), userCache);
+	}
+
+	@Test
+	public void testFactorAppTokenLoginUsesSystemSecretCacheFromProvider() throws Exception {
+		CacheSpy<String> systemSecretCache = new CacheSpy<>();
+		CacheProvider.setSystemSecretCache(systemSecretCache);
+
+		AppTokenLoginImp appTokenLogin = (AppTokenLoginImp) loginFactory.factorAppTokenLogin();
+
+		assertSame(appTokenLogin.onlyForTestGetSystemSecretCache(), systemSecretCache);
+	}
+
+	@Test
+	public void testFactorAppTokenLoginUsesLastMatchedAppTokenIdCacheFromProvider()
+			throws Exception {
+		CacheSpy<String> lastMatchedAppTokenIdCache = new CacheSpy<>();
+		CacheProvider.setLastMatchedAppTokenIdCache(lastMatchedAppTokenIdCache);
+
+		AppTokenLoginImp appTokenLogin = (AppTokenLoginImp) loginFactory.factorAppTokenLogin();
+
+		assertSame(appTokenLogin.onlyForTestGetLastMatchedAppTokenIdCache(),
+				lastMatchedAppTokenIdCache);
+	}
+
+	@Test
+	public void testFactorAuthTokenRenewerUsesProviders() throws Exception {
+		GatekeeperTokenProviderSpy gatekeeperTokenProvider = new GatekeeperTokenProviderSpy();
+		GatekeeperInstanceProvider.setGatekeeperTokenProvider(gatekeeperTokenProvider);
+		SingleFlightSpy singleFlight = new SingleFlightSpy();
+		SingleFlightProvider.setSingleFlight(singleFlight);
+		CacheSpy<AuthToken> renewedAuthTokenCache = new CacheSpy<>();
+		CacheProvider.setRenewedAuthTokenCache(renewedAuthTokenCache);
+
+		AuthTokenRenewerImp authTokenRenewer = (AuthTokenRenewerImp) loginFactory
+				.factorAuthTokenRenewer();
+
+		assertSame(authTokenRenewer.onlyForTestGetGatekeeperTokenProvider(),
+				gatekeeperTokenProvider);
+		assertSame(authTokenRenewer.onlyForTestGetSingleFlight(), singleFlight);
+		assertSame(authTokenRenewer.onlyForTestGetRenewedAuthTokenCache(),
+				renewedAuthTokenCache);
+	}
+
+	@Test
+	public void testFactorIdempotencyStoreUsesProviders() throws Exception {
+		SingleFlightSpy singleFlight = new SingleFlightSpy();
+		SingleFlightProvider.setSingleFlight(singleFlight);
+		CacheSpy<AuthToken> idempotentLoginCache = new CacheSpy<>();
+		CacheProvider.setIdempotentLoginCache(idempotentLoginCache);
+		CacheSpy<String> forgottenAuthTokenCache = new CacheSpy<>();
+		CacheProvider.setForgottenAuthTokenCache(forgottenAuthTokenCache);
+
+		IdempotencyStoreImp idempotencyStore = (IdempotencyStoreImp) loginFactory
+				.factorIdempotencyStore();
+
+		assertSame(idempotencyStore.onlyForTestGetSingleFlight(), singleFlight);
+		assertSame(idempotencyStore.onlyForTestGetIdempotentLoginCache(), idempotentLoginCache);
+		assertSame(idempotencyStore.onlyForTestGetForgottenAuthTokenCache(),
+				forgottenAuthTokenCache);
+	}
+
+	@Test
+	public void testFactorAppTokenLoginUsesKeyedDigestWhenConfigured() throws Exception {
+		loginFactory.onlyForTestSetTextHasherFactory(textHasherFactory);
+		KeyedDigest keyedDigest = KeyedDigest.usingKey(new byte[32]);
+		KeyedDigestProvider.setAppTokenKeyedDigest(keyedDigest);
+
+		AppTokenLoginImp appTokenLogin = (AppTokenLoginImp) loginFactory.factorAppTokenLogin();
+
+		KeyedDigestTextHasher textHasher = (KeyedDigestTextHasher) appTokenLogin
+				.onlyForTestGetTextHasher();
+		assertSame(textHasher.onlyForTestGetKeyedDigest(), keyedDigest);
+		assertTextHasherIsPerThreadUsingFactory(textHasher.onlyForTestGetTextHasher());
+		KeyedDigestProvider.setAppTokenKeyedDigest(null);
+	}
+
+	@Test
+	public void testFactorPasswordLoginNeverUsesKeyedDigest() throws Exception {
+		loginFactory.onlyForTestSetTextHasherFactory(textHasherFactory);
+		KeyedDigestProvider.setAppTokenKeyedDigest(KeyedDigest.usingKey(new byte[32]));
+
+		PasswordLoginImp passwordLogin = (PasswordLoginImp) loginFactory.factorPasswordLogin();
+
+		assertTextHasherIsPerThreadUsingFactory(passwordLogin.onlyForTestGetTextHasher());
+		KeyedDigestProvider.setAppTokenKeyedDigest(null);
 	}
 
 	@Test
@@ -64,7 +215,12 @@ public class LoginFactoryTest {
 
 		AppTokenLoginImp appTokenLogin = (AppTokenLoginImp) loginFactory.factorAppTokenLogin();
 
-		textHasherFactory.MCR.assertReturn("factor", 0, appTokenLogin.onlyForTestGetTextHasher());
+		assertTextHasherIsPerThreadUsingFactory(appTokenLogin.onlyForTestGetTextHasher());
+	}
+
+	private void assertTextHasherIsPerThreadUsingFactory(Object textHasher) {
+		PerThreadTextHasher perThreadTextHasher = (PerThreadTextHasher) textHasher;
+		assertSame(perThreadTextHasher.onlyForTestGetTextHasherFactory(), textHasherFactory);
 	}
 
 	@Test
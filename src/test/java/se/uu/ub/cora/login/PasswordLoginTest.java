@@ -1,5 +1,5 @@
 /*
- * Copyright 2024 Uppsala University Library
+ * Copyright 2024, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -19,11 +19,17 @@
 package se.uu.ub.cora.login;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 import static org.testng.Assert.fail;
 
+import java.util.ArrayList;
 import java.util.LinkedHashSet;
+import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.RejectedExecutionException;
 
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
@@ -37,7 +43,14 @@ import se.uu.ub.cora.logger.LoggerProvider;
 import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
 import se.uu.ub.cora.login.initialize.GatekeeperInstanceProvider;
 import se.uu.ub.cora.login.rest.LoginException;
+import se.uu.ub.cora.login.cache.CacheImp;
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+import se.uu.ub.cora.login.singleflight.SingleFlightImp;
+import se.uu.ub.cora.login.spies.CacheSpy;
+import se.uu.ub.cora.login.spies.ExecutorSpy;
 import se.uu.ub.cora.login.spies.GatekeeperTokenProviderSpy;
+import se.uu.ub.cora.login.spies.HashingExecutorSpy;
+import se.uu.ub.cora.login.spies.SingleFlightSpy;
 import se.uu.ub.cora.login.spies.TextHasherSpy;
 import se.uu.ub.cora.login.spies.UserStorageViewInstanceProviderSpy;
 import se.uu.ub.cora.login.spies.UserStorageViewSpy;
@@ -53,6 +66,10 @@ public class PasswordLoginTest {
 	private User user;
 	private TextHasherSpy textHasher;
 	private GatekeeperTokenProviderSpy gatekeeperTokenProvider;
+	private HashingExecutorSpy hashingExecutor;
+	private ExecutorSpy loginExecutor;
+	private SingleFlightSpy singleFlight;
+	private CacheSpy<User> userCache;
 
 	@BeforeMethod
 	private void beforeMethod() {
@@ -64,11 +81,16 @@ public class PasswordLoginTest {
 				"someAppTokenId2");
 		setupBasicUserInStorage(user);
 		textHasher = new TextHasherSpy();
+		hashingExecutor = new HashingExecutorSpy();
+		loginExecutor = new ExecutorSpy();
 
 		gatekeeperTokenProvider = new GatekeeperTokenProviderSpy();
 		GatekeeperInstanceProvider.setGatekeeperTokenProvider(gatekeeperTokenProvider);
 
-		passwordLogin = new PasswordLoginImp(textHasher);
+		singleFlight = new SingleFlightSpy();
+		userCache = new CacheSpy<>();
+		passwordLogin = new PasswordLoginImp(textHasher, hashingExecutor, loginExecutor,
+				singleFlight, userCache);
 	}
 
 	private void setupBasicUserInStorage(User user) {
@@ -94,8 +116,41 @@ public class PasswordLoginTest {
 	}
 
 	@Test
-	public void testUserStorageViewCreatedOnInitialization() throws Exception {
-		userStorageInstanceProvider.MCR.assertMethodWasCalled("getStorageView");
+	public void testUserStorageViewIsNotLookedUpOnInitialization() throws Exception {
+		userStorageInstanceProvider.MCR.assertMethodNotCalled("getStorageView");
+	}
+
+	@Test
+	public void testUserStorageViewIsLookedUpForEachLogin() throws Exception {
+		UserStorageViewSpy otherUserStorageView = new UserStorageViewSpy();
+		otherUserStorageView.MRV.setDefaultReturnValuesSupplier("getUserByLoginId", () -> user);
+		passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+		userStorageInstanceProvider.MRV.setDefaultReturnValuesSupplier("getStorageView",
+				() -> otherUserStorageView);
+
+		passwordLogin.getAuthToken("otherLoginId", SOME_PASSWORD);
+
+		userStorageView.MCR.assertParameters("getUserByLoginId", 0, SOME_LOGIN_ID);
+		otherUserStorageView.MCR.assertParameters("getUserByLoginId", 0, "otherLoginId");
+		otherUserStorageView.MCR.assertParameters("getSystemSecretById", 0,
+				SOME_SYSTEM_SECRET_ID);
+	}
+
+	@Test
+	public void testUserStorageViewIsLookedUpOncePerLogin() throws Exception {
+		passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+
+		userStorageInstanceProvider.MCR.assertNumberOfCallsToMethod("getStorageView", 1);
+		userStorageView.MCR.assertParameters("getSystemSecretById", 0, SOME_SYSTEM_SECRET_ID);
+	}
+
+	@Test
+	public void testUserStorageViewIsLookedUpOncePerLoginAsync() throws Exception {
+		passwordLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_PASSWORD).toCompletableFuture()
+				.join();
+
+		userStorageInstanceProvider.MCR.assertNumberOfCallsToMethod("getStorageView", 1);
+		userStorageView.MCR.assertParameters("getSystemSecretById", 0, SOME_SYSTEM_SECRET_ID);
 	}
 
 	@Test(expectedExceptions = LoginException.class, expectedExceptionsMessageRegExp = ""
@@ -109,7 +164,7 @@ public class PasswordLoginTest {
 
 	@Test
 	public void testGetAuthToken_CallsGetUser() throws Exception {
-		textHasher.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
 
 		passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
 
@@ -140,7 +195,7 @@ public class PasswordLoginTest {
 	@Test(expectedExceptions = LoginException.class, expectedExceptionsMessageRegExp = ""
 			+ "Login failed.")
 	public void testNoMatch() throws Exception {
-		textHasher.MRV.setDefaultReturnValuesSupplier("matches", () -> false);
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> false);
 
 		passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
 	}
@@ -148,7 +203,7 @@ public class PasswordLoginTest {
 	@Test
 	public void testPasswordMatches() throws Exception {
 		configureUser(user, true, Optional.of(SOME_SYSTEM_SECRET_ID));
-		textHasher.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
 
 		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
 				() -> "someHashedSecret", SOME_SYSTEM_SECRET_ID);
@@ -156,14 +211,15 @@ public class PasswordLoginTest {
 		passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
 
 		userStorageView.MCR.assertParameters("getSystemSecretById", 0, SOME_SYSTEM_SECRET_ID);
-		textHasher.MCR.assertParameters("matches", 0, SOME_PASSWORD, "someHashedSecret");
+		hashingExecutor.MCR.assertParameters("matches", 0, textHasher, SOME_PASSWORD,
+				"someHashedSecret");
 
 	}
 
 	@Test
 	public void testCallGetAuthToken() throws Exception {
 		configureUser(user, true, Optional.of(SOME_SYSTEM_SECRET_ID));
-		textHasher.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
 
 		AuthToken authToken = passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
 
@@ -176,4 +232,278 @@ public class PasswordLoginTest {
 
 	}
 
+	@Test
+	public void testHashingUnavailableIsNotConvertedToLoginException() throws Exception {
+		LoginUnavailableException unavailable = LoginUnavailableException
+				.withMessage("someUnavailable");
+		hashingExecutor.MRV.setAlwaysThrowException("matches", unavailable);
+		try {
+			passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertSame(e, unavailable);
+			gatekeeperTokenProvider.MCR.assertMethodNotCalled("getAuthTokenForUserInfo");
+		}
+	}
+
+	@Test
+	public void testOnlyForTestGetHashingExecutor() throws Exception {
+		assertSame(passwordLogin.onlyForTestGetHashingExecutor(), hashingExecutor);
+	}
+
+	@Test
+	public void testOnlyForTestGetLoginExecutor() throws Exception {
+		assertSame(passwordLogin.onlyForTestGetLoginExecutor(), loginExecutor);
+	}
+
+	@Test
+	public void testGetAuthTokenAsync() throws Exception {
+		userStorageView.MRV.setSpecificReturnValuesSupplier("getSystemSecretById",
+				() -> "someHashedSecret", SOME_SYSTEM_SECRET_ID);
+
+		AuthToken authToken = passwordLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_PASSWORD)
+				.toCompletableFuture().join();
+
+		userStorageView.MCR.assertParameters("getUserByLoginId", 0, SOME_LOGIN_ID);
+		hashingExecutor.MCR.assertParameters("matchesAsync", 0, textHasher, SOME_PASSWORD,
+				"someHashedSecret");
+		hashingExecutor.MCR.assertMethodNotCalled("matches");
+		UserInfo userInfo = (UserInfo) gatekeeperTokenProvider.MCR
+				.getValueForMethodNameAndCallNumberAndParameterName("getAuthTokenForUserInfo", 0,
+						"userInfo");
+		assertEquals(userInfo.userId, user.id);
+		gatekeeperTokenProvider.MCR.assertReturn("getAuthTokenForUserInfo", 0, authToken);
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncRunsStorageAndGatekeeperOnLoginExecutor() throws Exception {
+		passwordLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_PASSWORD).toCompletableFuture()
+				.join();
+
+		loginExecutor.MCR.assertNumberOfCallsToMethod("execute", 2);
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncUserNotActive() throws Exception {
+		configureUser(user, false, Optional.of(SOME_SYSTEM_SECRET_ID));
+
+		Throwable error = getErrorFromGetAuthTokenAsync();
+
+		assertTrue(error instanceof LoginException);
+		assertEquals(error.getMessage(), "Login failed.");
+		hashingExecutor.MCR.assertMethodNotCalled("matchesAsync");
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncNoMatch() throws Exception {
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matchesAsync",
+				() -> CompletableFuture.completedFuture(false));
+
+		Throwable error = getErrorFromGetAuthTokenAsync();
+
+		assertTrue(error instanceof LoginException);
+		assertEquals(error.getMessage(), "Login failed.");
+		gatekeeperTokenProvider.MCR.assertMethodNotCalled("getAuthTokenForUserInfo");
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncHashingUnavailable() throws Exception {
+		LoginUnavailableException unavailable = LoginUnavailableException
+				.withMessage("someUnavailable");
+		hashingExecutor.MRV.setDefaultReturnValuesSupplier("matchesAsync",
+				() -> CompletableFuture.failedFuture(unavailable));
+
+		Throwable error = getErrorFromGetAuthTokenAsync();
+
+		assertSame(error, unavailable);
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncLoginExecutorSaturated() throws Exception {
+		RejectedExecutionException rejected = new RejectedExecutionException("someRejected");
+		PasswordLoginImp login = new PasswordLoginImp(textHasher, hashingExecutor, command -> {
+			throw rejected;
+		}, singleFlight, userCache);
+
+		try {
+			login.getAuthTokenAsync(SOME_LOGIN_ID, SOME_PASSWORD).toCompletableFuture().join();
+			fail("It should throw an exception");
+		} catch (CompletionException e) {
+			assertTrue(e.getCause() instanceof LoginUnavailableException);
+			assertEquals(e.getCause().getMessage(), "Login executor is saturated.");
+			assertSame(e.getCause().getCause(), rejected);
+		}
+	}
+
+	private Throwable getErrorFromGetAuthTokenAsync() {
+		try {
+			passwordLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_PASSWORD).toCompletableFuture()
+					.join();
+			fail("It should throw an exception");
+		} catch (CompletionException e) {
+			return e.getCause();
+		}
+		return null;
+	}
+
+	@Test
+	public void testOnlyForTestGetSingleFlight() throws Exception {
+		assertSame(((PasswordLoginImp) passwordLogin).onlyForTestGetSingleFlight(), singleFlight);
+	}
+
+	@Test
+	public void testGetAuthTokenCreatesSingleFlightKeyFromCredentials() throws Exception {
+		passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+
+		singleFlight.MCR.assertParameters("createKeyUsingTypeLoginIdAndSecret", 0, "password",
+				SOME_LOGIN_ID, SOME_PASSWORD);
+		singleFlight.MCR.assertParameter("runOnceForKey", 0, "key", "someKey");
+	}
+
+	@Test
+	public void testGetAuthTokenAsyncCreatesSingleFlightKeyFromCredentials() throws Exception {
+		passwordLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_PASSWORD).toCompletableFuture().join();
+
+		singleFlight.MCR.assertParameters("createKeyUsingTypeLoginIdAndSecret", 0, "password",
+				SOME_LOGIN_ID, SOME_PASSWORD);
+		singleFlight.MCR.assertParameter("runOnceForKey", 0, "key", "someKey");
+	}
+
+	@Test
+	public void testGetAuthTokenSharedAuthTokenMode() throws Exception {
+		singleFlight.MRV.setDefaultReturnValuesSupplier("sharesAuthToken", () -> true);
+
+		AuthToken authToken = passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+
+		singleFlight.MCR.assertMethodWasCalled("runOnceForKey");
+		gatekeeperTokenProvider.MCR.assertReturn("getAuthTokenForUserInfo", 0, authToken);
+	}
+
+	@Test
+	public void testConcurrentIdenticalLoginsShareVerificationButGetOwnAuthTokens()
+			throws Exception {
+		List<Runnable> queuedTasks = new ArrayList<>();
+		PasswordLoginImp login = new PasswordLoginImp(textHasher, hashingExecutor, queuedTasks::add,
+				SingleFlightImp.usingSharedAuthToken(false), userCache);
+
+		login.getAuthTokenAsync(SOME_LOGIN_ID, SOME_PASSWORD);
+		login.getAuthTokenAsync(SOME_LOGIN_ID, SOME_PASSWORD);
+		runQueuedTasks(queuedTasks);
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getUserByLoginId", 1);
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 2);
+	}
+
+	private void runQueuedTasks(List<Runnable> queuedTasks) {
+		while (!queuedTasks.isEmpty()) {
+			queuedTasks.remove(0).run();
+		}
+	}
+
+	@Test
+	public void testConcurrentIdenticalLoginsShareAuthTokenInSharedAuthTokenMode()
+			throws Exception {
+		List<Runnable> queuedTasks = new ArrayList<>();
+		PasswordLoginImp login = new PasswordLoginImp(textHasher, hashingExecutor, queuedTasks::add,
+				SingleFlightImp.usingSharedAuthToken(true), userCache);
+
+		CompletableFuture<AuthToken> first = login.getAuthTokenAsync(SOME_LOGIN_ID, SOME_PASSWORD)
+				.toCompletableFuture();
+		CompletableFuture<AuthToken> second = login.getAuthTokenAsync(SOME_LOGIN_ID, SOME_PASSWORD)
+				.toCompletableFuture();
+		runQueuedTasks(queuedTasks);
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getUserByLoginId", 1);
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 1);
+		assertSame(first.join(), second.join());
+	}
+
+	@Test
+	public void testConcurrentLoginsWithDifferentSecretsDoNotShareVerification()
+			throws Exception {
+		List<Runnable> queuedTasks = new ArrayList<>();
+		PasswordLoginImp login = new PasswordLoginImp(textHasher, hashingExecutor, queuedTasks::add,
+				SingleFlightImp.usingSharedAuthToken(true), userCache);
+
+		login.getAuthTokenAsync(SOME_LOGIN_ID, SOME_PASSWORD);
+		login.getAuthTokenAsync(SOME_LOGIN_ID, "otherSecret");
+		runQueuedTasks(queuedTasks);
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getUserByLoginId", 2);
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 2);
+	}
+
+	@Test
+	public void testOnlyForTestGetUserCache() throws Exception {
+		assertSame(((PasswordLoginImp) passwordLogin).onlyForTestGetUserCache(), userCache);
+	}
+
+	@Test
+	public void testGetAuthTokenReadsUserThroughUserCache() throws Exception {
+		passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+
+		userCache.MCR.assertParameter("getOrLoad", 0, "key", SOME_LOGIN_ID);
+		userStorageView.MCR.assertParameters("getUserByLoginId", 0, SOME_LOGIN_ID);
+	}
+
+	@Test
+	public void testRepeatedLoginsUseCachedUser() throws Exception {
+		PasswordLoginImp login = new PasswordLoginImp(textHasher, hashingExecutor, loginExecutor,
+				singleFlight, CacheImp.usingMaxSizeAndTimeToLive(10, 60000));
+
+		login.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+		login.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getUserByLoginId", 1);
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 2);
+	}
+
+	@Test
+	public void testUserDeactivatedAfterInvalidationIsRejected() throws Exception {
+		CacheImp<User> cache = CacheImp.usingMaxSizeAndTimeToLive(10, 60000);
+		PasswordLoginImp login = new PasswordLoginImp(textHasher, hashingExecutor, loginExecutor,
+				singleFlight, cache);
+		login.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+		User deactivatedUser = new User("someRecordInfoId");
+		deactivatedUser.active = false;
+		userStorageView.MRV.setDefaultReturnValuesSupplier("getUserByLoginId",
+				() -> deactivatedUser);
+
+		cache.invalidate(SOME_LOGIN_ID);
+
+		try {
+			login.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+			fail("It should throw an exception");
+		} catch (LoginException e) {
+			assertEquals(e.getMessage(), "Login failed.");
+		}
+	}
+
+	@Test
+	public void testEachLoginReadsSystemSecretFromStorage() throws Exception {
+		passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+		passwordLogin.getAuthTokenAsync(SOME_LOGIN_ID, SOME_PASSWORD).toCompletableFuture()
+				.join();
+
+		userStorageView.MCR.assertNumberOfCallsToMethod("getSystemSecretById", 2);
+	}
+
+	@Test
+	public void testOldPasswordIsRejectedDirectlyAfterPasswordChange() throws Exception {
+		passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+		userStorageView.MRV.setDefaultReturnValuesSupplier("getSystemSecretById",
+				() -> "someNewHashedSecret");
+		hashingExecutor.MRV.setSpecificReturnValuesSupplier("matches", () -> false, textHasher,
+				SOME_PASSWORD, "someNewHashedSecret");
+
+		try {
+			passwordLogin.getAuthToken(SOME_LOGIN_ID, SOME_PASSWORD);
+			fail("It should throw an exception");
+		} catch (LoginException e) {
+			hashingExecutor.MCR.assertParameters("matches", 1, textHasher, SOME_PASSWORD,
+					"someNewHashedSecret");
+			gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo",
+					1);
+		}
+	}
 }
@@ -0,0 +1,203 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.benchmark;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import se.uu.ub.cora.gatekeeper.storage.UserStorageProvider;
+import se.uu.ub.cora.gatekeeper.storage.UserStorageView;
+import se.uu.ub.cora.gatekeeper.storage.UserStorageViewInstanceProvider;
+import se.uu.ub.cora.gatekeeper.user.AppToken;
+import se.uu.ub.cora.gatekeeper.user.User;
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
+import se.uu.ub.cora.gatekeepertokenprovider.UserInfo;
+import se.uu.ub.cora.login.PasswordLoginImp;
+import se.uu.ub.cora.login.cache.CacheImp;
+import se.uu.ub.cora.login.hashing.HashingExecutor;
+import se.uu.ub.cora.login.hashing.HashingExecutorImp;
+import se.uu.ub.cora.login.initialize.GatekeeperInstanceProvider;
+import se.uu.ub.cora.login.singleflight.SingleFlightImp;
+import se.uu.ub.cora.password.texthasher.TextHasher;
+
+/**
+ * LoginExecutionModeBenchmark compares the fixed platform thread login executor with the virtual
+ * thread login executor (loginExecutionMode=virtual) for the same password login flow.
+ * <p>
+ * User storage and gatekeeper are simulated with blocking sleeps, password hashing is simulated
+ * with CPU work on a bounded {@link HashingExecutorImp}. The benchmark is not run as part of the
+ * test suite, run it with the test classpath using:
+ * 
+ * <pre>
+ * java -cp target/classes:target/test-classes:&lt;dependencies&gt; \
+ *     se.uu.ub.cora.login.benchmark.LoginExecutionModeBenchmark
+ * </pre>
+ */
+public class LoginExecutionModeBenchmark {
+	private static final int FIXED_POOL_SIZE = 32;
+	private static final int MAX_CLIENTS = 10_000;
+	private static final int[] CONCURRENT_CLIENTS = { 1_000, MAX_CLIENTS };
+	private static final long STORAGE_LATENCY_IN_MILLISECONDS = 5;
+	private static final long GATEKEEPER_LATENCY_IN_MILLISECONDS = 10;
+	private static final int HASHING_ITERATIONS = 20_000;
+
+	public static void main(String[] args) throws Exception {
+		UserStorageProvider.onlyForTestSetUserStorageViewInstanceProvider(
+				new SleepingUserStorageViewInstanceProvider());
+		GatekeeperInstanceProvider.setGatekeeperTokenProvider(new SleepingGatekeeper());
+		int cores = Runtime.getRuntime().availableProcessors();
+		HashingExecutor hashingExecutor = HashingExecutorImp
+				.usingPoolSizeQueueSizeAndMaxWait(cores, MAX_CLIENTS, 60_000);
+		try {
+			for (int clients : CONCURRENT_CLIENTS) {
+				runUsingExecutor("platform(" + FIXED_POOL_SIZE + ")", clients, hashingExecutor,
+						Executors.newFixedThreadPool(FIXED_POOL_SIZE));
+				runUsingExecutor("virtual", clients, hashingExecutor,
+						Executors.newVirtualThreadPerTaskExecutor());
+			}
+		} finally {
+			hashingExecutor.shutdown();
+		}
+	}
+
+	private static void runUsingExecutor(String mode, int clients,
+			HashingExecutor hashingExecutor, ExecutorService loginExecutor) {
+		ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+		threadBean.resetPeakThreadCount();
+		PasswordLoginImp passwordLogin = new PasswordLoginImp(new CpuBoundTextHasher(),
+				hashingExecutor, loginExecutor, SingleFlightImp.usingSharedAuthToken(false),
+				CacheImp.usingMaxSizeAndTimeToLive(0, 0));
+		long start = System.nanoTime();
+		List<CompletableFuture<AuthToken>> logins = new ArrayList<>(clients);
+		for (int i = 0; i < clients; i++) {
+			logins.add(
+					passwordLogin.getAuthTokenAsync("user" + i, "password").toCompletableFuture());
+		}
+		CompletableFuture.allOf(logins.toArray(CompletableFuture[]::new)).join();
+		long elapsedInMilliseconds = (System.nanoTime() - start) / 1_000_000;
+		loginExecutor.shutdown();
+		System.out.printf("%-14s clients: %6d elapsed: %6d ms throughput: %8.1f logins/s "
+				+ "peak platform threads: %d%n", mode, clients, elapsedInMilliseconds,
+				clients * 1000.0 / Math.max(1, elapsedInMilliseconds),
+				threadBean.getPeakThreadCount());
+	}
+
+	private static void sleep(long milliseconds) {
+		try {
+			Thread.sleep(milliseconds);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static class SleepingUserStorageViewInstanceProvider
+			implements UserStorageViewInstanceProvider {
+		private UserStorageView userStorageView = new SleepingUserStorageView();
+
+		@Override
+		public int getOrderToSelectImplementionsBy() {
+			return 0;
+		}
+
+		@Override
+		public UserStorageView getStorageView() {
+			return userStorageView;
+		}
+	}
+
+	private static class SleepingUserStorageView implements UserStorageView {
+
+		@Override
+		public User getUserById(String id) {
+			sleep(STORAGE_LATENCY_IN_MILLISECONDS);
+			return createActiveUser(id);
+		}
+
+		@Override
+		public User getUserByLoginId(String loginId) {
+			sleep(STORAGE_LATENCY_IN_MILLISECONDS);
+			return createActiveUser(loginId);
+		}
+
+		private User createActiveUser(String id) {
+			User user = new User(id);
+			user.active = true;
+			user.passwordId = Optional.of("password-" + id);
+			return user;
+		}
+
+		@Override
+		public AppToken getAppTokenById(String tokenId) {
+			sleep(STORAGE_LATENCY_IN_MILLISECONDS);
+			return null;
+		}
+
+		@Override
+		public String getSystemSecretById(String systemSecretId) {
+			sleep(STORAGE_LATENCY_IN_MILLISECONDS);
+			return "hashedPassword";
+		}
+	}
+
+	private static class SleepingGatekeeper implements GatekeeperTokenProvider {
+
+		@Override
+		public AuthToken getAuthTokenForUserInfo(UserInfo userInfo) {
+			sleep(GATEKEEPER_LATENCY_IN_MILLISECONDS);
+			return new AuthToken("token", "tokenId", 0, 0, "userId", "loginId", Optional.empty(),
+					Optional.empty(), Set.of());
+		}
+
+		@Override
+		public void removeAuthToken(String tokenId, String token) {
+			sleep(GATEKEEPER_LATENCY_IN_MILLISECONDS);
+		}
+
+		@Override
+		public AuthToken renewAuthToken(String tokenId, String token) {
+			sleep(GATEKEEPER_LATENCY_IN_MILLISECONDS);
+			return null;
+		}
+	}
+
+	private static class CpuBoundTextHasher implements TextHasher {
+
+		@Override
+		public String hashText(String plainText) {
+			return "hashedPassword";
+		}
+
+		@Override
+		public boolean matches(String plainText, String hashedText) {
+			long value = plainText.hashCode();
+			for (int i = 0; i < HASHING_ITERATIONS; i++) {
+				value = value * 31 + i;
+			}
+			return value != 0 || hashedText != null;
+		}
+	}
+}
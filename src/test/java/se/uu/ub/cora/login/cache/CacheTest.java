@@ -0,0 +1,284 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.cache;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CacheTest {
+	private static final long TIME_TO_LIVE = 1000;
+	private CacheImp<String> cache;
+	private long now;
+	private AtomicInteger numberOfLoads;
+	private Function<String, String> loader;
+	private Function<Set<String>, Map<String, String>> batchLoader;
+	private List<Set<String>> batchLoads;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		cache = CacheImp.usingMaxSizeAndTimeToLive(3, TIME_TO_LIVE);
+		now = 0;
+		cache.onlyForTestSetClock(() -> now);
+		numberOfLoads = new AtomicInteger();
+		loader = key -> "valueFor" + key + numberOfLoads.incrementAndGet();
+		batchLoads = new ArrayList<>();
+		batchLoader = keys -> {
+			batchLoads.add(keys);
+			return keys.stream().collect(Collectors.toMap(key -> key, key -> "valueFor" + key));
+		};
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertEquals(cache.onlyForTestGetMaxSize(), 3);
+		assertEquals(cache.onlyForTestGetTimeToLiveInMilliseconds(), TIME_TO_LIVE);
+		assertEquals(cache.onlyForTestGetSize(), 0);
+		assertEquals(cache.getHits(), 0);
+		assertEquals(cache.getMisses(), 0);
+	}
+
+	@Test
+	public void testFirstCallLoadsValue() throws Exception {
+		String value = cache.getOrLoad("someKey", loader);
+
+		assertEquals(value, "valueForsomeKey1");
+		assertEquals(cache.getMisses(), 1);
+		assertEquals(cache.getHits(), 0);
+	}
+
+	@Test
+	public void testSecondCallIsAnsweredFromCache() throws Exception {
+		String value = cache.getOrLoad("someKey", loader);
+		String value2 = cache.getOrLoad("someKey", loader);
+
+		assertSame(value2, value);
+		assertEquals(numberOfLoads.get(), 1);
+		assertEquals(cache.getMisses(), 1);
+		assertEquals(cache.getHits(), 1);
+	}
+
+	@Test
+	public void testValueExpiresAfterTimeToLive() throws Exception {
+		cache.getOrLoad("someKey", loader);
+		now = TimeUnit.MILLISECONDS.toNanos(TIME_TO_LIVE) - 1;
+		cache.getOrLoad("someKey", loader);
+		assertEquals(numberOfLoads.get(), 1);
+
+		now = TimeUnit.MILLISECONDS.toNanos(TIME_TO_LIVE);
+		String value = cache.getOrLoad("someKey", loader);
+
+		assertEquals(value, "valueForsomeKey2");
+		assertEquals(cache.getMisses(), 2);
+		assertEquals(cache.getHits(), 1);
+	}
+
+	@Test
+	public void testLeastRecentlyUsedIsRemovedWhenFull() throws Exception {
+		cache.getOrLoad("key1", loader);
+		cache.getOrLoad("key2", loader);
+		cache.getOrLoad("key3", loader);
+		cache.getOrLoad("key1", loader);
+
+		cache.getOrLoad("key4", loader);
+
+		assertEquals(cache.onlyForTestGetSize(), 3);
+		cache.getOrLoad("key1", loader);
+		assertEquals(numberOfLoads.get(), 4);
+		cache.getOrLoad("key2", loader);
+		assertEquals(numberOfLoads.get(), 5);
+	}
+
+	@Test
+	public void testInvalidate() throws Exception {
+		cache.getOrLoad("someKey", loader);
+		cache.getOrLoad("otherKey", loader);
+
+		cache.invalidate("someKey");
+
+		cache.getOrLoad("someKey", loader);
+		cache.getOrLoad("otherKey", loader);
+		assertEquals(numberOfLoads.get(), 3);
+	}
+
+	@Test
+	public void testValueLoadedDuringInvalidateIsNotStored() throws Exception {
+		cache.getOrLoad("someKey", key -> {
+			cache.invalidate(key);
+			return "staleValue";
+		});
+
+		assertEquals(cache.onlyForTestGetSize(), 0);
+	}
+
+	@Test
+	public void testNullIsNotStored() throws Exception {
+		String value = cache.getOrLoad("someKey", key -> null);
+
+		assertNull(value);
+		assertEquals(cache.onlyForTestGetSize(), 0);
+	}
+
+	@Test
+	public void testExceptionFromLoaderIsPassedOnAndNothingStored() throws Exception {
+		RuntimeException error = new RuntimeException("someError");
+		try {
+			cache.getOrLoad("someKey", key -> {
+				throw error;
+			});
+			fail("It should throw an exception");
+		} catch (RuntimeException e) {
+			assertSame(e, error);
+			assertEquals(cache.onlyForTestGetSize(), 0);
+			assertEquals(cache.getMisses(), 1);
+		}
+	}
+
+	@Test
+	public void testMaxSizeZeroDisablesCache() throws Exception {
+		CacheImp<String> disabledCache = CacheImp.usingMaxSizeAndTimeToLive(0, TIME_TO_LIVE);
+
+		disabledCache.getOrLoad("someKey", loader);
+		disabledCache.getOrLoad("someKey", loader);
+
+		assertEquals(numberOfLoads.get(), 2);
+		assertEquals(disabledCache.getMisses(), 2);
+	}
+
+	@Test
+	public void testGetAllOrLoadLoadsAllMissingKeysInOneCall() throws Exception {
+		Map<String, String> values = cache.getAllOrLoad(Set.of("key1", "key2"), batchLoader);
+
+		assertEquals(values, Map.of("key1", "valueForkey1", "key2", "valueForkey2"));
+		assertEquals(batchLoads.size(), 1);
+		assertEquals(batchLoads.get(0), Set.of("key1", "key2"));
+		assertEquals(cache.getMisses(), 2);
+		assertEquals(cache.getHits(), 0);
+	}
+
+	@Test
+	public void testGetAllOrLoadOnlyLoadsKeysMissingInCache() throws Exception {
+		cache.getOrLoad("key1", loader);
+
+		Map<String, String> values = cache.getAllOrLoad(createOrderedSet("key1", "key2"),
+				batchLoader);
+
+		assertEquals(values, Map.of("key1", "valueForkey11", "key2", "valueForkey2"));
+		assertEquals(batchLoads.get(0), Set.of("key2"));
+		assertEquals(cache.getHits(), 1);
+		assertEquals(cache.getMisses(), 2);
+	}
+
+	private Set<String> createOrderedSet(String... keys) {
+		return new LinkedHashSet<>(List.of(keys));
+	}
+
+	@Test
+	public void testGetAllOrLoadStoresLoadedValues() throws Exception {
+		cache.getAllOrLoad(Set.of("key1", "key2"), batchLoader);
+
+		String value = cache.getOrLoad("key2", loader);
+
+		assertEquals(value, "valueForkey2");
+		assertEquals(numberOfLoads.get(), 0);
+	}
+
+	@Test
+	public void testGetAllOrLoadDoesNotCallLoaderWhenAllCached() throws Exception {
+		cache.getAllOrLoad(Set.of("key1", "key2"), batchLoader);
+
+		cache.getAllOrLoad(Set.of("key1", "key2"), batchLoader);
+
+		assertEquals(batchLoads.size(), 1);
+		assertEquals(cache.getHits(), 2);
+	}
+
+	@Test
+	public void testGetAllOrLoadKeysNotFoundByLoaderAreLeftOut() throws Exception {
+		Map<String, String> values = cache.getAllOrLoad(Set.of("key1", "key2"),
+				keys -> Map.of("key1", "value1"));
+
+		assertEquals(values, Map.of("key1", "value1"));
+		assertEquals(cache.onlyForTestGetSize(), 1);
+	}
+
+	@Test
+	public void testGetAllOrLoadValuesLoadedDuringInvalidateAreNotStored() throws Exception {
+		cache.getAllOrLoad(Set.of("key1"), keys -> {
+			cache.invalidate("key1");
+			return Map.of("key1", "staleValue");
+		});
+
+		assertEquals(cache.onlyForTestGetSize(), 0);
+	}
+
+	@Test
+	public void testGetIfPresentDoesNotLoad() throws Exception {
+		assertNull(cache.getIfPresent("someKey"));
+
+		assertEquals(cache.onlyForTestGetSize(), 0);
+		assertEquals(cache.getMisses(), 1);
+	}
+
+	@Test
+	public void testPutThenGetIfPresent() throws Exception {
+		cache.put("someKey", "someValue");
+
+		assertEquals(cache.getIfPresent("someKey"), "someValue");
+		assertEquals(cache.getOrLoad("someKey", loader), "someValue");
+		assertEquals(cache.getHits(), 2);
+	}
+
+	@Test
+	public void testPutReplacesValueAndRestartsTimeToLive() throws Exception {
+		cache.put("someKey", "someValue");
+		now += TimeUnit.MILLISECONDS.toNanos(TIME_TO_LIVE - 1);
+		cache.put("someKey", "otherValue");
+		now += TimeUnit.MILLISECONDS.toNanos(TIME_TO_LIVE - 1);
+
+		assertEquals(cache.getIfPresent("someKey"), "otherValue");
+		now += TimeUnit.MILLISECONDS.toNanos(1);
+		assertNull(cache.getIfPresent("someKey"));
+	}
+
+	@Test
+	public void testPutIsBoundedByMaxSize() throws Exception {
+		cache.put("key1", "value1");
+		cache.put("key2", "value2");
+		cache.put("key3", "value3");
+		cache.put("key4", "value4");
+
+		assertEquals(cache.onlyForTestGetSize(), 3);
+		assertNull(cache.getIfPresent("key1"));
+	}
+}
@@ -0,0 +1,272 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.circuitbreaker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+
+public class CircuitBreakerTest {
+	private static final long OPEN_TIME = 1000;
+	private CircuitBreakerImp circuitBreaker;
+	private long now;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		circuitBreaker = CircuitBreakerImp.usingWindowSizeMinimumCallsFailureRateAndOpenTime(10, 4,
+				50, OPEN_TIME);
+		now = 0;
+		circuitBreaker.onlyForTestSetClock(() -> now);
+	}
+
+	@Test
+	public void testImplementsCircuitBreaker() throws Exception {
+		assertTrue(circuitBreaker instanceof CircuitBreaker);
+	}
+
+	@Test
+	public void testSettings() throws Exception {
+		assertEquals(circuitBreaker.onlyForTestGetWindowSize(), 10);
+		assertEquals(circuitBreaker.onlyForTestGetMinimumNumberOfCalls(), 4);
+		assertEquals(circuitBreaker.onlyForTestGetFailureRatePercent(), 50);
+		assertEquals(circuitBreaker.onlyForTestGetOpenTimeInMilliseconds(), OPEN_TIME);
+	}
+
+	@Test
+	public void testClosedCircuitPermitsCalls() throws Exception {
+		circuitBreaker.acquirePermission();
+
+		assertFalse(circuitBreaker.onlyForTestIsOpen());
+	}
+
+	@Test
+	public void testFailuresBelowMinimumNumberOfCallsDoNotOpen() throws Exception {
+		recordFailures(3);
+
+		assertFalse(circuitBreaker.onlyForTestIsOpen());
+		circuitBreaker.acquirePermission();
+	}
+
+	private void recordFailures(int numberOfFailures) {
+		for (int i = 0; i < numberOfFailures; i++) {
+			circuitBreaker.recordFailure(circuitBreaker.acquirePermission());
+		}
+	}
+
+	private void recordSuccesses(int numberOfSuccesses) {
+		for (int i = 0; i < numberOfSuccesses; i++) {
+			circuitBreaker.recordSuccess(circuitBreaker.acquirePermission());
+		}
+	}
+
+	@Test
+	public void testFailureRateReachedOpens() throws Exception {
+		recordSuccesses(2);
+		recordFailures(2);
+
+		assertTrue(circuitBreaker.onlyForTestIsOpen());
+		assertPermissionIsRefused();
+	}
+
+	private void assertPermissionIsRefused() {
+		try {
+			circuitBreaker.acquirePermission();
+			fail("It should throw an exception");
+		} catch (LoginUnavailableException e) {
+			assertEquals(e.getMessage(), "Circuit to gatekeeper is open.");
+		}
+	}
+
+	@Test
+	public void testFailureRateBelowThresholdStaysClosed() throws Exception {
+		recordSuccesses(3);
+		recordFailures(2);
+
+		assertFalse(circuitBreaker.onlyForTestIsOpen());
+	}
+
+	@Test
+	public void testOldCallsLeaveRollingWindow() throws Exception {
+		recordFailures(3);
+		recordSuccesses(10);
+		recordFailures(4);
+
+		assertFalse(circuitBreaker.onlyForTestIsOpen());
+
+		recordFailures(1);
+
+		assertTrue(circuitBreaker.onlyForTestIsOpen());
+	}
+
+	@Test
+	public void testOpenRefusesUntilOpenTimeHasPassed() throws Exception {
+		recordFailures(4);
+
+		now = TimeUnit.MILLISECONDS.toNanos(OPEN_TIME) - 1;
+
+		assertPermissionIsRefused();
+	}
+
+	@Test
+	public void testHalfOpenPermitsOneProbe() throws Exception {
+		recordFailures(4);
+		now = TimeUnit.MILLISECONDS.toNanos(OPEN_TIME);
+
+		circuitBreaker.acquirePermission();
+
+		assertPermissionIsRefused();
+	}
+
+	@Test
+	public void testSuccessfulProbeCloses() throws Exception {
+		recordFailures(4);
+		now = TimeUnit.MILLISECONDS.toNanos(OPEN_TIME);
+		long probe = circuitBreaker.acquirePermission();
+
+		circuitBreaker.recordSuccess(probe);
+
+		assertFalse(circuitBreaker.onlyForTestIsOpen());
+		circuitBreaker.acquirePermission();
+		circuitBreaker.acquirePermission();
+	}
+
+	@Test
+	public void testClosingStartsNewWindow() throws Exception {
+		recordFailures(4);
+		now = TimeUnit.MILLISECONDS.toNanos(OPEN_TIME);
+		circuitBreaker.recordSuccess(circuitBreaker.acquirePermission());
+
+		recordFailures(3);
+
+		assertFalse(circuitBreaker.onlyForTestIsOpen());
+	}
+
+	@Test
+	public void testFailedProbeOpensForAnotherOpenTime() throws Exception {
+		recordFailures(4);
+		now = TimeUnit.MILLISECONDS.toNanos(OPEN_TIME);
+		long probe = circuitBreaker.acquirePermission();
+
+		circuitBreaker.recordFailure(probe);
+
+		assertTrue(circuitBreaker.onlyForTestIsOpen());
+		now = TimeUnit.MILLISECONDS.toNanos(2 * OPEN_TIME) - 1;
+		assertPermissionIsRefused();
+		now = TimeUnit.MILLISECONDS.toNanos(2 * OPEN_TIME);
+		circuitBreaker.acquirePermission();
+	}
+
+	@Test
+	public void testSlowSuccessPermittedBeforeOpeningDoesNotClose() throws Exception {
+		long slowCall = circuitBreaker.acquirePermission();
+		recordFailures(4);
+
+		circuitBreaker.recordSuccess(slowCall);
+
+		assertTrue(circuitBreaker.onlyForTestIsOpen());
+		assertPermissionIsRefused();
+	}
+
+	@Test
+	public void testSlowFailurePermittedBeforeOpeningDoesNotExtendOpenTime() throws Exception {
+		long slowCall = circuitBreaker.acquirePermission();
+		recordFailures(4);
+		now = TimeUnit.MILLISECONDS.toNanos(OPEN_TIME) - 1;
+
+		circuitBreaker.recordFailure(slowCall);
+
+		now = TimeUnit.MILLISECONDS.toNanos(OPEN_TIME);
+		circuitBreaker.acquirePermission();
+	}
+
+	@Test
+	public void testOnlyProbeOutcomeChangesHalfOpenCircuit() throws Exception {
+		long slowCall = circuitBreaker.acquirePermission();
+		recordFailures(4);
+		now = TimeUnit.MILLISECONDS.toNanos(OPEN_TIME);
+		long probe = circuitBreaker.acquirePermission();
+
+		circuitBreaker.recordSuccess(slowCall);
+		circuitBreaker.recordFailure(slowCall);
+
+		assertTrue(circuitBreaker.onlyForTestIsOpen());
+		assertPermissionIsRefused();
+		circuitBreaker.recordSuccess(probe);
+		assertFalse(circuitBreaker.onlyForTestIsOpen());
+	}
+
+	@Test
+	public void testOutcomeOfProbeIsOnlyUsedOnce() throws Exception {
+		recordFailures(4);
+		now = TimeUnit.MILLISECONDS.toNanos(OPEN_TIME);
+		long probe = circuitBreaker.acquirePermission();
+		circuitBreaker.recordSuccess(probe);
+
+		circuitBreaker.recordFailure(probe);
+		circuitBreaker.recordFailure(probe);
+		circuitBreaker.recordFailure(probe);
+		circuitBreaker.recordFailure(probe);
+
+		assertFalse(circuitBreaker.onlyForTestIsOpen());
+	}
+
+	@Test
+	public void testReleasedProbeLetsNextCallProbe() throws Exception {
+		recordFailures(4);
+		now = TimeUnit.MILLISECONDS.toNanos(OPEN_TIME);
+		long probe = circuitBreaker.acquirePermission();
+
+		circuitBreaker.releasePermission(probe);
+
+		assertTrue(circuitBreaker.onlyForTestIsOpen());
+		long nextProbe = circuitBreaker.acquirePermission();
+		assertPermissionIsRefused();
+		circuitBreaker.recordSuccess(nextProbe);
+		assertFalse(circuitBreaker.onlyForTestIsOpen());
+	}
+
+	@Test
+	public void testReleasedPermissionIsNotRecordedInWindow() throws Exception {
+		recordFailures(3);
+
+		circuitBreaker.releasePermission(circuitBreaker.acquirePermission());
+
+		assertFalse(circuitBreaker.onlyForTestIsOpen());
+	}
+
+	@Test
+	public void testReleasingStalePermissionDoesNotReleaseProbe() throws Exception {
+		long slowCall = circuitBreaker.acquirePermission();
+		recordFailures(4);
+		now = TimeUnit.MILLISECONDS.toNanos(OPEN_TIME);
+		circuitBreaker.acquirePermission();
+
+		circuitBreaker.releasePermission(slowCall);
+
+		assertPermissionIsRefused();
+	}
+}
@@ -0,0 +1,274 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.circuitbreaker;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
+import se.uu.ub.cora.gatekeepertokenprovider.UserInfo;
+import se.uu.ub.cora.gatekeepertokenprovider.authentication.AuthenticationException;
+import se.uu.ub.cora.login.http.RequestFailedException;
+import se.uu.ub.cora.login.http.RequestRejectedException;
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+import se.uu.ub.cora.login.spies.CircuitBreakerSpy;
+import se.uu.ub.cora.login.spies.GatekeeperTokenProviderSpy;
+
+public class CircuitBreakingGatekeeperTokenProviderTest {
+	private static final long PERMISSION = 7L;
+	private GatekeeperTokenProviderSpy gatekeeperTokenProvider;
+	private CircuitBreakerSpy circuitBreaker;
+	private CircuitBreakingGatekeeperTokenProvider provider;
+	private CountDownLatch releaseGatekeeper;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		gatekeeperTokenProvider = new GatekeeperTokenProviderSpy();
+		circuitBreaker = new CircuitBreakerSpy();
+		circuitBreaker.MRV.setDefaultReturnValuesSupplier("acquirePermission", () -> PERMISSION);
+		provider = CircuitBreakingGatekeeperTokenProvider
+				.usingProviderCircuitBreakerAndCallTimeout(gatekeeperTokenProvider,
+						circuitBreaker, 200);
+		releaseGatekeeper = new CountDownLatch(1);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		releaseGatekeeper.countDown();
+		provider.shutdown();
+	}
+
+	@Test
+	public void testImplementsGatekeeperTokenProvider() throws Exception {
+		assertTrue(provider instanceof GatekeeperTokenProvider);
+		assertSame(provider.onlyForTestGetGatekeeperTokenProvider(), gatekeeperTokenProvider);
+		assertSame(provider.onlyForTestGetCircuitBreaker(), circuitBreaker);
+		assertEquals(provider.onlyForTestGetCallTimeoutInMilliseconds(), 200);
+	}
+
+	@Test
+	public void testGetAuthTokenForUserInfo() throws Exception {
+		UserInfo userInfo = UserInfo.withUserId("someUserId");
+
+		AuthToken authToken = provider.getAuthTokenForUserInfo(userInfo);
+
+		gatekeeperTokenProvider.MCR.assertParameters("getAuthTokenForUserInfo", 0, userInfo);
+		gatekeeperTokenProvider.MCR.assertReturn("getAuthTokenForUserInfo", 0, authToken);
+		assertCallWasRecordedAsSuccess();
+	}
+
+	private void assertCallWasRecordedAsSuccess() {
+		circuitBreaker.MCR.assertMethodWasCalled("acquirePermission");
+		circuitBreaker.MCR.assertParameters("recordSuccess", 0, PERMISSION);
+		circuitBreaker.MCR.assertMethodNotCalled("recordFailure");
+		circuitBreaker.MCR.assertMethodNotCalled("releasePermission");
+	}
+
+	private void assertCallWasRecordedAsFailure() {
+		circuitBreaker.MCR.assertMethodWasCalled("acquirePermission");
+		circuitBreaker.MCR.assertMethodNotCalled("recordSuccess");
+		circuitBreaker.MCR.assertParameters("recordFailure", 0, PERMISSION);
+		circuitBreaker.MCR.assertMethodNotCalled("releasePermission");
+	}
+
+	private void assertPermissionWasReleased() {
+		circuitBreaker.MCR.assertMethodWasCalled("acquirePermission");
+		circuitBreaker.MCR.assertMethodNotCalled("recordSuccess");
+		circuitBreaker.MCR.assertMethodNotCalled("recordFailure");
+		circuitBreaker.MCR.assertParameters("releasePermission", 0, PERMISSION);
+	}
+
+	@Test
+	public void testRemoveAuthToken() throws Exception {
+		provider.removeAuthToken("someTokenId", "someToken");
+
+		gatekeeperTokenProvider.MCR.assertParameters("removeAuthToken", 0, "someTokenId",
+				"someToken");
+		assertCallWasRecordedAsSuccess();
+	}
+
+	@Test
+	public void testRenewAuthToken() throws Exception {
+		AuthToken authToken = provider.renewAuthToken("someTokenId", "someToken");
+
+		gatekeeperTokenProvider.MCR.assertParameters("renewAuthToken", 0, "someTokenId",
+				"someToken");
+		gatekeeperTokenProvider.MCR.assertReturn("renewAuthToken", 0, authToken);
+		assertCallWasRecordedAsSuccess();
+	}
+
+	@Test
+	public void testOpenCircuitDoesNotCallGatekeeper() throws Exception {
+		LoginUnavailableException openError = LoginUnavailableException
+				.withMessage("Circuit to gatekeeper is open.");
+		circuitBreaker.MRV.setAlwaysThrowException("acquirePermission", openError);
+
+		try {
+			provider.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (LoginUnavailableException e) {
+			assertSame(e, openError);
+			gatekeeperTokenProvider.MCR.assertMethodNotCalled("renewAuthToken");
+			circuitBreaker.MCR.assertMethodNotCalled("recordSuccess");
+			circuitBreaker.MCR.assertMethodNotCalled("recordFailure");
+		}
+	}
+
+	@Test
+	public void testAuthenticationExceptionIsThrownAndRecordedAsSuccess() throws Exception {
+		AuthenticationException authenticationError = new AuthenticationException("someError");
+		gatekeeperTokenProvider.MRV.setAlwaysThrowException("renewAuthToken",
+				authenticationError);
+
+		try {
+			provider.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (AuthenticationException e) {
+			assertSame(e, authenticationError);
+			assertCallWasRecordedAsSuccess();
+		}
+	}
+
+	@Test
+	public void testOtherErrorIsThrownAsLoginUnavailableAndRecordedAsFailure() throws Exception {
+		RuntimeException gatekeeperError = new RuntimeException("someError");
+		gatekeeperTokenProvider.MRV.setAlwaysThrowException("renewAuthToken", gatekeeperError);
+
+		try {
+			provider.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (LoginUnavailableException e) {
+			assertEquals(e.getMessage(), "Call to gatekeeper failed.");
+			assertSame(e.getCause(), gatekeeperError);
+			assertCallWasRecordedAsFailure();
+		}
+	}
+
+	@Test
+	public void testRequestFailedIsThrownAsLoginUnavailableAndRecordedAsFailure()
+			throws Exception {
+		RequestFailedException gatekeeperError = RequestFailedException.withMessage("someError");
+		gatekeeperTokenProvider.MRV.setAlwaysThrowException("renewAuthToken", gatekeeperError);
+
+		try {
+			provider.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (LoginUnavailableException e) {
+			assertEquals(e.getMessage(), "Call to gatekeeper failed.");
+			assertSame(e.getCause(), gatekeeperError);
+			assertCallWasRecordedAsFailure();
+		}
+	}
+
+	@Test
+	public void testLoginUnavailableIsThrownUnchangedAndRecordedAsFailure() throws Exception {
+		LoginUnavailableException gatekeeperError = LoginUnavailableException
+				.withMessage("someError");
+		gatekeeperTokenProvider.MRV.setAlwaysThrowException("renewAuthToken", gatekeeperError);
+
+		try {
+			provider.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (LoginUnavailableException e) {
+			assertSame(e, gatekeeperError);
+			assertCallWasRecordedAsFailure();
+		}
+	}
+
+	@Test
+	public void testSlowGatekeeperTimesOutAndIsRecordedAsFailure() throws Exception {
+		gatekeeperTokenProvider.MRV.setDefaultReturnValuesSupplier("renewAuthToken",
+				this::waitForRelease);
+		long start = System.nanoTime();
+
+		try {
+			provider.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (LoginUnavailableException e) {
+			assertEquals(e.getMessage(), "Gatekeeper did not answer within 200 ms.");
+			assertTrue(System.nanoTime() - start < TimeUnit.SECONDS.toNanos(5));
+			assertCallWasRecordedAsFailure();
+		}
+	}
+
+	private AuthToken waitForRelease() {
+		try {
+			releaseGatekeeper.await(10, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return gatekeeperTokenProvider.authToken;
+	}
+
+	@Test
+	public void testInterruptedWhileWaitingThrowsLoginUnavailable() throws Exception {
+		gatekeeperTokenProvider.MRV.setDefaultReturnValuesSupplier("renewAuthToken",
+				this::waitForRelease);
+		Thread.currentThread().interrupt();
+
+		try {
+			provider.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (LoginUnavailableException e) {
+			assertEquals(e.getMessage(), "Call to gatekeeper was interrupted.");
+			assertTrue(Thread.interrupted());
+		}
+	}
+
+	@Test
+	public void testShutdownRejectsCalls() throws Exception {
+		provider.shutdown();
+
+		try {
+			provider.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (LoginUnavailableException e) {
+			assertEquals(e.getMessage(), "Call to gatekeeper rejected.");
+			assertTrue(e.getCause() instanceof RequestRejectedException);
+			gatekeeperTokenProvider.MCR.assertMethodNotCalled("renewAuthToken");
+			assertPermissionWasReleased();
+		}
+	}
+
+	@Test
+	public void testRequestRejectedIsThrownAsLoginUnavailableAndNotRecorded() throws Exception {
+		RequestRejectedException rejectedError = RequestRejectedException
+				.withMessage("Too many concurrent requests to someUrl.");
+		gatekeeperTokenProvider.MRV.setAlwaysThrowException("renewAuthToken", rejectedError);
+
+		try {
+			provider.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (LoginUnavailableException e) {
+			assertEquals(e.getMessage(), "Too many concurrent requests to someUrl.");
+			assertSame(e.getCause(), rejectedError);
+			assertPermissionWasReleased();
+		}
+	}
+}
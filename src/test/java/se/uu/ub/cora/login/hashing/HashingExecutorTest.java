@@ -0,0 +1,729 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.hashing;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.nio.charset.StandardCharsets;
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.login.rest.LoginException;
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+import se.uu.ub.cora.login.spies.TextHasherSpy;
+import se.uu.ub.cora.password.texthasher.TextHasher;
+
+public class HashingExecutorTest {
+	private HashingExecutorImp hashingExecutor;
+	private TextHasherSpy textHasher;
+	private CountDownLatch release;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		textHasher = new TextHasherSpy();
+		release = new CountDownLatch(1);
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeAndMaxWait(1, 1, 1000);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		release.countDown();
+		hashingExecutor.shutdown();
+	}
+
+	@Test
+	public void testSettings() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeAndMaxWait(3, 7, 500);
+
+		assertEquals(hashingExecutor.onlyForTestGetPoolSize(), 3);
+		assertEquals(hashingExecutor.onlyForTestGetQueueSize(), 7);
+		assertEquals(hashingExecutor.onlyForTestGetMaxWaitInMilliseconds(), 500);
+		assertFalse(hashingExecutor.onlyForTestGetParallelMatching());
+	}
+
+	@Test
+	public void testSettingsWithParallelMatching() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(3,
+				7, 500, true);
+
+		assertEquals(hashingExecutor.onlyForTestGetPoolSize(), 3);
+		assertEquals(hashingExecutor.onlyForTestGetQueueSize(), 7);
+		assertEquals(hashingExecutor.onlyForTestGetMaxWaitInMilliseconds(), 500);
+		assertTrue(hashingExecutor.onlyForTestGetParallelMatching());
+	}
+
+	@Test
+	public void testMatchesCallsTextHasher() throws Exception {
+		textHasher.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+
+		boolean matches = hashingExecutor.matches(textHasher, "somePlainText", "someHashedText");
+
+		assertTrue(matches);
+		textHasher.MCR.assertParameters("matches", 0, "somePlainText", "someHashedText");
+	}
+
+	@Test
+	public void testMatchesReturnsFalseFromTextHasher() throws Exception {
+		boolean matches = hashingExecutor.matches(textHasher, "somePlainText", "someHashedText");
+
+		assertFalse(matches);
+	}
+
+	@Test
+	public void testMatchesRunsOnHashingThread() throws Exception {
+		String[] threadName = new String[1];
+		TextHasher recordingTextHasher = createBlockingTextHasher(threadName, new CountDownLatch(0));
+
+		hashingExecutor.matches(recordingTextHasher, "somePlainText", "someHashedText");
+
+		assertEquals(threadName[0], "cora-login-hashing-1");
+	}
+
+	@Test
+	public void testTextHasherThrowsException() throws Exception {
+		textHasher.MRV.setAlwaysThrowException("matches", new RuntimeException("someError"));
+		try {
+			hashingExecutor.matches(textHasher, "somePlainText", "someHashedText");
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertTrue(e instanceof LoginException);
+			assertEquals(e.getMessage(), "Hashing failed.");
+		}
+	}
+
+	@Test
+	public void testPoolSaturatedThrowsLoginUnavailableException() throws Exception {
+		TextHasher blockingTextHasher = createBlockingTextHasher(new String[1], release);
+		startMatchInOtherThread(blockingTextHasher);
+		startMatchInOtherThread(blockingTextHasher);
+		waitUntilQueueIsFull();
+		try {
+			hashingExecutor.matches(textHasher, "somePlainText", "someHashedText");
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertTrue(e instanceof LoginUnavailableException);
+			assertEquals(e.getMessage(), "Hashing pool is saturated.");
+			textHasher.MCR.assertMethodNotCalled("matches");
+		}
+	}
+
+	@Test
+	public void testNoResultWithinMaxWaitThrowsLoginUnavailableException() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeAndMaxWait(1, 1, 10);
+		TextHasher blockingTextHasher = createBlockingTextHasher(new String[1], release);
+		try {
+			hashingExecutor.matches(blockingTextHasher, "somePlainText", "someHashedText");
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertTrue(e instanceof LoginUnavailableException);
+			assertEquals(e.getMessage(), "Hashing did not finish within 10 ms.");
+		}
+	}
+
+	@Test
+	public void testMatchesAsyncCallsTextHasher() throws Exception {
+		textHasher.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+
+		boolean matches = hashingExecutor
+				.matchesAsync(textHasher, "somePlainText", "someHashedText").join();
+
+		assertTrue(matches);
+		textHasher.MCR.assertParameters("matches", 0, "somePlainText", "someHashedText");
+	}
+
+	@Test
+	public void testMatchesAsyncTextHasherThrowsException() throws Exception {
+		textHasher.MRV.setAlwaysThrowException("matches", new RuntimeException("someError"));
+
+		Throwable error = getErrorFromMatchesAsync(textHasher);
+
+		assertTrue(error instanceof LoginException);
+		assertEquals(error.getMessage(), "Hashing failed.");
+	}
+
+	@Test
+	public void testMatchesAsyncPoolSaturated() throws Exception {
+		TextHasher blockingTextHasher = createBlockingTextHasher(new String[1], release);
+		hashingExecutor.matchesAsync(blockingTextHasher, "somePlainText", "someHashedText");
+		hashingExecutor.matchesAsync(blockingTextHasher, "somePlainText", "someHashedText");
+
+		Throwable error = getErrorFromMatchesAsync(textHasher);
+
+		assertTrue(error instanceof LoginUnavailableException);
+		assertEquals(error.getMessage(), "Hashing pool is saturated.");
+	}
+
+	@Test
+	public void testMatchesAsyncNoResultWithinMaxWait() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeAndMaxWait(1, 1, 10);
+		TextHasher blockingTextHasher = createBlockingTextHasher(new String[1], release);
+
+		Throwable error = getErrorFromMatchesAsync(blockingTextHasher);
+
+		assertTrue(error instanceof LoginUnavailableException);
+		assertEquals(error.getMessage(), "Hashing did not finish within 10 ms.");
+	}
+
+	private Throwable getErrorFromMatchesAsync(TextHasher textHasherToUse) {
+		try {
+			hashingExecutor.matchesAsync(textHasherToUse, "somePlainText", "someHashedText")
+					.join();
+			fail("It should throw an exception");
+		} catch (CompletionException e) {
+			return e.getCause();
+		}
+		return null;
+	}
+
+	private TextHasher createBlockingTextHasher(String[] threadName, CountDownLatch latch) {
+		return new TextHasher() {
+
+			@Override
+			public String hashText(String plainText) {
+				return null;
+			}
+
+			@Override
+			public boolean matches(String plainText, String hashedText) {
+				threadName[0] = Thread.currentThread().getName();
+				awaitLatch(latch);
+				return true;
+			}
+		};
+	}
+
+	private void awaitLatch(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private void startMatchInOtherThread(TextHasher blockingTextHasher) {
+		new Thread(() -> {
+			try {
+				hashingExecutor.matches(blockingTextHasher, "somePlainText", "someHashedText");
+			} catch (Exception e) {
+				// ignored, only used to fill the pool
+			}
+		}).start();
+	}
+
+	private void waitUntilQueueIsFull() throws InterruptedException {
+		long giveUpAt = System.currentTimeMillis() + 5000;
+		while (hashingExecutor.onlyForTestGetQueuedTasks() < 1
+				&& System.currentTimeMillis() < giveUpAt) {
+			Thread.sleep(1);
+		}
+	}
+
+	@Test
+	public void testMatchesAnyInOrderStopsAtFirstMatch() throws Exception {
+		textHasher.MRV.setSpecificReturnValuesSupplier("matches", () -> true, "somePlainText",
+				"hashed2");
+
+		boolean matches = hashingExecutor.matchesAny(textHasher, "somePlainText",
+				List.of("hashed1", "hashed2", "hashed3"));
+
+		assertTrue(matches);
+		textHasher.MCR.assertNumberOfCallsToMethod("matches", 2);
+		textHasher.MCR.assertParameters("matches", 0, "somePlainText", "hashed1");
+		textHasher.MCR.assertParameters("matches", 1, "somePlainText", "hashed2");
+	}
+
+	@Test
+	public void testMatchesAnyInOrderNoMatch() throws Exception {
+		boolean matches = hashingExecutor.matchesAny(textHasher, "somePlainText",
+				List.of("hashed1", "hashed2"));
+
+		assertFalse(matches);
+		textHasher.MCR.assertNumberOfCallsToMethod("matches", 2);
+	}
+
+	@Test
+	public void testMatchesAnyNoCandidates() throws Exception {
+		boolean matches = hashingExecutor.matchesAny(textHasher, "somePlainText", List.of());
+
+		assertFalse(matches);
+		textHasher.MCR.assertMethodNotCalled("matches");
+	}
+
+	@Test
+	public void testFindIndexOfMatchInOrder() throws Exception {
+		textHasher.MRV.setSpecificReturnValuesSupplier("matches", () -> true, "somePlainText",
+				"hashed2");
+
+		int index = hashingExecutor.findIndexOfMatch(textHasher, "somePlainText",
+				List.of("hashed1", "hashed2", "hashed3"));
+
+		assertEquals(index, 1);
+		textHasher.MCR.assertNumberOfCallsToMethod("matches", 2);
+	}
+
+	@Test
+	public void testFindIndexOfMatchNoMatch() throws Exception {
+		int index = hashingExecutor.findIndexOfMatch(textHasher, "somePlainText",
+				List.of("hashed1", "hashed2"));
+
+		assertEquals(index, HashingExecutor.NO_MATCH);
+	}
+
+	@Test
+	public void testFindIndexOfMatchInParallel() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(3,
+				3, 5000, true);
+		textHasher.MRV.setSpecificReturnValuesSupplier("matches", () -> true, "somePlainText",
+				"hashed3");
+
+		int index = hashingExecutor.findIndexOfMatch(textHasher, "somePlainText",
+				List.of("hashed1", "hashed2", "hashed3"));
+
+		assertEquals(index, 2);
+	}
+
+	@Test
+	public void testFindIndexOfMatchInParallelNoMatch() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(3,
+				3, 5000, true);
+
+		int index = hashingExecutor.findIndexOfMatch(textHasher, "somePlainText",
+				List.of("hashed1", "hashed2"));
+
+		assertEquals(index, HashingExecutor.NO_MATCH);
+	}
+
+	@Test
+	public void testMatchesAnyInParallelUsesAllWorkers() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(3,
+				3, 5000, true);
+		CountDownLatch allStarted = new CountDownLatch(3);
+		TextHasher textHasherWaitingForAll = createTextHasherWaitingForOthers(allStarted);
+
+		boolean matches = hashingExecutor.matchesAny(textHasherWaitingForAll, "somePlainText",
+				List.of("hashed1", "hashed2", "match"));
+
+		assertTrue(matches);
+		assertEquals(allStarted.getCount(), 0);
+	}
+
+	private TextHasher createTextHasherWaitingForOthers(CountDownLatch allStarted) {
+		return new TextHasher() {
+
+			@Override
+			public String hashText(String plainText) {
+				return null;
+			}
+
+			@Override
+			public boolean matches(String plainText, String hashedText) {
+				allStarted.countDown();
+				awaitLatch(allStarted);
+				return "match".equals(hashedText);
+			}
+		};
+	}
+
+	@Test
+	public void testFindIndexOfMatchInParallelStartsNoMoreChecksAfterMatch() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(1,
+				8, 1000, true);
+		textHasher.MRV.setSpecificReturnValuesSupplier("matches", () -> true, "somePlainText",
+				"hashed1");
+		List<Integer> readIndexes = Collections.synchronizedList(new ArrayList<>());
+
+		int index = hashingExecutor.findIndexOfMatch(textHasher, "somePlainText",
+				createListRecordingReads(readIndexes, "hashed1", "hashed2", "hashed3", "hashed4",
+						"hashed5", "hashed6", "hashed7", "hashed8"));
+
+		assertEquals(index, 0);
+		assertTrue(readIndexes.stream().allMatch(readIndex -> readIndex < 4));
+	}
+
+	@Test
+	public void testFindIndexOfMatchInParallelRunsAtMostFourChecksAtATime() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(8,
+				8, 5000, true);
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		TextHasher countingTextHasher = createTextHasherCountingRunning(running, maxRunning);
+
+		int index = hashingExecutor.findIndexOfMatch(countingTextHasher, "somePlainText",
+				List.of("h1", "h2", "h3", "h4", "h5", "h6", "h7", "h8"));
+
+		assertEquals(index, HashingExecutor.NO_MATCH);
+		assertEquals(maxRunning.get(), 4);
+	}
+
+	private TextHasher createTextHasherCountingRunning(AtomicInteger running,
+			AtomicInteger maxRunning) {
+		return new TextHasher() {
+
+			@Override
+			public String hashText(String plainText) {
+				return null;
+			}
+
+			@Override
+			public boolean matches(String plainText, String hashedText) {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				awaitLatch(new CountDownLatch(1), 20);
+				running.decrementAndGet();
+				return false;
+			}
+		};
+	}
+
+	@Test
+	public void testMatchesAnyInParallelNoMatch() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(2,
+				5, 1000, true);
+
+		boolean matches = hashingExecutor.matchesAny(textHasher, "somePlainText",
+				List.of("hashed1", "hashed2", "hashed3"));
+
+		assertFalse(matches);
+		textHasher.MCR.assertNumberOfCallsToMethod("matches", 3);
+	}
+
+	@Test
+	public void testMatchesAnyInParallelPoolSaturated() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(1,
+				1, 1000, true);
+		TextHasher blockingTextHasher = createBlockingTextHasher(new String[1], release);
+		try {
+			hashingExecutor.matchesAny(blockingTextHasher, "somePlainText",
+					List.of("hashed1", "hashed2", "hashed3"));
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertTrue(e instanceof LoginUnavailableException);
+			assertEquals(e.getMessage(), "Hashing pool is saturated.");
+		}
+	}
+
+	@Test
+	public void testMatchesAnyInParallelNoResultWithinMaxWait() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(2,
+				2, 10, true);
+		TextHasher blockingTextHasher = createBlockingTextHasher(new String[1], release);
+		try {
+			hashingExecutor.matchesAny(blockingTextHasher, "somePlainText",
+					List.of("hashed1", "hashed2"));
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertTrue(e instanceof LoginUnavailableException);
+			assertEquals(e.getMessage(), "Hashing did not finish within 10 ms.");
+		}
+	}
+
+	@Test
+	public void testMatchesAnyInParallelTextHasherThrowsException() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(2,
+				2, 1000, true);
+		textHasher.MRV.setAlwaysThrowException("matches", new RuntimeException("someError"));
+		try {
+			hashingExecutor.matchesAny(textHasher, "somePlainText", List.of("hashed1", "hashed2"));
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertTrue(e instanceof LoginException);
+			assertEquals(e.getMessage(), "Hashing failed.");
+		}
+	}
+
+	@Test
+	public void testFindIndexOfMatchInOrderReadsHashedTextsUntilFirstMatch() throws Exception {
+		textHasher.MRV.setSpecificReturnValuesSupplier("matches", () -> true, "somePlainText",
+				"hashed2");
+		List<Integer> readIndexes = new ArrayList<>();
+
+		int index = hashingExecutor.findIndexOfMatch(textHasher, "somePlainText",
+				createListRecordingReads(readIndexes, "hashed1", "hashed2", "hashed3"));
+
+		assertEquals(index, 1);
+		assertEquals(readIndexes, List.of(0, 1));
+	}
+
+	private List<String> createListRecordingReads(List<Integer> readIndexes,
+			String... hashedTexts) {
+		return new AbstractList<>() {
+			@Override
+			public String get(int index) {
+				readIndexes.add(index);
+				return hashedTexts[index];
+			}
+
+			@Override
+			public int size() {
+				return hashedTexts.length;
+			}
+		};
+	}
+
+	@Test
+	public void testFindIndexOfMatchInOrderMaxWaitIsForAllChecks() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeAndMaxWait(1, 1, 300);
+		TextHasher slowTextHasher = createTextHasherNotMatchingAfter(150);
+
+		try {
+			hashingExecutor.findIndexOfMatch(slowTextHasher, "somePlainText",
+					List.of("hashed1", "hashed2", "hashed3"));
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertTrue(e instanceof LoginUnavailableException);
+			assertEquals(e.getMessage(), "Hashing did not finish within 300 ms.");
+		}
+	}
+
+	private TextHasher createTextHasherNotMatchingAfter(long milliseconds) {
+		return new TextHasher() {
+
+			@Override
+			public String hashText(String plainText) {
+				return null;
+			}
+
+			@Override
+			public boolean matches(String plainText, String hashedText) {
+				awaitLatch(new CountDownLatch(1), milliseconds);
+				return false;
+			}
+		};
+	}
+
+	private void awaitLatch(CountDownLatch latch, long milliseconds) {
+		try {
+			latch.await(milliseconds, TimeUnit.MILLISECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	@Test
+	public void testKeyedDigestIsMatchedOnCallingThread() throws Exception {
+		KeyedDigestTextHasher keyedDigestTextHasher = createKeyedDigestTextHasher();
+		hashingExecutor.shutdown();
+
+		assertTrue(hashingExecutor.matches(keyedDigestTextHasher, "somePlainText",
+				keyedDigestTextHasher.hashText("somePlainText")));
+		assertFalse(hashingExecutor.matches(keyedDigestTextHasher, "otherPlainText",
+				keyedDigestTextHasher.hashText("somePlainText")));
+		textHasher.MCR.assertMethodNotCalled("matches");
+	}
+
+	private KeyedDigestTextHasher createKeyedDigestTextHasher() {
+		KeyedDigest keyedDigest = KeyedDigest
+				.usingKey("someKeyThatIsLongEnoughForHmac32".getBytes(StandardCharsets.UTF_8));
+		return KeyedDigestTextHasher.usingTextHasherAndKeyedDigest(textHasher, keyedDigest);
+	}
+
+	@Test
+	public void testKeyedDigestIsMatchedAsyncOnCallingThread() throws Exception {
+		KeyedDigestTextHasher keyedDigestTextHasher = createKeyedDigestTextHasher();
+		hashingExecutor.shutdown();
+
+		boolean matches = hashingExecutor.matchesAsync(keyedDigestTextHasher, "somePlainText",
+				keyedDigestTextHasher.hashText("somePlainText")).join();
+
+		assertTrue(matches);
+	}
+
+	@Test
+	public void testOtherHashesOfKeyedDigestTextHasherUseHashingPool() throws Exception {
+		KeyedDigestTextHasher keyedDigestTextHasher = createKeyedDigestTextHasher();
+		hashingExecutor.shutdown();
+		try {
+			hashingExecutor.matches(keyedDigestTextHasher, "somePlainText", "someHashedText");
+			fail("It should throw an exception");
+		} catch (Exception e) {
+			assertTrue(e instanceof LoginUnavailableException);
+			assertEquals(e.getMessage(), "Hashing pool is saturated.");
+		}
+	}
+
+	@Test
+	public void testFindIndexOfMatchInOrderChecksKeyedDigestOnCallingThread() throws Exception {
+		KeyedDigestTextHasher keyedDigestTextHasher = createKeyedDigestTextHasher();
+		hashingExecutor.shutdown();
+
+		int index = hashingExecutor.findIndexOfMatch(keyedDigestTextHasher, "somePlainText",
+				List.of(keyedDigestTextHasher.hashText("otherPlainText"),
+						keyedDigestTextHasher.hashText("somePlainText"), "someHashedText"));
+
+		assertEquals(index, 1);
+	}
+
+	@Test
+	public void testFindIndexOfMatchInParallelChecksKeyedDigestsWithoutPool() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(3,
+				3, 5000, true);
+		KeyedDigestTextHasher keyedDigestTextHasher = createKeyedDigestTextHasher();
+		hashingExecutor.shutdown();
+
+		int index = hashingExecutor.findIndexOfMatch(keyedDigestTextHasher, "somePlainText",
+				List.of(keyedDigestTextHasher.hashText("otherPlainText"),
+						keyedDigestTextHasher.hashText("somePlainText")));
+
+		assertEquals(index, 1);
+		textHasher.MCR.assertMethodNotCalled("matches");
+	}
+
+	@Test
+	public void testFindIndexOfMatchInParallelSendsOnlyOtherHashesToPool() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(1,
+				3, 5000, true);
+		KeyedDigestTextHasher keyedDigestTextHasher = createKeyedDigestTextHasher();
+		textHasher.MRV.setSpecificReturnValuesSupplier("matches", () -> true, "somePlainText",
+				"someHashedText3");
+
+		int index = hashingExecutor.findIndexOfMatch(keyedDigestTextHasher, "somePlainText",
+				List.of("someHashedText1", keyedDigestTextHasher.hashText("otherPlainText"),
+						"someHashedText3"));
+
+		assertEquals(index, 2);
+		textHasher.MCR.assertNumberOfCallsToMethod("matches", 2);
+	}
+
+	@Test
+	public void testFindIndexOfMatchAsyncInOrder() throws Exception {
+		textHasher.MRV.setSpecificReturnValuesSupplier("matches", () -> true, "somePlainText",
+				"hashed2");
+		List<Integer> readIndexes = new ArrayList<>();
+
+		int index = hashingExecutor.findIndexOfMatchAsync(textHasher, "somePlainText",
+				createListRecordingReads(readIndexes, "hashed1", "hashed2", "hashed3")).join();
+
+		assertEquals(index, 1);
+		assertEquals(readIndexes, List.of(0, 1));
+		textHasher.MCR.assertNumberOfCallsToMethod("matches", 2);
+	}
+
+	@Test
+	public void testFindIndexOfMatchAsyncNoMatch() throws Exception {
+		int index = hashingExecutor
+				.findIndexOfMatchAsync(textHasher, "somePlainText", List.of("hashed1", "hashed2"))
+				.join();
+
+		assertEquals(index, HashingExecutor.NO_MATCH);
+		textHasher.MCR.assertNumberOfCallsToMethod("matches", 2);
+	}
+
+	@Test
+	public void testFindIndexOfMatchAsyncNoCandidates() throws Exception {
+		int index = hashingExecutor.findIndexOfMatchAsync(textHasher, "somePlainText", List.of())
+				.join();
+
+		assertEquals(index, HashingExecutor.NO_MATCH);
+	}
+
+	@Test
+	public void testFindIndexOfMatchAsyncInParallel() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeMaxWaitAndParallelMatching(3,
+				3, 5000, true);
+		CountDownLatch allStarted = new CountDownLatch(3);
+		TextHasher textHasherWaitingForAll = createTextHasherWaitingForOthers(allStarted);
+
+		int index = hashingExecutor.findIndexOfMatchAsync(textHasherWaitingForAll,
+				"somePlainText", List.of("hashed1", "hashed2", "match")).join();
+
+		assertEquals(index, 2);
+		assertEquals(allStarted.getCount(), 0);
+	}
+
+	@Test
+	public void testFindIndexOfMatchAsyncDoesNotWaitForChecks() throws Exception {
+		TextHasher blockingTextHasher = createBlockingTextHasher(new String[1], release);
+
+		CompletableFuture<Integer> result = hashingExecutor.findIndexOfMatchAsync(
+				blockingTextHasher, "somePlainText", List.of("hashed1"));
+
+		assertFalse(result.isDone());
+		release.countDown();
+		assertEquals(result.join(), Integer.valueOf(0));
+	}
+
+	@Test
+	public void testFindIndexOfMatchAsyncChecksKeyedDigestOnCallingThread() throws Exception {
+		KeyedDigestTextHasher keyedDigestTextHasher = createKeyedDigestTextHasher();
+		hashingExecutor.shutdown();
+
+		int index = hashingExecutor.findIndexOfMatchAsync(keyedDigestTextHasher, "somePlainText",
+				List.of(keyedDigestTextHasher.hashText("otherPlainText"),
+						keyedDigestTextHasher.hashText("somePlainText"), "someHashedText"))
+				.join();
+
+		assertEquals(index, 1);
+	}
+
+	@Test
+	public void testFindIndexOfMatchAsyncPoolSaturated() throws Exception {
+		TextHasher blockingTextHasher = createBlockingTextHasher(new String[1], release);
+		hashingExecutor.matchesAsync(blockingTextHasher, "somePlainText", "someHashedText");
+		hashingExecutor.matchesAsync(blockingTextHasher, "somePlainText", "someHashedText");
+
+		Throwable error = getErrorFromFindIndexOfMatchAsync(textHasher);
+
+		assertTrue(error instanceof LoginUnavailableException);
+		assertEquals(error.getMessage(), "Hashing pool is saturated.");
+	}
+
+	@Test
+	public void testFindIndexOfMatchAsyncMaxWaitIsForAllChecks() throws Exception {
+		hashingExecutor = HashingExecutorImp.usingPoolSizeQueueSizeAndMaxWait(1, 1, 300);
+
+		Throwable error = getErrorFromFindIndexOfMatchAsync(createTextHasherNotMatchingAfter(150));
+
+		assertTrue(error instanceof LoginUnavailableException);
+		assertEquals(error.getMessage(), "Hashing did not finish within 300 ms.");
+	}
+
+	@Test
+	public void testFindIndexOfMatchAsyncTextHasherThrowsException() throws Exception {
+		textHasher.MRV.setAlwaysThrowException("matches", new RuntimeException("someError"));
+
+		Throwable error = getErrorFromFindIndexOfMatchAsync(textHasher);
+
+		assertTrue(error instanceof LoginException);
+		assertEquals(error.getMessage(), "Hashing failed.");
+	}
+
+	private Throwable getErrorFromFindIndexOfMatchAsync(TextHasher textHasherToUse) {
+		try {
+			hashingExecutor.findIndexOfMatchAsync(textHasherToUse, "somePlainText",
+					List.of("hashed1", "hashed2", "hashed3")).join();
+			fail("It should throw an exception");
+		} catch (CompletionException e) {
+			return e.getCause();
+		}
+		return null;
+	}
+}
@@ -0,0 +1,87 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.hashing;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class KeyedDigestTest {
+	private static final byte[] SOME_KEY = "someKeyThatIsLongEnoughForHmac32"
+			.getBytes(StandardCharsets.UTF_8);
+	private KeyedDigest keyedDigest;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		keyedDigest = KeyedDigest.usingKey(SOME_KEY);
+	}
+
+	@Test
+	public void testDigestHasPrefix() throws Exception {
+		String digest = keyedDigest.digest("someAppToken");
+
+		assertTrue(digest.startsWith("{HMAC-SHA256}"));
+		assertTrue(keyedDigest.isKeyedDigest(digest));
+	}
+
+	@Test
+	public void testDigestIsKnownHmacSha256() throws Exception {
+		KeyedDigest rfcKeyedDigest = KeyedDigest.usingKey("key".getBytes(StandardCharsets.UTF_8));
+
+		String digest = rfcKeyedDigest.digest("The quick brown fox jumps over the lazy dog");
+
+		assertEquals(digest, "{HMAC-SHA256}97yD9DBThCSxMpjmqm+xQ+9NWaFJRhdZl0edvC0aPNg=");
+	}
+
+	@Test
+	public void testIsKeyedDigest() throws Exception {
+		assertFalse(keyedDigest.isKeyedDigest("$2a$10$someBcryptHash"));
+		assertFalse(keyedDigest.isKeyedDigest(null));
+	}
+
+	@Test
+	public void testMatches() throws Exception {
+		String digest = keyedDigest.digest("someAppToken");
+
+		assertTrue(keyedDigest.matches("someAppToken", digest));
+		assertFalse(keyedDigest.matches("otherAppToken", digest));
+	}
+
+	@Test
+	public void testDigestDependsOnKey() throws Exception {
+		KeyedDigest otherKeyedDigest = KeyedDigest
+				.usingKey("otherKeyThatIsLongEnoughForHmac3".getBytes(StandardCharsets.UTF_8));
+
+		String digest = keyedDigest.digest("someAppToken");
+
+		assertNotEquals(otherKeyedDigest.digest("someAppToken"), digest);
+		assertFalse(otherKeyedDigest.matches("someAppToken", digest));
+	}
+
+	@Test
+	public void testMalformedStoredDigestDoesNotMatch() throws Exception {
+		assertFalse(keyedDigest.matches("someAppToken", "{HMAC-SHA256}notBase64!"));
+	}
+}
@@ -0,0 +1,84 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.hashing;
+
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.nio.charset.StandardCharsets;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.login.spies.TextHasherSpy;
+
+public class KeyedDigestTextHasherTest {
+	private TextHasherSpy textHasher;
+	private KeyedDigest keyedDigest;
+	private KeyedDigestTextHasher keyedDigestTextHasher;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		textHasher = new TextHasherSpy();
+		keyedDigest = KeyedDigest
+				.usingKey("someKeyThatIsLongEnoughForHmac32".getBytes(StandardCharsets.UTF_8));
+		keyedDigestTextHasher = KeyedDigestTextHasher.usingTextHasherAndKeyedDigest(textHasher,
+				keyedDigest);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(keyedDigestTextHasher.onlyForTestGetTextHasher(), textHasher);
+		assertSame(keyedDigestTextHasher.onlyForTestGetKeyedDigest(), keyedDigest);
+	}
+
+	@Test
+	public void testHashTextCreatesKeyedDigest() throws Exception {
+		String hashed = keyedDigestTextHasher.hashText("someAppToken");
+
+		assertTrue(keyedDigest.matches("someAppToken", hashed));
+		textHasher.MCR.assertMethodNotCalled("hashText");
+	}
+
+	@Test
+	public void testKeyedDigestIsCheckedWithoutTextHasher() throws Exception {
+		String stored = keyedDigest.digest("someAppToken");
+
+		assertTrue(keyedDigestTextHasher.matches("someAppToken", stored));
+		assertFalse(keyedDigestTextHasher.matches("otherAppToken", stored));
+		textHasher.MCR.assertMethodNotCalled("matches");
+	}
+
+	@Test
+	public void testLegacySecretIsCheckedUsingTextHasher() throws Exception {
+		textHasher.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+
+		boolean matches = keyedDigestTextHasher.matches("someAppToken", "someLegacyHash");
+
+		assertTrue(matches);
+		textHasher.MCR.assertParameters("matches", 0, "someAppToken", "someLegacyHash");
+	}
+
+	@Test
+	public void testIsKeyedDigest() throws Exception {
+		assertTrue(keyedDigestTextHasher.isKeyedDigest(keyedDigest.digest("someAppToken")));
+		assertFalse(keyedDigestTextHasher.isKeyedDigest("someLegacyHash"));
+	}
+}
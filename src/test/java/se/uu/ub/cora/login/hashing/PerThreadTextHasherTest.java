@@ -0,0 +1,99 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.hashing;
+
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.login.spies.TextHasherFactorySpy;
+import se.uu.ub.cora.login.spies.TextHasherSpy;
+
+public class PerThreadTextHasherTest {
+	private TextHasherFactorySpy textHasherFactory;
+	private PerThreadTextHasher perThreadTextHasher;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		textHasherFactory = new TextHasherFactorySpy();
+		perThreadTextHasher = PerThreadTextHasher.usingTextHasherFactory(textHasherFactory);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(perThreadTextHasher.onlyForTestGetTextHasherFactory(), textHasherFactory);
+		textHasherFactory.MCR.assertMethodNotCalled("factor");
+	}
+
+	@Test
+	public void testHashTextUsesFactoredTextHasher() throws Exception {
+		String hashedText = perThreadTextHasher.hashText("someText");
+
+		TextHasherSpy textHasher = getFactoredTextHasher(0);
+		textHasher.MCR.assertParameters("hashText", 0, "someText");
+		textHasher.MCR.assertReturn("hashText", 0, hashedText);
+	}
+
+	@Test
+	public void testMatchesUsesFactoredTextHasher() throws Exception {
+		textHasherFactory.MRV.setDefaultReturnValuesSupplier("factor", this::createMatchingHasher);
+
+		boolean matches = perThreadTextHasher.matches("someText", "someHashedText");
+
+		assertTrue(matches);
+		getFactoredTextHasher(0).MCR.assertParameters("matches", 0, "someText",
+				"someHashedText");
+	}
+
+	private TextHasherSpy createMatchingHasher() {
+		TextHasherSpy textHasher = new TextHasherSpy();
+		textHasher.MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		return textHasher;
+	}
+
+	@Test
+	public void testSameThreadReusesTextHasher() throws Exception {
+		perThreadTextHasher.hashText("someText");
+		perThreadTextHasher.matches("someText", "someHashedText");
+
+		textHasherFactory.MCR.assertNumberOfCallsToMethod("factor", 1);
+		TextHasherSpy textHasher = getFactoredTextHasher(0);
+		textHasher.MCR.assertNumberOfCallsToMethod("hashText", 1);
+		textHasher.MCR.assertNumberOfCallsToMethod("matches", 1);
+	}
+
+	@Test
+	public void testEachThreadUsesItsOwnTextHasher() throws Exception {
+		perThreadTextHasher.hashText("someText");
+		Thread otherThread = new Thread(() -> perThreadTextHasher.hashText("otherText"));
+		otherThread.start();
+		otherThread.join();
+
+		textHasherFactory.MCR.assertNumberOfCallsToMethod("factor", 2);
+		getFactoredTextHasher(0).MCR.assertParameters("hashText", 0, "someText");
+		getFactoredTextHasher(1).MCR.assertParameters("hashText", 0, "otherText");
+		getFactoredTextHasher(0).MCR.assertNumberOfCallsToMethod("hashText", 1);
+	}
+
+	private TextHasherSpy getFactoredTextHasher(int callNumber) {
+		return (TextHasherSpy) textHasherFactory.MCR.getReturnValue("factor", callNumber);
+	}
+}
@@ -0,0 +1,106 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpClient.Version;
+import java.time.Duration;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.httphandler.HttpHandler;
+import se.uu.ub.cora.httphandler.HttpHandlerFactory;
+import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
+import se.uu.ub.cora.httphandler.HttpMultiPartUploader;
+import se.uu.ub.cora.login.spies.HttpClientSpy;
+import se.uu.ub.cora.login.spies.HttpHandlerFactorySpy;
+
+public class PooledHttpHandlerFactoryTest {
+	private HttpClientSpy httpClient;
+	private PooledHttpHandlerFactoryImp factory;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		httpClient = new HttpClientSpy();
+		factory = PooledHttpHandlerFactoryImp
+				.usingHttpClientRequestTimeoutAndMaxConcurrentRequests(httpClient, 5000, 10);
+	}
+
+	@Test
+	public void testImplementsHttpHandlerFactory() throws Exception {
+		assertTrue(factory instanceof HttpHandlerFactory);
+	}
+
+	@Test
+	public void testCreatedUsingHttpClient() throws Exception {
+		assertSame(factory.onlyForTestGetHttpClient(), httpClient);
+		assertEquals(factory.onlyForTestGetRequestTimeoutInMilliseconds(), 5000);
+		assertEquals(factory.onlyForTestGetMaxConcurrentRequests(), 10);
+		assertEquals(factory.onlyForTestGetAvailableRequestPermits(), 10);
+	}
+
+	@Test
+	public void testCreatedUsingConnectTimeoutCreatesSharedHttp2Client() throws Exception {
+		PooledHttpHandlerFactoryImp createdFactory = PooledHttpHandlerFactoryImp
+				.usingConnectTimeoutRequestTimeoutAndMaxConcurrentRequests(1000, 3000, 20);
+
+		HttpClient createdHttpClient = createdFactory.onlyForTestGetHttpClient();
+		assertEquals(createdHttpClient.version(), Version.HTTP_2);
+		assertEquals(createdHttpClient.connectTimeout().get(), Duration.ofMillis(1000));
+		assertEquals(createdFactory.onlyForTestGetRequestTimeoutInMilliseconds(), 3000);
+		assertEquals(createdFactory.onlyForTestGetMaxConcurrentRequests(), 20);
+	}
+
+	@Test
+	public void testFactorReturnsHandlersSharingHttpClient() throws Exception {
+		HttpHandler httpHandler = factory.factor("http://localhost/some");
+		HttpHandler otherHttpHandler = factory.factor("http://localhost/other");
+
+		httpHandler.getResponseCode();
+		otherHttpHandler.getResponseCode();
+
+		assertTrue(httpHandler instanceof PooledHttpHandlerImp);
+		httpClient.MCR.assertNumberOfCallsToMethod("send", 2);
+	}
+
+	@Test
+	public void testDefaultMultiPartUploaderFactory() throws Exception {
+		assertTrue(factory
+				.onlyForTestGetMultiPartUploaderFactory() instanceof HttpHandlerFactoryImp);
+	}
+
+	@Test
+	public void testFactorMultiPartUploaderIsDelegated() throws Exception {
+		HttpHandlerFactorySpy multiPartUploaderFactory = new HttpHandlerFactorySpy();
+		factory.onlyForTestSetMultiPartUploaderFactory(multiPartUploaderFactory);
+
+		HttpMultiPartUploader uploader = factory
+				.factorHttpMultiPartUploader("http://localhost/some");
+
+		multiPartUploaderFactory.MCR.assertParameters("factorHttpMultiPartUploader", 0,
+				"http://localhost/some");
+		multiPartUploaderFactory.MCR.assertReturn("factorHttpMultiPartUploader", 0, uploader);
+	}
+}
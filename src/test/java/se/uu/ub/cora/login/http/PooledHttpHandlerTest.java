@@ -0,0 +1,223 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.http;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.Semaphore;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.login.spies.HttpClientSpy;
+import se.uu.ub.cora.login.spies.HttpResponseSpy;
+
+public class PooledHttpHandlerTest {
+	private static final String URL = "http://localhost:8080/gatekeeper/rest/authToken/someId";
+	private HttpClientSpy httpClient;
+	private Semaphore requestPermits;
+	private HttpResponseSpy httpResponse;
+	private PooledHttpHandlerImp httpHandler;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		httpClient = new HttpClientSpy();
+		httpResponse = new HttpResponseSpy();
+		httpClient.MRV.setDefaultReturnValuesSupplier("send", () -> httpResponse);
+		requestPermits = new Semaphore(2);
+		httpHandler = new PooledHttpHandlerImp(httpClient, requestPermits, Duration.ofMillis(5000),
+				URL);
+	}
+
+	private HttpRequest getSentRequest() {
+		return (HttpRequest) httpClient.MCR.getValueForMethodNameAndCallNumberAndParameterName(
+				"send", 0, "request");
+	}
+
+	@Test
+	public void testGetResponseCodeSendsGetRequest() throws Exception {
+		httpResponse.statusCode = 201;
+
+		int responseCode = httpHandler.getResponseCode();
+
+		assertEquals(responseCode, 201);
+		HttpRequest request = getSentRequest();
+		assertEquals(request.method(), "GET");
+		assertEquals(request.uri(), URI.create(URL));
+		assertEquals(request.timeout(), Optional.of(Duration.ofMillis(5000)));
+		assertEquals(request.bodyPublisher().get().contentLength(), 0);
+	}
+
+	@Test
+	public void testRequestIsOnlySentOnce() throws Exception {
+		httpHandler.getResponseCode();
+		httpHandler.getResponseText();
+		httpHandler.getHeaderField("someHeader");
+
+		httpClient.MCR.assertNumberOfCallsToMethod("send", 1);
+	}
+
+	@Test
+	public void testRequestMethodPropertiesAndOutput() throws Exception {
+		httpHandler.setRequestMethod("POST");
+		httpHandler.setRequestProperty("Content-Type", "application/x-www-form-urlencoded");
+		httpHandler.setOutput("someOutput");
+
+		httpHandler.getResponseCode();
+
+		HttpRequest request = getSentRequest();
+		assertEquals(request.method(), "POST");
+		assertEquals(request.headers().firstValue("Content-Type").get(),
+				"application/x-www-form-urlencoded");
+		assertEquals(request.bodyPublisher().get().contentLength(),
+				"someOutput".getBytes(StandardCharsets.UTF_8).length);
+	}
+
+	@Test
+	public void testHeadersSetByHttpClientAreLeftOut() throws Exception {
+		httpHandler.setRequestMethod("POST");
+		httpHandler.setRequestProperty("Content-Length", "10");
+		httpHandler.setRequestProperty("Host", "otherHost");
+		httpHandler.setRequestProperty("connection", "keep-alive");
+		httpHandler.setRequestProperty("Upgrade", "h2c");
+		httpHandler.setRequestProperty("Accept", "application/json");
+		httpHandler.setOutput("someOutput");
+
+		httpHandler.getResponseCode();
+
+		HttpRequest request = getSentRequest();
+		assertEquals(request.headers().map().keySet(), Set.of("Accept"));
+		assertFalse(request.expectContinue());
+	}
+
+	@Test
+	public void testExpectContinueIsPassedOnAsExpectContinue() throws Exception {
+		httpHandler.setRequestProperty("Expect", "100-continue");
+
+		httpHandler.getResponseCode();
+
+		HttpRequest request = getSentRequest();
+		assertTrue(request.expectContinue());
+		assertTrue(request.headers().firstValue("Expect").isEmpty());
+	}
+
+	@Test
+	public void testStreamOutput() throws Exception {
+		httpHandler.setRequestMethod("POST");
+		httpHandler.setStreamOutput(new ByteArrayInputStream(new byte[] { 1, 2, 3 }));
+
+		httpHandler.getResponseCode();
+
+		assertEquals(getSentRequest().bodyPublisher().get().contentLength(), -1);
+	}
+
+	@Test
+	public void testBasicAuthorization() throws Exception {
+		httpHandler.setBasicAuthorization("someUser", "somePassword");
+
+		httpHandler.getResponseCode();
+
+		assertEquals(getSentRequest().headers().firstValue("Authorization").get(),
+				"Basic c29tZVVzZXI6c29tZVBhc3N3b3Jk");
+	}
+
+	@Test
+	public void testResponseTextAndErrorText() throws Exception {
+		assertEquals(httpHandler.getResponseText(), "someResponseText");
+		assertEquals(httpHandler.getErrorText(), "someResponseText");
+	}
+
+	@Test
+	public void testResponseBinary() throws Exception {
+		InputStream responseBinary = httpHandler.getResponseBinary();
+
+		assertEquals(new String(responseBinary.readAllBytes(), StandardCharsets.UTF_8),
+				"someResponseText");
+	}
+
+	@Test
+	public void testHeaderField() throws Exception {
+		httpResponse.headers.put("Location", List.of("someLocation"));
+
+		assertEquals(httpHandler.getHeaderField("Location"), "someLocation");
+		assertNull(httpHandler.getHeaderField("someMissingHeader"));
+	}
+
+	@Test
+	public void testPermitIsReleasedAfterRequest() throws Exception {
+		httpHandler.getResponseCode();
+
+		assertEquals(requestPermits.availablePermits(), 2);
+	}
+
+	@Test
+	public void testNoPermitLeftThrowsRequestRejected() throws Exception {
+		requestPermits.acquire(2);
+		try {
+			httpHandler.getResponseCode();
+			fail("It should throw an exception");
+		} catch (RequestRejectedException e) {
+			assertEquals(e.getMessage(), "Too many concurrent requests to " + URL + ".");
+			httpClient.MCR.assertMethodNotCalled("send");
+		}
+	}
+
+	@Test
+	public void testIOExceptionThrowsRequestFailedAndReleasesPermit() throws Exception {
+		IOException sendError = new IOException("someError");
+		httpClient.ioExceptionToThrow = sendError;
+		try {
+			httpHandler.getResponseCode();
+			fail("It should throw an exception");
+		} catch (RequestFailedException e) {
+			assertEquals(e.getMessage(), "Request to " + URL + " failed.");
+			assertSame(e.getCause(), sendError);
+			assertEquals(requestPermits.availablePermits(), 2);
+		}
+	}
+
+	@Test
+	public void testInterruptedThrowsRequestFailedAndKeepsInterruptFlag() throws Exception {
+		InterruptedException sendError = new InterruptedException("someError");
+		httpClient.interruptedExceptionToThrow = sendError;
+		try {
+			httpHandler.getResponseCode();
+			fail("It should throw an exception");
+		} catch (RequestFailedException e) {
+			assertEquals(e.getMessage(), "Request to " + URL + " was interrupted.");
+			assertSame(e.getCause(), sendError);
+			assertTrue(Thread.interrupted());
+		}
+	}
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.initialize;
+
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.gatekeeper.user.User;
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.login.spies.CacheSpy;
+
+public class CacheProviderTest {
+	@Test
+	public void testPrivateConstructor() throws Exception {
+		Constructor<CacheProvider> constructor = CacheProvider.class.getDeclaredConstructor();
+		assertTrue(Modifier.isPrivate(constructor.getModifiers()));
+	}
+
+	@Test(expectedExceptions = InvocationTargetException.class)
+	public void testPrivateConstructorInvoke() throws Exception {
+		Constructor<CacheProvider> constructor = CacheProvider.class.getDeclaredConstructor();
+		constructor.setAccessible(true);
+		constructor.newInstance();
+	}
+
+	@Test
+	public void testUserCache() {
+		CacheSpy<User> userCache = new CacheSpy<>();
+		CacheProvider.setUserCache(userCache);
+		assertSame(CacheProvider.getUserCache(), userCache);
+	}
+
+	@Test
+	public void testSystemSecretCache() {
+		CacheSpy<String> systemSecretCache = new CacheSpy<>();
+		CacheProvider.setSystemSecretCache(systemSecretCache);
+		assertSame(CacheProvider.getSystemSecretCache(), systemSecretCache);
+	}
+
+	@Test
+	public void testLastMatchedAppTokenIdCache() {
+		CacheSpy<String> lastMatchedAppTokenIdCache = new CacheSpy<>();
+		CacheProvider.setLastMatchedAppTokenIdCache(lastMatchedAppTokenIdCache);
+		assertSame(CacheProvider.getLastMatchedAppTokenIdCache(), lastMatchedAppTokenIdCache);
+	}
+
+	@Test
+	public void testRenewedAuthTokenCache() {
+		CacheSpy<AuthToken> renewedAuthTokenCache = new CacheSpy<>();
+		CacheProvider.setRenewedAuthTokenCache(renewedAuthTokenCache);
+		assertSame(CacheProvider.getRenewedAuthTokenCache(), renewedAuthTokenCache);
+	}
+
+	@Test
+	public void testIdempotentLoginCache() {
+		CacheSpy<AuthToken> idempotentLoginCache = new CacheSpy<>();
+		CacheProvider.setIdempotentLoginCache(idempotentLoginCache);
+		assertSame(CacheProvider.getIdempotentLoginCache(), idempotentLoginCache);
+	}
+
+	@Test
+	public void testForgottenAuthTokenCache() {
+		CacheSpy<String> forgottenAuthTokenCache = new CacheSpy<>();
+		CacheProvider.setForgottenAuthTokenCache(forgottenAuthTokenCache);
+		assertSame(CacheProvider.getForgottenAuthTokenCache(), forgottenAuthTokenCache);
+	}
+}
@@ -1,5 +1,5 @@
 /*
- * Copyright 2019, 2022 Uppsala University Library
+ * Copyright 2019, 2022, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -19,9 +19,20 @@
 package se.uu.ub.cora.login.initialize;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertNull;
+import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
 
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
 import java.util.HashMap;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ThreadPoolExecutor;
 
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
@@ -30,13 +41,26 @@ import org.testng.annotations.Test;
 import jakarta.servlet.ServletContext;
 import jakarta.servlet.ServletContextEvent;
 import se.uu.ub.cora.gatekeeper.storage.UserStorageProvider;
+import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
 import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProviderImp;
 import se.uu.ub.cora.httphandler.HttpHandlerFactory;
-import se.uu.ub.cora.httphandler.HttpHandlerFactoryImp;
 import se.uu.ub.cora.initialize.SettingsProvider;
 import se.uu.ub.cora.logger.LoggerProvider;
 import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
 import se.uu.ub.cora.logger.spies.LoggerSpy;
+import se.uu.ub.cora.login.AppTokenLoginImp;
+import se.uu.ub.cora.login.cache.CacheImp;
+import se.uu.ub.cora.login.circuitbreaker.CircuitBreakerImp;
+import se.uu.ub.cora.login.circuitbreaker.CircuitBreakingGatekeeperTokenProvider;
+import se.uu.ub.cora.login.hashing.HashingExecutorImp;
+import se.uu.ub.cora.login.hashing.KeyedDigest;
+import se.uu.ub.cora.login.http.PooledHttpHandlerFactoryImp;
+import se.uu.ub.cora.login.loadbalancer.LoadBalancingGatekeeperTokenProvider;
+import se.uu.ub.cora.login.rest.LoginDependencyProvider;
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+import se.uu.ub.cora.login.singleflight.SingleFlight;
+import se.uu.ub.cora.login.spies.GatekeeperTokenProviderSpy;
+import se.uu.ub.cora.login.spies.HashingExecutorSpy;
 import se.uu.ub.cora.login.spies.ServletContextSpy;
 import se.uu.ub.cora.login.spies.UserStorageViewInstanceProviderSpy;
 
@@ -69,6 +93,9 @@ public class LoginModuleInitializerTest {
 	private void resetSettingsProviderAndGatekeeperInstanceToEmptyState() {
 		SettingsProvider.setSettings(new HashMap<>());
 		GatekeeperInstanceProvider.setGatekeeperTokenProvider(null);
+		ExecutorProvider.setHashingExecutor(null);
+		ExecutorProvider.setLoginExecutor(null);
+		LoginDependencyProvider.usePerRequestLogins();
 	}
 
 	private void setNeededInitParameters() {
@@ -104,13 +131,566 @@ public class LoginModuleInitializerTest {
 	@Test
 	public void testGatekeeperTokenProviderIsSet() throws Exception {
 		initializer.contextInitialized(context);
-		GatekeeperTokenProviderImp gatekeeperTokenProvider = (GatekeeperTokenProviderImp) GatekeeperInstanceProvider
-				.getGatekeeperTokenProvider();
+		GatekeeperTokenProviderImp gatekeeperTokenProvider = getWrappedGatekeeperTokenProvider();
 		assertTrue(gatekeeperTokenProvider instanceof GatekeeperTokenProviderImp);
 		String gatekeeperUrl = gatekeeperTokenProvider.onlyForTestGetGatekeeperUrl();
 		assertEquals(gatekeeperUrl, SettingsProvider.getSetting("gatekeeperURL"));
 
 		HttpHandlerFactory httpHandlerFactory = gatekeeperTokenProvider.onlyForTersGetHttpHandlerFactory();
-		assertTrue(httpHandlerFactory instanceof HttpHandlerFactoryImp);
+		assertTrue(httpHandlerFactory instanceof PooledHttpHandlerFactoryImp);
+	}
+
+	@Test
+	public void testEmbeddedGatekeeperTokenProviderIsUsedWhenEmbeddedModeIsSet()
+			throws Exception {
+		GatekeeperTokenProviderSpy embeddedProvider = new GatekeeperTokenProviderSpy();
+		initializer.onlyForTestSetEmbeddedProviders(
+				() -> List.of(embeddedProvider, new GatekeeperTokenProviderSpy()));
+		source.setInitParameter("loginGatekeeperMode", "embedded");
+
+		initializer.contextInitialized(context);
+
+		assertSame(GatekeeperInstanceProvider.getGatekeeperTokenProvider(), embeddedProvider);
+		LoggerSpy loggerSpy = (LoggerSpy) loggerFactorySpy.MCR.getReturnValue("factorForClass", 0);
+		loggerSpy.MCR.assertParameters("logInfoUsingMessage", 1,
+				"Using embedded GatekeeperTokenProvider: "
+						+ GatekeeperTokenProviderSpy.class.getName());
+	}
+
+	@Test
+	public void testEmbeddedModeDoesNotNeedGatekeeperUrl() throws Exception {
+		source = new ServletContextSpy();
+		context = new ServletContextEvent(source);
+		source.setInitParameter("loginGatekeeperMode", "embedded");
+		GatekeeperTokenProviderSpy embeddedProvider = new GatekeeperTokenProviderSpy();
+		initializer.onlyForTestSetEmbeddedProviders(() -> List.of(embeddedProvider));
+
+		initializer.contextInitialized(context);
+
+		assertSame(GatekeeperInstanceProvider.getGatekeeperTokenProvider(), embeddedProvider);
+	}
+
+	@Test
+	public void testEmbeddedModeWithoutEmbeddedProviderThrowsException() throws Exception {
+		initializer.onlyForTestSetEmbeddedProviders(List::of);
+		source.setInitParameter("loginGatekeeperMode", "embedded");
+
+		try {
+			initializer.contextInitialized(context);
+			fail("It should throw an exception");
+		} catch (LoginInitializationException e) {
+			assertEquals(e.getMessage(),
+					"No embedded GatekeeperTokenProvider found for loginGatekeeperMode embedded.");
+		}
+	}
+
+	@Test
+	public void testDefaultEmbeddedProvidersAreLoadedUsingServiceLoader() throws Exception {
+		source.setInitParameter("loginGatekeeperMode", "embedded");
+
+		try {
+			initializer.contextInitialized(context);
+			fail("It should throw an exception");
+		} catch (LoginInitializationException e) {
+			assertEquals(e.getMessage(),
+					"No embedded GatekeeperTokenProvider found for loginGatekeeperMode embedded.");
+		}
+	}
+
+	private CircuitBreakingGatekeeperTokenProvider getCircuitBreakingProvider() {
+		return (CircuitBreakingGatekeeperTokenProvider) GatekeeperInstanceProvider
+				.getGatekeeperTokenProvider();
+	}
+
+	private GatekeeperTokenProviderImp getWrappedGatekeeperTokenProvider() {
+		return (GatekeeperTokenProviderImp) getCircuitBreakingProvider()
+				.onlyForTestGetGatekeeperTokenProvider();
+	}
+
+	@Test
+	public void testGatekeeperTokenProviderIsWrappedInCircuitBreakerWithDefaults()
+			throws Exception {
+		initializer.contextInitialized(context);
+
+		CircuitBreakingGatekeeperTokenProvider provider = getCircuitBreakingProvider();
+		assertEquals(provider.onlyForTestGetCallTimeoutInMilliseconds(), 3000);
+		CircuitBreakerImp circuitBreaker = (CircuitBreakerImp) provider
+				.onlyForTestGetCircuitBreaker();
+		assertEquals(circuitBreaker.onlyForTestGetWindowSize(), 20);
+		assertEquals(circuitBreaker.onlyForTestGetMinimumNumberOfCalls(), 10);
+		assertEquals(circuitBreaker.onlyForTestGetFailureRatePercent(), 50);
+		assertEquals(circuitBreaker.onlyForTestGetOpenTimeInMilliseconds(), 5000);
+	}
+
+	@Test
+	public void testGatekeeperTokenProviderIsWrappedInCircuitBreakerUsingSettings()
+			throws Exception {
+		source.setInitParameter("loginGatekeeperCallTimeoutInMilliseconds", "1500");
+		source.setInitParameter("loginGatekeeperCircuitWindowSize", "40");
+		source.setInitParameter("loginGatekeeperCircuitMinimumCalls", "5");
+		source.setInitParameter("loginGatekeeperCircuitFailureRatePercent", "25");
+		source.setInitParameter("loginGatekeeperCircuitOpenTimeInMilliseconds", "10000");
+
+		initializer.contextInitialized(context);
+
+		CircuitBreakingGatekeeperTokenProvider provider = getCircuitBreakingProvider();
+		assertEquals(provider.onlyForTestGetCallTimeoutInMilliseconds(), 1500);
+		CircuitBreakerImp circuitBreaker = (CircuitBreakerImp) provider
+				.onlyForTestGetCircuitBreaker();
+		assertEquals(circuitBreaker.onlyForTestGetWindowSize(), 40);
+		assertEquals(circuitBreaker.onlyForTestGetMinimumNumberOfCalls(), 5);
+		assertEquals(circuitBreaker.onlyForTestGetFailureRatePercent(), 25);
+		assertEquals(circuitBreaker.onlyForTestGetOpenTimeInMilliseconds(), 10000);
+	}
+
+	@Test
+	public void testSeveralGatekeeperUrlsAreLoadBalancedWithDefaults() throws Exception {
+		source.setInitParameter("gatekeeperURL", "/first/url, /second/url,,/third/url");
+
+		initializer.contextInitialized(context);
+
+		LoadBalancingGatekeeperTokenProvider provider = getLoadBalancingProvider();
+		List<GatekeeperTokenProvider> providers = provider
+				.onlyForTestGetGatekeeperTokenProviders();
+		assertEquals(providers.size(), 3);
+		assertGatekeeperUrl(providers.get(0), "/first/url");
+		assertGatekeeperUrl(providers.get(1), "/second/url");
+		assertGatekeeperUrl(providers.get(2), "/third/url");
+		assertEquals(provider.onlyForTestGetConsecutiveFailuresToEject(), 3);
+		assertEquals(provider.onlyForTestGetEjectionTimeInMilliseconds(), 10000);
+	}
+
+	private LoadBalancingGatekeeperTokenProvider getLoadBalancingProvider() {
+		return (LoadBalancingGatekeeperTokenProvider) getCircuitBreakingProvider()
+				.onlyForTestGetGatekeeperTokenProvider();
+	}
+
+	private void assertGatekeeperUrl(GatekeeperTokenProvider provider, String url) {
+		GatekeeperTokenProviderImp gatekeeperTokenProvider = (GatekeeperTokenProviderImp) provider;
+		assertEquals(gatekeeperTokenProvider.onlyForTestGetGatekeeperUrl(), url);
+	}
+
+	@Test
+	public void testSeveralGatekeeperUrlsShareHttpHandlerFactory() throws Exception {
+		source.setInitParameter("gatekeeperURL", "/first/url,/second/url");
+
+		initializer.contextInitialized(context);
+
+		List<GatekeeperTokenProvider> providers = getLoadBalancingProvider()
+				.onlyForTestGetGatekeeperTokenProviders();
+		assertSame(getHttpHandlerFactory(providers.get(0)),
+				getHttpHandlerFactory(providers.get(1)));
+	}
+
+	private HttpHandlerFactory getHttpHandlerFactory(GatekeeperTokenProvider provider) {
+		return ((GatekeeperTokenProviderImp) provider).onlyForTersGetHttpHandlerFactory();
+	}
+
+	@Test
+	public void testSeveralGatekeeperUrlsAreLoadBalancedUsingSettings() throws Exception {
+		source.setInitParameter("gatekeeperURL", "/first/url,/second/url");
+		source.setInitParameter("loginGatekeeperEjectionConsecutiveFailures", "5");
+		source.setInitParameter("loginGatekeeperEjectionTimeInMilliseconds", "30000");
+
+		initializer.contextInitialized(context);
+
+		LoadBalancingGatekeeperTokenProvider provider = getLoadBalancingProvider();
+		assertEquals(provider.onlyForTestGetConsecutiveFailuresToEject(), 5);
+		assertEquals(provider.onlyForTestGetEjectionTimeInMilliseconds(), 30000);
+	}
+
+	@Test
+	public void testGatekeeperTokenProviderUsesPooledHttpHandlerFactoryWithDefaults()
+			throws Exception {
+		initializer.contextInitialized(context);
+
+		PooledHttpHandlerFactoryImp httpHandlerFactory = getPooledHttpHandlerFactory();
+		assertEquals(httpHandlerFactory.onlyForTestGetHttpClient().connectTimeout().get(),
+				Duration.ofMillis(2000));
+		assertEquals(httpHandlerFactory.onlyForTestGetRequestTimeoutInMilliseconds(), 3000);
+		assertEquals(httpHandlerFactory.onlyForTestGetMaxConcurrentRequests(), 64);
+	}
+
+	@Test
+	public void testGatekeeperRequestTimeoutDefaultsToCallTimeout() throws Exception {
+		source.setInitParameter("loginGatekeeperCallTimeoutInMilliseconds", "1500");
+
+		initializer.contextInitialized(context);
+
+		PooledHttpHandlerFactoryImp httpHandlerFactory = getPooledHttpHandlerFactory();
+		assertEquals(httpHandlerFactory.onlyForTestGetRequestTimeoutInMilliseconds(), 1500);
+	}
+
+	@Test
+	public void testGatekeeperRequestTimeoutIsNeverLongerThanCallTimeout() throws Exception {
+		source.setInitParameter("loginGatekeeperCallTimeoutInMilliseconds", "1500");
+		source.setInitParameter("loginGatekeeperRequestTimeoutInMilliseconds", "9000");
+
+		initializer.contextInitialized(context);
+
+		PooledHttpHandlerFactoryImp httpHandlerFactory = getPooledHttpHandlerFactory();
+		assertEquals(httpHandlerFactory.onlyForTestGetRequestTimeoutInMilliseconds(), 1500);
+	}
+
+	private PooledHttpHandlerFactoryImp getPooledHttpHandlerFactory() {
+		return (PooledHttpHandlerFactoryImp) getWrappedGatekeeperTokenProvider()
+				.onlyForTersGetHttpHandlerFactory();
+	}
+
+	@Test
+	public void testGatekeeperTokenProviderUsesPooledHttpHandlerFactoryUsingSettings()
+			throws Exception {
+		source.setInitParameter("loginGatekeeperConnectTimeoutInMilliseconds", "300");
+		source.setInitParameter("loginGatekeeperRequestTimeoutInMilliseconds", "900");
+		source.setInitParameter("loginGatekeeperMaxConcurrentRequests", "8");
+
+		initializer.contextInitialized(context);
+
+		PooledHttpHandlerFactoryImp httpHandlerFactory = getPooledHttpHandlerFactory();
+		assertEquals(httpHandlerFactory.onlyForTestGetHttpClient().connectTimeout().get(),
+				Duration.ofMillis(300));
+		assertEquals(httpHandlerFactory.onlyForTestGetRequestTimeoutInMilliseconds(), 900);
+		assertEquals(httpHandlerFactory.onlyForTestGetMaxConcurrentRequests(), 8);
+	}
+
+	@Test
+	public void testHashingExecutorIsSetWithDefaults() throws Exception {
+		initializer.contextInitialized(context);
+
+		HashingExecutorImp hashingExecutor = (HashingExecutorImp) ExecutorProvider
+				.getHashingExecutor();
+		assertEquals(hashingExecutor.onlyForTestGetPoolSize(),
+				Runtime.getRuntime().availableProcessors());
+		assertEquals(hashingExecutor.onlyForTestGetQueueSize(), 64);
+		assertEquals(hashingExecutor.onlyForTestGetMaxWaitInMilliseconds(), 2000);
+	}
+
+	@Test
+	public void testHashingExecutorIsSetUsingSettings() throws Exception {
+		source.setInitParameter("loginHashingPoolSize", "3");
+		source.setInitParameter("loginHashingQueueSize", "10");
+		source.setInitParameter("loginHashingMaxWaitInMilliseconds", "500");
+
+		initializer.contextInitialized(context);
+
+		HashingExecutorImp hashingExecutor = (HashingExecutorImp) ExecutorProvider
+				.getHashingExecutor();
+		assertEquals(hashingExecutor.onlyForTestGetPoolSize(), 3);
+		assertEquals(hashingExecutor.onlyForTestGetQueueSize(), 10);
+		assertEquals(hashingExecutor.onlyForTestGetMaxWaitInMilliseconds(), 500);
+	}
+
+	@Test
+	public void testContextDestroyedShutsDownHashingExecutor() throws Exception {
+		HashingExecutorSpy hashingExecutor = new HashingExecutorSpy();
+		ExecutorProvider.setHashingExecutor(hashingExecutor);
+
+		initializer.contextDestroyed(context);
+
+		hashingExecutor.MCR.assertMethodWasCalled("shutdown");
+	}
+
+	@Test
+	public void testContextDestroyedWithoutHashingExecutor() throws Exception {
+		initializer.contextDestroyed(context);
+	}
+
+	@Test
+	public void testContextDestroyedShutsDownCircuitBreakingGatekeeperTokenProvider()
+			throws Exception {
+		initializer.contextInitialized(context);
+		CircuitBreakingGatekeeperTokenProvider provider = getCircuitBreakingProvider();
+
+		initializer.contextDestroyed(context);
+
+		try {
+			provider.removeAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (LoginUnavailableException e) {
+			assertEquals(e.getMessage(), "Call to gatekeeper rejected.");
+		}
+	}
+
+	@Test
+	public void testLoginExecutorIsSetWithDefaultPoolSize() throws Exception {
+		initializer.contextInitialized(context);
+
+		ThreadPoolExecutor loginExecutor = (ThreadPoolExecutor) ExecutorProvider
+				.getLoginExecutor();
+		assertEquals(loginExecutor.getMaximumPoolSize(), 32);
+		assertEquals(loginExecutor.getQueue().remainingCapacity(), 256);
+		assertTrue(loginExecutor
+				.getRejectedExecutionHandler() instanceof ThreadPoolExecutor.AbortPolicy);
+	}
+
+	@Test
+	public void testLoginExecutorIsSetUsingSettings() throws Exception {
+		source.setInitParameter("loginPoolSize", "5");
+		source.setInitParameter("loginQueueSize", "7");
+
+		initializer.contextInitialized(context);
+
+		ThreadPoolExecutor loginExecutor = (ThreadPoolExecutor) ExecutorProvider
+				.getLoginExecutor();
+		assertEquals(loginExecutor.getMaximumPoolSize(), 5);
+		assertEquals(loginExecutor.getQueue().remainingCapacity(), 7);
+	}
+
+	@Test
+	public void testLoginExecutorUsesPlatformThreadsByDefault() throws Exception {
+		initializer.contextInitialized(context);
+
+		assertFalse(isRunOnVirtualThread(ExecutorProvider.getLoginExecutor()));
+	}
+
+	@Test
+	public void testLoginExecutorUsesVirtualThreadsInVirtualMode() throws Exception {
+		source.setInitParameter("loginExecutionMode", "virtual");
+
+		initializer.contextInitialized(context);
+
+		assertTrue(isRunOnVirtualThread(ExecutorProvider.getLoginExecutor()));
+	}
+
+	@Test
+	public void testVirtualModeKeepsHashingOnBoundedPool() throws Exception {
+		source.setInitParameter("loginExecutionMode", "virtual");
+		source.setInitParameter("loginHashingPoolSize", "2");
+
+		initializer.contextInitialized(context);
+
+		HashingExecutorImp hashingExecutor = (HashingExecutorImp) ExecutorProvider
+				.getHashingExecutor();
+		assertEquals(hashingExecutor.onlyForTestGetPoolSize(), 2);
+	}
+
+	private boolean isRunOnVirtualThread(ExecutorService executor) throws Exception {
+		Thread thread = executor.submit(Thread::currentThread).get();
+		return thread.isVirtual();
+	}
+
+	@Test
+	public void testSingleFlightIsSetWithoutSharedAuthTokenByDefault() throws Exception {
+		initializer.contextInitialized(context);
+
+		SingleFlight singleFlight = SingleFlightProvider.getSingleFlight();
+		assertFalse(singleFlight.sharesAuthToken());
+	}
+
+	@Test
+	public void testSingleFlightIsSetWithSharedAuthTokenUsingSettings() throws Exception {
+		source.setInitParameter("loginSharedAuthToken", "true");
+
+		initializer.contextInitialized(context);
+
+		SingleFlight singleFlight = SingleFlightProvider.getSingleFlight();
+		assertTrue(singleFlight.sharesAuthToken());
+	}
+
+	@Test
+	public void testUserCacheIsSetWithDefaultSettings() throws Exception {
+		initializer.contextInitialized(context);
+
+		CacheImp<?> userCache = (CacheImp<?>) CacheProvider.getUserCache();
+		assertEquals(userCache.onlyForTestGetMaxSize(), 10000);
+		assertEquals(userCache.onlyForTestGetTimeToLiveInMilliseconds(), 30000);
+	}
+
+	@Test
+	public void testUserCacheIsSetUsingSettings() throws Exception {
+		source.setInitParameter("loginUserCacheMaxSize", "50");
+		source.setInitParameter("loginUserCacheTimeToLiveInMilliseconds", "5000");
+
+		initializer.contextInitialized(context);
+
+		CacheImp<?> userCache = (CacheImp<?>) CacheProvider.getUserCache();
+		assertEquals(userCache.onlyForTestGetMaxSize(), 50);
+		assertEquals(userCache.onlyForTestGetTimeToLiveInMilliseconds(), 5000);
+	}
+
+	@Test
+	public void testSystemSecretCacheIsSetWithDefaultSettings() throws Exception {
+		initializer.contextInitialized(context);
+
+		CacheImp<?> systemSecretCache = (CacheImp<?>) CacheProvider.getSystemSecretCache();
+		assertEquals(systemSecretCache.onlyForTestGetMaxSize(), 10000);
+		assertEquals(systemSecretCache.onlyForTestGetTimeToLiveInMilliseconds(), 30000);
+	}
+
+	@Test
+	public void testSystemSecretCacheIsSetUsingSettings() throws Exception {
+		source.setInitParameter("loginSystemSecretCacheMaxSize", "20");
+		source.setInitParameter("loginSystemSecretCacheTimeToLiveInMilliseconds", "1000");
+
+		initializer.contextInitialized(context);
+
+		CacheImp<?> systemSecretCache = (CacheImp<?>) CacheProvider.getSystemSecretCache();
+		assertEquals(systemSecretCache.onlyForTestGetMaxSize(), 20);
+		assertEquals(systemSecretCache.onlyForTestGetTimeToLiveInMilliseconds(), 1000);
+	}
+
+	@Test
+	public void testLastMatchedAppTokenIdCacheIsSetWithDefaultSettings() throws Exception {
+		initializer.contextInitialized(context);
+
+		CacheImp<?> lastMatchedCache = (CacheImp<?>) CacheProvider.getLastMatchedAppTokenIdCache();
+		assertEquals(lastMatchedCache.onlyForTestGetMaxSize(), 10000);
+		assertEquals(lastMatchedCache.onlyForTestGetTimeToLiveInMilliseconds(), 3600000);
+	}
+
+	@Test
+	public void testLastMatchedAppTokenIdCacheIsSetUsingSettings() throws Exception {
+		source.setInitParameter("loginLastMatchedAppTokenCacheMaxSize", "20");
+		source.setInitParameter("loginLastMatchedAppTokenCacheTimeToLiveInMilliseconds", "1000");
+
+		initializer.contextInitialized(context);
+
+		CacheImp<?> lastMatchedCache = (CacheImp<?>) CacheProvider.getLastMatchedAppTokenIdCache();
+		assertEquals(lastMatchedCache.onlyForTestGetMaxSize(), 20);
+		assertEquals(lastMatchedCache.onlyForTestGetTimeToLiveInMilliseconds(), 1000);
+	}
+
+	@Test
+	public void testRenewedAuthTokenCacheIsSetWithDefaultSettings() throws Exception {
+		initializer.contextInitialized(context);
+
+		CacheImp<?> renewedCache = (CacheImp<?>) CacheProvider.getRenewedAuthTokenCache();
+		assertEquals(renewedCache.onlyForTestGetMaxSize(), 10000);
+		assertEquals(renewedCache.onlyForTestGetTimeToLiveInMilliseconds(), 2000);
+	}
+
+	@Test
+	public void testRenewedAuthTokenCacheIsSetUsingSettings() throws Exception {
+		source.setInitParameter("loginRenewalGraceCacheMaxSize", "20");
+		source.setInitParameter("loginRenewalGracePeriodInMilliseconds", "500");
+
+		initializer.contextInitialized(context);
+
+		CacheImp<?> renewedCache = (CacheImp<?>) CacheProvider.getRenewedAuthTokenCache();
+		assertEquals(renewedCache.onlyForTestGetMaxSize(), 20);
+		assertEquals(renewedCache.onlyForTestGetTimeToLiveInMilliseconds(), 500);
+	}
+
+	@Test
+	public void testIdempotentLoginCacheIsSetWithDefaultSettings() throws Exception {
+		initializer.contextInitialized(context);
+
+		CacheImp<?> idempotentCache = (CacheImp<?>) CacheProvider.getIdempotentLoginCache();
+		assertEquals(idempotentCache.onlyForTestGetMaxSize(), 10000);
+		assertEquals(idempotentCache.onlyForTestGetTimeToLiveInMilliseconds(), 60000);
+		CacheImp<?> forgottenCache = (CacheImp<?>) CacheProvider.getForgottenAuthTokenCache();
+		assertEquals(forgottenCache.onlyForTestGetMaxSize(), 10000);
+		assertEquals(forgottenCache.onlyForTestGetTimeToLiveInMilliseconds(), 60000);
+	}
+
+	@Test
+	public void testIdempotentLoginCacheIsSetUsingSettings() throws Exception {
+		source.setInitParameter("loginIdempotencyCacheMaxSize", "30");
+		source.setInitParameter("loginIdempotencyTimeToLiveInMilliseconds", "700");
+
+		initializer.contextInitialized(context);
+
+		CacheImp<?> idempotentCache = (CacheImp<?>) CacheProvider.getIdempotentLoginCache();
+		assertEquals(idempotentCache.onlyForTestGetMaxSize(), 30);
+		assertEquals(idempotentCache.onlyForTestGetTimeToLiveInMilliseconds(), 700);
+		CacheImp<?> forgottenCache = (CacheImp<?>) CacheProvider.getForgottenAuthTokenCache();
+		assertEquals(forgottenCache.onlyForTestGetMaxSize(), 30);
+		assertEquals(forgottenCache.onlyForTestGetTimeToLiveInMilliseconds(), 700);
+	}
+
+	@Test
+	public void testHashingExecutorMatchesInOrderByDefault() throws Exception {
+		initializer.contextInitialized(context);
+
+		HashingExecutorImp hashingExecutor = (HashingExecutorImp) ExecutorProvider
+				.getHashingExecutor();
+		assertFalse(hashingExecutor.onlyForTestGetParallelMatching());
+	}
+
+	@Test
+	public void testHashingExecutorMatchesInParallelUsingSettings() throws Exception {
+		source.setInitParameter("loginHashingParallelMatching", "true");
+
+		initializer.contextInitialized(context);
+
+		HashingExecutorImp hashingExecutor = (HashingExecutorImp) ExecutorProvider
+				.getHashingExecutor();
+		assertTrue(hashingExecutor.onlyForTestGetParallelMatching());
+	}
+
+	@Test
+	public void testNoAppTokenKeyedDigestWithoutKeySetting() throws Exception {
+		initializer.contextInitialized(context);
+
+		assertNull(KeyedDigestProvider.getAppTokenKeyedDigest());
+	}
+
+	@Test
+	public void testAppTokenKeyedDigestIsSetUsingKeySetting() throws Exception {
+		byte[] key = "someKeyThatIsLongEnoughForHmac32".getBytes(StandardCharsets.UTF_8);
+		source.setInitParameter("loginAppTokenDigestKey", Base64.getEncoder().encodeToString(key));
+
+		initializer.contextInitialized(context);
+
+		KeyedDigest keyedDigest = KeyedDigestProvider.getAppTokenKeyedDigest();
+		assertEquals(keyedDigest.digest("someAppToken"),
+				KeyedDigest.usingKey(key).digest("someAppToken"));
+		KeyedDigestProvider.setAppTokenKeyedDigest(null);
+	}
+
+	@Test
+	public void testLoginsAreFactoredPerRequestByDefault() throws Exception {
+		initializer.contextInitialized(context);
+
+		assertNotSame(LoginDependencyProvider.getPasswordLogin(),
+				LoginDependencyProvider.getPasswordLogin());
+		assertNotSame(LoginDependencyProvider.getAppTokenLogin(),
+				LoginDependencyProvider.getAppTokenLogin());
+	}
+
+	@Test
+	public void testSingletonLifecycleSharesLoginsBetweenRequests() throws Exception {
+		source.setInitParameter("loginLifecycle", "singleton");
+
+		initializer.contextInitialized(context);
+
+		assertSame(LoginDependencyProvider.getPasswordLogin(),
+				LoginDependencyProvider.getPasswordLogin());
+		assertSame(LoginDependencyProvider.getAppTokenLogin(),
+				LoginDependencyProvider.getAppTokenLogin());
+	}
+
+	@Test
+	public void testSharedLoginsAreCreatedAfterProvidersAreSet() throws Exception {
+		source.setInitParameter("loginLifecycle", "singleton");
+
+		initializer.contextInitialized(context);
+
+		AppTokenLoginImp appTokenLogin = (AppTokenLoginImp) LoginDependencyProvider
+				.getAppTokenLogin();
+		assertSame(appTokenLogin.onlyForTestGetHashingExecutor(),
+				ExecutorProvider.getHashingExecutor());
+		assertSame(appTokenLogin.onlyForTestGetLastMatchedAppTokenIdCache(),
+				CacheProvider.getLastMatchedAppTokenIdCache());
+	}
+
+	@Test
+	public void testContextDestroyedDropsSharedLogins() throws Exception {
+		source.setInitParameter("loginLifecycle", "singleton");
+		initializer.contextInitialized(context);
+
+		initializer.contextDestroyed(context);
+
+		assertNotSame(LoginDependencyProvider.getPasswordLogin(),
+				LoginDependencyProvider.getPasswordLogin());
+	}
+
+	@Test
+	public void testContextDestroyedShutsDownLoginExecutor() throws Exception {
+		initializer.contextInitialized(context);
+
+		initializer.contextDestroyed(context);
+
+		assertTrue(ExecutorProvider.getLoginExecutor().isShutdown());
 	}
 }
@@ -0,0 +1,332 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.json;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Optional;
+import java.util.Set;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.login.spies.OutputStreamErrorSpy;
+
+public class AuthTokenJsonWriterTest {
+	private static final String BASE_URL = "https://cora.org/login/rest/authToken/";
+	private static final String URL = BASE_URL + "someTokenId";
+	private AuthTokenJsonWriter writer;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		writer = new AuthTokenJsonWriter();
+	}
+
+	private AuthToken createAuthToken(String token, Optional<String> firstName,
+			Optional<String> lastName, Set<String> permissionUnits) {
+		return new AuthToken(token, "someTokenId", 100L, 200L, "someIdInUserStorage",
+				"someLoginId", firstName, lastName, permissionUnits);
+	}
+
+	private void assertSameJsonAsConverter(AuthToken authToken, String url) throws IOException {
+		String expectedJson = new AuthTokenToJsonConverter(authToken, url)
+				.convertAuthTokenToJson();
+
+		byte[] expectedBytes = expectedJson.getBytes(StandardCharsets.UTF_8);
+
+		byte[] json = writeToBytes(authToken, url);
+
+		assertEquals(new String(json, StandardCharsets.UTF_8),
+				new String(expectedBytes, StandardCharsets.UTF_8));
+		assertEquals(json, expectedBytes);
+	}
+
+	private byte[] writeToBytes(AuthToken authToken, String url) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		writer.writeAuthTokenAsJson(authToken, url, outputStream);
+		return outputStream.toByteArray();
+	}
+
+	@Test
+	public void testWithoutNamesAndWithoutPermissionUnits() throws Exception {
+		assertSameJsonAsConverter(createAuthToken("someToken", Optional.empty(),
+				Optional.empty(), Collections.emptySet()), URL);
+	}
+
+	@Test
+	public void testWithNamesAndOnePermissionUnit() throws Exception {
+		assertSameJsonAsConverter(createAuthToken("someToken", Optional.of("someFirstName"),
+				Optional.of("someLastName"), Set.of("001")), URL);
+	}
+
+	@Test
+	public void testWithOnlyFirstName() throws Exception {
+		assertSameJsonAsConverter(createAuthToken("someToken", Optional.of("someFirstName"),
+				Optional.empty(), Collections.emptySet()), URL);
+	}
+
+	@Test
+	public void testWithOnlyLastName() throws Exception {
+		assertSameJsonAsConverter(createAuthToken("someToken", Optional.empty(),
+				Optional.of("someLastName"), Collections.emptySet()), URL);
+	}
+
+	@Test
+	public void testWithManyPermissionUnits() throws Exception {
+		Set<String> permissionUnits = new LinkedHashSet<>();
+		for (int i = 0; i < 12; i++) {
+			permissionUnits.add("unit" + i);
+		}
+		assertSameJsonAsConverter(createAuthToken("someToken", Optional.of("someFirstName"),
+				Optional.of("someLastName"), permissionUnits), URL);
+	}
+
+	@Test
+	public void testEscapedCharacters() throws Exception {
+		String special = "quote\" backslash\\ slash/ </script> \b\t\n\f\r \u0001\u001f";
+		assertSameJsonAsConverter(createAuthToken(special, Optional.of(special),
+				Optional.of(special), Set.of(special)), special);
+	}
+
+	@Test
+	public void testNonAsciiCharacters() throws Exception {
+		String nonAscii = "\u00e5\u00e4\u00f6 \u0080\u0085\u009f\u00a0 \u2000\u2028\u20ac\u2100"
+				+ " \ud83d\ude00";
+		assertSameJsonAsConverter(createAuthToken(nonAscii, Optional.of(nonAscii),
+				Optional.of(nonAscii), Set.of(nonAscii)), URL + nonAscii);
+	}
+
+	@Test
+	public void testUnpairedSurrogateIsEncodedAsUtf8Would() throws Exception {
+		assertSameJsonAsConverter(createAuthToken("some\ud83dToken", Optional.empty(),
+				Optional.empty(), Collections.emptySet()), URL);
+	}
+
+	@Test
+	public void testEmptyValues() throws Exception {
+		assertSameJsonAsConverter(createAuthToken("", Optional.of(""), Optional.of(""),
+				Set.of("")), "");
+	}
+
+	@Test
+	public void testNullValues() throws Exception {
+		AuthToken authToken = new AuthToken(null, "someTokenId", 100L, 200L, null, null,
+				Optional.empty(), Optional.empty(), Collections.emptySet());
+
+		assertSameJsonAsConverter(authToken, null);
+	}
+
+	@Test
+	public void testWriteToOutputStream() throws Exception {
+		AuthToken authToken = createAuthToken("someToken", Optional.of("someFirstName"),
+				Optional.empty(), Set.of("001"));
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		writer.writeAuthTokenAsJson(authToken, URL, outputStream);
+
+		assertEquals(outputStream.toByteArray(), writeToBytes(authToken, URL));
+	}
+
+	@Test
+	public void testWritesToOutputStreamInOneBlock() throws Exception {
+		AuthToken authToken = createAuthToken("someToken", Optional.of("someFirstName"),
+				Optional.empty(), Set.of("001"));
+		BlockCountingOutputStream outputStream = new BlockCountingOutputStream();
+
+		writer.writeAuthTokenAsJson(authToken, URL, outputStream);
+
+		assertEquals(outputStream.blockSizes.size(), 1);
+		assertEquals(outputStream.toByteArray(), writeToBytes(authToken, URL));
+	}
+
+	@Test
+	public void testLargeJsonIsWrittenInBlocks() throws Exception {
+		Set<String> permissionUnits = new LinkedHashSet<>();
+		for (int i = 0; i < 500; i++) {
+			permissionUnits.add("unit\u00e5" + i);
+		}
+		AuthToken authToken = createAuthToken("someToken", Optional.empty(), Optional.empty(),
+				permissionUnits);
+		BlockCountingOutputStream outputStream = new BlockCountingOutputStream();
+
+		writer.writeAuthTokenAsJson(authToken, URL, outputStream);
+
+		assertTrue(outputStream.blockSizes.size() > 1);
+		for (int blockSize : outputStream.blockSizes) {
+			assertTrue(blockSize <= 4096);
+		}
+		assertSameJsonAsConverter(authToken, URL);
+		assertEquals(outputStream.toByteArray(), writeToBytes(authToken, URL));
+	}
+
+	private static class BlockCountingOutputStream extends ByteArrayOutputStream {
+		List<Integer> blockSizes = new ArrayList<>();
+
+		@Override
+		public void write(int b) {
+			throw new IllegalStateException("Bytes should be written in blocks.");
+		}
+
+		@Override
+		public void write(byte[] bytes, int offset, int length) {
+			blockSizes.add(length);
+			super.write(bytes, offset, length);
+		}
+	}
+
+	@Test
+	public void testWriteToFailingOutputStream() throws Exception {
+		OutputStreamErrorSpy failingOutputStream = new OutputStreamErrorSpy();
+
+		try {
+			writer.writeAuthTokenAsJson(createAuthToken("someToken", Optional.empty(),
+					Optional.empty(), Collections.emptySet()), URL, failingOutputStream);
+			fail("It should throw an exception");
+		} catch (IOException e) {
+			assertSame(e, failingOutputStream.writeError);
+		}
+	}
+
+	@Test
+	public void testWriteCompactAuthToken() throws Exception {
+		AuthToken authToken = createAuthToken("someToken", Optional.of("someFirstName"),
+				Optional.of("someLastName"), Set.of("001"));
+
+		String json = writeCompact(authToken);
+
+		assertEquals(json, "{\"tokenId\":\"someTokenId\",\"token\":\"someToken\","
+				+ "\"validUntil\":100,\"renewUntil\":200,\"userId\":\"someIdInUserStorage\"}");
+	}
+
+	private String writeCompact(AuthToken authToken) throws IOException {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		writer.writeCompactAuthTokenAsJson(authToken, outputStream);
+		return outputStream.toString(StandardCharsets.UTF_8);
+	}
+
+	@Test
+	public void testWriteCompactAuthTokenEscapesValues() throws Exception {
+		AuthToken authToken = new AuthToken("some\"Token\u00e5", "someTokenId", -1L,
+				Long.MAX_VALUE, "some\\User", "someLoginId", Optional.empty(),
+				Optional.empty(), Collections.emptySet());
+
+		assertEquals(writeCompact(authToken), "{\"tokenId\":\"someTokenId\","
+				+ "\"token\":\"some\\\"Token\u00e5\",\"validUntil\":-1,"
+				+ "\"renewUntil\":9223372036854775807,\"userId\":\"some\\\\User\"}");
+	}
+
+	@Test
+	public void testWriteCompactAuthTokenWithNullValues() throws Exception {
+		AuthToken authToken = new AuthToken(null, null, 100L, 200L, null, null,
+				Optional.empty(), Optional.empty(), Collections.emptySet());
+
+		assertEquals(writeCompact(authToken), "{\"tokenId\":null,\"token\":null,"
+				+ "\"validUntil\":100,\"renewUntil\":200,\"userId\":null}");
+	}
+
+	@Test
+	public void testWriteCompactToFailingOutputStream() throws Exception {
+		OutputStreamErrorSpy failingOutputStream = new OutputStreamErrorSpy();
+
+		try {
+			writer.writeCompactAuthTokenAsJson(createAuthToken("someToken", Optional.empty(),
+					Optional.empty(), Collections.emptySet()), failingOutputStream);
+			fail("It should throw an exception");
+		} catch (IOException e) {
+			assertSame(e, failingOutputStream.writeError);
+		}
+	}
+
+	@Test
+	public void testWriteBatchLoginResults() throws Exception {
+		AuthToken authToken = createAuthToken("someToken", Optional.of("someFirstName"),
+				Optional.empty(), Set.of("001"));
+		List<BatchLoginResult> results = List.of(
+				new BatchLoginResult("someLoginId", 201, authToken),
+				new BatchLoginResult("other\"LoginId", 401, null));
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		writer.writeBatchLoginResultsAsJson(results, BASE_URL, outputStream);
+
+		String expectedAuthToken = new AuthTokenToJsonConverter(authToken, URL)
+				.convertAuthTokenToJson();
+		assertEquals(outputStream.toString(StandardCharsets.UTF_8),
+				"{\"results\":[{\"loginId\":\"someLoginId\",\"status\":201,\"authToken\":"
+						+ expectedAuthToken + "},{\"loginId\":\"other\\\"LoginId\","
+						+ "\"status\":401}]}");
+	}
+
+	@Test
+	public void testWriteBatchLoginResultsEmptyList() throws Exception {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		writer.writeBatchLoginResultsAsJson(Collections.emptyList(), BASE_URL, outputStream);
+
+		assertEquals(outputStream.toString(StandardCharsets.UTF_8), "{\"results\":[]}");
+	}
+
+	@Test
+	public void testWriteBatchLoginResultsToFailingOutputStream() throws Exception {
+		OutputStreamErrorSpy failingOutputStream = new OutputStreamErrorSpy();
+
+		try {
+			writer.writeBatchLoginResultsAsJson(Collections.emptyList(), BASE_URL,
+					failingOutputStream);
+			fail("It should throw an exception");
+		} catch (IOException e) {
+			assertSame(e, failingOutputStream.writeError);
+		}
+	}
+
+	@Test
+	public void testWriteBatchLogoutResults() throws Exception {
+		List<BatchLogoutResult> results = List.of(new BatchLogoutResult("someTokenId", 200),
+				new BatchLogoutResult("other\"TokenId", 404));
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+
+		writer.writeBatchLogoutResultsAsJson(results, outputStream);
+
+		assertEquals(outputStream.toString(StandardCharsets.UTF_8),
+				"{\"results\":[{\"tokenId\":\"someTokenId\",\"status\":200},"
+						+ "{\"tokenId\":\"other\\\"TokenId\",\"status\":404}]}");
+	}
+
+	@Test
+	public void testWriteBatchLogoutResultsToFailingOutputStream() throws Exception {
+		OutputStreamErrorSpy failingOutputStream = new OutputStreamErrorSpy();
+
+		try {
+			writer.writeBatchLogoutResultsAsJson(Collections.emptyList(), failingOutputStream);
+			fail("It should throw an exception");
+		} catch (IOException e) {
+			assertSame(e, failingOutputStream.writeError);
+		}
+	}
+}
@@ -0,0 +1,113 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.loadbalancer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.login.spies.GatekeeperTokenProviderSpy;
+
+public class GatekeeperNodeTest {
+	private static final long EJECTION_TIME = 1000;
+	private static final long EJECTION_TIME_IN_NANOS = TimeUnit.MILLISECONDS
+			.toNanos(EJECTION_TIME);
+	private GatekeeperTokenProviderSpy gatekeeperTokenProvider;
+	private GatekeeperNode node;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		gatekeeperTokenProvider = new GatekeeperTokenProviderSpy();
+		node = new GatekeeperNode(gatekeeperTokenProvider);
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertSame(node.getGatekeeperTokenProvider(), gatekeeperTokenProvider);
+		assertEquals(node.getOutstandingRequests(), 0);
+		assertFalse(node.isEjected(0));
+	}
+
+	@Test
+	public void testOutstandingRequests() throws Exception {
+		node.startRequest();
+		node.startRequest();
+		assertEquals(node.getOutstandingRequests(), 2);
+
+		node.endRequest();
+		assertEquals(node.getOutstandingRequests(), 1);
+	}
+
+	@Test
+	public void testFailuresBelowThresholdDoNotEject() throws Exception {
+		node.recordFailure(0, 3, EJECTION_TIME);
+		node.recordFailure(0, 3, EJECTION_TIME);
+
+		assertFalse(node.isEjected(0));
+	}
+
+	@Test
+	public void testConsecutiveFailuresEjectForEjectionTime() throws Exception {
+		recordFailures(3);
+
+		assertTrue(node.isEjected(0));
+		assertTrue(node.isEjected(EJECTION_TIME_IN_NANOS - 1));
+		assertFalse(node.isEjected(EJECTION_TIME_IN_NANOS));
+	}
+
+	private void recordFailures(int numberOfFailures) {
+		for (int i = 0; i < numberOfFailures; i++) {
+			node.recordFailure(0, 3, EJECTION_TIME);
+		}
+	}
+
+	@Test
+	public void testSuccessResetsConsecutiveFailures() throws Exception {
+		recordFailures(2);
+		node.recordSuccess();
+		recordFailures(2);
+
+		assertFalse(node.isEjected(0));
+	}
+
+	@Test
+	public void testSuccessEndsEjection() throws Exception {
+		recordFailures(3);
+
+		node.recordSuccess();
+
+		assertFalse(node.isEjected(0));
+	}
+
+	@Test
+	public void testFailureAfterEjectionEjectsAgainDirectly() throws Exception {
+		recordFailures(3);
+
+		node.recordFailure(EJECTION_TIME_IN_NANOS, 3, EJECTION_TIME);
+
+		assertTrue(node.isEjected(EJECTION_TIME_IN_NANOS));
+		assertFalse(node.isEjected(2 * EJECTION_TIME_IN_NANOS));
+	}
+}
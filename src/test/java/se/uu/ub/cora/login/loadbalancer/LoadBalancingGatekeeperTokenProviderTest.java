@@ -0,0 +1,339 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.loadbalancer;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.net.ConnectException;
+import java.net.http.HttpConnectTimeoutException;
+import java.net.http.HttpTimeoutException;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.gatekeepertokenprovider.GatekeeperTokenProvider;
+import se.uu.ub.cora.gatekeepertokenprovider.UserInfo;
+import se.uu.ub.cora.gatekeepertokenprovider.authentication.AuthenticationException;
+import se.uu.ub.cora.login.http.RequestRejectedException;
+import se.uu.ub.cora.login.rest.LoginUnavailableException;
+import se.uu.ub.cora.login.spies.GatekeeperTokenProviderSpy;
+
+public class LoadBalancingGatekeeperTokenProviderTest {
+	private static final long EJECTION_TIME = 1000;
+	private GatekeeperTokenProviderSpy first;
+	private GatekeeperTokenProviderSpy second;
+	private GatekeeperTokenProviderSpy third;
+	private LoadBalancingGatekeeperTokenProvider provider;
+	private UserInfo userInfo = UserInfo.withUserId("someUserId");
+	private long now;
+	private ExecutorService executor;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		first = new GatekeeperTokenProviderSpy();
+		second = new GatekeeperTokenProviderSpy();
+		third = new GatekeeperTokenProviderSpy();
+		provider = createProviderUsing(first, second, third);
+		now = 0;
+	}
+
+	private LoadBalancingGatekeeperTokenProvider createProviderUsing(
+			GatekeeperTokenProvider... gatekeeperTokenProviders) {
+		LoadBalancingGatekeeperTokenProvider created = LoadBalancingGatekeeperTokenProvider
+				.usingProvidersFailuresAndEjectionTime(List.of(gatekeeperTokenProviders), 2,
+						EJECTION_TIME);
+		created.onlyForTestSetClock(() -> now);
+		return created;
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		if (executor != null) {
+			executor.shutdownNow();
+		}
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertTrue(provider instanceof GatekeeperTokenProvider);
+		assertEquals(provider.onlyForTestGetGatekeeperTokenProviders(),
+				List.of(first, second, third));
+		assertEquals(provider.onlyForTestGetConsecutiveFailuresToEject(), 2);
+		assertEquals(provider.onlyForTestGetEjectionTimeInMilliseconds(), EJECTION_TIME);
+	}
+
+	@Test
+	public void testGetAuthTokenForUserInfo() throws Exception {
+		AuthToken authToken = provider.getAuthTokenForUserInfo(userInfo);
+
+		first.MCR.assertParameters("getAuthTokenForUserInfo", 0, userInfo);
+		first.MCR.assertReturn("getAuthTokenForUserInfo", 0, authToken);
+	}
+
+	@Test
+	public void testRemoveAuthToken() throws Exception {
+		provider.removeAuthToken("someTokenId", "someToken");
+
+		first.MCR.assertParameters("removeAuthToken", 0, "someTokenId", "someToken");
+	}
+
+	@Test
+	public void testRenewAuthToken() throws Exception {
+		AuthToken authToken = provider.renewAuthToken("someTokenId", "someToken");
+
+		first.MCR.assertParameters("renewAuthToken", 0, "someTokenId", "someToken");
+		first.MCR.assertReturn("renewAuthToken", 0, authToken);
+	}
+
+	@Test
+	public void testIdleNodesShareCallsInTurn() throws Exception {
+		callGetAuthTokenTimes(6);
+
+		first.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 2);
+		second.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 2);
+		third.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 2);
+	}
+
+	private void callGetAuthTokenTimes(int numberOfCalls) {
+		for (int i = 0; i < numberOfCalls; i++) {
+			provider.getAuthTokenForUserInfo(userInfo);
+		}
+	}
+
+	@Test
+	public void testNodeWithOutstandingRequestIsAvoided() throws Exception {
+		CountDownLatch callStarted = new CountDownLatch(1);
+		CountDownLatch releaseCall = new CountDownLatch(1);
+		first.MRV.setDefaultReturnValuesSupplier("getAuthTokenForUserInfo",
+				() -> waitForRelease(callStarted, releaseCall));
+		executor = Executors.newSingleThreadExecutor();
+		Future<AuthToken> slowCall = executor
+				.submit(() -> provider.getAuthTokenForUserInfo(userInfo));
+		assertTrue(callStarted.await(5, TimeUnit.SECONDS));
+
+		callGetAuthTokenTimes(4);
+
+		first.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 1);
+		assertEquals(second.MCR.getNumberOfCallsToMethod("getAuthTokenForUserInfo")
+				+ third.MCR.getNumberOfCallsToMethod("getAuthTokenForUserInfo"), 4);
+		releaseCall.countDown();
+		assertSame(slowCall.get(5, TimeUnit.SECONDS), first.authToken);
+	}
+
+	private AuthToken waitForRelease(CountDownLatch callStarted, CountDownLatch releaseCall) {
+		callStarted.countDown();
+		try {
+			releaseCall.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+		return first.authToken;
+	}
+
+	@Test
+	public void testFailedConnectionIsRetriedOnOtherNode() throws Exception {
+		first.MRV.setAlwaysThrowException("getAuthTokenForUserInfo", createConnectionFailure());
+
+		AuthToken authToken = provider.getAuthTokenForUserInfo(userInfo);
+
+		first.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 1);
+		second.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 1);
+		assertSame(authToken, second.authToken);
+	}
+
+	private RuntimeException createConnectionFailure() {
+		return LoginUnavailableException.withMessageAndException("Request to someUrl failed.",
+				new ConnectException("Connection refused"));
+	}
+
+	@Test
+	public void testConnectTimeoutIsRetriedOnOtherNode() throws Exception {
+		first.MRV.setAlwaysThrowException("getAuthTokenForUserInfo",
+				LoginUnavailableException.withMessageAndException("Request to someUrl failed.",
+						new HttpConnectTimeoutException("Connect timed out")));
+
+		AuthToken authToken = provider.getAuthTokenForUserInfo(userInfo);
+
+		assertSame(authToken, second.authToken);
+	}
+
+	@Test
+	public void testFailedCreationAfterConnectingIsNotRetried() throws Exception {
+		RuntimeException error = LoginUnavailableException.withMessageAndException(
+				"Request to someUrl failed.", new HttpTimeoutException("Request timed out"));
+		first.MRV.setAlwaysThrowException("getAuthTokenForUserInfo", error);
+
+		try {
+			provider.getAuthTokenForUserInfo(userInfo);
+			fail("It should throw an exception");
+		} catch (LoginUnavailableException e) {
+			assertSame(e, error);
+			second.MCR.assertMethodNotCalled("getAuthTokenForUserInfo");
+			third.MCR.assertMethodNotCalled("getAuthTokenForUserInfo");
+		}
+	}
+
+	@Test
+	public void testFailedRenewIsRetriedOnOtherNode() throws Exception {
+		first.MRV.setAlwaysThrowException("renewAuthToken", new RuntimeException("someError"));
+
+		AuthToken authToken = provider.renewAuthToken("someTokenId", "someToken");
+
+		second.MCR.assertParameters("renewAuthToken", 0, "someTokenId", "someToken");
+		assertSame(authToken, second.authToken);
+	}
+
+	@Test
+	public void testFailedRemoveIsRetriedOnOtherNode() throws Exception {
+		first.MRV.setAlwaysThrowException("removeAuthToken", new RuntimeException("someError"));
+
+		provider.removeAuthToken("someTokenId", "someToken");
+
+		second.MCR.assertParameters("removeAuthToken", 0, "someTokenId", "someToken");
+	}
+
+	@Test
+	public void testRejectedRequestIsNotRetried() throws Exception {
+		RequestRejectedException rejectedError = RequestRejectedException
+				.withMessage("Too many concurrent requests to someUrl.");
+		first.MRV.setAlwaysThrowException("renewAuthToken", rejectedError);
+
+		try {
+			provider.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (RequestRejectedException e) {
+			assertSame(e, rejectedError);
+			second.MCR.assertMethodNotCalled("renewAuthToken");
+			third.MCR.assertMethodNotCalled("renewAuthToken");
+		}
+	}
+
+	@Test
+	public void testRejectedRequestDoesNotEjectNode() throws Exception {
+		LoadBalancingGatekeeperTokenProvider twoNodeProvider = createProviderUsing(first, second);
+		first.MRV.setAlwaysThrowException("renewAuthToken",
+				RequestRejectedException.withMessage("Too many concurrent requests to someUrl."));
+
+		for (int i = 0; i < 3; i++) {
+			callRenewAndIgnoreError(twoNodeProvider);
+			twoNodeProvider.renewAuthToken("someTokenId", "someToken");
+		}
+
+		first.MCR.assertNumberOfCallsToMethod("renewAuthToken", 3);
+	}
+
+	@Test
+	public void testAuthenticationExceptionIsNotRetried() throws Exception {
+		AuthenticationException authenticationError = new AuthenticationException("someError");
+		first.MRV.setAlwaysThrowException("renewAuthToken", authenticationError);
+
+		try {
+			provider.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (AuthenticationException e) {
+			assertSame(e, authenticationError);
+			second.MCR.assertMethodNotCalled("renewAuthToken");
+			third.MCR.assertMethodNotCalled("renewAuthToken");
+		}
+	}
+
+	@Test
+	public void testFailedRetryIsThrown() throws Exception {
+		first.MRV.setAlwaysThrowException("getAuthTokenForUserInfo", createConnectionFailure());
+		RuntimeException secondError = new RuntimeException("secondError");
+		second.MRV.setAlwaysThrowException("getAuthTokenForUserInfo", secondError);
+
+		try {
+			provider.getAuthTokenForUserInfo(userInfo);
+			fail("It should throw an exception");
+		} catch (RuntimeException e) {
+			assertSame(e, secondError);
+			third.MCR.assertMethodNotCalled("getAuthTokenForUserInfo");
+		}
+	}
+
+	@Test
+	public void testSingleNodeFailureIsThrownWithoutRetry() throws Exception {
+		LoadBalancingGatekeeperTokenProvider singleNodeProvider = createProviderUsing(first);
+		RuntimeException error = new RuntimeException("someError");
+		first.MRV.setAlwaysThrowException("getAuthTokenForUserInfo", error);
+
+		try {
+			singleNodeProvider.getAuthTokenForUserInfo(userInfo);
+			fail("It should throw an exception");
+		} catch (RuntimeException e) {
+			assertSame(e, error);
+			first.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 1);
+		}
+	}
+
+	@Test
+	public void testFailingNodeIsEjectedAndCallsStillSucceed() throws Exception {
+		first.MRV.setAlwaysThrowException("getAuthTokenForUserInfo", createConnectionFailure());
+
+		callGetAuthTokenTimes(12);
+
+		first.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 2);
+	}
+
+	@Test
+	public void testEjectedNodeIsTriedAgainAfterEjectionTime() throws Exception {
+		first.MRV.setAlwaysThrowException("getAuthTokenForUserInfo", createConnectionFailure());
+		callGetAuthTokenTimes(12);
+
+		now = TimeUnit.MILLISECONDS.toNanos(EJECTION_TIME);
+		callGetAuthTokenTimes(12);
+
+		first.MCR.assertNumberOfCallsToMethod("getAuthTokenForUserInfo", 3);
+	}
+
+	@Test
+	public void testAllNodesEjectedAreStillUsed() throws Exception {
+		LoadBalancingGatekeeperTokenProvider twoNodeProvider = createProviderUsing(first, second);
+		first.MRV.setAlwaysThrowException("renewAuthToken", new RuntimeException("someError"));
+		second.MRV.setAlwaysThrowException("renewAuthToken", new RuntimeException("someError"));
+		callRenewAndIgnoreError(twoNodeProvider);
+		callRenewAndIgnoreError(twoNodeProvider);
+
+		callRenewAndIgnoreError(twoNodeProvider);
+
+		first.MCR.assertNumberOfCallsToMethod("renewAuthToken", 3);
+		second.MCR.assertNumberOfCallsToMethod("renewAuthToken", 3);
+	}
+
+	private void callRenewAndIgnoreError(LoadBalancingGatekeeperTokenProvider providerToCall) {
+		try {
+			providerToCall.renewAuthToken("someTokenId", "someToken");
+			fail("It should throw an exception");
+		} catch (RuntimeException e) {
+			// expected
+		}
+	}
+}
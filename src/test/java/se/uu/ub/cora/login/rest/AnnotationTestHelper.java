@@ -1,5 +1,5 @@
 /*
- * Copyright 2024 Uppsala University Library
+ * Copyright 2024, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -33,6 +33,7 @@ import jakarta.ws.rs.Path;
 import jakarta.ws.rs.PathParam;
 import jakarta.ws.rs.Produces;
 import jakarta.ws.rs.QueryParam;
+import jakarta.ws.rs.container.Suspended;
 import jakarta.ws.rs.core.Context;
 
 public class AnnotationTestHelper {
@@ -146,6 +147,11 @@ public class AnnotationTestHelper {
 		assertEquals(parameter.annotationType(), Context.class);
 	}
 
+	public void assertSuspendedAnnotationForPosition(int startPosition) {
+		var parameter = parameterAnnotations[startPosition][0];
+		assertEquals(parameter.annotationType(), Suspended.class);
+	}
+
 	public void assertFormDataParamAnnotationByNameAndPositionAndType(String name,
 			int startPosition) {
 		FormDataParam parameter = (FormDataParam) parameterAnnotations[startPosition][0];
@@ -0,0 +1,217 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.rest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.login.spies.HttpServletRequestSpy;
+
+public class BaseUrlCacheTest {
+	private BaseUrlCache baseUrlCache;
+	private HttpServletRequestSpy request;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		baseUrlCache = BaseUrlCache.usingPathToSystemAndMaxSize("/login/rest/", 2);
+		request = new HttpServletRequestSpy();
+	}
+
+	private HttpServletRequestSpy createRequestWithUrl(String url) {
+		HttpServletRequestSpy requestWithUrl = new HttpServletRequestSpy();
+		requestWithUrl.requestURL = new StringBuffer(url);
+		return requestWithUrl;
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertEquals(baseUrlCache.onlyForTestGetMaxSize(), 2);
+		assertEquals(baseUrlCache.onlyForTestGetSize(), 0);
+	}
+
+	@Test
+	public void testBaseUrlFromRequest() throws Exception {
+		assertEquals(baseUrlCache.getBaseUrl(request),
+				"http://localhost:8080/login/rest/authToken/");
+	}
+
+	@Test
+	public void testDefaultPortIsLeftOut() throws Exception {
+		assertEquals(baseUrlCache.getBaseUrl(createRequestWithUrl("http://cora.org:80/x/y")),
+				"http://cora.org/login/rest/authToken/");
+		assertEquals(baseUrlCache.getBaseUrl(createRequestWithUrl("https://cora.org:443/x/y")),
+				"https://cora.org/login/rest/authToken/");
+		assertEquals(baseUrlCache.getBaseUrl(createRequestWithUrl("https://cora.org/x/y")),
+				"https://cora.org/login/rest/authToken/");
+	}
+
+	@Test
+	public void testSameRouteReturnsCachedBaseUrl() throws Exception {
+		String baseUrl = baseUrlCache.getBaseUrl(request);
+
+		assertSame(baseUrlCache.getBaseUrl(new HttpServletRequestSpy()), baseUrl);
+		assertEquals(baseUrlCache.onlyForTestGetSize(), 1);
+	}
+
+	@Test
+	public void testXForwardedProto() throws Exception {
+		request.headers.put("X-Forwarded-Proto", "https");
+
+		assertEquals(baseUrlCache.getBaseUrl(request),
+				"https://localhost:8080/login/rest/authToken/");
+	}
+
+	@Test
+	public void testEmptyXForwardedProtoIsIgnored() throws Exception {
+		request.headers.put("X-Forwarded-Proto", "");
+
+		assertEquals(baseUrlCache.getBaseUrl(request),
+				"http://localhost:8080/login/rest/authToken/");
+	}
+
+	@Test
+	public void testForwardedProtoAndHost() throws Exception {
+		request.headers.put("Forwarded", "for=192.0.2.60;proto=https;host=cora.org");
+
+		assertEquals(baseUrlCache.getBaseUrl(request), "https://cora.org/login/rest/authToken/");
+	}
+
+	@Test
+	public void testForwardedIsCaseInsensitiveAndMayBeQuoted() throws Exception {
+		request.headers.put("Forwarded", "Proto=https; HOST=\"cora.org:8443\"");
+
+		assertEquals(baseUrlCache.getBaseUrl(request),
+				"https://cora.org:8443/login/rest/authToken/");
+	}
+
+	@Test
+	public void testOnlyFirstForwardedElementIsUsed() throws Exception {
+		request.headers.put("Forwarded", "proto=https, proto=ftp;host=other.org");
+
+		assertEquals(baseUrlCache.getBaseUrl(request),
+				"https://localhost:8080/login/rest/authToken/");
+	}
+
+	@Test
+	public void testForwardedTakesPrecedenceOverXForwardedProto() throws Exception {
+		request.headers.put("Forwarded", "proto=https");
+		request.headers.put("X-Forwarded-Proto", "http");
+
+		assertEquals(baseUrlCache.getBaseUrl(request),
+				"https://localhost:8080/login/rest/authToken/");
+	}
+
+	@Test
+	public void testForwardedWithoutProtoUsesXForwardedProto() throws Exception {
+		request.headers.put("Forwarded", "for=192.0.2.60;host=cora.org");
+		request.headers.put("X-Forwarded-Proto", "https");
+
+		assertEquals(baseUrlCache.getBaseUrl(request), "https://cora.org/login/rest/authToken/");
+	}
+
+	@Test
+	public void testForwardedWithDifferentClientsShareCachedBaseUrl() throws Exception {
+		request.headers.put("Forwarded", "for=192.0.2.60;proto=https");
+		HttpServletRequestSpy otherClient = new HttpServletRequestSpy();
+		otherClient.headers.put("Forwarded", "for=192.0.2.61;proto=https");
+
+		String baseUrl = baseUrlCache.getBaseUrl(request);
+
+		assertSame(baseUrlCache.getBaseUrl(otherClient), baseUrl);
+		assertEquals(baseUrlCache.onlyForTestGetSize(), 1);
+	}
+
+	@Test
+	public void testDifferentRoutesAreCachedSeparately() throws Exception {
+		HttpServletRequestSpy forwardedRequest = new HttpServletRequestSpy();
+		forwardedRequest.headers.put("X-Forwarded-Proto", "https");
+
+		String baseUrl = baseUrlCache.getBaseUrl(request);
+		String forwardedBaseUrl = baseUrlCache.getBaseUrl(forwardedRequest);
+
+		assertEquals(baseUrl, "http://localhost:8080/login/rest/authToken/");
+		assertEquals(forwardedBaseUrl, "https://localhost:8080/login/rest/authToken/");
+		assertEquals(baseUrlCache.onlyForTestGetSize(), 2);
+	}
+
+	@Test
+	public void testFullCacheKeepsCachedBaseUrlsAndCreatesNewOnes() throws Exception {
+		String baseUrl1 = baseUrlCache.getBaseUrl(createRequestWithUrl("http://host1/x"));
+		String baseUrl2 = baseUrlCache.getBaseUrl(createRequestWithUrl("http://host2/x"));
+
+		String baseUrl3 = baseUrlCache.getBaseUrl(createRequestWithUrl("http://host3/x"));
+
+		assertEquals(baseUrl3, "http://host3/login/rest/authToken/");
+		assertEquals(baseUrlCache.onlyForTestGetSize(), 2);
+		assertNotSame(baseUrlCache.getBaseUrl(createRequestWithUrl("http://host3/x")), baseUrl3);
+		assertSame(baseUrlCache.getBaseUrl(createRequestWithUrl("http://host1/x")), baseUrl1);
+		assertSame(baseUrlCache.getBaseUrl(createRequestWithUrl("http://host2/x")), baseUrl2);
+	}
+
+	@Test
+	public void testForwardedHostWithInvalidCharactersIsIgnored() throws Exception {
+		request.headers.put("Forwarded", "proto=https;host=\"evil.org/phish?\"");
+
+		assertEquals(baseUrlCache.getBaseUrl(request),
+				"https://localhost:8080/login/rest/authToken/");
+	}
+
+	@Test
+	public void testForwardedHostWithUserInfoIsIgnored() throws Exception {
+		request.headers.put("Forwarded", "host=\"cora.org@evil.org\"");
+
+		assertEquals(baseUrlCache.getBaseUrl(request),
+				"http://localhost:8080/login/rest/authToken/");
+	}
+
+	@Test
+	public void testForwardedIpv6HostWithPort() throws Exception {
+		request.headers.put("Forwarded", "host=\"[2001:db8::1]:8443\"");
+
+		assertEquals(baseUrlCache.getBaseUrl(request),
+				"http://[2001:db8::1]:8443/login/rest/authToken/");
+	}
+
+	@Test
+	public void testForwardedProtoOtherThanHttpOrHttpsIsIgnored() throws Exception {
+		request.headers.put("Forwarded", "proto=javascript;host=cora.org");
+
+		assertEquals(baseUrlCache.getBaseUrl(request), "http://cora.org/login/rest/authToken/");
+	}
+
+	@Test
+	public void testXForwardedProtoOtherThanHttpOrHttpsIsIgnored() throws Exception {
+		request.headers.put("X-Forwarded-Proto", "ftp");
+
+		assertEquals(baseUrlCache.getBaseUrl(request),
+				"http://localhost:8080/login/rest/authToken/");
+	}
+
+	@Test
+	public void testForwardedProtoIsLowerCased() throws Exception {
+		request.headers.put("X-Forwarded-Proto", "HTTPS");
+
+		assertEquals(baseUrlCache.getBaseUrl(request),
+				"https://localhost:8080/login/rest/authToken/");
+	}
+}
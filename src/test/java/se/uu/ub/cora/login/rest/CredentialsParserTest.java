@@ -0,0 +1,259 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.rest;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.fail;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class CredentialsParserTest {
+	private static final int MAX_BYTES = 32;
+	private static final String NOT_ON_SEPARATE_LINES = "Credentials must be loginId and secret "
+			+ "on separate lines.";
+	private static final String NOT_PAIRS_ON_SEPARATE_LINES = "Credentials must be pairs of "
+			+ "loginId and secret on separate lines.";
+	private CredentialsParser parser;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		parser = CredentialsParser.usingMaxBytes(MAX_BYTES);
+	}
+
+	private InputStream asBody(String body) {
+		return new ByteArrayInputStream(body.getBytes(StandardCharsets.UTF_8));
+	}
+
+	@Test
+	public void testInit() throws Exception {
+		assertEquals(parser.onlyForTestGetMaxBytes(), MAX_BYTES);
+	}
+
+	@Test
+	public void testParse() throws Exception {
+		Credentials credentials = parser.parse(asBody("someLoginId\nsomeSecret"));
+
+		assertEquals(credentials.loginId(), "someLoginId");
+		assertEquals(credentials.secret(), "someSecret");
+	}
+
+	@Test
+	public void testParseWithTrailingNewLine() throws Exception {
+		Credentials credentials = parser.parse(asBody("someLoginId\nsomeSecret\n"));
+
+		assertEquals(credentials.loginId(), "someLoginId");
+		assertEquals(credentials.secret(), "someSecret");
+	}
+
+	@Test
+	public void testParseUtf8() throws Exception {
+		Credentials credentials = parser.parse(asBody("\u00e5\u00e4\u00f6LoginId\nsecret\u20ac"));
+
+		assertEquals(credentials.loginId(), "\u00e5\u00e4\u00f6LoginId");
+		assertEquals(credentials.secret(), "secret\u20ac");
+	}
+
+	@Test
+	public void testParseExactlyMaxBytes() throws Exception {
+		String secret = "s".repeat(MAX_BYTES - "id\n".length());
+
+		Credentials credentials = parser.parse(asBody("id\n" + secret));
+
+		assertEquals(credentials.secret(), secret);
+	}
+
+	@Test
+	public void testParseMoreThanMaxBytes() throws Exception {
+		String secret = "s".repeat(MAX_BYTES - "id\n".length() + 1);
+
+		assertMalformed("id\n" + secret, "Credentials are larger than 32 bytes.");
+	}
+
+	@Test
+	public void testParseStopsReadingAfterMaxBytes() throws Exception {
+		CountingInputStream body = new CountingInputStream(
+				asBody("id\n" + "s".repeat(MAX_BYTES * 10)));
+
+		try {
+			parser.parse(body);
+			fail("It should throw an exception");
+		} catch (MalformedCredentialsException e) {
+			assertEquals(body.numberOfBytesRead, MAX_BYTES + 1);
+		}
+	}
+
+	@Test
+	public void testParseNoNewLine() throws Exception {
+		assertMalformed("someLoginIdAndNoSecret", NOT_ON_SEPARATE_LINES);
+	}
+
+	@Test
+	public void testParseEmptyBody() throws Exception {
+		assertMalformed("", NOT_ON_SEPARATE_LINES);
+	}
+
+	@Test
+	public void testParseEmptyLoginId() throws Exception {
+		assertMalformed("\nsomeSecret", NOT_ON_SEPARATE_LINES);
+	}
+
+	@Test
+	public void testParseEmptySecret() throws Exception {
+		assertMalformed("someLoginId\n", NOT_ON_SEPARATE_LINES);
+	}
+
+	@Test
+	public void testParseExtraLine() throws Exception {
+		assertMalformed("someLoginId\nsomeSecret\nextra", NOT_ON_SEPARATE_LINES);
+	}
+
+	private void assertMalformed(String body, String message) {
+		try {
+			parser.parse(asBody(body));
+			fail("It should throw an exception");
+		} catch (MalformedCredentialsException e) {
+			assertEquals(e.getMessage(), message);
+		}
+	}
+
+	@Test
+	public void testParseReadError() throws Exception {
+		IOException readError = new IOException("someReadError");
+		InputStream failingBody = new InputStream() {
+			@Override
+			public int read() throws IOException {
+				throw readError;
+			}
+		};
+
+		try {
+			parser.parse(failingBody);
+			fail("It should throw an exception");
+		} catch (MalformedCredentialsException e) {
+			assertEquals(e.getMessage(), "Credentials could not be read.");
+			assertSame(e.getCause(), readError);
+		}
+	}
+
+	@Test
+	public void testParseList() throws Exception {
+		List<Credentials> credentialsList = parser.parseList(asBody("id1\nsecret1\nid2\nsecret2"));
+
+		assertEquals(credentialsList, List.of(new Credentials("id1", "secret1"),
+				new Credentials("id2", "secret2")));
+	}
+
+	@Test
+	public void testParseListWithOnePairAndTrailingNewLine() throws Exception {
+		List<Credentials> credentialsList = parser.parseList(asBody("someId\nsomeSecret\n"));
+
+		assertEquals(credentialsList, List.of(new Credentials("someId", "someSecret")));
+	}
+
+	@Test
+	public void testParseListMoreThanMaxBytes() throws Exception {
+		String body = "id\nsecret\n".repeat(MAX_BYTES / "id\nsecret\n".length() + 1);
+
+		assertListMalformed(body, "Credentials are larger than 32 bytes.");
+	}
+
+	@Test
+	public void testParseListEmptyBody() throws Exception {
+		assertListMalformed("", NOT_PAIRS_ON_SEPARATE_LINES);
+	}
+
+	@Test
+	public void testParseListMissingLastSecret() throws Exception {
+		assertListMalformed("id1\nsecret1\nid2", NOT_PAIRS_ON_SEPARATE_LINES);
+	}
+
+	@Test
+	public void testParseListEmptySecret() throws Exception {
+		assertListMalformed("id1\n\nid2\nsecret2", NOT_PAIRS_ON_SEPARATE_LINES);
+	}
+
+	@Test
+	public void testParseListEmptyLoginId() throws Exception {
+		assertListMalformed("id1\nsecret1\n\nsecret2", NOT_PAIRS_ON_SEPARATE_LINES);
+	}
+
+	private void assertListMalformed(String body, String message) {
+		try {
+			parser.parseList(asBody(body));
+			fail("It should throw an exception");
+		} catch (MalformedCredentialsException e) {
+			assertEquals(e.getMessage(), message);
+		}
+	}
+
+	@Test
+	public void testParseTokenList() throws Exception {
+		List<TokenCredentials> tokens = parser
+				.parseTokenList(asBody("tokenId1\ntoken1\ntokenId2\ntoken2\n"));
+
+		assertEquals(tokens, List.of(new TokenCredentials("tokenId1", "token1"),
+				new TokenCredentials("tokenId2", "token2")));
+	}
+
+	@Test
+	public void testParseTokenListMissingLastToken() throws Exception {
+		try {
+			parser.parseTokenList(asBody("tokenId1\ntoken1\ntokenId2"));
+			fail("It should throw an exception");
+		} catch (MalformedCredentialsException e) {
+			assertEquals(e.getMessage(),
+					"Tokens must be pairs of tokenId and token on separate lines.");
+		}
+	}
+
+	private static class CountingInputStream extends InputStream {
+		private InputStream inputStream;
+		int numberOfBytesRead = 0;
+
+		CountingInputStream(InputStream inputStream) {
+			this.inputStream = inputStream;
+		}
+
+		@Override
+		public int read() throws IOException {
+			int read = inputStream.read();
+			if (read != -1) {
+				numberOfBytesRead++;
+			}
+			return read;
+		}
+
+		@Override
+		public int read(byte[] buffer, int offset, int length) throws IOException {
+			int read = inputStream.read(buffer, offset, length);
+			if (read > 0) {
+				numberOfBytesRead += read;
+			}
+			return read;
+		}
+	}
+}
@@ -18,6 +18,7 @@
  */
 package se.uu.ub.cora.login.rest;
 
+import static org.testng.Assert.assertNotSame;
 import static org.testng.Assert.assertSame;
 import static org.testng.Assert.assertTrue;
 
@@ -34,6 +35,8 @@ import se.uu.ub.cora.logger.LoggerFactory;
 import se.uu.ub.cora.logger.LoggerProvider;
 import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
 import se.uu.ub.cora.login.AppTokenLoginImp;
+import se.uu.ub.cora.login.AuthTokenRenewerImp;
+import se.uu.ub.cora.login.IdempotencyStoreImp;
 import se.uu.ub.cora.login.LoginFactoryImp;
 import se.uu.ub.cora.login.PasswordLoginImp;
 import se.uu.ub.cora.login.spies.LoginFactorySpy;
@@ -53,6 +56,7 @@ public class LoginDependencyProviderTest {
 	@AfterMethod
 	private void afterMethod() {
 		LoginDependencyProvider.onlyForTestSetLoginFactory(new LoginFactoryImp());
+		LoginDependencyProvider.usePerRequestLogins();
 	}
 
 	@Test(expectedExceptions = InvocationTargetException.class)
@@ -78,6 +82,16 @@ public class LoginDependencyProviderTest {
 		assertTrue(LoginDependencyProvider.getAppTokenLogin() instanceof AppTokenLoginImp);
 	}
 
+	@Test
+	public void testGetAuthTokenRenewerReturnsAuthTokenRenewerImp() throws Exception {
+		assertTrue(LoginDependencyProvider.getAuthTokenRenewer() instanceof AuthTokenRenewerImp);
+	}
+
+	@Test
+	public void testGetIdempotencyStoreReturnsIdempotencyStoreImp() throws Exception {
+		assertTrue(LoginDependencyProvider.getIdempotencyStore() instanceof IdempotencyStoreImp);
+	}
+
 	@Test
 	public void testOnlyForTestSetLoginFactoryAndOnlyForTestGetLoginFactory() throws Exception {
 		LoginFactorySpy loginFactory = new LoginFactorySpy();
@@ -85,4 +99,54 @@ public class LoginDependencyProviderTest {
 
 		assertSame(loginFactory, LoginDependencyProvider.onlyForTestGetLoginFactory());
 	}
+
+	@Test
+	public void testNewLoginsAreFactoredPerRequestByDefault() throws Exception {
+		assertNotSame(LoginDependencyProvider.getPasswordLogin(),
+				LoginDependencyProvider.getPasswordLogin());
+		assertNotSame(LoginDependencyProvider.getAppTokenLogin(),
+				LoginDependencyProvider.getAppTokenLogin());
+	}
+
+	@Test
+	public void testUseSharedLoginsFactorsLoginsOnce() throws Exception {
+		LoginFactorySpy loginFactory = new LoginFactorySpy();
+		LoginDependencyProvider.onlyForTestSetLoginFactory(loginFactory);
+
+		LoginDependencyProvider.useSharedLogins();
+
+		loginFactory.MCR.assertNumberOfCallsToMethod("factorPasswordLogin", 1);
+		loginFactory.MCR.assertNumberOfCallsToMethod("factorAppTokenLogin", 1);
+	}
+
+	@Test
+	public void testSharedLoginsAreReturnedForEveryRequest() throws Exception {
+		LoginFactorySpy loginFactory = new LoginFactorySpy();
+		LoginDependencyProvider.onlyForTestSetLoginFactory(loginFactory);
+		LoginDependencyProvider.useSharedLogins();
+
+		PasswordLogin passwordLogin = LoginDependencyProvider.getPasswordLogin();
+		AppTokenLogin appTokenLogin = LoginDependencyProvider.getAppTokenLogin();
+
+		loginFactory.MCR.assertReturn("factorPasswordLogin", 0, passwordLogin);
+		loginFactory.MCR.assertReturn("factorAppTokenLogin", 0, appTokenLogin);
+		assertSame(LoginDependencyProvider.getPasswordLogin(), passwordLogin);
+		assertSame(LoginDependencyProvider.getAppTokenLogin(), appTokenLogin);
+		loginFactory.MCR.assertNumberOfCallsToMethod("factorPasswordLogin", 1);
+		loginFactory.MCR.assertNumberOfCallsToMethod("factorAppTokenLogin", 1);
+	}
+
+	@Test
+	public void testUsePerRequestLoginsDropsSharedLogins() throws Exception {
+		LoginFactorySpy loginFactory = new LoginFactorySpy();
+		LoginDependencyProvider.onlyForTestSetLoginFactory(loginFactory);
+		LoginDependencyProvider.useSharedLogins();
+
+		LoginDependencyProvider.usePerRequestLogins();
+		LoginDependencyProvider.getPasswordLogin();
+		LoginDependencyProvider.getAppTokenLogin();
+
+		loginFactory.MCR.assertNumberOfCallsToMethod("factorPasswordLogin", 2);
+		loginFactory.MCR.assertNumberOfCallsToMethod("factorAppTokenLogin", 2);
+	}
 }
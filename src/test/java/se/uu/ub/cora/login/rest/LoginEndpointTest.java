@@ -1,5 +1,5 @@
 /*
- * Copyright 2017, 2018, 2021, 2022, 2024, 2025 Uppsala University Library
+ * Copyright 2017, 2018, 2021, 2022, 2024, 2025, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -20,19 +20,34 @@
 package se.uu.ub.cora.login.rest;
 
 import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.UncheckedIOException;
 import java.net.URISyntaxException;
+import java.nio.charset.StandardCharsets;
 import java.util.Collections;
 import java.util.LinkedHashSet;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
 
 import org.testng.annotations.AfterMethod;
 import org.testng.annotations.BeforeMethod;
 import org.testng.annotations.Test;
 
 import jakarta.servlet.http.HttpServletRequest;
+import jakarta.ws.rs.container.AsyncResponse;
 import jakarta.ws.rs.core.Response;
 import jakarta.ws.rs.core.Response.Status;
+import jakarta.ws.rs.core.StreamingOutput;
 import se.uu.ub.cora.gatekeeper.user.User;
 import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
 import se.uu.ub.cora.gatekeepertokenprovider.authentication.AuthenticationException;
@@ -40,10 +55,14 @@ import se.uu.ub.cora.initialize.SettingsProvider;
 import se.uu.ub.cora.logger.LoggerProvider;
 import se.uu.ub.cora.logger.spies.LoggerFactorySpy;
 import se.uu.ub.cora.login.LoginFactoryImp;
+import se.uu.ub.cora.login.initialize.ExecutorProvider;
 import se.uu.ub.cora.login.initialize.GatekeeperInstanceProvider;
 import se.uu.ub.cora.login.spies.AppTokenLoginSpy;
+import se.uu.ub.cora.login.spies.AsyncResponseSpy;
+import se.uu.ub.cora.login.spies.AuthTokenRenewerSpy;
 import se.uu.ub.cora.login.spies.GatekeeperTokenProviderSpy;
 import se.uu.ub.cora.login.spies.HttpServletRequestSpy;
+import se.uu.ub.cora.login.spies.IdempotencyStoreSpy;
 import se.uu.ub.cora.login.spies.LoginFactorySpy;
 import se.uu.ub.cora.login.spies.MapSpy;
 import se.uu.ub.cora.login.spies.PasswordLoginSpy;
@@ -52,6 +71,15 @@ import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
 
 public class LoginEndpointTest {
 	private static final String LOGIN_ID = "someLoginId";
+	private static final String BASE_URL = "http://localhost:8080/login/rest/authToken/";
+	private static final String AUTHENTICATION_JSON = "application/vnd.cora.authentication+json";
+	private static final String COMPACT_AUTHENTICATION_JSON = "application/"
+			+ "vnd.cora.authentication.compact+json";
+	private static final String EXPECTED_COMPACT_AUTH_TOKEN = "{\"tokenId\":\"someTokenId\","
+			+ "\"token\":\"someAuthToken\",\"validUntil\":100,\"renewUntil\":200,"
+			+ "\"userId\":\"someIdInUserStorage\"}";
+	private static final Class<?>[] ASYNC_LOGIN_PARAMETERS = { AsyncResponse.class,
+			InputStream.class };
 	private LoginEndpoint loginEndpoint;
 	private HttpServletRequestSpy request;
 	private GatekeeperTokenProviderSpy gatekeeperTokenProvider;
@@ -60,6 +88,8 @@ public class LoginEndpointTest {
 	private LoginFactorySpy loginFactory;
 	private PasswordLoginSpy passwordLoginSpy;
 	private AppTokenLoginSpy appTokenLoginSpy;
+	private AuthTokenRenewerSpy authTokenRenewer;
+	private IdempotencyStoreSpy idempotencyStore;
 	private static final String CREDENTIALS_WITH_PASSWORD = """
 			someLoginId
 			somePassword
@@ -94,12 +124,18 @@ public class LoginEndpointTest {
 	private void setUpLoginDependencyProvider() {
 		passwordLoginSpy = new PasswordLoginSpy();
 		appTokenLoginSpy = new AppTokenLoginSpy();
+		authTokenRenewer = new AuthTokenRenewerSpy();
+		idempotencyStore = new IdempotencyStoreSpy();
 
 		loginFactory = new LoginFactorySpy();
 		loginFactory.MRV.setDefaultReturnValuesSupplier("factorPasswordLogin",
 				() -> passwordLoginSpy);
 		loginFactory.MRV.setDefaultReturnValuesSupplier("factorAppTokenLogin",
 				() -> appTokenLoginSpy);
+		loginFactory.MRV.setDefaultReturnValuesSupplier("factorAuthTokenRenewer",
+				() -> authTokenRenewer);
+		loginFactory.MRV.setDefaultReturnValuesSupplier("factorIdempotencyStore",
+				() -> idempotencyStore);
 
 		LoginDependencyProvider.onlyForTestSetLoginFactory(loginFactory);
 	}
@@ -107,6 +143,7 @@ public class LoginEndpointTest {
 	@AfterMethod
 	private void afterMethod() {
 		LoginDependencyProvider.onlyForTestSetLoginFactory(new LoginFactoryImp());
+		ExecutorProvider.setLoginExecutor(null);
 	}
 
 	private User configureUser(User user, boolean active, Optional<String> passwordId,
@@ -120,6 +157,34 @@ public class LoginEndpointTest {
 		return user;
 	}
 
+	private Response getAuthTokenForAppToken(LoginEndpoint endpoint, String credentials) {
+		AsyncResponseSpy asyncResponse = new AsyncResponseSpy();
+		endpoint.getAuthTokenForAppToken(asyncResponse, asBody(credentials));
+		return getResumedResponse(asyncResponse);
+	}
+
+	private Response getAuthTokensForAppTokens(String credentials) {
+		AsyncResponseSpy asyncResponse = new AsyncResponseSpy();
+		loginEndpoint.getAuthTokensForAppTokens(asyncResponse, asBody(credentials));
+		return getResumedResponse(asyncResponse);
+	}
+
+	private Response getAuthTokenForPassword(LoginEndpoint endpoint, String credentials) {
+		AsyncResponseSpy asyncResponse = new AsyncResponseSpy();
+		endpoint.getAuthTokenForPassword(asyncResponse, asBody(credentials));
+		return getResumedResponse(asyncResponse);
+	}
+
+	private InputStream asBody(String credentials) {
+		return new ByteArrayInputStream(credentials.getBytes(StandardCharsets.UTF_8));
+	}
+
+	private Response getResumedResponse(AsyncResponseSpy asyncResponse) {
+		asyncResponse.MCR.assertNumberOfCallsToMethod("resume", 1);
+		return (Response) asyncResponse.MCR.getValueForMethodNameAndCallNumberAndParameterName(
+				"resume", 0, "response");
+	}
+
 	@Test
 	public void testLoginEndpointPathAnnotation() throws Exception {
 		AnnotationTestHelper annotationHelper = AnnotationTestHelper
@@ -130,20 +195,21 @@ public class LoginEndpointTest {
 	@Test
 	public void testGetAuthTokenForAppToken_Annotations() throws Exception {
 		AnnotationTestHelper annotationHelper = AnnotationTestHelper
-				.createAnnotationTestHelperForClassMethodNameAndNumOfParameters(LoginEndpoint.class,
-						"getAuthTokenForAppToken", 1);
+				.createAnnotationTestHelperForClassMethodNameAndParameters(LoginEndpoint.class,
+						"getAuthTokenForAppToken", ASYNC_LOGIN_PARAMETERS);
 
 		annotationHelper.assertHttpMethodAndPathAnnotation("POST", "apptoken");
+		annotationHelper.assertSuspendedAnnotationForPosition(0);
 		annotationHelper.assertConsumesAnnotation("application/vnd.cora.login");
-		annotationHelper.assertProducesAnnotation("application/vnd.cora.authentication+json");
+		annotationHelper.assertProducesAnnotation(AUTHENTICATION_JSON, COMPACT_AUTHENTICATION_JSON);
 	}
 
 	@Test
 	public void testGetAuthTokenWithAppToken() {
-		loginEndpoint.getAuthTokenForAppToken(CREDENTIALS_WITH_APPTOKEN);
+		getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_APPTOKEN);
 
 		loginFactory.MCR.assertMethodWasCalled("factorAppTokenLogin");
-		appTokenLoginSpy.MCR.assertParameters("getAuthToken", 0, LOGIN_ID, "someAppToken");
+		appTokenLoginSpy.MCR.assertParameters("getAuthTokenAsync", 0, LOGIN_ID, "someAppToken");
 
 	}
 
@@ -151,34 +217,80 @@ public class LoginEndpointTest {
 	public void testGetAuthTokenWithAppToken_BuildResponse() {
 		LoginEndpointOnlyForTest loginEndpointOFT = new LoginEndpointOnlyForTest(request);
 
-		Response response = loginEndpointOFT.getAuthTokenForAppToken(CREDENTIALS_WITH_PASSWORD);
+		Response response = getAuthTokenForAppToken(loginEndpointOFT, CREDENTIALS_WITH_PASSWORD);
 
-		var authTokenFromGatekeeper = (se.uu.ub.cora.gatekeepertokenprovider.AuthToken) appTokenLoginSpy.MCR
-				.getReturnValue("getAuthToken", 0);
+		AuthToken authTokenFromGatekeeper = appTokenLoginSpy.authToken;
 		loginEndpointOFT.MCR.assertParameters("buildResponseUsingAuthToken", 0,
-				authTokenFromGatekeeper);
+				authTokenFromGatekeeper, BASE_URL, AUTHENTICATION_JSON);
 		loginEndpointOFT.MCR.assertReturn("buildResponseUsingAuthToken", 0, response);
 	}
 
 	@Test
 	public void testGetAuthTokenWithAppToken_LoginException_ResponseWithUnauthorized() {
-		appTokenLoginSpy.MRV.setAlwaysThrowException("getAuthToken",
+		appTokenLoginSpy.MRV.setAlwaysThrowException("getAuthTokenAsync",
 				LoginException.withMessage("aSpyException"));
 
-		Response response = loginEndpoint.getAuthTokenForAppToken(CREDENTIALS_WITH_PASSWORD);
+		Response response = getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_PASSWORD);
 
 		assertResponseStatusIs(response, Response.Status.UNAUTHORIZED);
 	}
 
 	@Test
 	public void testGetAuthTokenWithAppToken_AnyException_ResponseWithInternalServerError() {
-		appTokenLoginSpy.MRV.setAlwaysThrowException("getAuthToken", new RuntimeException());
+		appTokenLoginSpy.MRV.setAlwaysThrowException("getAuthTokenAsync", new RuntimeException());
 
-		Response response = loginEndpoint.getAuthTokenForAppToken(CREDENTIALS_WITH_PASSWORD);
+		Response response = getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_PASSWORD);
 
 		assertResponseStatusIs(response, Response.Status.INTERNAL_SERVER_ERROR);
 	}
 
+	@Test
+	public void testGetAuthTokenWithAppToken_CompletedWithLoginException_ResponseWithUnauthorized() {
+		appTokenLoginSpy.MRV.setDefaultReturnValuesSupplier("getAuthTokenAsync",
+				() -> CompletableFuture.failedFuture(LoginException.withMessage("aSpyException")));
+
+		Response response = getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_APPTOKEN);
+
+		assertResponseStatusIs(response, Response.Status.UNAUTHORIZED);
+	}
+
+	@Test
+	public void testGetAuthTokenWithAppToken_CompletedWithWrappedException_ResponseWithUnauthorized() {
+		CompletableFuture<AuthToken> future = new CompletableFuture<>();
+		future.completeExceptionally(
+				new CompletionException(LoginException.withMessage("aSpyException")));
+		appTokenLoginSpy.MRV.setDefaultReturnValuesSupplier("getAuthTokenAsync", () -> future);
+
+		Response response = getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_APPTOKEN);
+
+		assertResponseStatusIs(response, Response.Status.UNAUTHORIZED);
+	}
+
+	@Test
+	public void testGetAuthTokenWithAppToken_CompletedLater_ResumedWhenCompleted() {
+		CompletableFuture<AuthToken> future = new CompletableFuture<>();
+		appTokenLoginSpy.MRV.setDefaultReturnValuesSupplier("getAuthTokenAsync", () -> future);
+		AsyncResponseSpy asyncResponse = new AsyncResponseSpy();
+
+		loginEndpoint.getAuthTokenForAppToken(asyncResponse, asBody(CREDENTIALS_WITH_APPTOKEN));
+
+		asyncResponse.MCR.assertMethodNotCalled("resume");
+		future.complete(appTokenLoginSpy.authToken);
+		Response response = getResumedResponse(asyncResponse);
+		assertResponseStatusIs(response, Response.Status.CREATED);
+	}
+
+	@Test
+	public void testGetAuthTokenWithAppToken_LoginUnavailable_ResponseWithServiceUnavailable() {
+		appTokenLoginSpy.MRV.setAlwaysThrowException("getAuthTokenAsync",
+				LoginUnavailableException.withMessage("aSpyException"));
+
+		Response response = getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_PASSWORD);
+
+		assertResponseStatusIs(response, Response.Status.SERVICE_UNAVAILABLE);
+		assertEquals(response.getHeaderString("Retry-After"), "1");
+	}
+
 	class LoginEndpointOnlyForTest extends LoginEndpoint {
 
 		public MethodCallRecorder MCR = new MethodCallRecorder();
@@ -193,8 +305,10 @@ public class LoginEndpointTest {
 		}
 
 		@Override
-		Response buildResponseUsingAuthToken(AuthToken authToken) throws URISyntaxException {
-			return (Response) MCR.addCallAndReturnFromMRV("authToken", authToken);
+		Response buildResponseUsingAuthToken(AuthToken authToken, String baseUrl,
+				String mediaType) throws URISyntaxException {
+			return (Response) MCR.addCallAndReturnFromMRV("authToken", authToken, "baseUrl",
+					baseUrl, "mediaType", mediaType);
 		}
 	}
 
@@ -204,14 +318,107 @@ public class LoginEndpointTest {
 				"someIdInUserStorage", "someLoginId", Optional.of("someFirstName"),
 				Optional.of("someLastName"), Collections.emptySet());
 
-		Response response = loginEndpoint.buildResponseUsingAuthToken(authToken);
+		Response response = loginEndpoint.buildResponseUsingAuthToken(authToken, BASE_URL,
+				AUTHENTICATION_JSON);
 
 		assertResponseStatusIs(response, Response.Status.CREATED);
 		assertEquals(response.getLocation().toString(), "authToken/someTokenId");
-		String entity = (String) response.getEntity();
+		assertEquals(response.getMediaType().toString(), AUTHENTICATION_JSON);
+		String entity = getEntityAsString(response);
 		assertEquals(entity, expectedAutToken("http"));
 	}
 
+	@Test
+	public void testBuildResponseUsingAuthToken_Compact() throws Exception {
+		AuthToken authToken = new AuthToken("someAuthToken", "someTokenId", 100L, 200L,
+				"someIdInUserStorage", "someLoginId", Optional.of("someFirstName"),
+				Optional.of("someLastName"), Collections.emptySet());
+
+		Response response = loginEndpoint.buildResponseUsingAuthToken(authToken, BASE_URL,
+				COMPACT_AUTHENTICATION_JSON);
+
+		assertResponseStatusIs(response, Response.Status.CREATED);
+		assertEquals(response.getLocation().toString(), "authToken/someTokenId");
+		assertEquals(response.getMediaType().toString(), COMPACT_AUTHENTICATION_JSON);
+		assertEquals(getEntityAsString(response), EXPECTED_COMPACT_AUTH_TOKEN);
+	}
+
+	@Test
+	public void testGetAuthTokenWithAppToken_AcceptCompact_BuildCompactResponse() {
+		request.headers.put("Accept", COMPACT_AUTHENTICATION_JSON);
+		LoginEndpointOnlyForTest loginEndpointOFT = new LoginEndpointOnlyForTest(request);
+
+		getAuthTokenForAppToken(loginEndpointOFT, CREDENTIALS_WITH_APPTOKEN);
+
+		loginEndpointOFT.MCR.assertParameters("buildResponseUsingAuthToken", 0,
+				appTokenLoginSpy.authToken, BASE_URL, COMPACT_AUTHENTICATION_JSON);
+	}
+
+	@Test
+	public void testGetAuthTokenWithPassword_AcceptCompact_CompactResponse() {
+		request.headers.put("Accept", COMPACT_AUTHENTICATION_JSON);
+
+		Response response = getAuthTokenForPassword(loginEndpoint, CREDENTIALS_WITH_PASSWORD);
+
+		assertResponseStatusIs(response, Response.Status.CREATED);
+		assertEquals(response.getMediaType().toString(), COMPACT_AUTHENTICATION_JSON);
+		assertEquals(getEntityAsString(response), EXPECTED_COMPACT_AUTH_TOKEN);
+	}
+
+	@Test
+	public void testGetAuthTokenWithAppToken_NoIdempotencyKey_IdempotencyStoreNotUsed() {
+		getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_APPTOKEN);
+
+		loginFactory.MCR.assertMethodNotCalled("factorIdempotencyStore");
+		appTokenLoginSpy.MCR.assertParameters("getAuthTokenAsync", 0, "someLoginId",
+				"someAppToken");
+	}
+
+	@Test
+	public void testGetAuthTokenWithAppToken_IdempotencyKey_LoginThroughIdempotencyStore() {
+		request.headers.put("Idempotency-Key", "someIdempotencyKey");
+
+		Response response = getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_APPTOKEN);
+
+		idempotencyStore.MCR.assertParameters("loginOncePerIdempotencyKey", 0,
+				"someIdempotencyKey", "apptoken", "someLoginId", "someAppToken");
+		appTokenLoginSpy.MCR.assertParameters("getAuthTokenAsync", 0, "someLoginId",
+				"someAppToken");
+		assertResponseStatusIs(response, Response.Status.CREATED);
+	}
+
+	@Test
+	public void testGetAuthTokenWithPassword_NoIdempotencyKey_IdempotencyStoreNotUsed() {
+		getAuthTokenForPassword(loginEndpoint, CREDENTIALS_WITH_PASSWORD);
+
+		loginFactory.MCR.assertMethodNotCalled("factorIdempotencyStore");
+		passwordLoginSpy.MCR.assertParameters("getAuthTokenAsync", 0, "someLoginId",
+				"somePassword");
+	}
+
+	@Test
+	public void testGetAuthTokenWithPassword_IdempotencyKey_LoginThroughIdempotencyStore() {
+		request.headers.put("Idempotency-Key", "someIdempotencyKey");
+
+		Response response = getAuthTokenForPassword(loginEndpoint, CREDENTIALS_WITH_PASSWORD);
+
+		idempotencyStore.MCR.assertParameters("loginOncePerIdempotencyKey", 0,
+				"someIdempotencyKey", "password", "someLoginId", "somePassword");
+		passwordLoginSpy.MCR.assertParameters("getAuthTokenAsync", 0, "someLoginId",
+				"somePassword");
+		assertResponseStatusIs(response, Response.Status.CREATED);
+	}
+
+	private String getEntityAsString(Response response) {
+		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		try {
+			((StreamingOutput) response.getEntity()).write(outputStream);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+		return outputStream.toString(StandardCharsets.UTF_8);
+	}
+
 	private void assertResponseStatusIs(Response response, Status excpectedResponseStatus) {
 		assertEquals(response.getStatusInfo(), excpectedResponseStatus);
 	}
@@ -259,10 +466,10 @@ public class LoginEndpointTest {
 		request.headers.put("X-Forwarded-Proto", "https");
 		loginEndpoint = new LoginEndpoint(request);
 
-		Response response = loginEndpoint.getAuthTokenForAppToken(CREDENTIALS_WITH_APPTOKEN);
+		Response response = getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_APPTOKEN);
 
 		assertResponseStatusIs(response, Response.Status.CREATED);
-		String entity = (String) response.getEntity();
+		String entity = getEntityAsString(response);
 		assertEquals(entity, expectedAutToken("https"));
 	}
 
@@ -273,45 +480,69 @@ public class LoginEndpointTest {
 				"https://localhost:8080/apptoken/rest/apptoken/141414");
 		loginEndpoint = new LoginEndpoint(request);
 
-		Response response = loginEndpoint.getAuthTokenForAppToken(CREDENTIALS_WITH_APPTOKEN);
+		Response response = getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_APPTOKEN);
 
 		assertResponseStatusIs(response, Response.Status.CREATED);
-		String entity = (String) response.getEntity();
+		String entity = getEntityAsString(response);
 		assertEquals(entity, expectedAutToken("https"));
 	}
 
+	@Test
+	public void testGetAuthTokenForAppTokenForwardedProtoHttps() {
+		request.headers.put("Forwarded", "for=192.0.2.60;proto=https");
+
+		Response response = getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_APPTOKEN);
+
+		assertResponseStatusIs(response, Response.Status.CREATED);
+		String entity = getEntityAsString(response);
+		assertEquals(entity, expectedAutToken("https"));
+	}
+
+	@Test
+	public void testSameEndpointInstanceUsesEachRequestsBaseUrl() {
+		request.headers.put("X-Forwarded-Proto", "https");
+		Response httpsResponse = getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_APPTOKEN);
+		request.headers.remove("X-Forwarded-Proto");
+
+		Response httpResponse = getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_APPTOKEN);
+
+		assertEquals(getEntityAsString(httpsResponse), expectedAutToken("https"));
+		assertEquals(getEntityAsString(httpResponse), expectedAutToken("http"));
+	}
+
 	@Test
 	public void testGetAuthTokenForAppTokenXForwardedProtoEmpty() {
 		request.headers.put("X-Forwarded-Proto", "");
 		loginEndpoint = new LoginEndpoint(request);
 
-		Response response = loginEndpoint.getAuthTokenForAppToken(CREDENTIALS_WITH_APPTOKEN);
+		Response response = getAuthTokenForAppToken(loginEndpoint, CREDENTIALS_WITH_APPTOKEN);
 
 		assertResponseStatusIs(response, Response.Status.CREATED);
-		String entity = (String) response.getEntity();
+		String entity = getEntityAsString(response);
 		assertEquals(entity, expectedAutToken("http"));
 	}
 
 	@Test
 	public void testGetAuthTokenWithPassword_Annotations() throws Exception {
 		AnnotationTestHelper annotationHelper = AnnotationTestHelper
-				.createAnnotationTestHelperForClassMethodNameAndNumOfParameters(LoginEndpoint.class,
-						"getAuthTokenForPassword", 1);
+				.createAnnotationTestHelperForClassMethodNameAndParameters(LoginEndpoint.class,
+						"getAuthTokenForPassword", ASYNC_LOGIN_PARAMETERS);
 
 		annotationHelper.assertHttpMethodAndPathAnnotation("POST", "password");
+		annotationHelper.assertSuspendedAnnotationForPosition(0);
 		annotationHelper.assertConsumesAnnotation("application/vnd.cora.login");
-		annotationHelper.assertProducesAnnotation("application/vnd.cora.authentication+json");
+		annotationHelper.assertProducesAnnotation(AUTHENTICATION_JSON, COMPACT_AUTHENTICATION_JSON);
 	}
 
 	@Test
 	public void testGetAuthTokenWithPassword_PasswordLogin() {
-		loginEndpoint.getAuthTokenForPassword(CREDENTIALS_WITH_PASSWORD);
+		getAuthTokenForPassword(loginEndpoint, CREDENTIALS_WITH_PASSWORD);
 
 		loginFactory.MCR.assertParameters("factorPasswordLogin", 0);
 		PasswordLoginSpy passwordLogin = (PasswordLoginSpy) loginFactory.MCR
 				.getReturnValue("factorPasswordLogin", 0);
 
-		passwordLogin.MCR.assertParameters("getAuthToken", 0, LOGIN_ID, "somePassword");
+		passwordLogin.MCR.assertParameters("getAuthTokenAsync", 0, LOGIN_ID, "somePassword");
 
 	}
 
@@ -319,34 +550,67 @@ public class LoginEndpointTest {
 	public void testGetAuthTokenWithPassword_BuildResponse() {
 		LoginEndpointOnlyForTest loginEndpointOFT = new LoginEndpointOnlyForTest(request);
 
-		Response response = loginEndpointOFT.getAuthTokenForPassword(CREDENTIALS_WITH_PASSWORD);
+		Response response = getAuthTokenForPassword(loginEndpointOFT, CREDENTIALS_WITH_PASSWORD);
 
-		var authTokenFromGatekeeper = (se.uu.ub.cora.gatekeepertokenprovider.AuthToken) passwordLoginSpy.MCR
-				.getReturnValue("getAuthToken", 0);
+		AuthToken authTokenFromGatekeeper = passwordLoginSpy.authToken;
 		loginEndpointOFT.MCR.assertParameters("buildResponseUsingAuthToken", 0,
-				authTokenFromGatekeeper);
+				authTokenFromGatekeeper, BASE_URL, AUTHENTICATION_JSON);
 		loginEndpointOFT.MCR.assertReturn("buildResponseUsingAuthToken", 0, response);
 	}
 
 	@Test
 	public void testGetAuthTokenWithPassword_LoginException_ResponseWithUnauthorized() {
-		passwordLoginSpy.MRV.setAlwaysThrowException("getAuthToken",
+		passwordLoginSpy.MRV.setAlwaysThrowException("getAuthTokenAsync",
 				LoginException.withMessage("aSpyException"));
 
-		Response response = loginEndpoint.getAuthTokenForPassword(CREDENTIALS_WITH_PASSWORD);
+		Response response = getAuthTokenForPassword(loginEndpoint, CREDENTIALS_WITH_PASSWORD);
 
 		assertResponseStatusIs(response, Response.Status.UNAUTHORIZED);
 	}
 
 	@Test
 	public void testGetAuthTokenWithPassword_AnyException_ResponseWithInternalServerError() {
-		passwordLoginSpy.MRV.setAlwaysThrowException("getAuthToken", new RuntimeException());
+		passwordLoginSpy.MRV.setAlwaysThrowException("getAuthTokenAsync", new RuntimeException());
 
-		Response response = loginEndpoint.getAuthTokenForPassword(CREDENTIALS_WITH_PASSWORD);
+		Response response = getAuthTokenForPassword(loginEndpoint, CREDENTIALS_WITH_PASSWORD);
 
 		assertResponseStatusIs(response, Response.Status.INTERNAL_SERVER_ERROR);
 	}
 
+	@Test
+	public void testGetAuthTokenWithPassword_CompletedWithUnavailable_ResponseWithServiceUnavailable() {
+		passwordLoginSpy.MRV.setDefaultReturnValuesSupplier("getAuthTokenAsync",
+				() -> CompletableFuture
+						.failedFuture(LoginUnavailableException.withMessage("aSpyException")));
+
+		Response response = getAuthTokenForPassword(loginEndpoint, CREDENTIALS_WITH_PASSWORD);
+
+		assertResponseStatusIs(response, Response.Status.SERVICE_UNAVAILABLE);
+		assertEquals(response.getHeaderString("Retry-After"), "1");
+	}
+
+	@Test
+	public void testGetAuthTokenWithPassword_Rejected_ResponseWithServiceUnavailable() {
+		passwordLoginSpy.MRV.setAlwaysThrowException("getAuthTokenAsync",
+				new RejectedExecutionException("aSpyException"));
+
+		Response response = getAuthTokenForPassword(loginEndpoint, CREDENTIALS_WITH_PASSWORD);
+
+		assertResponseStatusIs(response, Response.Status.SERVICE_UNAVAILABLE);
+		assertEquals(response.getHeaderString("Retry-After"), "1");
+	}
+
+	@Test
+	public void testGetAuthTokenWithPassword_LoginUnavailable_ResponseWithServiceUnavailable() {
+		passwordLoginSpy.MRV.setAlwaysThrowException("getAuthTokenAsync",
+				LoginUnavailableException.withMessage("aSpyException"));
+
+		Response response = getAuthTokenForPassword(loginEndpoint, CREDENTIALS_WITH_PASSWORD);
+
+		assertResponseStatusIs(response, Response.Status.SERVICE_UNAVAILABLE);
+		assertEquals(response.getHeaderString("Retry-After"), "1");
+	}
+
 	@Test
 	public void testRenewAuthToken_Annotations() throws Exception {
 		AnnotationTestHelper annotationHelper = AnnotationTestHelper
@@ -356,12 +620,23 @@ public class LoginEndpointTest {
 		annotationHelper.assertHttpMethodAndPathAnnotation("POST", "authToken/{tokenId}");
 		annotationHelper.assertPathParamAnnotationByNameAndPosition("tokenId", 1);
 		annotationHelper.assertAuthTokenHeaderAnnotationForPosition(0);
-		annotationHelper.assertProducesAnnotation("application/vnd.cora.authentication+json");
+		annotationHelper.assertProducesAnnotation(AUTHENTICATION_JSON, COMPACT_AUTHENTICATION_JSON);
+	}
+
+	@Test
+	public void testRenewAuthToken_LoginUnavailable_ResponseWithServiceUnavailable() {
+		authTokenRenewer.MRV.setAlwaysThrowException("renewAuthToken",
+				LoginUnavailableException.withMessage("Circuit to gatekeeper is open."));
+
+		Response response = loginEndpoint.renewAuthToken("someToken", "someTokenId");
+
+		assertResponseStatusIs(response, Response.Status.SERVICE_UNAVAILABLE);
+		assertEquals(response.getHeaderString("Retry-After"), "1");
 	}
 
 	@Test
 	public void testRenewAuthTokenUnauthorized() {
-		gatekeeperTokenProvider.MRV.setAlwaysThrowException("renewAuthToken",
+		authTokenRenewer.MRV.setAlwaysThrowException("renewAuthToken",
 				new AuthenticationException("someError"));
 
 		Response response = loginEndpoint.renewAuthToken("someToken", "someTokenId");
@@ -373,13 +648,26 @@ public class LoginEndpointTest {
 	public void testRenewAuthTokenOK() {
 		Response response = loginEndpoint.renewAuthToken("someToken", "someTokenId");
 
-		gatekeeperTokenProvider.MCR.assertParameters("renewAuthToken", 0, "someTokenId",
-				"someToken");
+		loginFactory.MCR.assertMethodWasCalled("factorAuthTokenRenewer");
+		authTokenRenewer.MCR.assertParameters("renewAuthToken", 0, "someTokenId", "someToken");
 		assertResponseStatusIs(response, Response.Status.OK);
-		String entity = (String) response.getEntity();
+		assertEquals(response.getMediaType().toString(), AUTHENTICATION_JSON);
+		String entity = getEntityAsString(response);
 		assertEquals(entity, expectedAutToken("http"));
 	}
 
+	@Test
+	public void testRenewAuthTokenOK_AcceptCompact() {
+		request.headers.put("Accept", AUTHENTICATION_JSON + ";q=0.5, "
+				+ COMPACT_AUTHENTICATION_JSON);
+
+		Response response = loginEndpoint.renewAuthToken("someToken", "someTokenId");
+
+		assertResponseStatusIs(response, Response.Status.OK);
+		assertEquals(response.getMediaType().toString(), COMPACT_AUTHENTICATION_JSON);
+		assertEquals(getEntityAsString(response), EXPECTED_COMPACT_AUTH_TOKEN);
+	}
+
 	@Test
 	public void testRemoveAuthTokenForUser() {
 		Response response = loginEndpoint.removeAuthTokenForAppToken("someAuthToken",
@@ -388,6 +676,10 @@ public class LoginEndpointTest {
 		assertResponseStatusIs(response, Response.Status.OK);
 		gatekeeperTokenProvider.MCR.assertParameters("removeAuthToken", 0, "someTokenId",
 				"someAuthToken");
+		authTokenRenewer.MCR.assertParameters("forgetRenewedAuthToken", 0, "someTokenId",
+				"someAuthToken");
+		idempotencyStore.MCR.assertParameters("forgetAuthToken", 0, "someTokenId",
+				"someAuthToken");
 	}
 
 	@Test
@@ -398,6 +690,20 @@ public class LoginEndpointTest {
 		Response response = loginEndpoint.removeAuthTokenForAppToken("someToken", "someTokenId");
 
 		assertResponseStatusIs(response, Response.Status.NOT_FOUND);
+		authTokenRenewer.MCR.assertParameters("forgetRenewedAuthToken", 0, "someTokenId",
+				"someToken");
+		idempotencyStore.MCR.assertParameters("forgetAuthToken", 0, "someTokenId", "someToken");
+	}
+
+	@Test
+	public void testRemoveAuthTokenForUser_LoginUnavailable_ResponseWithServiceUnavailable() {
+		gatekeeperTokenProvider.MRV.setAlwaysThrowException("removeAuthToken",
+				LoginUnavailableException.withMessage("Circuit to gatekeeper is open."));
+
+		Response response = loginEndpoint.removeAuthTokenForAppToken("someToken", "someTokenId");
+
+		assertResponseStatusIs(response, Response.Status.SERVICE_UNAVAILABLE);
+		assertEquals(response.getHeaderString("Retry-After"), "1");
 	}
 
 	@Test
@@ -411,4 +717,215 @@ public class LoginEndpointTest {
 		annotationHelper.assertAuthTokenHeaderAnnotationForPosition(0);
 	}
 
+
+	@Test
+	public void testGetAuthTokenWithAppToken_NoNewLine_ResponseWithBadRequest() {
+		Response response = getAuthTokenForAppToken(loginEndpoint, "someLoginIdAndNoSecret");
+
+		assertResponseStatusIs(response, Response.Status.BAD_REQUEST);
+		loginFactory.MCR.assertMethodNotCalled("factorAppTokenLogin");
+	}
+
+	@Test
+	public void testGetAuthTokenWithAppToken_TooLargeBody_ResponseWithBadRequest() {
+		Response response = getAuthTokenForAppToken(loginEndpoint,
+				LOGIN_ID + "\n" + "a".repeat(4096));
+
+		assertResponseStatusIs(response, Response.Status.BAD_REQUEST);
+		loginFactory.MCR.assertMethodNotCalled("factorAppTokenLogin");
+	}
+
+	@Test
+	public void testGetAuthTokenWithPassword_EmptySecret_ResponseWithBadRequest() {
+		Response response = getAuthTokenForPassword(loginEndpoint, LOGIN_ID + "\n");
+
+		assertResponseStatusIs(response, Response.Status.BAD_REQUEST);
+		loginFactory.MCR.assertMethodNotCalled("factorPasswordLogin");
+	}
+
+	@Test
+	public void testGetAuthTokenWithPassword_WithoutTrailingNewLine() {
+		getAuthTokenForPassword(loginEndpoint, LOGIN_ID + "\nsomePassword");
+
+		passwordLoginSpy.MCR.assertParameters("getAuthTokenAsync", 0, LOGIN_ID, "somePassword");
+	}
+
+	@Test
+	public void testGetAuthTokensForAppTokens_Annotations() throws Exception {
+		AnnotationTestHelper annotationHelper = AnnotationTestHelper
+				.createAnnotationTestHelperForClassMethodNameAndParameters(LoginEndpoint.class,
+						"getAuthTokensForAppTokens", ASYNC_LOGIN_PARAMETERS);
+
+		annotationHelper.assertHttpMethodAndPathAnnotation("POST", "apptoken/batch");
+		annotationHelper.assertSuspendedAnnotationForPosition(0);
+		annotationHelper.assertConsumesAnnotation("application/vnd.cora.loginBatch");
+		annotationHelper
+				.assertProducesAnnotation("application/vnd.cora.authenticationBatch+json");
+	}
+
+	@Test
+	public void testGetAuthTokensForAppTokens() {
+		Response response = getAuthTokensForAppTokens(
+				"firstLoginId\nfirstAppToken\nsecondLoginId\nsecondAppToken\n");
+
+		loginFactory.MCR.assertNumberOfCallsToMethod("factorAppTokenLogin", 1);
+		appTokenLoginSpy.MCR.assertParameters("getAuthTokenAsync", 0, "firstLoginId",
+				"firstAppToken");
+		appTokenLoginSpy.MCR.assertParameters("getAuthTokenAsync", 1, "secondLoginId",
+				"secondAppToken");
+		assertResponseStatusIs(response, Response.Status.OK);
+		String authTokenJson = expectedAutToken("http");
+		assertEquals(getEntityAsString(response),
+				"{\"results\":[{\"loginId\":\"firstLoginId\",\"status\":201,\"authToken\":"
+						+ authTokenJson + "},{\"loginId\":\"secondLoginId\",\"status\":201,"
+						+ "\"authToken\":" + authTokenJson + "}]}");
+	}
+
+	@Test
+	public void testGetAuthTokensForAppTokens_FailuresArePerEntry() {
+		CompletableFuture<AuthToken> later = new CompletableFuture<>();
+		appTokenLoginSpy.MRV.setSpecificReturnValuesSupplier("getAuthTokenAsync",
+				() -> CompletableFuture.failedFuture(LoginException.withMessage("someError")),
+				"unauthorizedId", "someAppToken");
+		appTokenLoginSpy.MRV.setSpecificReturnValuesSupplier("getAuthTokenAsync", () -> later,
+				"laterId", "someAppToken");
+		appTokenLoginSpy.MRV.setThrowException("getAuthTokenAsync",
+				LoginUnavailableException.withMessage("someError"), "unavailableId",
+				"someAppToken");
+		AsyncResponseSpy asyncResponse = new AsyncResponseSpy();
+
+		loginEndpoint.getAuthTokensForAppTokens(asyncResponse,
+				asBody("unauthorizedId\nsomeAppToken\nlaterId\nsomeAppToken\n"
+						+ "unavailableId\nsomeAppToken"));
+
+		asyncResponse.MCR.assertMethodNotCalled("resume");
+		later.completeExceptionally(new CompletionException(new RuntimeException()));
+		Response response = getResumedResponse(asyncResponse);
+		assertResponseStatusIs(response, Response.Status.OK);
+		assertEquals(getEntityAsString(response),
+				"{\"results\":[{\"loginId\":\"unauthorizedId\",\"status\":401},"
+						+ "{\"loginId\":\"laterId\",\"status\":500},"
+						+ "{\"loginId\":\"unavailableId\",\"status\":503}]}");
+	}
+
+	@Test
+	public void testGetAuthTokensForAppTokens_MalformedBody_ResponseWithBadRequest() {
+		Response response = getAuthTokensForAppTokens("someLoginId\nsomeAppToken\nnoAppToken");
+
+		assertResponseStatusIs(response, Response.Status.BAD_REQUEST);
+		loginFactory.MCR.assertMethodNotCalled("factorAppTokenLogin");
+	}
+
+	@Test
+	public void testGetAuthTokensForAppTokens_MaxBatchSize() {
+		getAuthTokensForAppTokens("someLoginId\nsomeAppToken\n".repeat(100));
+
+		appTokenLoginSpy.MCR.assertNumberOfCallsToMethod("getAuthTokenAsync", 100);
+	}
+
+	@Test
+	public void testGetAuthTokensForAppTokens_TooLargeBatch_ResponseWithBadRequest() {
+		Response response = getAuthTokensForAppTokens("someLoginId\nsomeAppToken\n".repeat(101));
+
+		assertResponseStatusIs(response, Response.Status.BAD_REQUEST);
+		loginFactory.MCR.assertMethodNotCalled("factorAppTokenLogin");
+	}
+
+	@Test
+	public void testRemoveAuthTokens_Annotations() throws Exception {
+		AnnotationTestHelper annotationHelper = AnnotationTestHelper
+				.createAnnotationTestHelperForClassMethodNameAndParameters(LoginEndpoint.class,
+						"removeAuthTokens", ASYNC_LOGIN_PARAMETERS);
+
+		annotationHelper.assertHttpMethodAndPathAnnotation("POST", "authToken/batch/delete");
+		annotationHelper.assertSuspendedAnnotationForPosition(0);
+		annotationHelper.assertConsumesAnnotation("application/vnd.cora.logoutBatch");
+		annotationHelper.assertProducesAnnotation("application/vnd.cora.logoutBatch+json");
+	}
+
+	@Test
+	public void testRemoveAuthTokens() throws Exception {
+		gatekeeperTokenProvider.MRV.setThrowException("removeAuthToken",
+				new AuthenticationException("someError"), "secondTokenId", "secondToken");
+
+		Response response = removeAuthTokensUsingExecutor(Executors.newFixedThreadPool(2),
+				"firstTokenId\nfirstToken\nsecondTokenId\nsecondToken\n");
+
+		gatekeeperTokenProvider.MCR.assertNumberOfCallsToMethod("removeAuthToken", 2);
+		gatekeeperTokenProvider.MCR.assertCalledParameters("removeAuthToken", "firstTokenId",
+				"firstToken");
+		gatekeeperTokenProvider.MCR.assertCalledParameters("removeAuthToken", "secondTokenId",
+				"secondToken");
+		authTokenRenewer.MCR.assertNumberOfCallsToMethod("forgetRenewedAuthToken", 2);
+		authTokenRenewer.MCR.assertCalledParameters("forgetRenewedAuthToken", "firstTokenId",
+				"firstToken");
+		authTokenRenewer.MCR.assertCalledParameters("forgetRenewedAuthToken", "secondTokenId",
+				"secondToken");
+		idempotencyStore.MCR.assertNumberOfCallsToMethod("forgetAuthToken", 2);
+		idempotencyStore.MCR.assertCalledParameters("forgetAuthToken", "firstTokenId",
+				"firstToken");
+		idempotencyStore.MCR.assertCalledParameters("forgetAuthToken", "secondTokenId",
+				"secondToken");
+		assertResponseStatusIs(response, Response.Status.OK);
+		assertEquals(getEntityAsString(response),
+				"{\"results\":[{\"tokenId\":\"firstTokenId\",\"status\":200},"
+						+ "{\"tokenId\":\"secondTokenId\",\"status\":404}]}");
+	}
+
+	private Response removeAuthTokensUsingExecutor(ExecutorService loginExecutor, String tokens)
+			throws InterruptedException {
+		ExecutorProvider.setLoginExecutor(loginExecutor);
+		AsyncResponseSpy asyncResponse = new AsyncResponseSpy();
+
+		loginEndpoint.removeAuthTokens(asyncResponse, asBody(tokens));
+
+		loginExecutor.shutdown();
+		assertTrue(loginExecutor.awaitTermination(5, TimeUnit.SECONDS));
+		return getResumedResponse(asyncResponse);
+	}
+
+	@Test
+	public void testRemoveAuthTokens_LoginUnavailable_ResultWithServiceUnavailable()
+			throws Exception {
+		gatekeeperTokenProvider.MRV.setAlwaysThrowException("removeAuthToken",
+				LoginUnavailableException.withMessage("Circuit to gatekeeper is open."));
+
+		Response response = removeAuthTokensUsingExecutor(Executors.newSingleThreadExecutor(),
+				"someTokenId\nsomeToken");
+
+		assertEquals(getEntityAsString(response),
+				"{\"results\":[{\"tokenId\":\"someTokenId\",\"status\":503}]}");
+	}
+
+	@Test
+	public void testRemoveAuthTokens_ExecutorRejects_ResultWithServiceUnavailable()
+			throws Exception {
+		ExecutorService shutdownExecutor = Executors.newSingleThreadExecutor();
+		shutdownExecutor.shutdown();
+
+		Response response = removeAuthTokensUsingExecutor(shutdownExecutor,
+				"someTokenId\nsomeToken");
+
+		gatekeeperTokenProvider.MCR.assertMethodNotCalled("removeAuthToken");
+		assertEquals(getEntityAsString(response),
+				"{\"results\":[{\"tokenId\":\"someTokenId\",\"status\":503}]}");
+	}
+
+	@Test
+	public void testRemoveAuthTokens_MalformedBody_ResponseWithBadRequest() throws Exception {
+		Response response = removeAuthTokensUsingExecutor(Executors.newSingleThreadExecutor(),
+				"someTokenId");
+
+		assertResponseStatusIs(response, Response.Status.BAD_REQUEST);
+		gatekeeperTokenProvider.MCR.assertMethodNotCalled("removeAuthToken");
+	}
+
+	@Test
+	public void testRemoveAuthTokens_TooLargeBatch_ResponseWithBadRequest() throws Exception {
+		Response response = removeAuthTokensUsingExecutor(Executors.newSingleThreadExecutor(),
+				"someTokenId\nsomeToken\n".repeat(101));
+
+		assertResponseStatusIs(response, Response.Status.BAD_REQUEST);
+		gatekeeperTokenProvider.MCR.assertMethodNotCalled("removeAuthToken");
+	}
 }
@@ -0,0 +1,93 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.rest;
+
+import static org.testng.Assert.assertEquals;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class MediaTypeSelectorTest {
+	private static final String DEFAULT = "application/vnd.cora.authentication+json";
+	private static final String ALTERNATIVE = "application/vnd.cora.authentication.compact+json";
+	private MediaTypeSelector selector;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		selector = MediaTypeSelector.usingDefaultAndAlternative(DEFAULT, ALTERNATIVE);
+	}
+
+	@Test
+	public void testNoAcceptHeader() throws Exception {
+		assertEquals(selector.selectMediaType(null), DEFAULT);
+	}
+
+	@Test
+	public void testAcceptDefault() throws Exception {
+		assertEquals(selector.selectMediaType(DEFAULT), DEFAULT);
+	}
+
+	@Test
+	public void testAcceptAlternative() throws Exception {
+		assertEquals(selector.selectMediaType(ALTERNATIVE), ALTERNATIVE);
+	}
+
+	@Test
+	public void testAcceptAlternativeIgnoresCaseAndWhitespace() throws Exception {
+		assertEquals(selector.selectMediaType(" " + ALTERNATIVE.toUpperCase() + " "),
+				ALTERNATIVE);
+	}
+
+	@Test
+	public void testAcceptWildcard() throws Exception {
+		assertEquals(selector.selectMediaType("*/*"), DEFAULT);
+	}
+
+	@Test
+	public void testAcceptBothWithSameQuality() throws Exception {
+		assertEquals(selector.selectMediaType(ALTERNATIVE + ", " + DEFAULT), DEFAULT);
+	}
+
+	@Test
+	public void testAcceptBothWithHigherQualityForAlternative() throws Exception {
+		assertEquals(selector.selectMediaType(DEFAULT + ";q=0.5, " + ALTERNATIVE), ALTERNATIVE);
+	}
+
+	@Test
+	public void testAcceptBothWithHigherQualityForDefault() throws Exception {
+		assertEquals(selector.selectMediaType(DEFAULT + ", " + ALTERNATIVE + "; q=0.9"),
+				DEFAULT);
+	}
+
+	@Test
+	public void testAcceptAlternativeWithOtherParameters() throws Exception {
+		assertEquals(selector.selectMediaType(ALTERNATIVE + ";charset=utf-8;q=0.8"),
+				ALTERNATIVE);
+	}
+
+	@Test
+	public void testAlternativeNotAccepted() throws Exception {
+		assertEquals(selector.selectMediaType(ALTERNATIVE + ";q=0"), DEFAULT);
+	}
+
+	@Test
+	public void testAlternativeWithMalformedQualityNotAccepted() throws Exception {
+		assertEquals(selector.selectMediaType(ALTERNATIVE + ";q=high"), DEFAULT);
+	}
+}
@@ -0,0 +1,180 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.singleflight;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertFalse;
+import static org.testng.Assert.assertNotEquals;
+import static org.testng.Assert.assertNotSame;
+import static org.testng.Assert.assertSame;
+import static org.testng.Assert.assertTrue;
+import static org.testng.Assert.fail;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+public class SingleFlightTest {
+	private SingleFlightImp singleFlight;
+	private AtomicInteger numberOfStartedWork;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		singleFlight = SingleFlightImp.usingSharedAuthToken(false);
+		numberOfStartedWork = new AtomicInteger();
+	}
+
+	@Test
+	public void testSharesAuthToken() throws Exception {
+		assertFalse(singleFlight.sharesAuthToken());
+		assertTrue(SingleFlightImp.usingSharedAuthToken(true).sharesAuthToken());
+	}
+
+	@Test
+	public void testKeyIsEqualForEqualLogins() throws Exception {
+		String key = singleFlight.createKeyUsingTypeLoginIdAndSecret("password", "someLoginId",
+				"someSecret");
+		String key2 = singleFlight.createKeyUsingTypeLoginIdAndSecret("password", "someLoginId",
+				"someSecret");
+
+		assertEquals(key, key2);
+	}
+
+	@Test
+	public void testKeyDiffersForDifferentLogins() throws Exception {
+		String key = singleFlight.createKeyUsingTypeLoginIdAndSecret("password", "someLoginId",
+				"someSecret");
+
+		assertNotEquals(key, singleFlight.createKeyUsingTypeLoginIdAndSecret("apptoken",
+				"someLoginId", "someSecret"));
+		assertNotEquals(key, singleFlight.createKeyUsingTypeLoginIdAndSecret("password",
+				"otherLoginId", "someSecret"));
+		assertNotEquals(key, singleFlight.createKeyUsingTypeLoginIdAndSecret("password",
+				"someLoginId", "otherSecret"));
+		assertNotEquals(key, singleFlight.createKeyUsingTypeLoginIdAndSecret("password",
+				"someLoginIdsome", "Secret"));
+	}
+
+	@Test
+	public void testKeyDoesNotContainSecret() throws Exception {
+		String key = singleFlight.createKeyUsingTypeLoginIdAndSecret("password", "someLoginId",
+				"someSecret");
+
+		assertFalse(key.contains("someSecret"));
+	}
+
+	@Test
+	public void testKeyIsDifferentForDifferentInstances() throws Exception {
+		SingleFlightImp otherSingleFlight = SingleFlightImp.usingSharedAuthToken(false);
+
+		assertNotEquals(
+				singleFlight.createKeyUsingTypeLoginIdAndSecret("password", "someLoginId",
+						"someSecret"),
+				otherSingleFlight.createKeyUsingTypeLoginIdAndSecret("password", "someLoginId",
+						"someSecret"));
+	}
+
+	@Test
+	public void testConcurrentCallsForSameKeyShareWork() throws Exception {
+		CompletableFuture<String> work = new CompletableFuture<>();
+
+		CompletableFuture<String> first = singleFlight.runOnceForKey("someKey",
+				() -> startWork(work));
+		CompletableFuture<String> second = singleFlight.runOnceForKey("someKey",
+				() -> startWork(work));
+
+		assertSame(first, second);
+		assertEquals(numberOfStartedWork.get(), 1);
+		work.complete("someResult");
+		assertEquals(first.join(), "someResult");
+		assertEquals(second.join(), "someResult");
+	}
+
+	private <T> CompletableFuture<T> startWork(CompletableFuture<T> work) {
+		numberOfStartedWork.incrementAndGet();
+		return work;
+	}
+
+	@Test
+	public void testCallsForDifferentKeysDoNotShareWork() throws Exception {
+		CompletableFuture<String> first = singleFlight.runOnceForKey("someKey",
+				() -> startWork(new CompletableFuture<>()));
+		CompletableFuture<String> second = singleFlight.runOnceForKey("otherKey",
+				() -> startWork(new CompletableFuture<>()));
+
+		assertNotSame(first, second);
+		assertEquals(numberOfStartedWork.get(), 2);
+		assertEquals(singleFlight.onlyForTestGetNumberOfKeysInFlight(), 2);
+	}
+
+	@Test
+	public void testKeyIsReleasedWhenWorkIsDone() throws Exception {
+		CompletableFuture<String> work = new CompletableFuture<>();
+		singleFlight.runOnceForKey("someKey", () -> startWork(work));
+		assertEquals(singleFlight.onlyForTestGetNumberOfKeysInFlight(), 1);
+
+		work.complete("someResult");
+
+		assertEquals(singleFlight.onlyForTestGetNumberOfKeysInFlight(), 0);
+		singleFlight.runOnceForKey("someKey",
+				() -> startWork(CompletableFuture.completedFuture("otherResult")));
+		assertEquals(numberOfStartedWork.get(), 2);
+	}
+
+	@Test
+	public void testFailedWorkIsSharedAndKeyReleased() throws Exception {
+		CompletableFuture<String> work = new CompletableFuture<>();
+		CompletableFuture<String> first = singleFlight.runOnceForKey("someKey",
+				() -> startWork(work));
+		CompletableFuture<String> second = singleFlight.runOnceForKey("someKey",
+				() -> startWork(work));
+		RuntimeException error = new RuntimeException("someError");
+
+		work.completeExceptionally(error);
+
+		assertCompletedWithError(first, error);
+		assertCompletedWithError(second, error);
+		assertEquals(singleFlight.onlyForTestGetNumberOfKeysInFlight(), 0);
+	}
+
+	private void assertCompletedWithError(CompletableFuture<String> future,
+			RuntimeException error) {
+		try {
+			future.join();
+			fail("It should throw an exception");
+		} catch (CompletionException e) {
+			assertSame(e.getCause(), error);
+		}
+	}
+
+	@Test
+	public void testWorkThrowingWhenStartedFailsPromiseAndReleasesKey() throws Exception {
+		RuntimeException error = new RuntimeException("someError");
+
+		CompletableFuture<String> result = singleFlight.runOnceForKey("someKey", () -> {
+			throw error;
+		});
+
+		assertCompletedWithError(result, error);
+		assertEquals(singleFlight.onlyForTestGetNumberOfKeysInFlight(), 0);
+	}
+}
@@ -0,0 +1,78 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.spies;
+
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Function;
+
+import se.uu.ub.cora.login.cache.Cache;
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
+
+public class CacheSpy<V> implements Cache<V> {
+	public MethodCallRecorder MCR = new MethodCallRecorder();
+	public MethodReturnValues MRV = new MethodReturnValues();
+
+	public CacheSpy() {
+		MCR.useMRV(MRV);
+		MRV.setDefaultReturnValuesSupplier("getHits", () -> 0L);
+		MRV.setDefaultReturnValuesSupplier("getMisses", () -> 0L);
+		MRV.setDefaultReturnValuesSupplier("getIfPresent", () -> null);
+	}
+
+	@Override
+	public V getOrLoad(String key, Function<String, V> loader) {
+		MCR.addCall("key", key, "loader", loader);
+		return loader.apply(key);
+	}
+
+	@Override
+	public Map<String, V> getAllOrLoad(Set<String> keys,
+			Function<Set<String>, Map<String, V>> loader) {
+		MCR.addCall("keys", keys, "loader", loader);
+		return loader.apply(keys);
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public V getIfPresent(String key) {
+		return (V) MCR.addCallAndReturnFromMRV("key", key);
+	}
+
+	@Override
+	public void put(String key, V value) {
+		MCR.addCall("key", key, "value", value);
+	}
+
+	@Override
+	public void invalidate(String key) {
+		MCR.addCall("key", key);
+	}
+
+	@Override
+	public long getHits() {
+		return (long) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public long getMisses() {
+		return (long) MCR.addCallAndReturnFromMRV();
+	}
+}
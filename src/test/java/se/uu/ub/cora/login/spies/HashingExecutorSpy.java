@@ -0,0 +1,92 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.spies;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import se.uu.ub.cora.login.hashing.HashingExecutor;
+import se.uu.ub.cora.password.texthasher.TextHasher;
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
+
+public class HashingExecutorSpy implements HashingExecutor {
+	public MethodCallRecorder MCR = new MethodCallRecorder();
+	public MethodReturnValues MRV = new MethodReturnValues();
+
+	public HashingExecutorSpy() {
+		MCR.useMRV(MRV);
+		MRV.setDefaultReturnValuesSupplier("matches", () -> true);
+		MRV.setDefaultReturnValuesSupplier("matchesAsync",
+				() -> CompletableFuture.completedFuture(true));
+	}
+
+	@Override
+	public boolean matches(TextHasher textHasher, String plainText, String hashedText) {
+		return (boolean) MCR.addCallAndReturnFromMRV("textHasher", textHasher, "plainText",
+				plainText, "hashedText", hashedText);
+	}
+
+	@Override
+	public boolean matchesAny(TextHasher textHasher, String plainText, List<String> hashedTexts) {
+		MCR.addCall("textHasher", textHasher, "plainText", plainText, "hashedTexts", hashedTexts);
+		for (String hashedText : hashedTexts) {
+			if (matches(textHasher, plainText, hashedText)) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	@Override
+	public int findIndexOfMatch(TextHasher textHasher, String plainText, List<String> hashedTexts) {
+		MCR.addCall("textHasher", textHasher, "plainText", plainText, "hashedTexts", hashedTexts);
+		for (int i = 0; i < hashedTexts.size(); i++) {
+			if (matches(textHasher, plainText, hashedTexts.get(i))) {
+				return i;
+			}
+		}
+		return NO_MATCH;
+	}
+
+	@SuppressWarnings("unchecked")
+	@Override
+	public CompletableFuture<Boolean> matchesAsync(TextHasher textHasher, String plainText,
+			String hashedText) {
+		return (CompletableFuture<Boolean>) MCR.addCallAndReturnFromMRV("textHasher", textHasher,
+				"plainText", plainText, "hashedText", hashedText);
+	}
+
+	@Override
+	public CompletableFuture<Integer> findIndexOfMatchAsync(TextHasher textHasher,
+			String plainText, List<String> hashedTexts) {
+		MCR.addCall("textHasher", textHasher, "plainText", plainText, "hashedTexts", hashedTexts);
+		for (int i = 0; i < hashedTexts.size(); i++) {
+			if (matchesAsync(textHasher, plainText, hashedTexts.get(i)).join()) {
+				return CompletableFuture.completedFuture(i);
+			}
+		}
+		return CompletableFuture.completedFuture(NO_MATCH);
+	}
+
+	@Override
+	public void shutdown() {
+		MCR.addCall();
+	}
+}
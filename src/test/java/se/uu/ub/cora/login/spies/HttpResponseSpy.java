@@ -0,0 +1,78 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.spies;
+
+import java.net.URI;
+import java.net.http.HttpClient.Version;
+import java.net.http.HttpHeaders;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+import javax.net.ssl.SSLSession;
+
+public class HttpResponseSpy implements HttpResponse<byte[]> {
+	public int statusCode = 200;
+	public byte[] body = "someResponseText".getBytes(StandardCharsets.UTF_8);
+	public Map<String, List<String>> headers = new HashMap<>();
+
+	@Override
+	public int statusCode() {
+		return statusCode;
+	}
+
+	@Override
+	public HttpRequest request() {
+		return null;
+	}
+
+	@Override
+	public Optional<HttpResponse<byte[]>> previousResponse() {
+		return Optional.empty();
+	}
+
+	@Override
+	public HttpHeaders headers() {
+		return HttpHeaders.of(headers, (name, value) -> true);
+	}
+
+	@Override
+	public byte[] body() {
+		return body;
+	}
+
+	@Override
+	public Optional<SSLSession> sslSession() {
+		return Optional.empty();
+	}
+
+	@Override
+	public URI uri() {
+		return null;
+	}
+
+	@Override
+	public Version version() {
+		return Version.HTTP_2;
+	}
+}
@@ -21,6 +21,7 @@ package se.uu.ub.cora.login.spies;
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.UnsupportedEncodingException;
+import java.net.URI;
 import java.security.Principal;
 import java.util.Collection;
 import java.util.Enumeration;
@@ -188,19 +189,21 @@ public class HttpServletRequestSpy implements HttpServletRequest {
 
 	@Override
 	public String getScheme() {
-		// TODO Auto-generated method stub
-		return null;
+		return getRequestURLAsURI().getScheme();
 	}
 
 	@Override
 	public String getServerName() {
-		return "http://localhost:8080/";
+		return getRequestURLAsURI().getHost();
 	}
 
 	@Override
 	public int getServerPort() {
-		// TODO Auto-generated method stub
-		return 0;
+		return getRequestURLAsURI().getPort();
+	}
+
+	private URI getRequestURLAsURI() {
+		return URI.create(getRequestURL().toString());
 	}
 
 	@Override
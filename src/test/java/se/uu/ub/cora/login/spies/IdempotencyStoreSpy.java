@@ -0,0 +1,44 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.spies;
+
+import java.util.concurrent.CompletionStage;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
+import se.uu.ub.cora.login.rest.IdempotencyStore;
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+
+public class IdempotencyStoreSpy implements IdempotencyStore {
+	public MethodCallRecorder MCR = new MethodCallRecorder();
+
+	@Override
+	public CompletionStage<AuthToken> loginOncePerIdempotencyKey(String idempotencyKey,
+			String loginType, String loginId, String secret,
+			Supplier<CompletionStage<AuthToken>> login) {
+		MCR.addCall("idempotencyKey", idempotencyKey, "loginType", loginType, "loginId", loginId,
+				"secret", secret, "login", login);
+		return login.get();
+	}
+
+	@Override
+	public void forgetAuthToken(String tokenId, String token) {
+		MCR.addCall("tokenId", tokenId, "token", token);
+	}
+}
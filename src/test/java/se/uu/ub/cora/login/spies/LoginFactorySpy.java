@@ -19,6 +19,8 @@
 package se.uu.ub.cora.login.spies;
 
 import se.uu.ub.cora.login.rest.AppTokenLogin;
+import se.uu.ub.cora.login.rest.AuthTokenRenewer;
+import se.uu.ub.cora.login.rest.IdempotencyStore;
 import se.uu.ub.cora.login.rest.LoginFactory;
 import se.uu.ub.cora.login.rest.PasswordLogin;
 import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
@@ -33,6 +35,8 @@ public class LoginFactorySpy implements LoginFactory {
 		MCR.useMRV(MRV);
 		MRV.setDefaultReturnValuesSupplier("factorPasswordLogin", PasswordLoginSpy::new);
 		MRV.setDefaultReturnValuesSupplier("factorAppTokenLogin", AppTokenLoginSpy::new);
+		MRV.setDefaultReturnValuesSupplier("factorAuthTokenRenewer", AuthTokenRenewerSpy::new);
+		MRV.setDefaultReturnValuesSupplier("factorIdempotencyStore", IdempotencyStoreSpy::new);
 	}
 
 	@Override
@@ -45,4 +49,14 @@ public class LoginFactorySpy implements LoginFactory {
 		return (AppTokenLogin) MCR.addCallAndReturnFromMRV();
 	}
 
+	@Override
+	public AuthTokenRenewer factorAuthTokenRenewer() {
+		return (AuthTokenRenewer) MCR.addCallAndReturnFromMRV();
+	}
+
+	@Override
+	public IdempotencyStore factorIdempotencyStore() {
+		return (IdempotencyStore) MCR.addCallAndReturnFromMRV();
+	}
+
 }
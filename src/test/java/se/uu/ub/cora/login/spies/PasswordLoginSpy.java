@@ -1,5 +1,5 @@
 /*
- * Copyright 2024 Uppsala University Library
+ * Copyright 2024, 2026 Uppsala University Library
  *
  * This file is part of Cora.
  *
@@ -20,6 +20,8 @@ package se.uu.ub.cora.login.spies;
 
 import java.util.Collections;
 import java.util.Optional;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionStage;
 
 import se.uu.ub.cora.gatekeepertokenprovider.AuthToken;
 import se.uu.ub.cora.login.rest.PasswordLogin;
@@ -37,6 +39,8 @@ public class PasswordLoginSpy implements PasswordLogin {
 	public PasswordLoginSpy() {
 		MCR.useMRV(MRV);
 		MRV.setDefaultReturnValuesSupplier("getAuthToken", () -> authToken);
+		MRV.setDefaultReturnValuesSupplier("getAuthTokenAsync",
+				() -> CompletableFuture.completedFuture(authToken));
 	}
 
 	@Override
@@ -44,4 +48,10 @@ public class PasswordLoginSpy implements PasswordLogin {
 		return (AuthToken) MCR.addCallAndReturnFromMRV("loginId", loginId, "password", password);
 	}
 
+	@SuppressWarnings("unchecked")
+	@Override
+	public CompletionStage<AuthToken> getAuthTokenAsync(String loginId, String password) {
+		return (CompletionStage<AuthToken>) MCR.addCallAndReturnFromMRV("loginId", loginId,
+				"password", password);
+	}
 }
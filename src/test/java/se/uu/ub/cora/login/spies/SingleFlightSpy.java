@@ -0,0 +1,55 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.spies;
+
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+import se.uu.ub.cora.login.singleflight.SingleFlight;
+import se.uu.ub.cora.testutils.mcr.MethodCallRecorder;
+import se.uu.ub.cora.testutils.mrv.MethodReturnValues;
+
+public class SingleFlightSpy implements SingleFlight {
+	public MethodCallRecorder MCR = new MethodCallRecorder();
+	public MethodReturnValues MRV = new MethodReturnValues();
+
+	public SingleFlightSpy() {
+		MCR.useMRV(MRV);
+		MRV.setDefaultReturnValuesSupplier("createKeyUsingTypeLoginIdAndSecret", () -> "someKey");
+		MRV.setDefaultReturnValuesSupplier("sharesAuthToken", () -> false);
+	}
+
+	@Override
+	public String createKeyUsingTypeLoginIdAndSecret(String loginType, String loginId,
+			String secret) {
+		return (String) MCR.addCallAndReturnFromMRV("loginType", loginType, "loginId", loginId,
+				"secret", secret);
+	}
+
+	@Override
+	public <T> CompletableFuture<T> runOnceForKey(String key, Supplier<CompletableFuture<T>> work) {
+		MCR.addCall("key", key, "work", work);
+		return work.get();
+	}
+
+	@Override
+	public boolean sharesAuthToken() {
+		return (boolean) MCR.addCallAndReturnFromMRV();
+	}
+}
@@ -0,0 +1,127 @@
+/*
+ * Copyright 2026 Uppsala University Library
+ *
+ * This file is part of Cora.
+ *
+ *     Cora is free software: you can redistribute it and/or modify
+ *     it under the terms of the GNU General Public License as published by
+ *     the Free Software Foundation, either version 3 of the License, or
+ *     (at your option) any later version.
+ *
+ *     Cora is distributed in the hope that it will be useful,
+ *     but WITHOUT ANY WARRANTY; without even the implied warranty of
+ *     MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+ *     GNU General Public License for more details.
+ *
+ *     You should have received a copy of the GNU General Public License
+ *     along with Cora.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package se.uu.ub.cora.login.storage;
+
+import static org.testng.Assert.assertEquals;
+import static org.testng.Assert.assertTrue;
+
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+
+import org.testng.annotations.AfterMethod;
+import org.testng.annotations.BeforeMethod;
+import org.testng.annotations.Test;
+
+import se.uu.ub.cora.gatekeeper.user.User;
+import se.uu.ub.cora.login.initialize.CacheProvider;
+import se.uu.ub.cora.login.spies.CacheSpy;
+
+public class LoginCacheAdminTest {
+	private CacheSpy<User> userCache;
+	private CacheSpy<String> systemSecretCache;
+
+	@BeforeMethod
+	public void beforeMethod() {
+		userCache = new CacheSpy<>();
+		systemSecretCache = new CacheSpy<>();
+		CacheProvider.setUserCache(userCache);
+		CacheProvider.setSystemSecretCache(systemSecretCache);
+	}
+
+	@AfterMethod
+	public void afterMethod() {
+		CacheProvider.setUserCache(null);
+		CacheProvider.setSystemSecretCache(null);
+	}
+
+	@Test
+	public void testPrivateConstructor() throws Exception {
+		Constructor<LoginCacheAdmin> constructor = LoginCacheAdmin.class.getDeclaredConstructor();
+		assertTrue(Modifier.isPrivate(constructor.getModifiers()));
+	}
+
+	@Test(expectedExceptions = InvocationTargetException.class)
+	public void testPrivateConstructorInvoke() throws Exception {
+		Constructor<LoginCacheAdmin> constructor = LoginCacheAdmin.class.getDeclaredConstructor();
+		constructor.setAccessible(true);
+		constructor.newInstance();
+	}
+
+	@Test
+	public void testInvalidateUser() throws Exception {
+		LoginCacheAdmin.invalidateUser("someLoginId");
+
+		userCache.MCR.assertParameters("invalidate", 0, "someLoginId");
+	}
+
+	@Test
+	public void testInvalidateUserBeforeInitializationDoesNothing() throws Exception {
+		CacheProvider.setUserCache(null);
+
+		LoginCacheAdmin.invalidateUser("someLoginId");
+
+		userCache.MCR.assertMethodNotCalled("invalidate");
+	}
+
+	@Test
+	public void testInvalidateSystemSecret() throws Exception {
+		LoginCacheAdmin.invalidateSystemSecret("someSystemSecretId");
+
+		systemSecretCache.MCR.assertParameters("invalidate", 0, "someSystemSecretId");
+	}
+
+	@Test
+	public void testInvalidateSystemSecretBeforeInitializationDoesNothing() throws Exception {
+		CacheProvider.setSystemSecretCache(null);
+
+		LoginCacheAdmin.invalidateSystemSecret("someSystemSecretId");
+
+		systemSecretCache.MCR.assertMethodNotCalled("invalidate");
+	}
+
+	@Test
+	public void testGetUserCacheStatistics() throws Exception {
+		userCache.MRV.setDefaultReturnValuesSupplier("getHits", () -> 7L);
+		userCache.MRV.setDefaultReturnValuesSupplier("getMisses", () -> 3L);
+
+		CacheStatistics statistics = LoginCacheAdmin.getUserCacheStatistics();
+
+		assertEquals(statistics, new CacheStatistics(7, 3));
+	}
+
+	@Test
+	public void testGetSystemSecretCacheStatistics() throws Exception {
+		systemSecretCache.MRV.setDefaultReturnValuesSupplier("getHits", () -> 5L);
+		systemSecretCache.MRV.setDefaultReturnValuesSupplier("getMisses", () -> 2L);
+
+		CacheStatistics statistics = LoginCacheAdmin.getSystemSecretCacheStatistics();
+
+		assertEquals(statistics, new CacheStatistics(5, 2));
+	}
+
+	@Test
+	public void testStatisticsBeforeInitializationAreZero() throws Exception {
+		CacheProvider.setUserCache(null);
+
+		CacheStatistics statistics = LoginCacheAdmin.getUserCacheStatistics();
+
+		assertEquals(statistics, new CacheStatistics(0, 0));
+	}
+}